@@ -0,0 +1,486 @@
+package com.amalitech.audit;
+
+import com.amalitech.event.UserChangeEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only journal of user changes, written to memory-mapped segment
+ * files.
+ *
+ * <p>Appending encodes the record on the caller's thread and copies it
+ * into the mapped segment under a short lock, without a system call.
+ * From then on the record survives a crash of the JVM, since it lives in
+ * the operating system's page cache. A background thread forces the
+ * segment to disk every {@code fsync-interval}, so a single fsync covers
+ * every record appended since the last one. Only a crash of the host can
+ * lose records, and at most one interval of them.</p>
+ *
+ * <p>Segments are preallocated, zero-filled files named after their first
+ * sequence number. The next segment is always prepared ahead as a spare
+ * file, so when a record does not fit, the appending thread only swaps in
+ * the spare's mapping. Naming it, preparing the following spare and
+ * deleting segments whose records are all older than the retention period
+ * happen on the background thread, which also forces the retired segment
+ * to disk with its next fsync. Retention also runs hourly. On startup a
+ * spare holding records is named after its first one, the last segment
+ * is scanned to find the end of its records, and a torn record left by a
+ * crash is cleared. Segments are read with {@link AuditJournalReader}.</p>
+ */
+@Component
+public class AuditJournal implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditJournal.class);
+
+    /** Stops after the write-behind queue, whose final flush is still journaled. */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 8192;
+
+    /** The next segment, created ahead; not a segment name, so readers skip it until it is named. */
+    static final String SPARE_NAME = "audit-next.spare";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final Duration retention;
+    private final Duration fsyncInterval;
+    private final Clock clock;
+    private final Path sparePath;
+
+    private MappedByteBuffer active;
+    private Path activePath;
+    private MappedByteBuffer spare;
+    /** Segments rotated out but not forced to disk yet, oldest first. */
+    private final List<MappedByteBuffer> retired = new ArrayList<>();
+    private long nextSequence;
+    private volatile long appendedSequence;
+    private volatile long syncedSequence;
+    private final Object syncLock = new Object();
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile Timer fsyncTimer;
+
+    private volatile ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    /**
+     * Opens the journal, creating its directory if needed.
+     *
+     * @param directory directory holding the segments
+     * @param segmentSize size of each segment file
+     * @param retention how long records are kept
+     * @param fsyncInterval time between forced writes to disk
+     */
+    @Autowired
+    public AuditJournal(@Value("${app.audit.directory:data/audit}") final String directory,
+                        @Value("${app.audit.segment-size:64MB}") final DataSize segmentSize,
+                        @Value("${app.audit.retention:P365D}") final Duration retention,
+                        @Value("${app.audit.fsync-interval:PT0.05S}") final Duration fsyncInterval) {
+        this(Paths.get(directory), Math.toIntExact(segmentSize.toBytes()), retention, fsyncInterval,
+                Clock.systemUTC());
+    }
+
+    AuditJournal(final Path directory, final int segmentBytes, final Duration retention,
+                 final Duration fsyncInterval, final Clock clock) {
+        if (segmentBytes <= AuditRecordCodec.HEADER) {
+            throw new IllegalArgumentException("Segment size must exceed " + AuditRecordCodec.HEADER + " bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retention = retention;
+        this.fsyncInterval = fsyncInterval;
+        this.clock = clock;
+        this.sparePath = directory.resolve(SPARE_NAME);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open audit journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Appends a change to the journal.
+     *
+     * @param event the change
+     * @return the sequence number of the record
+     * @throws UncheckedIOException if a new segment could not be created
+     */
+    public long append(final UserChangeEvent event) {
+        byte[] payload = AuditRecordCodec.encode(event, clock.millis());
+        int size = AuditRecordCodec.HEADER + payload.length;
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("Audit record of " + size + " bytes exceeds the segment size");
+        }
+        long sequence;
+        Runnable afterRotation = null;
+        synchronized (this) {
+            sequence = nextSequence;
+            AuditRecordCodec.setSequence(payload, sequence);
+            if (active.remaining() < size) {
+                afterRotation = rotate(sequence);
+            }
+            active.putInt(payload.length).putInt(AuditRecordCodec.checksum(payload)).put(payload);
+            nextSequence++;
+            appendedSequence = sequence;
+        }
+        if (afterRotation != null) {
+            runInBackground(afterRotation);
+        }
+        records.increment();
+        bytes.add(size);
+        return sequence;
+    }
+
+    /**
+     * Forces every appended record to disk.
+     */
+    public void sync() {
+        synchronized (syncLock) {
+            MappedByteBuffer buffer;
+            List<MappedByteBuffer> rotatedOut;
+            long upTo;
+            synchronized (this) {
+                buffer = active;
+                rotatedOut = List.copyOf(retired);
+                upTo = appendedSequence;
+            }
+            if (upTo <= syncedSequence) {
+                return;
+            }
+            long start = System.nanoTime();
+            for (MappedByteBuffer segment : rotatedOut) {
+                segment.force();
+            }
+            buffer.force();
+            synchronized (this) {
+                // Rotations only ever add after the ones just forced
+                retired.subList(0, rotatedOut.size()).clear();
+            }
+            Timer timer = fsyncTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            syncedSequence = upTo;
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last appended record.
+     *
+     * @return the sequence, or 0 if the journal is empty
+     */
+    public long lastSequence() {
+        return appendedSequence;
+    }
+
+    /**
+     * Gets the directory holding the segments.
+     *
+     * @return the directory
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Deletes segments whose records are all older than the retention
+     * period. A segment's records are all older than the first record of
+     * the next segment, so that record decides; the active segment is
+     * never deleted.
+     *
+     * @return the number of deleted segments
+     */
+    public int deleteExpired() {
+        Instant cutoff = clock.instant().minus(retention);
+        int deleted = 0;
+        try {
+            List<Path> segments = AuditSegments.segments(directory);
+            for (int i = 0; i < segments.size() - 1; i++) {
+                AuditRecord next = firstRecord(segments.get(i + 1));
+                if (next == null || !next.at().isBefore(cutoff)) {
+                    break;
+                }
+                if (Files.deleteIfExists(segments.get(i))) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to apply audit journal retention: {}", e.getMessage());
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} audit journal segment(s) older than {}", deleted, retention);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "audit-journal-fsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, fsyncInterval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::syncQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::deleteExpired, 1, 1, TimeUnit.HOURS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            // Lets a pending rotation name its segment and prepare the next spare
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        syncQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("audit.journal.records", records, LongAdder::sum)
+                .description("Records appended to the audit journal")
+                .register(registry);
+        FunctionCounter.builder("audit.journal.bytes", bytes, LongAdder::sum)
+                .description("Bytes appended to the audit journal")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("audit.journal.unsynced", this, journal -> journal.appendedSequence - journal.syncedSequence)
+                .description("Records appended but not yet forced to disk")
+                .register(registry);
+        fsyncTimer = Timer.builder("audit.journal.fsync")
+                .description("Time to force the active audit journal segment to disk")
+                .register(registry);
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            logger.error("Failed to force audit journal to disk", e);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        recoverSpare();
+        List<Path> segments = AuditSegments.segments(directory);
+        if (segments.isEmpty()) {
+            activePath = createSegment(1);
+            active = AuditSegments.map(activePath, FileChannel.MapMode.READ_WRITE);
+            nextSequence = 1;
+        } else {
+            activePath = segments.get(segments.size() - 1);
+            long firstSequence = AuditSegments.firstSequenceOf(activePath);
+            active = AuditSegments.map(activePath, FileChannel.MapMode.READ_WRITE);
+            nextSequence = recover(active, firstSequence);
+            if (nextSequence == firstSequence && Files.size(activePath) != segmentBytes) {
+                // Empty, and either cut short by a crash during creation or sized by an older setting
+                Files.delete(activePath);
+                activePath = createSegment(firstSequence);
+                active = AuditSegments.map(activePath, FileChannel.MapMode.READ_WRITE);
+            }
+        }
+        appendedSequence = nextSequence - 1;
+        syncedSequence = appendedSequence;
+        logger.info("Opened audit journal in {} at sequence {}", directory.toAbsolutePath(), nextSequence);
+        prepareSpare();
+        deleteExpired();
+    }
+
+    /**
+     * Names a spare that a crash left holding records before the
+     * background thread could name it, and removes an unused one.
+     */
+    private void recoverSpare() throws IOException {
+        if (!Files.exists(sparePath)) {
+            return;
+        }
+        AuditRecord first = firstRecord(sparePath);
+        if (first == null) {
+            Files.delete(sparePath);
+            return;
+        }
+        Path named = directory.resolve(AuditSegments.segmentName(first.sequence()));
+        Files.move(sparePath, named, StandardCopyOption.ATOMIC_MOVE);
+        logger.warn("Recovered audit journal segment {} from its spare", named.getFileName());
+    }
+
+    /**
+     * Positions a segment after its last intact record and clears anything
+     * a crash left behind it.
+     *
+     * @return the next sequence number
+     */
+    private long recover(final MappedByteBuffer segment, final long firstSequence) {
+        long next = firstSequence;
+        AuditRecord record;
+        while ((record = AuditRecordCodec.next(segment)) != null) {
+            next = record.sequence() + 1;
+        }
+        int end = segment.position();
+        if (segment.remaining() >= 4 && segment.getInt(end) != 0) {
+            logger.warn("Clearing torn record at offset {} of audit segment {}", end, activePath.getFileName());
+            for (int i = end; i < segment.limit(); i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.force();
+        }
+        return next;
+    }
+
+    /**
+     * Swaps in the spare segment, or creates one if the spare is not ready
+     * yet, which only a burst of more than a segment can cause.
+     *
+     * @return the work left for the background thread
+     */
+    private Runnable rotate(final long firstSequence) {
+        retired.add(active);
+        Path named = directory.resolve(AuditSegments.segmentName(firstSequence));
+        activePath = named;
+        if (spare != null) {
+            active = spare;
+            spare = null;
+            return () -> {
+                nameSpare(named);
+                prepareSpare();
+                deleteExpired();
+            };
+        }
+        try {
+            active = AuditSegments.map(createSegment(named), FileChannel.MapMode.READ_WRITE);
+        } catch (IOException e) {
+            retired.remove(retired.size() - 1);
+            throw new UncheckedIOException("Failed to create audit journal segment", e);
+        }
+        logger.info("Started audit journal segment {}", named.getFileName());
+        return () -> {
+            prepareSpare();
+            deleteExpired();
+        };
+    }
+
+    private void nameSpare(final Path named) {
+        try {
+            Files.move(sparePath, named, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Started audit journal segment {}", named.getFileName());
+        } catch (IOException e) {
+            // The records stay in the spare, which is named on the next startup
+            logger.error("Failed to name audit journal segment {}", named.getFileName(), e);
+        }
+    }
+
+    private void prepareSpare() {
+        synchronized (this) {
+            if (spare != null) {
+                return;
+            }
+        }
+        try {
+            MappedByteBuffer prepared = AuditSegments.map(createSegment(sparePath), FileChannel.MapMode.READ_WRITE);
+            synchronized (this) {
+                spare = prepared;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to prepare the next audit journal segment: {}", e.getMessage());
+        }
+    }
+
+    private void runInBackground(final Runnable task) {
+        ScheduledExecutorService executor = scheduler;
+        if (running && executor != null) {
+            try {
+                executor.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Stopping, so finish the rotation here
+            }
+        }
+        task.run();
+    }
+
+    private Path createSegment(final long firstSequence) throws IOException {
+        return createSegment(directory.resolve(AuditSegments.segmentName(firstSequence)));
+    }
+
+    private Path createSegment(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Extending the file leaves it zero-filled, which marks the end of the records
+            channel.write(ByteBuffer.wrap(new byte[1]), segmentBytes - 1L);
+        }
+        return path;
+    }
+
+    /**
+     * Reads the first record of a segment through a plain read, since a
+     * mapping would stay open until the buffer is collected.
+     */
+    private static AuditRecord firstRecord(final Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, AuditRecordCodec.HEADER);
+            if (header.remaining() < AuditRecordCodec.HEADER) {
+                return null;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > channel.size() - AuditRecordCodec.HEADER) {
+                return null;
+            }
+            return AuditRecordCodec.next(read(channel, AuditRecordCodec.HEADER + length));
+        }
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Reads until the buffer is full or the file ends
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,91 @@
+package com.amalitech.audit;
+
+import com.amalitech.model.User;
+
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line access to an audit journal, one record per line:
+ *
+ * <pre>
+ * java -cp target/classes com.amalitech.audit.AuditJournalCli &lt;directory&gt; replay [fromSequence]
+ * java -cp target/classes com.amalitech.audit.AuditJournalCli &lt;directory&gt; search &lt;userId&gt;
+ * </pre>
+ *
+ * <p>It only reads the segment files, so it can run next to the
+ * application or against a copied journal.</p>
+ */
+public final class AuditJournalCli {
+
+    private static final String USAGE = "Usage: AuditJournalCli <directory> replay [fromSequence]\n"
+            + "       AuditJournalCli <directory> search <userId>";
+
+    private AuditJournalCli() {
+    }
+
+    /**
+     * Runs the command and exits with its status.
+     *
+     * @param args the directory, the command and its argument
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param args the directory, the command and its argument
+     * @param out where records are printed
+     * @param err where errors are printed
+     * @return the exit status: 0 on success, 1 if the journal cannot be read, 2 on bad usage
+     */
+    static int run(final String[] args, final PrintStream out, final PrintStream err) {
+        if (args.length < 2) {
+            err.println(USAGE);
+            return 2;
+        }
+        Path directory = Paths.get(args[0]);
+        AuditJournalReader reader = new AuditJournalReader(directory);
+        try {
+            if ("replay".equals(args[1]) && args.length <= 3) {
+                long from = args.length == 3 ? Long.parseLong(args[2]) : 1;
+                reader.replay(from, record -> out.println(format(record)));
+                return 0;
+            }
+            if ("search".equals(args[1]) && args.length == 3) {
+                for (AuditRecord record : reader.history(args[2])) {
+                    out.println(format(record));
+                }
+                return 0;
+            }
+        } catch (NumberFormatException e) {
+            err.println("Invalid sequence number: " + args[2]);
+            return 2;
+        } catch (UncheckedIOException e) {
+            err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            return 1;
+        }
+        err.println(USAGE);
+        return 2;
+    }
+
+    /**
+     * Formats a record as one line.
+     */
+    static String format(final AuditRecord record) {
+        return record.sequence() + " " + record.at() + " " + record.type() + " " + record.userId()
+                + " before=" + format(record.before()) + " after=" + format(record.after());
+    }
+
+    private static String format(final User user) {
+        if (user == null) {
+            return "-";
+        }
+        return "{id=" + user.getId() + ", name=" + user.getName() + ", email=" + user.getEmail()
+                + ", age=" + user.getAge() + ", version=" + user.getVersion() + "}";
+    }
+}
@@ -0,0 +1,43 @@
+package com.amalitech.audit;
+
+import com.amalitech.event.UserChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Journals every user change made by this instance: single writes,
+ * write-behind batches and imports.
+ */
+@Component
+public class AuditJournalListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditJournalListener.class);
+
+    private final AuditJournal journal;
+
+    /**
+     * Creates the listener.
+     *
+     * @param journal the journal to append to
+     */
+    public AuditJournalListener(final AuditJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Appends the change to the journal. The change is already stored, so
+     * a journal failure is logged rather than failing the request.
+     *
+     * @param event the change event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(final UserChangeEvent event) {
+        try {
+            journal.append(event);
+        } catch (RuntimeException e) {
+            logger.error("Failed to journal {} of user {}", event.type(), event.userId(), e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.amalitech.audit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the records of an audit journal directory, oldest first.
+ *
+ * <p>Segments are mapped read-only, so a journal can be read while the
+ * application is appending to it; records appended after a segment was
+ * mapped may or may not be seen. Reading stops at the end of each
+ * segment's intact records. A torn record at the end of the active
+ * segment is therefore skipped rather than reported.</p>
+ */
+public class AuditJournalReader {
+
+    private final Path directory;
+
+    /**
+     * Creates a reader.
+     *
+     * @param directory directory holding the segments
+     */
+    public AuditJournalReader(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Passes every record from a sequence number onwards to a consumer, in
+     * journal order.
+     *
+     * @param fromSequence the first sequence number wanted
+     * @param consumer receives the records
+     * @throws UncheckedIOException if a segment cannot be read
+     */
+    public void replay(final long fromSequence, final Consumer<AuditRecord> consumer) {
+        try {
+            List<Path> segments = AuditSegments.segments(directory);
+            for (int i = 0; i < segments.size(); i++) {
+                // A segment ends just before the next one starts
+                if (i + 1 < segments.size() && AuditSegments.firstSequenceOf(segments.get(i + 1)) <= fromSequence) {
+                    continue;
+                }
+                ByteBuffer segment;
+                try {
+                    segment = AuditSegments.map(segments.get(i), FileChannel.MapMode.READ_ONLY);
+                } catch (NoSuchFileException e) {
+                    // Removed by retention since it was listed
+                    continue;
+                }
+                AuditRecord record;
+                while ((record = AuditRecordCodec.next(segment)) != null) {
+                    if (record.sequence() >= fromSequence) {
+                        consumer.accept(record);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read audit journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Lists the changes of one user, oldest first.
+     *
+     * @param userId the user ID
+     * @return the user's records
+     * @throws UncheckedIOException if a segment cannot be read
+     */
+    public List<AuditRecord> history(final String userId) {
+        List<AuditRecord> history = new ArrayList<>();
+        replay(1, record -> {
+            if (userId.equals(record.userId())) {
+                history.add(record);
+            }
+        });
+        return history;
+    }
+}
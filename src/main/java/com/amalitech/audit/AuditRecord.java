@@ -0,0 +1,21 @@
+package com.amalitech.audit;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+
+import java.time.Instant;
+
+/**
+ * One entry of the audit journal: a user change with the values before
+ * and after it.
+ *
+ * @param sequence position in the journal, starting at 1 and increasing by one per record
+ * @param at when the change was journaled
+ * @param type the kind of change
+ * @param userId the affected user ID
+ * @param before the user before the change, or {@code null} for creations
+ * @param after the user after the change, or {@code null} for deletions
+ */
+public record AuditRecord(long sequence, Instant at, UserChangeEvent.Type type, String userId,
+                          User before, User after) {
+}
@@ -0,0 +1,184 @@
+package com.amalitech.audit;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of journal records.
+ *
+ * <p>Each record is a four-byte payload length, the CRC-32 of the
+ * payload, and the payload: sequence, timestamp in epoch milliseconds,
+ * change type, user ID, and the user before and after the change. A user
+ * is a presence byte followed by ID, name, email, age and version.
+ * Strings are a four-byte length, -1 for {@code null}, and UTF-8 bytes.
+ * Segments are zero-filled when created, so a length of zero marks the
+ * end of the written records.</p>
+ */
+final class AuditRecordCodec {
+
+    /** Bytes before the payload: length and CRC. */
+    static final int HEADER = 8;
+
+    private static final int NULL_LENGTH = -1;
+    private static final int NULL_AGE = Integer.MIN_VALUE;
+    private static final long NULL_VERSION = Long.MIN_VALUE;
+    private static final UserChangeEvent.Type[] TYPES = UserChangeEvent.Type.values();
+
+    private AuditRecordCodec() {
+    }
+
+    /**
+     * Encodes the payload of a record. The sequence is left at zero and
+     * set with {@link #setSequence} once the journal assigns it.
+     *
+     * @param event the change
+     * @param atMillis when it was journaled
+     * @return the payload
+     */
+    static byte[] encode(final UserChangeEvent event, final long atMillis) {
+        byte[] userId = bytes(event.userId());
+        byte[][] before = fields(event.before());
+        byte[][] after = fields(event.after());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 1 + stringSize(userId) + userSize(before) + userSize(after));
+        buffer.putLong(0L).putLong(atMillis).put((byte) event.type().ordinal());
+        putString(buffer, userId);
+        putUser(buffer, before, event.before());
+        putUser(buffer, after, event.after());
+        return buffer.array();
+    }
+
+    /**
+     * Writes the sequence into an encoded payload.
+     */
+    static void setSequence(final byte[] payload, final long sequence) {
+        ByteBuffer.wrap(payload).putLong(0, sequence);
+    }
+
+    /**
+     * Computes the checksum stored in a record header.
+     */
+    static int checksum(final byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the record at the buffer's position and moves past it.
+     *
+     * @param buffer a segment
+     * @return the record, or {@code null} at the end of the written
+     *         records or at a torn or corrupt record, leaving the
+     *         position unchanged
+     */
+    static AuditRecord next(final ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length <= 0 || length > buffer.remaining() - HEADER) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(start + HEADER, payload);
+        if (checksum(payload) != buffer.getInt(start + 4)) {
+            return null;
+        }
+        AuditRecord record;
+        try {
+            record = decode(ByteBuffer.wrap(payload));
+        } catch (RuntimeException e) {
+            return null;
+        }
+        buffer.position(start + HEADER + length);
+        return record;
+    }
+
+    private static AuditRecord decode(final ByteBuffer payload) {
+        long sequence = payload.getLong();
+        Instant at = Instant.ofEpochMilli(payload.getLong());
+        UserChangeEvent.Type type = TYPES[payload.get()];
+        String userId = getString(payload);
+        User before = getUser(payload);
+        User after = getUser(payload);
+        return new AuditRecord(sequence, at, type, userId, before, after);
+    }
+
+    private static byte[][] fields(final User user) {
+        if (user == null) {
+            return null;
+        }
+        return new byte[][] {bytes(user.getId()), bytes(user.getName()), bytes(user.getEmail())};
+    }
+
+    private static int userSize(final byte[][] fields) {
+        if (fields == null) {
+            return 1;
+        }
+        int size = 1 + 4 + 8;
+        for (byte[] field : fields) {
+            size += stringSize(field);
+        }
+        return size;
+    }
+
+    private static void putUser(final ByteBuffer buffer, final byte[][] fields, final User user) {
+        if (fields == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        buffer.put((byte) 1);
+        for (byte[] field : fields) {
+            putString(buffer, field);
+        }
+        buffer.putInt(user.getAge() == null ? NULL_AGE : user.getAge());
+        buffer.putLong(user.getVersion() == null ? NULL_VERSION : user.getVersion());
+    }
+
+    private static User getUser(final ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        String id = getString(buffer);
+        String name = getString(buffer);
+        String email = getString(buffer);
+        int age = buffer.getInt();
+        long version = buffer.getLong();
+        User user = new User(name, email, age == NULL_AGE ? null : age);
+        user.setId(id);
+        user.setVersion(version == NULL_VERSION ? null : version);
+        return user;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(final byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(final ByteBuffer buffer, final byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(final ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
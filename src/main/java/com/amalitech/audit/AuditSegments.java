@@ -0,0 +1,65 @@
+package com.amalitech.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Naming, listing and mapping of journal segment files. It depends on
+ * nothing but the JDK, so {@link AuditJournalCli} runs without the
+ * application's libraries.
+ */
+final class AuditSegments {
+
+    static final String SEGMENT_PREFIX = "audit-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private AuditSegments() {
+    }
+
+    /**
+     * Maps a whole segment. The channel is closed at once; the mapping
+     * stays valid until the buffer is collected.
+     */
+    static MappedByteBuffer map(final Path segment, final FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ}
+                : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(segment, options)) {
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    /**
+     * Lists the segments of a journal, oldest first.
+     */
+    static List<Path> segments(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(AuditSegments::isSegment).sorted().toList();
+        }
+    }
+
+    static long firstSequenceOf(final Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static String segmentName(final long firstSequence) {
+        // Zero-padded so that name order is sequence order
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static boolean isSegment(final Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && name.length() == SEGMENT_PREFIX.length() + 20 + SEGMENT_SUFFIX.length();
+    }
+}
@@ -0,0 +1,14 @@
+package com.amalitech.cache;
+
+import com.amalitech.model.User;
+
+import java.time.Duration;
+
+/**
+ * A cached user together with how long ago it was cached.
+ *
+ * @param user the cached copy
+ * @param age time since the copy was read from the database
+ */
+public record CachedUser(User user, Duration age) {
+}
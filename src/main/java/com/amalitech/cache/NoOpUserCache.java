@@ -0,0 +1,42 @@
+package com.amalitech.cache;
+
+import com.amalitech.model.User;
+
+import java.util.Optional;
+
+/**
+ * Cache that stores nothing, used when caching is disabled.
+ */
+public final class NoOpUserCache implements UserCache {
+
+    @Override
+    public Optional<User> get(final String id) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<CachedUser> getStale(final String id) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(final User user) {
+    }
+
+    @Override
+    public long generation() {
+        return 0;
+    }
+
+    @Override
+    public void put(final User user, final long generation) {
+    }
+
+    @Override
+    public void invalidate(final String id) {
+    }
+
+    @Override
+    public void clear() {
+    }
+}
@@ -0,0 +1,511 @@
+package com.amalitech.cache;
+
+import com.amalitech.model.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User cache that keeps entries as compact binary records outside the
+ * Java heap.
+ *
+ * <p>Cached {@link User} objects cost several hundred bytes of heap each
+ * (the object, two {@code String}s with their arrays, boxed age and
+ * version) and live long enough to be promoted, which is what makes
+ * large on-heap caches expensive to collect. Here each entry is encoded
+ * into a fixed-size slot of a direct {@link ByteBuffer} slab and decoded
+ * into a fresh {@code User} on every read, so callers can never mutate
+ * cached state and the heap only holds a few primitive arrays per
+ * segment regardless of the entry count.</p>
+ *
+ * <p>The cache is split into segments, each guarded by its own monitor,
+ * holding a slab, an open-addressing index of slot numbers keyed by the
+ * ID hash, and a clock (second-chance) eviction hand. Entries expire
+ * after a fixed TTL so changes made by other instances become visible
+ * eventually. Expired entries are kept for a further stale period, during
+ * which {@link #getStale(String)} can still serve them while the database
+ * is unavailable; they only count as misses for regular reads. Users
+ * whose encoded form does not fit a slot are simply not cached.</p>
+ *
+ * <p>An invalidated ID leaves a tombstone in its segment for one TTL,
+ * holding the invalidation generation. A user loaded before that
+ * generation is not cached, so a read that raced a deletion cannot bring
+ * the deleted user back. Tombstones are the only per-entry heap state and
+ * only exist for IDs invalidated within the TTL.</p>
+ */
+public final class OffHeapUserCache implements UserCache, MeterBinder {
+
+    private static final int SEGMENTS = 16;
+
+    // Slot layout: hash, expiry, version, age, three lengths, then UTF-8 id, name and email
+    private static final int HASH = 0;
+    private static final int EXPIRES_AT = 8;
+    private static final int VERSION = 16;
+    private static final int AGE = 24;
+    private static final int ID_LENGTH = 28;
+    private static final int NAME_LENGTH = 30;
+    private static final int EMAIL_LENGTH = 32;
+    private static final int HEADER = 34;
+
+    private static final long NULL_VERSION = Long.MIN_VALUE;
+    private static final int NULL_AGE = Integer.MIN_VALUE;
+    private static final short NULL_STRING = -1;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int slotBytes;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Clock clock;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache that drops entries as soon as they expire.
+     *
+     * @param capacity maximum number of cached users
+     * @param slotBytes bytes reserved per user
+     * @param ttl how long an entry may be served
+     * @param clock clock used for expiry
+     */
+    public OffHeapUserCache(final int capacity, final int slotBytes, final Duration ttl, final Clock clock) {
+        this(capacity, slotBytes, ttl, Duration.ZERO, clock);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity maximum number of cached users
+     * @param slotBytes bytes reserved per user
+     * @param ttl how long an entry may be served
+     * @param staleTtl how long past its TTL an entry may still be served stale
+     * @param clock clock used for expiry
+     */
+    public OffHeapUserCache(final int capacity, final int slotBytes, final Duration ttl,
+                            final Duration staleTtl, final Clock clock) {
+        if (slotBytes <= HEADER || slotBytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Slot size must be between " + (HEADER + 1) + " and " + Short.MAX_VALUE + " bytes");
+        }
+        this.slotBytes = slotBytes;
+        this.ttlMillis = ttl.toMillis();
+        this.staleMillis = staleTtl.toMillis();
+        this.clock = clock;
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        if ((long) perSegment * slotBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache segment would exceed 2 GB; lower the capacity or slot size");
+        }
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    @Override
+    public Optional<User> get(final String id) {
+        long hash = hash(id);
+        long now = clock.millis();
+        Entry entry = segmentFor(hash).get(hash, id.getBytes(StandardCharsets.UTF_8), now);
+        if (entry == null || entry.expiresAt <= now) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.user);
+    }
+
+    @Override
+    public Optional<CachedUser> getStale(final String id) {
+        long hash = hash(id);
+        long now = clock.millis();
+        Entry entry = segmentFor(hash).get(hash, id.getBytes(StandardCharsets.UTF_8), now);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        long cachedAt = entry.expiresAt - ttlMillis;
+        return Optional.of(new CachedUser(entry.user, Duration.ofMillis(Math.max(0, now - cachedAt))));
+    }
+
+    @Override
+    public void put(final User user) {
+        put(user, Long.MAX_VALUE);
+    }
+
+    @Override
+    public long generation() {
+        return generation.get();
+    }
+
+    @Override
+    public void put(final User user, final long loadGeneration) {
+        byte[] id = user.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] name = bytes(user.getName());
+        byte[] email = bytes(user.getEmail());
+        long hash = hash(user.getId());
+        Segment segment = segmentFor(hash);
+        if (HEADER + id.length + length(name) + length(email) > slotBytes) {
+            segment.remove(hash, id);
+            return;
+        }
+        segment.put(hash, id, name, email, user, clock.millis() + ttlMillis, loadGeneration);
+    }
+
+    @Override
+    public void invalidate(final String id) {
+        long hash = hash(id);
+        segmentFor(hash).invalidate(hash, id, generation.incrementAndGet(), clock.millis());
+    }
+
+    @Override
+    public void clear() {
+        long cleared = generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear(cleared);
+        }
+    }
+
+    /**
+     * Gets the number of cached users.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the off-heap memory reserved for slabs.
+     *
+     * @return the slab capacity in bytes
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.slab.capacity();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", "users").tag("result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", "users").tag("result", "miss").register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tag("cache", "users").register(registry);
+        Gauge.builder("cache.size", this, OffHeapUserCache::size)
+                .tag("cache", "users").register(registry);
+        Gauge.builder("cache.off.heap.bytes", this, OffHeapUserCache::offHeapBytes)
+                .tag("cache", "users").baseUnit("bytes").register(registry);
+    }
+
+    private Segment segmentFor(final long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static byte[] bytes(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(final byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    /** 64-bit FNV-1a with the MurmurHash3 finalizer; never 0, which marks a free slot. */
+    static long hash(final String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * A decoded entry and its expiry time.
+     */
+    private record Entry(User user, long expiresAt) {
+    }
+
+    /**
+     * The generation an ID was invalidated at, and when that stops mattering.
+     */
+    private record Tombstone(long generation, long expiresAt) {
+    }
+
+    /**
+     * One lock's worth of slots, index and eviction state.
+     */
+    private final class Segment {
+
+        private final ByteBuffer slab;
+        private final int slots;
+        /** Slot number + 1 per index position; 0 marks an empty position. */
+        private final int[] index;
+        private final int indexMask;
+        private final boolean[] referenced;
+        private final int[] freeSlots;
+        private int freeCount;
+        private int hand;
+        private int size;
+        /** Recently invalidated IDs, oldest first, as every tombstone lives for the same TTL. */
+        private final LinkedHashMap<String, Tombstone> tombstones = new LinkedHashMap<>();
+        private long clearedAt;
+
+        private Segment(final int slots) {
+            this.slots = slots;
+            this.slab = ByteBuffer.allocateDirect(slots * slotBytes).order(ByteOrder.nativeOrder());
+            int indexSize = Integer.highestOneBit(Math.max(2, slots * 2 - 1)) << 1;
+            this.index = new int[indexSize];
+            this.indexMask = indexSize - 1;
+            this.referenced = new boolean[slots];
+            this.freeSlots = new int[slots];
+            resetFreeList();
+        }
+
+        synchronized Entry get(final long hash, final byte[] id, final long now) {
+            int position = find(hash, id);
+            if (position < 0) {
+                return null;
+            }
+            int slot = index[position] - 1;
+            int base = slot * slotBytes;
+            long expiresAt = slab.getLong(base + EXPIRES_AT);
+            if (expiresAt + staleMillis <= now) {
+                removeAt(position);
+                return null;
+            }
+            if (expiresAt > now) {
+                referenced[slot] = true;
+            }
+            return new Entry(decode(base), expiresAt);
+        }
+
+        synchronized void put(final long hash, final byte[] id, final byte[] name, final byte[] email,
+                              final User user, final long expiresAt, final long loadGeneration) {
+            if (loadGeneration < clearedAt) {
+                return;
+            }
+            if (loadGeneration != Long.MAX_VALUE) {
+                Tombstone tombstone = tombstones.get(user.getId());
+                if (tombstone != null && tombstone.generation() > loadGeneration) {
+                    return;
+                }
+            }
+            long version = user.getVersion() != null ? user.getVersion() : NULL_VERSION;
+            int position = find(hash, id);
+            int slot;
+            if (position >= 0) {
+                slot = index[position] - 1;
+                long cached = slab.getLong(slot * slotBytes + VERSION);
+                // A slower reader must not replace a newer version written by an update
+                if (version != NULL_VERSION && cached != NULL_VERSION && cached > version) {
+                    return;
+                }
+            } else {
+                slot = allocate();
+                insert(hash, slot);
+                size++;
+            }
+            int base = slot * slotBytes;
+            slab.putLong(base + HASH, hash);
+            slab.putLong(base + EXPIRES_AT, expiresAt);
+            slab.putLong(base + VERSION, version);
+            slab.putInt(base + AGE, user.getAge() != null ? user.getAge() : NULL_AGE);
+            int offset = base + HEADER;
+            offset = write(base + ID_LENGTH, offset, id);
+            offset = write(base + NAME_LENGTH, offset, name);
+            write(base + EMAIL_LENGTH, offset, email);
+            // New entries start without a reference bit so a burst of one-off
+            // loads cannot push out entries that are actually being read
+            referenced[slot] = position >= 0;
+        }
+
+        synchronized void remove(final long hash, final byte[] id) {
+            int position = find(hash, id);
+            if (position >= 0) {
+                removeAt(position);
+            }
+        }
+
+        synchronized void invalidate(final long hash, final String id, final long invalidatedAt, final long now) {
+            remove(hash, id.getBytes(StandardCharsets.UTF_8));
+            Iterator<Tombstone> oldest = tombstones.values().iterator();
+            while (oldest.hasNext() && oldest.next().expiresAt() <= now) {
+                oldest.remove();
+            }
+            tombstones.remove(id);
+            tombstones.put(id, new Tombstone(invalidatedAt, now + ttlMillis));
+        }
+
+        synchronized void clear(final long cleared) {
+            tombstones.clear();
+            clearedAt = cleared;
+            Arrays.fill(index, 0);
+            Arrays.fill(referenced, false);
+            for (int slot = 0; slot < slots; slot++) {
+                slab.putLong(slot * slotBytes + HASH, 0L);
+            }
+            resetFreeList();
+            size = 0;
+            hand = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resetFreeList() {
+            for (int i = 0; i < slots; i++) {
+                freeSlots[i] = slots - 1 - i;
+            }
+            freeCount = slots;
+        }
+
+        private int find(final long hash, final byte[] id) {
+            int position = home(hash);
+            while (index[position] != 0) {
+                int base = (index[position] - 1) * slotBytes;
+                if (slab.getLong(base + HASH) == hash && idEquals(base, id)) {
+                    return position;
+                }
+                position = (position + 1) & indexMask;
+            }
+            return -1;
+        }
+
+        private void insert(final long hash, final int slot) {
+            int position = home(hash);
+            while (index[position] != 0) {
+                position = (position + 1) & indexMask;
+            }
+            index[position] = slot + 1;
+        }
+
+        /**
+         * Frees the slot at the index position and closes the gap with
+         * backward-shift deletion, so no tombstones build up.
+         */
+        private void removeAt(final int position) {
+            int slot = index[position] - 1;
+            slab.putLong(slot * slotBytes + HASH, 0L);
+            referenced[slot] = false;
+            freeSlots[freeCount++] = slot;
+            size--;
+
+            int gap = position;
+            int next = (gap + 1) & indexMask;
+            while (index[next] != 0) {
+                int wanted = home(slab.getLong((index[next] - 1) * slotBytes + HASH));
+                if (((next - wanted) & indexMask) >= ((next - gap) & indexMask)) {
+                    index[gap] = index[next];
+                    gap = next;
+                }
+                next = (next + 1) & indexMask;
+            }
+            index[gap] = 0;
+        }
+
+        /**
+         * Takes a free slot, or evicts the first slot the clock hand finds
+         * without its reference bit.
+         */
+        private int allocate() {
+            if (freeCount > 0) {
+                return freeSlots[--freeCount];
+            }
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) % slots;
+                if (referenced[slot]) {
+                    referenced[slot] = false;
+                    continue;
+                }
+                int base = slot * slotBytes;
+                int position = home(slab.getLong(base + HASH));
+                while (index[position] != slot + 1) {
+                    position = (position + 1) & indexMask;
+                }
+                removeAt(position);
+                evictions.increment();
+                return freeSlots[--freeCount];
+            }
+        }
+
+        private int home(final long hash) {
+            return (int) (hash ^ (hash >>> 29)) & indexMask;
+        }
+
+        private boolean idEquals(final int base, final byte[] id) {
+            if (slab.getShort(base + ID_LENGTH) != id.length) {
+                return false;
+            }
+            int offset = base + HEADER;
+            for (int i = 0; i < id.length; i++) {
+                if (slab.get(offset + i) != id[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int write(final int lengthOffset, final int offset, final byte[] value) {
+            if (value == null) {
+                slab.putShort(lengthOffset, NULL_STRING);
+                return offset;
+            }
+            slab.putShort(lengthOffset, (short) value.length);
+            slab.put(offset, value);
+            return offset + value.length;
+        }
+
+        private User decode(final int base) {
+            int offset = base + HEADER;
+            String id = read(base + ID_LENGTH, offset);
+            offset += Math.max(0, slab.getShort(base + ID_LENGTH));
+            String name = read(base + NAME_LENGTH, offset);
+            offset += Math.max(0, slab.getShort(base + NAME_LENGTH));
+            String email = read(base + EMAIL_LENGTH, offset);
+            int age = slab.getInt(base + AGE);
+            long version = slab.getLong(base + VERSION);
+            User user = new User(name, email, age == NULL_AGE ? null : age);
+            user.setId(id);
+            user.setVersion(version == NULL_VERSION ? null : version);
+            return user;
+        }
+
+        private String read(final int lengthOffset, final int offset) {
+            short length = slab.getShort(lengthOffset);
+            if (length == NULL_STRING) {
+                return null;
+            }
+            byte[] value = new byte[length];
+            slab.get(offset, value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.amalitech.cache;
+
+import com.amalitech.model.User;
+
+import java.util.Optional;
+
+/**
+ * Read-through cache of users by ID.
+ */
+public interface UserCache {
+
+    /**
+     * Looks up a user.
+     *
+     * @param id the user ID
+     * @return a copy of the cached user, or empty on a miss
+     */
+    Optional<User> get(String id);
+
+    /**
+     * Looks up a user even if its entry has expired, for serving when the
+     * database cannot be reached.
+     *
+     * @param id the user ID
+     * @return a copy of the cached user with its age, or empty if the
+     *         user is not cached or too old to serve at all
+     */
+    Optional<CachedUser> getStale(String id);
+
+    /**
+     * Caches a user, unless a newer version is already cached.
+     *
+     * @param user the user; must have an ID
+     */
+    void put(User user);
+
+    /**
+     * Gets the invalidation generation, which a reader takes before loading
+     * a user from the database and passes to {@link #put(User, long)}.
+     *
+     * @return the current generation
+     */
+    long generation();
+
+    /**
+     * Caches a user loaded from the database, unless a newer version is
+     * already cached or the user was invalidated after the load began, in
+     * which case the loaded copy may be a user that has since been deleted.
+     *
+     * @param user the user; must have an ID
+     * @param generation the {@link #generation()} taken before the load
+     */
+    void put(User user, long generation);
+
+    /**
+     * Removes a user from the cache.
+     *
+     * @param id the user ID
+     */
+    void invalidate(String id);
+
+    /**
+     * Removes all users from the cache.
+     */
+    void clear();
+}
@@ -0,0 +1,37 @@
+package com.amalitech.cache;
+
+import com.amalitech.event.UserChangeEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the user cache in line with writes made by this instance.
+ */
+@Component
+public class UserCacheListener {
+
+    private final UserCache userCache;
+
+    /**
+     * Creates the listener.
+     *
+     * @param userCache the cache to maintain
+     */
+    public UserCacheListener(final UserCache userCache) {
+        this.userCache = userCache;
+    }
+
+    /**
+     * Caches the new state of created and updated users and drops deleted ones.
+     *
+     * @param event the change event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(final UserChangeEvent event) {
+        if (event.type() == UserChangeEvent.Type.DELETED) {
+            userCache.invalidate(event.userId());
+        } else {
+            userCache.put(event.after());
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.amalitech.cache;
+
+import com.amalitech.delta.UserChangeSequencer;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.feed.UserChangeFeed;
+import com.amalitech.model.User;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the local user cache coherent with writes made by other instances
+ * by following a MongoDB change stream on the {@code users} collection.
+ *
+ * <p>Inserts, updates and replacements refresh the cached entry from the
+ * post-image and deletes invalidate it. Every change is also published to
+ * the {@link UserChangeFeed}, which is why the stream is followed even
+ * when the cache is disabled. The resume token is stored in the
+ * {@value #TOKEN_COLLECTION} collection per node, so both a reconnect and
+ * a restart continue where the stream left off; if the token has fallen
+ * off the oplog the cache is cleared, the change feed is reset and the
+ * stream restarts from now.</p>
+ *
+ * <p>Change streams need a replica set or sharded cluster. On a
+ * standalone server the listener logs once, leaves the cache in TTL-only
+ * mode and retries periodically in case the deployment changes.</p>
+ */
+@Component
+public class UserChangeStreamListener implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeStreamListener.class);
+
+    static final String TOKEN_COLLECTION = "userCacheResumeTokens";
+
+    private static final Set<String> STAMP_FIELDS = Set.of(UserChangeSequencer.FIELD, "version");
+
+    /** Server errors meaning change streams are not supported by the deployment. */
+    private static final Set<Integer> UNSUPPORTED_CODES = Set.of(40573, 40324, 20);
+
+    /** Server errors meaning the stored resume token can no longer be used. */
+    private static final Set<Integer> STALE_TOKEN_CODES = Set.of(260, 280, 286);
+
+    private final MongoTemplate mongoTemplate;
+    private final UserCache userCache;
+    private final UserChangeFeed changeFeed;
+    private final boolean enabled;
+    private final String nodeId;
+    private final Duration retryInterval;
+    private final Duration tokenFlushInterval;
+
+    private volatile boolean running;
+    private volatile boolean streaming;
+    /** Latest token seen; reopening from it replays whatever was missed while disconnected. */
+    private BsonDocument lastToken;
+    private Thread worker;
+
+    /**
+     * Creates the listener.
+     *
+     * @param mongoTemplate the template to open the change stream with
+     * @param userCache the cache to keep coherent
+     * @param changeFeed the feed changes are published to
+     * @param enabled whether to follow the change stream at all
+     * @param nodeId identifies this instance's resume token
+     * @param retryInterval wait before reopening a failed or unsupported stream
+     * @param tokenFlushInterval how often the resume token is persisted
+     */
+    public UserChangeStreamListener(
+            final MongoTemplate mongoTemplate,
+            final UserCache userCache,
+            final UserChangeFeed changeFeed,
+            @Value("${app.cache.change-stream.enabled:true}") final boolean enabled,
+            @Value("${app.cache.change-stream.node-id:${HOSTNAME:local}}") final String nodeId,
+            @Value("${app.cache.change-stream.retry-interval:PT1M}") final Duration retryInterval,
+            @Value("${app.cache.change-stream.token-flush-interval:PT5S}") final Duration tokenFlushInterval) {
+        this.mongoTemplate = mongoTemplate;
+        this.userCache = userCache;
+        this.changeFeed = changeFeed;
+        this.enabled = enabled;
+        this.nodeId = nodeId;
+        this.retryInterval = retryInterval;
+        this.tokenFlushInterval = tokenFlushInterval;
+    }
+
+    /**
+     * Tells whether the cache is currently kept coherent by the change stream.
+     *
+     * @return {@code false} while in TTL-only mode
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            logger.info("User change stream disabled; cache entries expire by TTL only and the change "
+                    + "feed stays empty");
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "user-cache-change-stream");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = worker;
+        if (thread != null) {
+            // The cursor waits at most a second per poll; the interrupt only cuts short a retry pause
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        worker = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Gauge.builder("cache.change.stream.active", this, listener -> listener.streaming ? 1 : 0)
+                .description("1 while the user cache follows the change stream, 0 in TTL-only mode")
+                .tag("cache", "users")
+                .register(registry);
+    }
+
+    private void runLoop() {
+        boolean warnedUnsupported = false;
+        while (running) {
+            try {
+                follow();
+            } catch (MongoCommandException e) {
+                streaming = false;
+                if (UNSUPPORTED_CODES.contains(e.getErrorCode())) {
+                    if (!warnedUnsupported) {
+                        logger.warn("Change streams are not available ({}); user cache falls back to "
+                                + "TTL-only expiry", e.getErrorMessage());
+                        warnedUnsupported = true;
+                    }
+                } else if (STALE_TOKEN_CODES.contains(e.getErrorCode())) {
+                    logger.warn("Stored resume token is no longer valid; clearing user cache and "
+                            + "restarting the change stream");
+                    userCache.clear();
+                    changeFeed.reset("The change stream restarted from the present");
+                    lastToken = null;
+                    deleteToken();
+                    continue;
+                } else {
+                    logger.warn("User cache change stream failed: {}", e.getMessage());
+                }
+            } catch (MongoException e) {
+                streaming = false;
+                if (!running) {
+                    return;
+                }
+                logger.warn("User cache change stream interrupted: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                streaming = false;
+                if (!running) {
+                    return;
+                }
+                logger.error("Unexpected error following the user change stream", e);
+            }
+            if (running) {
+                sleep(retryInterval);
+            }
+        }
+    }
+
+    private void follow() {
+        MongoCollection<Document> users = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class));
+        BsonDocument token = lastToken != null ? lastToken : loadToken();
+        ChangeStreamIterable<Document> stream = users.watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (token != null) {
+            stream = stream.resumeAfter(token);
+        }
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> opened = stream.cursor()) {
+            streaming = true;
+            logger.info("Following user change stream{}", token != null ? " from stored resume token" : "");
+            long nextFlush = System.nanoTime() + tokenFlushInterval.toNanos();
+            BsonDocument lastSaved = token;
+            while (running) {
+                ChangeStreamDocument<Document> change = opened.tryNext();
+                if (change != null && !isStamp(change)) {
+                    apply(eventIdOf(change.getResumeToken()), change.getOperationType(), change.getDocumentKey(),
+                            change.getFullDocument());
+                }
+                BsonDocument current = opened.getResumeToken();
+                if (current != null) {
+                    lastToken = current;
+                }
+                if (System.nanoTime() >= nextFlush) {
+                    if (current != null && !current.equals(lastSaved)) {
+                        saveToken(current);
+                        lastSaved = current;
+                    }
+                    nextFlush = System.nanoTime() + tokenFlushInterval.toNanos();
+                }
+            }
+            if (lastToken != null && !lastToken.equals(lastSaved)) {
+                saveToken(lastToken);
+            }
+        } finally {
+            streaming = false;
+        }
+    }
+
+    void apply(final String eventId, final OperationType type, final BsonDocument documentKey,
+               final Document fullDocument) {
+        switch (type) {
+            case INSERT, UPDATE, REPLACE -> {
+                if (fullDocument != null) {
+                    User user = mongoTemplate.getConverter().read(User.class, fullDocument);
+                    userCache.put(user);
+                    changeFeed.publish(eventId, type == OperationType.INSERT
+                            ? UserChangeEvent.Type.CREATED : UserChangeEvent.Type.UPDATED, user.getId(), user);
+                } else if (documentKey != null) {
+                    // The document was deleted before the post-image could be looked up; its delete follows
+                    userCache.invalidate(idOf(documentKey));
+                }
+            }
+            case DELETE -> {
+                if (documentKey != null) {
+                    String id = idOf(documentKey);
+                    userCache.invalidate(id);
+                    changeFeed.publish(eventId, UserChangeEvent.Type.DELETED, id, null);
+                }
+            }
+            case DROP, DROP_DATABASE, RENAME, INVALIDATE -> {
+                userCache.clear();
+                changeFeed.reset("The change stream reported " + type.getValue());
+            }
+            default -> {
+                // Index and collection option changes do not affect cached users
+            }
+        }
+    }
+
+    /**
+     * Whether the change only gave the user its change sequence, or the
+     * initial version set by {@link com.amalitech.config.UserVersionBackfill},
+     * neither of which alters the user or is a change to report.
+     */
+    static boolean isStamp(final ChangeStreamDocument<Document> change) {
+        UpdateDescription description = change.getUpdateDescription();
+        if (change.getOperationType() != OperationType.UPDATE || description == null) {
+            return false;
+        }
+        BsonDocument updated = description.getUpdatedFields();
+        return updated != null && !updated.isEmpty() && STAMP_FIELDS.containsAll(updated.keySet())
+                && (description.getRemovedFields() == null || description.getRemovedFields().isEmpty());
+    }
+
+    /**
+     * Uses the resume token's opaque {@code _data} string, which is the same
+     * on every instance, as the change's event ID.
+     */
+    private static String eventIdOf(final BsonDocument resumeToken) {
+        BsonValue data = resumeToken.get("_data");
+        return data != null && data.isString() ? data.asString().getValue() : resumeToken.toJson();
+    }
+
+    private static String idOf(final BsonDocument documentKey) {
+        BsonValue id = documentKey.get("_id");
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private BsonDocument loadToken() {
+        Document stored = mongoTemplate.getCollection(TOKEN_COLLECTION)
+                .find(Filters.eq("_id", nodeId))
+                .first();
+        if (stored == null || stored.get("token") == null) {
+            return null;
+        }
+        return stored.get("token", Document.class)
+                .toBsonDocument(Document.class, mongoTemplate.getDb().getCodecRegistry());
+    }
+
+    private void saveToken(final BsonDocument token) {
+        try {
+            Document document = new Document("_id", nodeId)
+                    .append("token", token)
+                    .append("updatedAt", new Date());
+            mongoTemplate.getCollection(TOKEN_COLLECTION)
+                    .replaceOne(Filters.eq("_id", nodeId), document, new ReplaceOptions().upsert(true));
+        } catch (MongoException e) {
+            logger.warn("Could not persist user change stream resume token: {}", e.getMessage());
+        }
+    }
+
+    private void deleteToken() {
+        try {
+            mongoTemplate.getCollection(TOKEN_COLLECTION).deleteOne(Filters.eq("_id", nodeId));
+        } catch (MongoException e) {
+            logger.warn("Could not delete user change stream resume token: {}", e.getMessage());
+        }
+    }
+
+    private static void sleep(final Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
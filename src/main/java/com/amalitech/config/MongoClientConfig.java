@@ -0,0 +1,99 @@
+package com.amalitech.config;
+
+import com.amalitech.health.ConnectionPoolStats;
+import com.amalitech.metrics.MongoCommandMetrics;
+import com.amalitech.metrics.MongoRoundTrips;
+import com.amalitech.metrics.SlowQueryDetector;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.mongodb.autoconfigure.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers application listeners with the MongoDB driver.
+ */
+@Configuration
+public class MongoClientConfig {
+
+    /**
+     * Creates the connection pool usage tracker.
+     *
+     * @return the tracker
+     */
+    @Bean
+    public ConnectionPoolStats connectionPoolStats() {
+        return new ConnectionPoolStats();
+    }
+
+    /**
+     * Creates the per-command latency and size metrics.
+     *
+     * @param meterRegistry the registry the meters are added to
+     * @return the command listener
+     */
+    @Bean
+    public MongoCommandMetrics mongoCommandMetrics(final MeterRegistry meterRegistry) {
+        return new MongoCommandMetrics(meterRegistry);
+    }
+
+    /**
+     * Creates the slow query detector. Explains run on a single daemon
+     * thread with a short queue, and are skipped when it is full. The
+     * template is looked up lazily, since it is built on the client this
+     * detector listens to.
+     *
+     * @param enabled whether slow commands are tracked
+     * @param threshold round-trip time above which a command is slow
+     * @param capacity number of recent slow commands kept
+     * @param explainInterval how often the same query shape may be explained
+     * @param mongoTemplate provider of the template explains are sent through
+     * @return the detector
+     */
+    @Bean
+    public SlowQueryDetector slowQueryDetector(
+            @Value("${app.slow-query.enabled:true}") final boolean enabled,
+            @Value("${app.slow-query.threshold:PT0.1S}") final Duration threshold,
+            @Value("${app.slow-query.capacity:100}") final int capacity,
+            @Value("${app.slow-query.explain-interval:PT10M}") final Duration explainInterval,
+            final ObjectProvider<MongoTemplate> mongoTemplate) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(16), task -> {
+                    Thread thread = new Thread(task, "slow-query-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        return new SlowQueryDetector(enabled, threshold, capacity, explainInterval,
+                (database, command) -> mongoTemplate.getObject().getMongoDatabaseFactory()
+                        .getMongoDatabase(database).runCommand(command),
+                executor, Clock.systemUTC());
+    }
+
+    /**
+     * Adds the application's listeners to the client settings built by
+     * Spring Boot.
+     *
+     * @param connectionPoolStats the connection pool usage tracker
+     * @param mongoCommandMetrics the command metrics listener
+     * @param slowQueryDetector the slow query detector
+     * @return the customizer
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer applicationMongoListeners(
+            final ConnectionPoolStats connectionPoolStats, final MongoCommandMetrics mongoCommandMetrics,
+            final SlowQueryDetector slowQueryDetector) {
+        return settings -> settings
+                .addCommandListener(mongoCommandMetrics)
+                .addCommandListener(slowQueryDetector)
+                .addCommandListener(new MongoRoundTrips())
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(connectionPoolStats));
+    }
+}
@@ -0,0 +1,59 @@
+package com.amalitech.config;
+
+import com.amalitech.outbox.InMemoryOutboxSink;
+import com.amalitech.outbox.NdjsonFileSink;
+import com.amalitech.outbox.OutboxSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.file.Paths;
+
+/**
+ * Configures MongoDB transactions and the destination of the user
+ * change outbox.
+ */
+@Configuration
+public class OutboxConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxConfig.class);
+
+    /**
+     * Creates the transaction manager that user changes and their outbox
+     * entries are written under.
+     *
+     * @param databaseFactory the database factory
+     * @return the transaction manager
+     */
+    @Bean
+    public MongoTransactionManager transactionManager(final MongoDatabaseFactory databaseFactory) {
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    /**
+     * Creates the sink relayed changes are published to: {@code ndjson}
+     * appends them to a file, {@code memory} keeps them in memory.
+     *
+     * @param type the sink type
+     * @param file the file of the {@code ndjson} sink
+     * @param objectMapper mapper used to write the changes
+     * @return the sink
+     */
+    @Bean
+    public OutboxSink outboxSink(@Value("${app.outbox.sink:ndjson}") final String type,
+                                 @Value("${app.outbox.file:data/outbox/user-changes.ndjson}") final String file,
+                                 final ObjectMapper objectMapper) {
+        OutboxSink sink = switch (type) {
+            case "ndjson" -> new NdjsonFileSink(Paths.get(file), objectMapper);
+            case "memory" -> new InMemoryOutboxSink();
+            default -> throw new IllegalArgumentException("Unknown outbox sink '" + type + "'; use ndjson or memory");
+        };
+        logger.info("Publishing user changes to {}", "ndjson".equals(type) ? Paths.get(file).toAbsolutePath() : type);
+        return sink;
+    }
+}
@@ -0,0 +1,77 @@
+package com.amalitech.config;
+
+import com.mongodb.ReadPreference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which replica set members serve which reads.
+ *
+ * <p>Point reads, and every read that a write decision depends on (email
+ * uniqueness, version checks, read-modify-write), keep the client's
+ * default {@code primary} preference, so a user always sees their own
+ * writes when fetching by ID. Heavy reads (listing, statistics) tolerate
+ * slightly old data and use the configured preference, by default
+ * {@code secondaryPreferred}. A max-staleness bound stops them from being
+ * served by a secondary that has fallen far behind; MongoDB requires it
+ * to be at least 90 seconds.</p>
+ */
+@Component
+public class ReadRouting {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadRouting.class);
+
+    /** Smallest max-staleness MongoDB accepts. */
+    static final Duration MIN_MAX_STALENESS = Duration.ofSeconds(90);
+
+    private final ReadPreference heavyReads;
+    private final ReadPreference hedgedReads;
+
+    /**
+     * Creates the routing.
+     *
+     * @param heavyReadMode read preference mode for heavy reads, such as
+     *                      {@code secondaryPreferred} or {@code primary}
+     * @param maxStaleness how far behind the primary a secondary may be
+     */
+    public ReadRouting(
+            @Value("${app.read-routing.heavy-reads:secondaryPreferred}") final String heavyReadMode,
+            @Value("${app.read-routing.max-staleness:PT90S}") final Duration maxStaleness) {
+        if (maxStaleness.compareTo(MIN_MAX_STALENESS) < 0) {
+            throw new IllegalArgumentException("Max staleness must be at least " + MIN_MAX_STALENESS);
+        }
+        if (ReadPreference.primary().getName().equalsIgnoreCase(heavyReadMode)) {
+            this.heavyReads = ReadPreference.primary();
+        } else {
+            this.heavyReads = ReadPreference.valueOf(heavyReadMode, List.of(),
+                    maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        this.hedgedReads = ReadPreference.secondaryPreferred(maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Heavy reads use read preference {}", heavyReads);
+    }
+
+    /**
+     * Gets the read preference for list and statistics queries.
+     *
+     * @return the read preference
+     */
+    public ReadPreference heavyReads() {
+        return heavyReads;
+    }
+
+    /**
+     * Gets the read preference for hedge requests, which should reach a
+     * member other than the primary that is already serving the read.
+     *
+     * @return the read preference
+     */
+    public ReadPreference hedgedReads() {
+        return hedgedReads;
+    }
+}
@@ -0,0 +1,123 @@
+package com.amalitech.config;
+
+import com.amalitech.health.MongoHealthIndicator;
+import com.amalitech.resilience.CircuitBreaker;
+import com.amalitech.resilience.HedgedReader;
+import com.amalitech.resilience.MongoFailures;
+import com.amalitech.resilience.Retrier;
+import com.amalitech.resilience.RetryBudget;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configures fault handling around Mongo data access.
+ */
+@Configuration
+public class ResilienceConfig {
+
+    /**
+     * Creates the circuit breaker guarding user data access. When half-open
+     * it probes with the health indicator's ping, on a short-lived daemon
+     * thread, which also refreshes the reported health.
+     *
+     * @param mongoHealthIndicator the health indicator used for the probe
+     * @param windowSize number of recent calls the failure rate is based on
+     * @param minimumCalls calls needed before the breaker may open
+     * @param failureRateThreshold failure share that opens the breaker
+     * @param openDuration how long the breaker stays open before probing
+     * @param probeTimeout how long the probe may take before the breaker opens again
+     * @return the circuit breaker, also published as meters
+     */
+    @Bean
+    public CircuitBreaker mongoCircuitBreaker(
+            final MongoHealthIndicator mongoHealthIndicator,
+            @Value("${app.circuit-breaker.window-size:20}") final int windowSize,
+            @Value("${app.circuit-breaker.minimum-calls:10}") final int minimumCalls,
+            @Value("${app.circuit-breaker.failure-rate-threshold:0.5}") final double failureRateThreshold,
+            @Value("${app.circuit-breaker.open-duration:PT10S}") final Duration openDuration,
+            @Value("${app.circuit-breaker.probe-timeout:PT2S}") final Duration probeTimeout) {
+        Executor probeExecutor = task -> {
+            Thread thread = new Thread(task, "mongo-circuit-probe");
+            thread.setDaemon(true);
+            thread.start();
+        };
+        return new CircuitBreaker("mongo", windowSize, minimumCalls, failureRateThreshold, openDuration,
+                mongoHealthIndicator::ping, probeExecutor, probeTimeout, MongoFailures::isUnavailable,
+                Clock.systemUTC());
+    }
+
+    /**
+     * Creates the budget shared by every retry of a MongoDB call. It allows
+     * {@code ratio} retries per request over the window, plus a fixed
+     * allowance so that quiet periods can still retry.
+     *
+     * @param ratio retries allowed per request
+     * @param minRetries retries always allowed per window
+     * @param window the budget's sliding window
+     * @return the retry budget
+     */
+    @Bean
+    public RetryBudget mongoRetryBudget(
+            @Value("${app.retry.budget.ratio:0.1}") final double ratio,
+            @Value("${app.retry.budget.min-retries:10}") final long minRetries,
+            @Value("${app.retry.budget.window:PT10S}") final Duration window) {
+        return new RetryBudget(ratio, minRetries, window, Clock.systemUTC());
+    }
+
+    /**
+     * Creates the retrier for idempotent user operations.
+     *
+     * @param maxAttempts attempts per call, including the first
+     * @param baseDelay upper bound of the first backoff
+     * @param maxDelay upper bound of any backoff
+     * @param mongoRetryBudget the shared retry budget
+     * @return the retrier, also published as meters
+     */
+    @Bean
+    public Retrier mongoRetrier(
+            @Value("${app.retry.max-attempts:3}") final int maxAttempts,
+            @Value("${app.retry.base-delay:PT0.05S}") final Duration baseDelay,
+            @Value("${app.retry.max-delay:PT1S}") final Duration maxDelay,
+            final RetryBudget mongoRetryBudget) {
+        return new Retrier("mongo", maxAttempts, baseDelay, maxDelay, mongoRetryBudget, MongoFailures::isTransient);
+    }
+
+    /**
+     * Creates the reader that hedges slow reads by ID. Reads run on a
+     * bounded pool of daemon threads; when it is saturated they run on the
+     * caller's thread without a hedge.
+     *
+     * @param enabled whether reads are hedged
+     * @param minDelay smallest hedge delay
+     * @param maxDelay largest hedge delay
+     * @param maxPercent largest share of reads, in percent, that may be hedged
+     * @param threads maximum number of read threads
+     * @return the hedged reader, also published as meters
+     */
+    @Bean
+    public HedgedReader hedgedReader(
+            @Value("${app.hedging.enabled:false}") final boolean enabled,
+            @Value("${app.hedging.min-delay:PT0.005S}") final Duration minDelay,
+            @Value("${app.hedging.max-delay:PT0.5S}") final Duration maxDelay,
+            @Value("${app.hedging.max-percent:5}") final double maxPercent,
+            @Value("${app.hedging.threads:64}") final int threads) {
+        RetryBudget budget = new RetryBudget(maxPercent / 100, 0, Duration.ofSeconds(10), Clock.systemUTC());
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), task -> {
+                    Thread thread = new Thread(task, "hedged-read-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        return new HedgedReader(enabled, minDelay, maxDelay, budget, executor);
+    }
+}
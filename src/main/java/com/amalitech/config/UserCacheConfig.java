@@ -0,0 +1,66 @@
+package com.amalitech.config;
+
+import com.amalitech.cache.NoOpUserCache;
+import com.amalitech.cache.OffHeapUserCache;
+import com.amalitech.cache.UserCache;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Configures the user cache.
+ */
+@Configuration
+public class UserCacheConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCacheConfig.class);
+
+    /**
+     * Creates the off-heap user cache, or a no-op cache when disabled.
+     *
+     * @param enabled whether caching is enabled
+     * @param capacity maximum number of cached users
+     * @param slotBytes bytes reserved per cached user
+     * @param ttl how long a cached user may be served
+     * @param staleTtl how long past its TTL a cached user may be served
+     *                 while the database is unavailable
+     * @return the user cache
+     */
+    @Bean
+    public UserCache userCache(
+            @Value("${app.cache.enabled:true}") final boolean enabled,
+            @Value("${app.cache.capacity:100000}") final int capacity,
+            @Value("${app.cache.slot-bytes:256}") final int slotBytes,
+            @Value("${app.cache.ttl:PT5M}") final Duration ttl,
+            @Value("${app.cache.stale-ttl:PT1H}") final Duration staleTtl) {
+        if (!enabled) {
+            logger.info("User cache disabled");
+            return new NoOpUserCache();
+        }
+        OffHeapUserCache cache = new OffHeapUserCache(capacity, slotBytes, ttl, staleTtl, Clock.systemUTC());
+        logger.info("User cache enabled: {} entries, {} MB off-heap, TTL {}",
+                capacity, cache.offHeapBytes() / (1024 * 1024), ttl);
+        return cache;
+    }
+
+    /**
+     * Publishes hit, miss, eviction and size metrics of the off-heap cache.
+     *
+     * @param userCache the user cache
+     * @return the meter binder
+     */
+    @Bean
+    public MeterBinder userCacheMetrics(final UserCache userCache) {
+        return registry -> {
+            if (userCache instanceof OffHeapUserCache offHeap) {
+                offHeap.bindTo(registry);
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.amalitech.config;
+
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Initialises the {@code version} field on users created before
+ * versioning was introduced.
+ *
+ * <p>Spring Data treats a versioned entity whose version is {@code null}
+ * as new and would insert it again on save, so legacy documents are
+ * given version {@code 0}. This runs once: users are updated in batches of
+ * {@value #BATCH_SIZE}, and a marker document in {@value #MARKER_COLLECTION}
+ * then keeps later startups from scanning the collection again.</p>
+ */
+@Component
+public class UserVersionBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserVersionBackfill.class);
+
+    static final String MARKER_COLLECTION = "app_migrations";
+    static final String MARKER_ID = "user-version-backfill";
+    static final int BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Creates the backfill.
+     *
+     * @param mongoTemplate the template to update users with
+     */
+    public UserVersionBackfill(final MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Sets {@code version: 0} on every user that has no version yet,
+     * unless an earlier startup already did.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            Query marker = new Query(Criteria.where("_id").is(MARKER_ID));
+            if (mongoTemplate.exists(marker, MARKER_COLLECTION)) {
+                return;
+            }
+            long initialised = 0;
+            List<Object> ids;
+            do {
+                Query legacy = new Query(Criteria.where("version").exists(false)).limit(BATCH_SIZE);
+                legacy.fields().include("_id");
+                ids = mongoTemplate.find(legacy, Document.class, mongoTemplate.getCollectionName(User.class))
+                        .stream().map(user -> user.get("_id")).toList();
+                if (!ids.isEmpty()) {
+                    // Re-checks the field, so a version set meanwhile by a save is kept
+                    initialised += mongoTemplate.updateMulti(
+                            new Query(Criteria.where("_id").in(ids).and("version").exists(false)),
+                            new Update().set("version", 0L),
+                            User.class).getModifiedCount();
+                }
+            } while (ids.size() == BATCH_SIZE);
+            mongoTemplate.upsert(marker, new Update().set("completedAt", Instant.now()), MARKER_COLLECTION);
+            if (initialised > 0) {
+                logger.info("Initialised version on {} existing users", initialised);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to initialise user versions", e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.amalitech.config;
+
+import com.amalitech.jfr.UserRequestEventInterceptor;
+import com.amalitech.logging.LogSamplingInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the application's handler interceptors.
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final UserRequestEventInterceptor userRequestEventInterceptor;
+    private final LogSamplingInterceptor logSamplingInterceptor;
+
+    /**
+     * Creates the configuration.
+     *
+     * @param userRequestEventInterceptor emits Flight Recorder events for user requests
+     * @param logSamplingInterceptor decides which requests write success logs
+     */
+    public WebMvcConfig(final UserRequestEventInterceptor userRequestEventInterceptor,
+                        final LogSamplingInterceptor logSamplingInterceptor) {
+        this.userRequestEventInterceptor = userRequestEventInterceptor;
+        this.logSamplingInterceptor = logSamplingInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(logSamplingInterceptor);
+        registry.addInterceptor(userRequestEventInterceptor);
+    }
+}
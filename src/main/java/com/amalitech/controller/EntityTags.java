@@ -0,0 +1,133 @@
+package com.amalitech.controller;
+
+import com.amalitech.exception.InvalidPreconditionException;
+import com.amalitech.exception.PreconditionFailedException;
+
+/**
+ * Helpers for building and comparing the entity tags of user resources.
+ *
+ * <p>The tag of a user is its document version in double quotes, e.g.
+ * {@code "3"}. Since every change increments the version, the tag is a
+ * strong validator for the JSON representation.</p>
+ */
+final class EntityTags {
+
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    private EntityTags() {
+    }
+
+    /**
+     * Builds the entity tag for a version.
+     *
+     * @param version the document version
+     * @return the quoted tag, or {@code null} if the version is unknown
+     */
+    static String of(final Long version) {
+        return version != null ? "\"" + version + "\"" : null;
+    }
+
+    /**
+     * Evaluates an {@code If-None-Match} header using weak comparison.
+     *
+     * @param header the raw header value
+     * @param version the current document version
+     * @return {@code true} if one of the listed tags matches
+     */
+    static boolean noneMatchHits(final String header, final Long version) {
+        if (header == null || version == null) {
+            return false;
+        }
+        String current = of(version);
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals(ANY)) {
+                return true;
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses an {@code If-Match} header into the version the client
+     * expects the user to still have.
+     *
+     * <p>The header is {@code *} or a comma-separated list of entity tags,
+     * as in RFC 9110. {@code If-Match} uses strong comparison, so weak
+     * tags, like tags this API never issued, can never match and are
+     * skipped. {@code *} only requires the user to exist, which the write
+     * itself already checks. A write is conditional on a single version,
+     * so a list naming two different versions is rejected.</p>
+     *
+     * @param header the raw header value
+     * @return the expected version, or {@code null} if the write is
+     *         unconditional
+     * @throws InvalidPreconditionException if the header is not a valid
+     *         list of entity tags, or names more than one version
+     * @throws PreconditionFailedException if the header contains no
+     *         tag that could match a user version
+     */
+    static Long expectedVersion(final String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        String value = header.trim();
+        if (value.equals(ANY)) {
+            return null;
+        }
+        Long expected = null;
+        int position = 0;
+        while (position < value.length()) {
+            char c = value.charAt(position);
+            if (c == ',' || c == ' ' || c == '\t') {
+                // Empty list elements and optional whitespace are allowed
+                position++;
+                continue;
+            }
+            boolean weak = value.startsWith(WEAK_PREFIX, position);
+            int open = weak ? position + WEAK_PREFIX.length() : position;
+            int close = open < value.length() && value.charAt(open) == '"' ? value.indexOf('"', open + 1) : -1;
+            if (close < 0) {
+                throw new InvalidPreconditionException(
+                        "If-Match must be * or a list of quoted entity tags, but was " + header);
+            }
+            Long version = weak ? null : versionOf(value.substring(open + 1, close));
+            if (version != null) {
+                if (expected != null && !expected.equals(version)) {
+                    throw new InvalidPreconditionException(
+                            "If-Match may name only one version, but was " + header);
+                }
+                expected = version;
+            }
+            position = close + 1;
+            while (position < value.length() && (value.charAt(position) == ' ' || value.charAt(position) == '\t')) {
+                position++;
+            }
+            if (position < value.length() && value.charAt(position) != ',') {
+                throw new InvalidPreconditionException(
+                        "If-Match must be * or a list of quoted entity tags, but was " + header);
+            }
+        }
+        if (expected == null) {
+            throw new PreconditionFailedException(
+                    "If-Match " + header + " does not match the current entity tag");
+        }
+        return expected;
+    }
+
+    private static Long versionOf(final String opaqueTag) {
+        try {
+            return Long.parseLong(opaqueTag);
+        } catch (NumberFormatException e) {
+            // Not a tag this API ever issued
+            return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.amalitech.controller;
+
+import com.amalitech.cache.UserChangeStreamListener;
+import com.amalitech.dto.UserChange;
+import com.amalitech.feed.UserChangeFeed;
+import com.amalitech.metrics.MongoBudget;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * REST controller streaming user changes as server-sent events.
+ */
+@RestController
+@RequestMapping("/api/v1/users/changes")
+@Tag(name = "User Change Feed",
+     description = "Server-sent events for user changes")
+public final class UserChangeFeedController {
+
+    /** Request header a reconnecting client resumes from. */
+    public static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    private final UserChangeFeed changeFeed;
+    private final UserChangeStreamListener changeStream;
+    private final Duration timeout;
+
+    /**
+     * Constructor for UserChangeFeedController.
+     *
+     * @param changeFeed the feed subscribers are added to
+     * @param changeStream the upstream the feed is filled from
+     * @param timeout how long a stream stays open before the client
+     *                has to reconnect
+     */
+    public UserChangeFeedController(
+            final UserChangeFeed changeFeed,
+            final UserChangeStreamListener changeStream,
+            @Value("${app.feed.timeout:PT30M}") final Duration timeout) {
+        this.changeFeed = changeFeed;
+        this.changeStream = changeStream;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Streams user changes as they happen.
+     *
+     * @param lastEventId the ID of the last event the client received
+     * @return the event stream, or HTTP 503 if the feed is unavailable
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @MongoBudget(0)
+    @Operation(
+        summary = "Stream user changes",
+        description = "Streams created, updated and deleted users as "
+                    + "'change' events. Reconnect with Last-Event-ID to "
+                    + "receive missed changes; a 'reset' event means "
+                    + "changes were missed and users should be re-read"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Event stream opened",
+            content = @Content(
+                mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                schema = @Schema(implementation = UserChange.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Change stream not available or too many "
+                        + "subscribers"
+        )
+    })
+    public ResponseEntity<SseEmitter> streamChanges(
+        @Parameter(description = "ID of the last event received")
+        @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+        final String lastEventId) {
+        if (!changeStream.isStreaming()) {
+            return unavailable();
+        }
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        UserChangeFeed.Subscription subscription = changeFeed.subscribe(lastEventId, new EmitterSink(emitter));
+        if (subscription == null) {
+            return unavailable();
+        }
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                // Keeps proxies such as nginx from buffering the stream
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+
+    private static ResponseEntity<SseEmitter> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .build();
+    }
+
+    /**
+     * Writes feed events to an {@link SseEmitter}.
+     */
+    private static final class EmitterSink implements UserChangeFeed.Sink {
+
+        private final SseEmitter emitter;
+
+        private EmitterSink(final SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void send(final UserChangeFeed.FeedEvent event) throws IOException {
+            emitter.send(SseEmitter.event().id(event.id()).name(event.name()).data(event.data()));
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+    }
+}
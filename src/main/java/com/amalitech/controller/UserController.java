@@ -1,8 +1,13 @@
 package com.amalitech.controller;
 
+import com.amalitech.dto.WriteTicket;
 import com.amalitech.exception.UserNotFoundException;
+import com.amalitech.metrics.MongoBudget;
 import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import com.amalitech.service.PatchResult;
 import com.amalitech.service.UserService;
+import com.amalitech.writebehind.WriteBehindQueue;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -12,20 +17,29 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * REST controller for managing user resources.
@@ -39,28 +53,55 @@ public final class UserController {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(UserController.class);
 
+    /** Media type of JSON Merge Patch documents (RFC 7396). */
+    public static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+
+    /** Response header telling whether a PATCH changed the user. */
+    public static final String PATCH_RESULT_HEADER = "X-Patch-Result";
+
+    /** Request header used to opt in to asynchronous writes (RFC 7240). */
+    public static final String PREFER_HEADER = "Prefer";
+
+    /** Response header confirming an honoured preference. */
+    public static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+
+    /** Preference asking for a 202 and a ticket instead of waiting. */
+    public static final String RESPOND_ASYNC = "respond-async";
+
     private final UserService userService;
+    private final Validator validator;
+    private final WriteBehindQueue writeBehindQueue;
 
     /**
      * Constructor for UserController.
      *
      * @param userService the user service
+     * @param validator the validator for partial updates
+     * @param writeBehindQueue the queue for asynchronous writes
      */
-    public UserController(final UserService userService) {
+    public UserController(final UserService userService,
+                          final Validator validator,
+                          final WriteBehindQueue writeBehindQueue) {
         this.userService = userService;
+        this.validator = validator;
+        this.writeBehindQueue = writeBehindQueue;
     }
 
     /**
      * Creates a new user.
      *
      * @param user the user to create
-     * @return the created user with HTTP 201 status
+     * @param prefer the Prefer header; {@code respond-async} queues the write
+     * @return the created user with HTTP 201 status, or a ticket with
+     *         HTTP 202 status when the write was queued
      */
     @PostMapping
     @Operation(
         summary = "Create a new user",
         description = "Creates a new user with the provided "
-                    + "information. Email must be unique."
+                    + "information. Email must be unique. Send "
+                    + "'Prefer: respond-async' to queue the write and "
+                    + "receive a ticket instead."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -77,6 +118,14 @@ public final class UserController {
                 )
             )
         ),
+        @ApiResponse(
+            responseCode = "202",
+            description = "Write queued; poll the Location for its status",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = WriteTicket.class)
+            )
+        ),
         @ApiResponse(
             responseCode = "400",
             description = "Invalid input - validation failed",
@@ -105,9 +154,15 @@ public final class UserController {
                           + "john.doe@example.com\"}"
                 )
             )
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Asynchronous write queue is full; retry later"
         )
     })
-    public ResponseEntity<User> createUser(
+    // Duplicate email check, then insert, outbox entry and commit; none when queued
+    @MongoBudget(4)
+    public ResponseEntity<?> createUser(
         @io.swagger.v3.oas.annotations.parameters.RequestBody(
             description = "User object to be created",
             required = true,
@@ -120,13 +175,24 @@ public final class UserController {
                 )
             )
         )
-        @Valid @RequestBody final User user) {
+        @Valid @RequestBody final User user,
+        @Parameter(description = "Send respond-async to queue the write",
+                   example = RESPOND_ASYNC)
+        @RequestHeader(value = PREFER_HEADER, required = false)
+        final String prefer) {
         LOGGER.info("Received POST request to create user with email: {}",
                     user.getEmail());
+        if (prefersAsync(prefer)) {
+            WriteTicket ticket = writeBehindQueue.submitCreate(user);
+            LOGGER.info("Queued user creation with ticket: {}", ticket.ticket());
+            return accepted(ticket);
+        }
         User createdUser = userService.createUser(user);
         LOGGER.info("Successfully created user with ID: {}",
                     createdUser.getId());
-        return new ResponseEntity<>(createdUser, HttpStatus.CREATED);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(EntityTags.of(createdUser.getVersion()))
+                .body(createdUser);
     }
 
     /**
@@ -159,6 +225,8 @@ public final class UserController {
             )
         )
     })
+    // One find; cursor batches are not counted
+    @MongoBudget(1)
     public ResponseEntity<List<User>> getAllUsers() {
         LOGGER.info("Received GET request to fetch all users");
         List<User> users = userService.getAllUsers();
@@ -175,7 +243,9 @@ public final class UserController {
     @GetMapping("/{id}")
     @Operation(
         summary = "Get user by ID",
-        description = "Retrieves a specific user by their unique identifier"
+        description = "Retrieves a specific user by their unique identifier. "
+                    + "The response carries an ETag; send it back in "
+                    + "If-None-Match to receive 304 when unchanged."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -192,6 +262,10 @@ public final class UserController {
                 )
             )
         ),
+        @ApiResponse(
+            responseCode = "304",
+            description = "User not modified since the given entity tag"
+        ),
         @ApiResponse(
             responseCode = "404",
             description = "User not found",
@@ -207,15 +281,34 @@ public final class UserController {
             )
         )
     })
+    // Version read for If-None-Match, then the user; none when cached
+    @MongoBudget(2)
     public ResponseEntity<User> getUserById(
         @Parameter(description = "Unique identifier of the user",
                    example = "507f1f77bcf86cd799439011")
-        @PathVariable final String id) {
+        @PathVariable final String id,
+        @Parameter(description = "Entity tags of a cached representation; "
+                             + "a match returns 304 Not Modified",
+                   example = "\"3\"")
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+        final String ifNoneMatch) {
         LOGGER.info("Received GET request for user ID: {}", id);
+        if (ifNoneMatch != null) {
+            Optional<Long> version = userService.getUserVersion(id);
+            if (version.isPresent()
+                    && EntityTags.noneMatchHits(ifNoneMatch, version.get())) {
+                LOGGER.info("User ID: {} not modified", id);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(EntityTags.of(version.get()))
+                        .build();
+            }
+        }
         return userService.getUserById(id)
                 .map(user -> {
                     LOGGER.info("Successfully found user ID: {}", id);
-                    return ResponseEntity.ok(user);
+                    return ResponseEntity.ok()
+                            .eTag(EntityTags.of(user.getVersion()))
+                            .body(user);
                 })
                 .orElseThrow(() -> {
                     LOGGER.warn("User not found with ID: {}", id);
@@ -228,13 +321,20 @@ public final class UserController {
      *
      * @param id the user ID
      * @param user the updated user data
-     * @return the updated user
+     * @param ifMatch the entity tag the client expects, if any
+     * @param prefer the Prefer header; {@code respond-async} queues the
+     *               write unless If-Match is also sent
+     * @return the updated user, or a ticket with HTTP 202 status when the
+     *         write was queued
      */
     @PutMapping("/{id}")
     @Operation(
         summary = "Update an existing user",
         description = "Updates all fields of an existing user. "
-                    + "Email must remain unique."
+                    + "Email must remain unique. Send If-Match with the "
+                    + "last seen ETag to avoid overwriting concurrent changes. "
+                    + "Send 'Prefer: respond-async' without If-Match to "
+                    + "queue the write and receive a ticket instead."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -251,6 +351,14 @@ public final class UserController {
                 )
             )
         ),
+        @ApiResponse(
+            responseCode = "202",
+            description = "Write queued; poll the Location for its status",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = WriteTicket.class)
+            )
+        ),
         @ApiResponse(
             responseCode = "400",
             description = "Invalid input - validation failed",
@@ -293,9 +401,31 @@ public final class UserController {
                           + "existing@example.com\"}"
                 )
             )
+        ),
+        @ApiResponse(
+            responseCode = "412",
+            description = "If-Match does not match the current version",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    value = "{\"timestamp\":\"2026-02-13T02:22:32.034Z\","
+                          + "\"status\":412,"
+                          + "\"error\":\"Precondition Failed\","
+                          + "\"message\":\"User with id "
+                          + "507f1f77bcf86cd799439011 has been modified; "
+                          + "expected version 3\"}"
+                )
+            )
+        ),
+        @ApiResponse(
+            responseCode = "503",
+            description = "Asynchronous write queue is full; retry later"
         )
     })
-    public ResponseEntity<User> updateUser(
+    // Email check, then conditional write, outbox entry and commit, or an existence check
+    // instead of the entry when the condition misses
+    @MongoBudget(4)
+    public ResponseEntity<?> updateUser(
         @Parameter(description = "Unique identifier of the user to update",
                    example = "507f1f77bcf86cd799439011")
         @PathVariable final String id,
@@ -311,12 +441,33 @@ public final class UserController {
                 )
             )
         )
-        @Valid @RequestBody final User user) {
+        @Valid @RequestBody final User user,
+        @Parameter(description = "Entity tag the client last saw; the update "
+                             + "only applies if it is still current",
+                   example = "\"3\"")
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+        final String ifMatch,
+        @Parameter(description = "Send respond-async to queue the write",
+                   example = RESPOND_ASYNC)
+        @RequestHeader(value = PREFER_HEADER, required = false)
+        final String prefer) {
         LOGGER.info("Received PUT request to update user ID: {}", id);
-        return userService.updateUser(id, user)
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch);
+        // Conditional updates need the current version, so they stay synchronous
+        if (expectedVersion == null && prefersAsync(prefer)) {
+            WriteTicket ticket = writeBehindQueue.submitUpdate(id, user);
+            LOGGER.info("Queued update of user ID: {} with ticket: {}", id, ticket.ticket());
+            return accepted(ticket);
+        }
+        Optional<User> updated = expectedVersion != null
+                ? userService.updateUser(id, user, expectedVersion)
+                : userService.updateUser(id, user);
+        return updated
                 .map(updatedUser -> {
                     LOGGER.info("Successfully updated user ID: {}", id);
-                    return ResponseEntity.ok(updatedUser);
+                    return ResponseEntity.ok()
+                            .eTag(EntityTags.of(updatedUser.getVersion()))
+                            .body(updatedUser);
                 })
                 .orElseThrow(() -> {
                     LOGGER.warn("User not found for update with ID: {}", id);
@@ -324,6 +475,107 @@ public final class UserController {
                 });
     }
 
+    /**
+     * Partially updates an existing user.
+     *
+     * @param id the user ID
+     * @param patch the JSON Merge Patch document
+     * @param ifMatch the entity tag the client expects, if any
+     * @return the patched user
+     */
+    @PatchMapping(value = "/{id}",
+                  consumes = {MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE})
+    @Operation(
+        summary = "Partially update a user",
+        description = "Applies a JSON Merge Patch. Only the supplied fields "
+                    + "are validated and written; if nothing changes no "
+                    + "write happens and X-Patch-Result is no-op."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Patch applied, or nothing to change",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = User.class),
+                examples = @ExampleObject(
+                    value = "{\"id\":\"507f1f77bcf86cd799439011\","
+                          + "\"name\":\"John Doe\","
+                          + "\"email\":\"john.doe@example.com\","
+                          + "\"age\":31,\"version\":4}"
+                )
+            )
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "Invalid patch - validation failed",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    value = "{\"timestamp\":\"2026-02-13T02:22:32.034Z\","
+                          + "\"status\":400,"
+                          + "\"error\":\"Bad Request\","
+                          + "\"message\":\"Validation failed\","
+                          + "\"fieldErrors\":{\"age\":"
+                          + "\"Age must be at least 18\"}}"
+                )
+            )
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "User not found"
+        ),
+        @ApiResponse(
+            responseCode = "409",
+            description = "Email already exists"
+        ),
+        @ApiResponse(
+            responseCode = "412",
+            description = "If-Match does not match the current version"
+        )
+    })
+    // Read and email check, then conditional write, outbox entry and commit
+    @MongoBudget(5)
+    public ResponseEntity<User> patchUser(
+        @Parameter(description = "Unique identifier of the user to patch",
+                   example = "507f1f77bcf86cd799439011")
+        @PathVariable final String id,
+        @io.swagger.v3.oas.annotations.parameters.RequestBody(
+            description = "Fields to change",
+            required = true,
+            content = @Content(
+                mediaType = MERGE_PATCH_JSON,
+                examples = @ExampleObject(value = "{\"age\":31}")
+            )
+        )
+        @RequestBody final Map<String, Object> patch,
+        @Parameter(description = "Entity tag the client last saw; the patch "
+                             + "only applies if it is still current",
+                   example = "\"3\"")
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+        final String ifMatch) {
+        LOGGER.info("Received PATCH request for user ID: {}", id);
+        UserPatch userPatch = UserPatch.from(patch, validator);
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch);
+        Optional<PatchResult> result = expectedVersion != null
+                ? userService.patchUser(id, userPatch, expectedVersion)
+                : userService.patchUser(id, userPatch);
+        return result
+                .map(patched -> {
+                    LOGGER.info("Patched user ID: {} (modified: {})",
+                                id, patched.modified());
+                    return ResponseEntity.ok()
+                            .eTag(EntityTags.of(patched.user().getVersion()))
+                            .header(PATCH_RESULT_HEADER,
+                                    patched.modified() ? "modified" : "no-op")
+                            .body(patched.user());
+                })
+                .orElseThrow(() -> {
+                    LOGGER.warn("User not found for patch with ID: {}", id);
+                    return new UserNotFoundException(id);
+                });
+    }
+
     /**
      * Deletes a user by ID.
      *
@@ -333,7 +585,9 @@ public final class UserController {
     @DeleteMapping("/{id}")
     @Operation(
         summary = "Delete a user",
-        description = "Permanently deletes a user from the system"
+        description = "Permanently deletes a user from the system. "
+                    + "Send If-Match with the last seen ETag to only delete "
+                    + "an unchanged user."
     )
     @ApiResponses(value = {
         @ApiResponse(
@@ -353,14 +607,40 @@ public final class UserController {
                           + "507f1f77bcf86cd799439011\"}"
                 )
             )
+        ),
+        @ApiResponse(
+            responseCode = "412",
+            description = "If-Match does not match the current version",
+            content = @Content(
+                mediaType = "application/json",
+                examples = @ExampleObject(
+                    value = "{\"timestamp\":\"2026-02-13T02:22:32.034Z\","
+                          + "\"status\":412,"
+                          + "\"error\":\"Precondition Failed\","
+                          + "\"message\":\"User with id "
+                          + "507f1f77bcf86cd799439011 has been modified; "
+                          + "expected version 3\"}"
+                )
+            )
         )
     })
+    // Conditional delete, tombstone, outbox entry and commit, or an existence check instead
+    // of the tombstone and entry when the condition misses
+    @MongoBudget(4)
     public ResponseEntity<Void> deleteUser(
         @Parameter(description = "Unique identifier of the user to delete",
                    example = "507f1f77bcf86cd799439011")
-        @PathVariable final String id) {
+        @PathVariable final String id,
+        @Parameter(description = "Entity tag the client last saw; the delete "
+                             + "only applies if it is still current",
+                   example = "\"3\"")
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+        final String ifMatch) {
         LOGGER.info("Received DELETE request for user ID: {}", id);
-        boolean deleted = userService.deleteUser(id);
+        Long expectedVersion = EntityTags.expectedVersion(ifMatch);
+        boolean deleted = expectedVersion != null
+                ? userService.deleteUser(id, expectedVersion)
+                : userService.deleteUser(id);
         if (deleted) {
             LOGGER.info("Successfully deleted user ID: {}", id);
             return ResponseEntity.noContent().build();
@@ -369,4 +649,74 @@ public final class UserController {
             throw new UserNotFoundException(id);
         }
     }
+
+    /**
+     * Retrieves the status of a queued write.
+     *
+     * @param ticket the ticket returned when the write was accepted
+     * @return the ticket status
+     */
+    @GetMapping("/writes/{ticket}")
+    @Operation(
+        summary = "Get the status of a queued write",
+        description = "Returns PENDING until the write has been flushed, "
+                    + "then COMPLETED with the user ID or FAILED with "
+                    + "the reason. Finished tickets expire after an hour."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Ticket found",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = WriteTicket.class),
+                examples = @ExampleObject(
+                    value = "{\"ticket\":\"3f2b8c1e-6a7d-4e0f-9b61-2c5d8e7f1a90\","
+                          + "\"operation\":\"CREATE\","
+                          + "\"status\":\"COMPLETED\","
+                          + "\"userId\":\"507f1f77bcf86cd799439011\","
+                          + "\"acceptedAt\":\"2026-02-13T02:22:32.034Z\","
+                          + "\"completedAt\":\"2026-02-13T02:22:32.251Z\"}"
+                )
+            )
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Unknown or expired ticket"
+        )
+    })
+    // Tickets are held in memory
+    @MongoBudget(0)
+    public ResponseEntity<WriteTicket> getWriteTicket(
+        @Parameter(description = "Ticket identifier",
+                   example = "3f2b8c1e-6a7d-4e0f-9b61-2c5d8e7f1a90")
+        @PathVariable final String ticket) {
+        return writeBehindQueue.getTicket(ticket)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static boolean prefersAsync(final String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split(",")) {
+            String token = preference.split(";", 2)[0].trim();
+            if (RESPOND_ASYNC.equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<WriteTicket> accepted(final WriteTicket ticket) {
+        URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/v1/users/writes/{ticket}")
+                .buildAndExpand(ticket.ticket())
+                .toUri();
+        return ResponseEntity.accepted()
+                .location(location)
+                .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+                .body(ticket);
+    }
 }
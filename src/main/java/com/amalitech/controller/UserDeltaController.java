@@ -0,0 +1,89 @@
+package com.amalitech.controller;
+
+import com.amalitech.delta.UserDeltaService;
+import com.amalitech.dto.ErrorResponse;
+import com.amalitech.dto.UserDelta;
+import com.amalitech.metrics.MongoBudget;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller serving user changes for incremental synchronization.
+ */
+@RestController
+@RequestMapping("/api/v1/users/delta")
+@Tag(name = "User Delta Sync",
+     description = "APIs for fetching user changes since a sequence")
+public final class UserDeltaController {
+
+    /** Upper bound on the number of changes returned per request. */
+    private static final int MAX_LIMIT = 1_000;
+
+    private final UserDeltaService deltaService;
+
+    /**
+     * Constructor for UserDeltaController.
+     *
+     * @param deltaService the service reading the change sequence
+     */
+    public UserDeltaController(final UserDeltaService deltaService) {
+        this.deltaService = deltaService;
+    }
+
+    /**
+     * Retrieves the user changes after a change sequence.
+     *
+     * @param since the {@code next} value of the previous response, or 0
+     * @param limit maximum number of changes to return
+     * @return the changes and the sequence to continue from
+     */
+    @GetMapping
+    // Sequence document, users and tombstones
+    @MongoBudget(3)
+    @Operation(
+        summary = "Get user changes since a sequence",
+        description = "Returns users created, updated or deleted after the "
+                    + "given change sequence, oldest first. Pass the "
+                    + "returned 'next' as 'since' to continue; since=0 "
+                    + "returns every user"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Changes retrieved successfully",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = UserDelta.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "410",
+            description = "Deletions after the sequence have been purged; "
+                        + "sync in full with since=0",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ErrorResponse.class)
+            )
+        )
+    })
+    public ResponseEntity<UserDelta> getChanges(
+        @Parameter(description = "Change sequence to return changes after",
+                   example = "0")
+        @RequestParam(defaultValue = "0") final long since,
+        @Parameter(description = "Maximum number of changes to return",
+                   example = "100")
+        @RequestParam(defaultValue = "100") final int limit) {
+        return ResponseEntity.ok(deltaService.changesSince(Math.max(0, since),
+                Math.max(1, Math.min(limit, MAX_LIMIT))));
+    }
+}
@@ -0,0 +1,145 @@
+package com.amalitech.controller;
+
+import com.amalitech.dto.ImportJobStatus;
+import com.amalitech.importer.UserImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * REST controller for bulk user imports.
+ */
+@RestController
+@RequestMapping("/api/v1/users/imports")
+@Tag(name = "User Imports",
+     description = "APIs for importing users in bulk from CSV or NDJSON files")
+public final class UserImportController {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(UserImportController.class);
+
+    private final UserImportService importService;
+
+    /**
+     * Constructor for UserImportController.
+     *
+     * @param importService the import job service
+     */
+    public UserImportController(final UserImportService importService) {
+        this.importService = importService;
+    }
+
+    /**
+     * Uploads a file and starts importing it in the background.
+     *
+     * @param file the CSV or NDJSON file
+     * @param format the file format, detected when omitted
+     * @return the queued job with HTTP 202 status
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+        summary = "Start a bulk import",
+        description = "Uploads a CSV file with a name,email,age header or an "
+                    + "NDJSON file with one user object per line. Rows are "
+                    + "validated like single creates; invalid rows and "
+                    + "duplicate emails are rejected without failing the job."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "202",
+            description = "Import queued; poll the Location for progress",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ImportJobStatus.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "400",
+            description = "File is empty or its format is not supported"
+        )
+    })
+    public ResponseEntity<ImportJobStatus> startImport(
+        @Parameter(description = "CSV or NDJSON file of users")
+        @RequestPart("file") final MultipartFile file,
+        @Parameter(description = "File format; detected from the content "
+                             + "type or file extension when omitted",
+                   example = "CSV")
+        @RequestParam(value = "format", required = false) final String format) {
+        LOGGER.info("Received import upload: {} ({} bytes)",
+                    file.getOriginalFilename(), file.getSize());
+        ImportJobStatus job = importService.submit(file, format);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/{jobId}")
+                .buildAndExpand(job.jobId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    /**
+     * Retrieves the progress of an import.
+     *
+     * @param jobId the job identifier
+     * @return the job progress
+     */
+    @GetMapping("/{jobId}")
+    @Operation(
+        summary = "Get import progress",
+        description = "Returns row counts, throughput, estimated time "
+                    + "remaining and a sample of rejected rows"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Job found",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ImportJobStatus.class)
+            )
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Unknown or expired job"
+        )
+    })
+    public ResponseEntity<ImportJobStatus> getImport(
+        @Parameter(description = "Job identifier")
+        @PathVariable final String jobId) {
+        return importService.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Lists recent imports.
+     *
+     * @return all known jobs, newest first
+     */
+    @GetMapping
+    @Operation(
+        summary = "List imports",
+        description = "Returns queued, running and recently finished imports"
+    )
+    public ResponseEntity<List<ImportJobStatus>> listImports() {
+        return ResponseEntity.ok(importService.getJobs());
+    }
+}
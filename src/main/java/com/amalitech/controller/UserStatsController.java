@@ -0,0 +1,150 @@
+package com.amalitech.controller;
+
+import com.amalitech.dto.AgeStatistics;
+import com.amalitech.dto.DomainCount;
+import com.amalitech.dto.DomainStatistics;
+import com.amalitech.stats.AgeHistogram;
+import com.amalitech.stats.EmailDomainSketch;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller exposing aggregate statistics about users.
+ */
+@RestController
+@RequestMapping("/api/v1/users/stats")
+@Tag(name = "User Statistics",
+     description = "APIs for aggregate user analytics")
+public final class UserStatsController {
+
+    /** Upper bound on the number of domains returned in exact mode. */
+    private static final int MAX_EXACT_DOMAINS = 1_000;
+
+    private final AgeHistogram ageHistogram;
+    private final EmailDomainSketch emailDomainSketch;
+
+    /**
+     * Constructor for UserStatsController.
+     *
+     * @param ageHistogram the incrementally maintained age histogram
+     * @param emailDomainSketch the streaming per-domain counter
+     */
+    public UserStatsController(final AgeHistogram ageHistogram,
+                               final EmailDomainSketch emailDomainSketch) {
+        this.ageHistogram = ageHistogram;
+        this.emailDomainSketch = emailDomainSketch;
+    }
+
+    /**
+     * Retrieves the current age distribution.
+     *
+     * @return age statistics and per-age bucket counts
+     */
+    @GetMapping("/age")
+    @Operation(
+        summary = "Get age statistics",
+        description = "Returns the age distribution of all users, served "
+                    + "from an in-memory histogram"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Age statistics computed successfully",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = AgeStatistics.class)
+            )
+        )
+    })
+    public ResponseEntity<AgeStatistics> getAgeStatistics() {
+        return ResponseEntity.ok(ageHistogram.snapshot());
+    }
+
+    /**
+     * Retrieves the email domains with the most users.
+     *
+     * @param limit maximum number of domains to return
+     * @param exact whether to run an exact aggregation instead of
+     *              reading the in-memory sketch
+     * @return domains ordered by descending user count
+     */
+    @GetMapping("/domains")
+    @Operation(
+        summary = "Get top email domains",
+        description = "Returns the email domains with the most users. By "
+                    + "default counts are estimated from an in-memory "
+                    + "sketch; exact=true runs a database aggregation"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Domain counts computed successfully",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = DomainStatistics.class)
+            )
+        )
+    })
+    public ResponseEntity<DomainStatistics> getTopDomains(
+        @Parameter(description = "Maximum number of domains to return",
+                   example = "50")
+        @RequestParam(defaultValue = "50") final int limit,
+        @Parameter(description = "Use an exact database aggregation",
+                   example = "false")
+        @RequestParam(defaultValue = "false") final boolean exact) {
+        int bounded = Math.max(1, limit);
+        if (exact) {
+            return ResponseEntity.ok(emailDomainSketch.exactTop(
+                    Math.min(bounded, MAX_EXACT_DOMAINS)));
+        }
+        return ResponseEntity.ok(emailDomainSketch.approximateTop(bounded));
+    }
+
+    /**
+     * Retrieves the number of users for a single email domain.
+     *
+     * @param domain the email domain
+     * @param exact whether to count in the database instead of
+     *              reading the in-memory sketch
+     * @return the domain and its user count
+     */
+    @GetMapping("/domains/{domain}")
+    @Operation(
+        summary = "Get user count for an email domain",
+        description = "Returns the number of users whose email address "
+                    + "belongs to the given domain. exact=true matches "
+                    + "every email in the database, since a suffix "
+                    + "match cannot use an index"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Domain count computed successfully",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = DomainCount.class)
+            )
+        )
+    })
+    public ResponseEntity<DomainCount> getDomainCount(
+        @Parameter(description = "Email domain", example = "example.com")
+        @PathVariable final String domain,
+        @Parameter(description = "Count in the database", example = "false")
+        @RequestParam(defaultValue = "false") final boolean exact) {
+        if (exact) {
+            return ResponseEntity.ok(emailDomainSketch.exactCount(domain));
+        }
+        return ResponseEntity.ok(emailDomainSketch.approximateCount(domain));
+    }
+}
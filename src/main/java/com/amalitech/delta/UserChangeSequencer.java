@@ -0,0 +1,332 @@
+package com.amalitech.delta;
+
+import com.amalitech.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigns every user change a position in one increasing change sequence.
+ *
+ * <p>Writes do not number themselves: they remove the user's
+ * {@value #FIELD} field, or write a tombstone without one for a deletion,
+ * which marks the change as pending. A single instance, holding a lease
+ * in the {@value #SEQUENCE_COLLECTION} collection, then stamps pending
+ * changes with the next numbers in the sequence, one at a time and only
+ * once they are committed. A change therefore only becomes visible at a
+ * position after every lower position, which a sequence allocated while
+ * writing cannot guarantee: two concurrent writes can commit in the
+ * opposite order of their numbers, and a client reading in between would
+ * skip one. After each batch the last stamped position is published as
+ * {@code stamped}; delta reads stop there. Stamps are only written while
+ * the lease is held, so only a holder that stalls for longer than the
+ * lease in the middle of a batch can break this order.</p>
+ *
+ * <p>Users that existed before sequencing have no {@value #FIELD} field
+ * either, so they are numbered by the same loop. Once an hour,
+ * tombstones older than the retention period are deleted, and the
+ * highest deleted position is kept as {@code horizon}: a client that last
+ * synced before it may have missed deletions and has to sync in full.</p>
+ */
+@Component
+public class UserChangeSequencer implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeSequencer.class);
+
+    /** Field holding a user's or tombstone's change sequence. */
+    public static final String FIELD = "changeSeq";
+
+    static final String SEQUENCE_COLLECTION = "user_change_sequence";
+    static final String SEQUENCE_ID = "users";
+
+    private static final Duration PURGE_INTERVAL = Duration.ofHours(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration leaseTtl;
+    private final Duration tombstoneRetention;
+    private final Clock clock;
+    private final String owner;
+
+    private Instant leaseRenewAt = Instant.MIN;
+    private Instant leaseExpiresAt = Instant.MIN;
+    private Instant purgeAt = Instant.MIN;
+    private boolean indexed;
+    private volatile long lastStamped;
+
+    private volatile Counter stamped;
+    private volatile Counter failures;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * Creates the sequencer.
+     *
+     * @param mongoTemplate template users and tombstones are stamped with
+     * @param enabled whether changes are sequenced at all
+     * @param batchSize maximum number of users, and of tombstones, stamped per poll
+     * @param pollInterval wait after a poll that found less than a full batch
+     * @param leaseTtl how long the sequencer lease lasts without renewal
+     * @param tombstoneRetention how long tombstones are kept
+     */
+    @Autowired
+    public UserChangeSequencer(final MongoTemplate mongoTemplate,
+                               @Value("${app.delta.enabled:true}") final boolean enabled,
+                               @Value("${app.delta.batch-size:500}") final int batchSize,
+                               @Value("${app.delta.poll-interval:PT0.2S}") final Duration pollInterval,
+                               @Value("${app.delta.lease-ttl:PT10S}") final Duration leaseTtl,
+                               @Value("${app.delta.tombstone-retention:P30D}") final Duration tombstoneRetention) {
+        this(mongoTemplate, enabled, batchSize, pollInterval, leaseTtl, tombstoneRetention, Clock.systemUTC(),
+                ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID());
+    }
+
+    UserChangeSequencer(final MongoTemplate mongoTemplate, final boolean enabled, final int batchSize,
+                        final Duration pollInterval, final Duration leaseTtl, final Duration tombstoneRetention,
+                        final Clock clock, final String owner) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.leaseTtl = leaseTtl;
+        this.tombstoneRetention = tombstoneRetention;
+        this.clock = clock;
+        this.owner = owner;
+    }
+
+    /**
+     * Stamps one batch of pending changes if this instance holds the lease.
+     *
+     * @return the number of changes stamped
+     * @throws RuntimeException if the database could not be reached
+     */
+    int stampOnce() {
+        if (!indexed) {
+            createIndexes();
+        }
+        if (!holdLease()) {
+            return 0;
+        }
+        // Runs on its own schedule, since under steady writes there may always be pending changes
+        purgeIfDue();
+        List<String> users = mongoTemplate.find(pending(), User.class).stream().map(User::getId).toList();
+        List<String> tombstones = mongoTemplate.find(pending(), UserTombstone.class).stream()
+                .map(UserTombstone::id).toList();
+        int count = users.size() + tombstones.size();
+        if (count == 0) {
+            return 0;
+        }
+        Document sequence = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(SEQUENCE_ID).and("owner").is(owner)),
+                new Update().inc("seq", (long) count),
+                FindAndModifyOptions.options().returnNew(true), Document.class, SEQUENCE_COLLECTION);
+        if (sequence == null) {
+            leaseRenewAt = Instant.MIN;
+            return 0;
+        }
+        long last = sequence.get("seq", Number.class).longValue();
+        long next = last - count + 1;
+        // Users come first, so their positions must all be visible before any tombstone's
+        if (!stamp(User.class, users, next) || !stamp(UserTombstone.class, tombstones, next + users.size())) {
+            return 0;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(SEQUENCE_ID).and("owner").is(owner)),
+                new Update().max("stamped", last), SEQUENCE_COLLECTION);
+        lastStamped = last;
+        Counter counter = stamped;
+        if (counter != null) {
+            counter.increment(count);
+        }
+        logger.debug("Stamped change sequence {} to {}", next, last);
+        return count;
+    }
+
+    /**
+     * Deletes tombstones older than the retention period, moving the
+     * horizon past them first so no reader sees the gap without it.
+     *
+     * @return the number of deleted tombstones
+     */
+    long purgeExpired() {
+        Query expired = Query.query(Criteria.where("deletedAt").lt(clock.instant().minus(tombstoneRetention))
+                .and(FIELD).ne(null))
+                .with(Sort.by(Sort.Direction.DESC, FIELD)).limit(1);
+        UserTombstone newest = mongoTemplate.findOne(expired, UserTombstone.class);
+        if (newest == null) {
+            return 0;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(SEQUENCE_ID)),
+                new Update().max("horizon", newest.changeSeq()), SEQUENCE_COLLECTION);
+        long deleted = mongoTemplate.remove(Query.query(Criteria.where(FIELD).lte(newest.changeSeq())),
+                UserTombstone.class).getDeletedCount();
+        logger.info("Deleted {} tombstones up to change sequence {}", deleted, newest.changeSeq());
+        return deleted;
+    }
+
+    private Query pending() {
+        // A missing field is indexed as null, so this also finds users written before sequencing
+        Query query = Query.query(Criteria.where(FIELD).is(null)).limit(batchSize);
+        query.fields().include("_id");
+        return query;
+    }
+
+    /**
+     * Stamps the given documents in order, each only if it is still pending.
+     *
+     * @return {@code false} if the lease ran out before the stamps were written
+     */
+    private boolean stamp(final Class<?> type, final List<String> ids, final long first) {
+        if (ids.isEmpty()) {
+            return true;
+        }
+        if (!clock.instant().isBefore(leaseExpiresAt)) {
+            // Another instance may already be stamping; the numbers allocated here are left unused
+            logger.warn("Sequencer lease expired during a batch; leaving {} changes to the next holder", ids.size());
+            leaseRenewAt = Instant.MIN;
+            return false;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, type);
+        long position = first;
+        for (String id : ids) {
+            bulk.updateOne(Query.query(Criteria.where("_id").is(id).and(FIELD).is(null)),
+                    new Update().set(FIELD, position++));
+        }
+        bulk.execute();
+        return true;
+    }
+
+    /**
+     * Takes or renews the lease once half of it has elapsed.
+     */
+    private boolean holdLease() {
+        Instant now = clock.instant();
+        if (now.isBefore(leaseRenewAt)) {
+            return true;
+        }
+        Query query = Query.query(Criteria.where("_id").is(SEQUENCE_ID)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", owner).set("expiresAt", now.plus(leaseTtl))
+                .setOnInsert("seq", 0L).setOnInsert("stamped", 0L).setOnInsert("horizon", 0L);
+        try {
+            mongoTemplate.upsert(query, update, SEQUENCE_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            // Held by another instance, so the upsert tried to insert a second sequence
+            leaseRenewAt = Instant.MIN;
+            return false;
+        }
+        if (leaseRenewAt == Instant.MIN) {
+            logger.info("Acquired user change sequencer lease as {}", owner);
+        }
+        leaseRenewAt = now.plus(leaseTtl.dividedBy(2));
+        leaseExpiresAt = now.plus(leaseTtl);
+        return true;
+    }
+
+    private void purgeIfDue() {
+        Instant now = clock.instant();
+        if (now.isBefore(purgeAt)) {
+            return;
+        }
+        purgeAt = now.plus(PURGE_INTERVAL);
+        purgeExpired();
+    }
+
+    private void createIndexes() {
+        mongoTemplate.indexOps(User.class).createIndex(new Index(FIELD, Sort.Direction.ASC));
+        mongoTemplate.indexOps(UserTombstone.class).createIndex(new Index(FIELD, Sort.Direction.ASC));
+        indexed = true;
+    }
+
+    private void runLoop() {
+        while (running) {
+            long wait;
+            try {
+                wait = stampOnce() < batchSize ? pollInterval.toMillis() : 0;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to stamp user changes; retrying in {}: {}", pollInterval, e.getMessage());
+                Counter counter = failures;
+                if (counter != null) {
+                    counter.increment();
+                }
+                wait = pollInterval.toMillis();
+            }
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "user-change-sequencer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        stamped = Counter.builder("user.delta.stamped")
+                .description("User changes given a change sequence")
+                .register(registry);
+        failures = Counter.builder("user.delta.failures")
+                .description("Change sequencer batches that failed and will be retried")
+                .register(registry);
+        Gauge.builder("user.delta.sequence", this, sequencer -> sequencer.lastStamped)
+                .description("Last change sequence stamped by this instance")
+                .register(registry);
+    }
+}
@@ -0,0 +1,92 @@
+package com.amalitech.delta;
+
+import com.amalitech.dto.UserDelta;
+import com.amalitech.dto.UserDeltaEntry;
+import com.amalitech.exception.DeltaExpiredException;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the user changes after a position in the change sequence.
+ *
+ * <p>Reads stop at the sequencer's {@code stamped} watermark, below which
+ * every position is final, so a client that continues from the returned
+ * {@code next} position misses no change. A user changed several times
+ * appears once, at its latest position. All reads go to the primary,
+ * where the watermark and the documents it covers are read together.</p>
+ */
+@Service
+public class UserDeltaService {
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Creates the service.
+     *
+     * @param mongoTemplate template the changes are read with
+     */
+    public UserDeltaService(final MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Gets the changes after the given position.
+     *
+     * @param since the last position the client has seen, or 0 for a full sync
+     * @param limit maximum number of changes to return
+     * @return the changes, in ascending sequence order
+     * @throws DeltaExpiredException if deletions after {@code since} have
+     *         already been purged
+     */
+    public UserDelta changesSince(final long since, final int limit) {
+        Document sequence = mongoTemplate.findById(UserChangeSequencer.SEQUENCE_ID, Document.class,
+                UserChangeSequencer.SEQUENCE_COLLECTION);
+        long stamped = positionOf(sequence, "stamped");
+        long horizon = positionOf(sequence, "horizon");
+        if (since > 0 && since < horizon) {
+            throw new DeltaExpiredException(since, horizon);
+        }
+        if (since >= stamped) {
+            return new UserDelta(List.of(), since, false);
+        }
+        Query range = Query.query(Criteria.where(UserChangeSequencer.FIELD).gt(since).lte(stamped))
+                .with(Sort.by(Sort.Direction.ASC, UserChangeSequencer.FIELD))
+                .limit(limit + 1);
+
+        List<UserDeltaEntry> changes = new ArrayList<>();
+        for (Document document : mongoTemplate.find(range, Document.class,
+                mongoTemplate.getCollectionName(User.class))) {
+            User user = mongoTemplate.getConverter().read(User.class, document);
+            changes.add(new UserDeltaEntry(positionOf(document, UserChangeSequencer.FIELD), user.getId(),
+                    false, user));
+        }
+        for (UserTombstone tombstone : mongoTemplate.find(range, UserTombstone.class)) {
+            changes.add(new UserDeltaEntry(tombstone.changeSeq(), tombstone.id(), true, null));
+        }
+        changes.sort(Comparator.comparingLong(UserDeltaEntry::seq));
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+            return new UserDelta(List.copyOf(changes), changes.get(changes.size() - 1).seq(), true);
+        }
+        return new UserDelta(changes, stamped, false);
+    }
+
+    private static long positionOf(final Document document, final String field) {
+        if (document == null) {
+            return 0;
+        }
+        Number position = document.get(field, Number.class);
+        return position != null ? position.longValue() : 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.amalitech.delta;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Marker left behind by a deleted user, so that delta sync can report the
+ * deletion.
+ *
+ * @param id the deleted user's ID
+ * @param changeSeq the deletion's change sequence, or {@code null} until
+ *                  the {@link UserChangeSequencer} has stamped it
+ * @param deletedAt when the user was deleted, by the database's clock
+ */
+@Document(collection = UserTombstone.COLLECTION)
+public record UserTombstone(@Id String id, Long changeSeq, Instant deletedAt) {
+
+    /** Collection holding the tombstones. */
+    public static final String COLLECTION = "user_tombstones";
+}
@@ -0,0 +1,35 @@
+package com.amalitech.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+/**
+ * Snapshot of the user age distribution.
+ *
+ * @param count total number of users counted
+ * @param mean mean age, or {@code null} when there are no users
+ * @param min youngest age, or {@code null} when there are no users
+ * @param max oldest age, or {@code null} when there are no users
+ * @param p50 median age
+ * @param p90 90th percentile age
+ * @param p95 95th percentile age
+ * @param p99 99th percentile age
+ * @param bucketStart age represented by the first bucket
+ * @param buckets number of users per age, starting at {@code bucketStart}
+ * @param computedAt when the snapshot was taken
+ */
+@Schema(description = "Age distribution of all users")
+public record AgeStatistics(
+        long count,
+        Double mean,
+        Integer min,
+        Integer max,
+        Integer p50,
+        Integer p90,
+        Integer p95,
+        Integer p99,
+        int bucketStart,
+        long[] buckets,
+        Instant computedAt) {
+}
@@ -0,0 +1,13 @@
+package com.amalitech.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Number of users registered under one email domain.
+ *
+ * @param domain the lower-cased email domain
+ * @param count the exact or estimated number of users
+ */
+@Schema(description = "User count for an email domain")
+public record DomainCount(String domain, long count) {
+}
@@ -0,0 +1,18 @@
+package com.amalitech.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Ranked user counts per email domain.
+ *
+ * @param exact whether counts come from an exact aggregation rather
+ *              than the in-memory sketch
+ * @param domains domains ordered by descending count
+ * @param computedAt when the result was produced
+ */
+@Schema(description = "User counts per email domain")
+public record DomainStatistics(boolean exact, List<DomainCount> domains, Instant computedAt) {
+}
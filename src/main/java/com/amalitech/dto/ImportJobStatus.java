@@ -0,0 +1,56 @@
+package com.amalitech.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Progress of a bulk user import.
+ *
+ * @param jobId the job identifier
+ * @param state the current state
+ * @param fileName the uploaded file name
+ * @param format the file format, {@code CSV} or {@code NDJSON}
+ * @param rowsProcessed rows read and checked so far
+ * @param rowsImported rows written as new users
+ * @param rowsRejected rows that failed validation, were duplicates or
+ *                     could not be written
+ * @param duplicateEmails rejected rows whose email appeared earlier in
+ *                        the file or already exists
+ * @param bytesRead bytes of the file consumed so far
+ * @param totalBytes size of the file
+ * @param percentComplete share of the file consumed, from 0 to 100
+ * @param rowsPerSecond average processing rate since the job started
+ * @param etaSeconds estimated seconds until the job finishes
+ * @param submittedAt when the file was uploaded
+ * @param startedAt when processing started
+ * @param finishedAt when processing ended
+ * @param error why the job failed, if it did
+ * @param rejectedSample the first rejected rows with their reasons
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Progress of a bulk user import")
+public record ImportJobStatus(String jobId,
+                              State state,
+                              String fileName,
+                              String format,
+                              long rowsProcessed,
+                              long rowsImported,
+                              long rowsRejected,
+                              long duplicateEmails,
+                              long bytesRead,
+                              long totalBytes,
+                              Double percentComplete,
+                              Double rowsPerSecond,
+                              Long etaSeconds,
+                              Instant submittedAt,
+                              Instant startedAt,
+                              Instant finishedAt,
+                              String error,
+                              List<RejectedRow> rejectedSample) {
+
+    /** Lifecycle of an import job. */
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED }
+}
@@ -0,0 +1,13 @@
+package com.amalitech.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * A row of an import file that was not imported.
+ *
+ * @param line the 1-based line number in the file
+ * @param reason why the row was rejected
+ */
+@Schema(description = "Import file row that was rejected")
+public record RejectedRow(long line, String reason) {
+}
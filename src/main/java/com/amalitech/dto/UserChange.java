@@ -0,0 +1,18 @@
+package com.amalitech.dto;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * A change to a user, as sent on the change feed.
+ *
+ * @param type the kind of change
+ * @param userId the affected user ID
+ * @param user the user after the change; absent for deletions
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "A created, updated or deleted user")
+public record UserChange(UserChangeEvent.Type type, String userId, User user) {
+}
@@ -0,0 +1,16 @@
+package com.amalitech.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * A page of user changes after a position in the change sequence.
+ *
+ * @param changes the changes, in ascending sequence order
+ * @param next the position to request the following changes from
+ * @param hasMore whether further changes can be fetched right away
+ */
+@Schema(description = "User changes since a change sequence")
+public record UserDelta(List<UserDeltaEntry> changes, long next, boolean hasMore) {
+}
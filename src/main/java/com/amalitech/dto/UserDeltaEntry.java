@@ -0,0 +1,18 @@
+package com.amalitech.dto;
+
+import com.amalitech.model.User;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * A user's latest state at its position in the change sequence.
+ *
+ * @param seq the change's position in the sequence
+ * @param id the affected user ID
+ * @param deleted whether the user has been deleted
+ * @param user the user as it is now; absent for deletions
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "A changed or deleted user")
+public record UserDeltaEntry(long seq, String id, boolean deleted, User user) {
+}
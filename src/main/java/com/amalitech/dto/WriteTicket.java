@@ -0,0 +1,56 @@
+package com.amalitech.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+
+/**
+ * Completion status of a write accepted for asynchronous processing.
+ *
+ * @param ticket identifier to poll the status with
+ * @param operation the kind of write
+ * @param status the current status
+ * @param userId the affected user; assigned on completion for creates
+ * @param error why the write failed, if it did
+ * @param acceptedAt when the write was queued
+ * @param completedAt when the write completed or failed
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Status of an asynchronously processed write")
+public record WriteTicket(String ticket,
+                          Operation operation,
+                          Status status,
+                          String userId,
+                          String error,
+                          Instant acceptedAt,
+                          Instant completedAt) {
+
+    /** Kind of write. */
+    public enum Operation { CREATE, UPDATE }
+
+    /** Processing status. */
+    public enum Status { PENDING, COMPLETED, FAILED }
+
+    /**
+     * Returns a copy marked as completed.
+     *
+     * @param id the written user's ID
+     * @param at the completion time
+     * @return the completed ticket
+     */
+    public WriteTicket completed(final String id, final Instant at) {
+        return new WriteTicket(ticket, operation, Status.COMPLETED, id, null, acceptedAt, at);
+    }
+
+    /**
+     * Returns a copy marked as failed.
+     *
+     * @param reason why the write failed
+     * @param at the failure time
+     * @return the failed ticket
+     */
+    public WriteTicket failed(final String reason, final Instant at) {
+        return new WriteTicket(ticket, operation, Status.FAILED, userId, reason, acceptedAt, at);
+    }
+}
@@ -0,0 +1,68 @@
+package com.amalitech.event;
+
+import com.amalitech.model.User;
+
+/**
+ * Application event published by the service layer after a user
+ * document has been created, updated or deleted.
+ *
+ * <p>{@code before} is {@code null} for creations and {@code after} is
+ * {@code null} for deletions. Both snapshots are detached copies, so
+ * listeners may keep references without observing later mutations.</p>
+ *
+ * <p>Changes written in an outbox transaction are published inside it.
+ * Listeners are therefore registered with
+ * {@code @TransactionalEventListener(fallbackExecution = true)}: they run
+ * once the transaction commits, never for an aborted attempt, and at
+ * once for changes written without a transaction.</p>
+ *
+ * @param type the kind of mutation
+ * @param userId the affected user ID
+ * @param before the user state before the change, if any
+ * @param after the user state after the change, if any
+ */
+public record UserChangeEvent(Type type, String userId, User before, User after) {
+
+    /**
+     * Kind of mutation applied to a user document.
+     */
+    public enum Type {
+        /** A new user was inserted. */
+        CREATED,
+        /** An existing user was modified. */
+        UPDATED,
+        /** A user was removed. */
+        DELETED
+    }
+
+    /**
+     * Creates an event for a newly created user.
+     *
+     * @param created the persisted user
+     * @return the event
+     */
+    public static UserChangeEvent created(final User created) {
+        return new UserChangeEvent(Type.CREATED, created.getId(), null, User.copyOf(created));
+    }
+
+    /**
+     * Creates an event for an updated user.
+     *
+     * @param before the state before the update
+     * @param after the state after the update
+     * @return the event
+     */
+    public static UserChangeEvent updated(final User before, final User after) {
+        return new UserChangeEvent(Type.UPDATED, after.getId(), User.copyOf(before), User.copyOf(after));
+    }
+
+    /**
+     * Creates an event for a deleted user.
+     *
+     * @param deleted the state of the user before removal
+     * @return the event
+     */
+    public static UserChangeEvent deleted(final User deleted) {
+        return new UserChangeEvent(Type.DELETED, deleted.getId(), User.copyOf(deleted), null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.amalitech.exception;
+
+import java.time.Duration;
+
+public class CircuitOpenException extends RuntimeException {
+    
+    private final Duration retryAfter;
+    
+    public CircuitOpenException(String name, Duration retryAfter) {
+        super("Circuit breaker '" + name + "' is open; the database is unavailable");
+        this.retryAfter = retryAfter;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
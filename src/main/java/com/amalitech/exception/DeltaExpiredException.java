@@ -0,0 +1,9 @@
+package com.amalitech.exception;
+
+public class DeltaExpiredException extends RuntimeException {
+    
+    public DeltaExpiredException(long since, long horizon) {
+        super("Changes since sequence " + since + " are no longer available; deletions up to sequence "
+                + horizon + " have been purged. Sync in full with since=0.");
+    }
+}
@@ -5,6 +5,8 @@ import com.mongodb.MongoException;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -59,6 +61,25 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
     }
     
+    @ExceptionHandler({PreconditionFailedException.class, OptimisticLockingFailureException.class})
+    public ResponseEntity<ErrorResponse> handlePreconditionFailedException(
+            RuntimeException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Precondition failed for request to {}: {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.PRECONDITION_FAILED.value(),
+            "Precondition Failed",
+            ex instanceof PreconditionFailedException
+                ? ex.getMessage()
+                : "The user has been modified by another request. Fetch the latest version and retry.",
+            request.getRequestURI()
+        );
+        
+        return new ResponseEntity<>(errorResponse, HttpStatus.PRECONDITION_FAILED);
+    }
+    
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationException(
             MethodArgumentNotValidException ex, 
@@ -85,6 +106,59 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
     
+    @ExceptionHandler(PatchValidationException.class)
+    public ResponseEntity<ErrorResponse> handlePatchValidationException(
+            PatchValidationException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Patch validation failed for request to {}: {} field errors", 
+            request.getRequestURI(), ex.getFieldErrors().size());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.BAD_REQUEST.value(),
+            "Bad Request",
+            "Validation failed",
+            request.getRequestURI(),
+            ex.getFieldErrors()
+        );
+        
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+    
+    @ExceptionHandler(InvalidImportException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidImportException(
+            InvalidImportException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Invalid import for request to {}: {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.BAD_REQUEST.value(),
+            "Bad Request",
+            ex.getMessage(),
+            request.getRequestURI()
+        );
+        
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+    
+    @ExceptionHandler(InvalidPreconditionException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidPreconditionException(
+            InvalidPreconditionException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Invalid precondition for request to {}: {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.BAD_REQUEST.value(),
+            "Bad Request",
+            ex.getMessage(),
+            request.getRequestURI()
+        );
+        
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+    
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ResponseEntity<ErrorResponse> handleHttpMessageNotReadable(
             HttpMessageNotReadableException ex, 
@@ -177,6 +251,61 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
     
+    @ExceptionHandler(DeltaExpiredException.class)
+    public ResponseEntity<ErrorResponse> handleDeltaExpiredException(
+            DeltaExpiredException ex, 
+            HttpServletRequest request) {
+        
+        logger.info("Delta sync requested past the tombstone horizon: {}", ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.GONE.value(),
+            "Gone",
+            ex.getMessage(),
+            request.getRequestURI()
+        );
+        
+        return new ResponseEntity<>(errorResponse, HttpStatus.GONE);
+    }
+    
+    @ExceptionHandler(WriteQueueFullException.class)
+    public ResponseEntity<ErrorResponse> handleWriteQueueFullException(
+            WriteQueueFullException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Asynchronous write rejected for request to {}: {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.SERVICE_UNAVAILABLE.value(),
+            "Service Unavailable",
+            ex.getMessage(),
+            request.getRequestURI()
+        );
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorResponse);
+    }
+    
+    @ExceptionHandler(CircuitOpenException.class)
+    public ResponseEntity<ErrorResponse> handleCircuitOpenException(
+            CircuitOpenException ex, 
+            HttpServletRequest request) {
+        
+        logger.warn("Request to {} rejected: {}", request.getRequestURI(), ex.getMessage());
+        
+        ErrorResponse errorResponse = new ErrorResponse(
+            HttpStatus.SERVICE_UNAVAILABLE.value(),
+            "Service Unavailable",
+            "The database is temporarily unavailable. Please try again later.",
+            request.getRequestURI()
+        );
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, ex.getRetryAfter().toSeconds())))
+                .body(errorResponse);
+    }
+    
     @ExceptionHandler(MongoException.class)
     public ResponseEntity<ErrorResponse> handleMongoException(
             MongoException ex, 
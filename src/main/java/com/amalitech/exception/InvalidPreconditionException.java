@@ -0,0 +1,8 @@
+package com.amalitech.exception;
+
+public class InvalidPreconditionException extends RuntimeException {
+    
+    public InvalidPreconditionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.amalitech.exception;
+
+import java.util.Map;
+
+public class PatchValidationException extends RuntimeException {
+    
+    private final Map<String, String> fieldErrors;
+    
+    public PatchValidationException(Map<String, String> fieldErrors) {
+        super("Validation failed");
+        this.fieldErrors = Map.copyOf(fieldErrors);
+    }
+    
+    public Map<String, String> getFieldErrors() {
+        return fieldErrors;
+    }
+}
@@ -0,0 +1,12 @@
+package com.amalitech.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+    
+    public PreconditionFailedException(String id, Long expectedVersion) {
+        super("User with id " + id + " has been modified; expected version " + expectedVersion);
+    }
+    
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,343 @@
+package com.amalitech.feed;
+
+import com.amalitech.dto.UserChange;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans user changes out to the subscribers of the change feed.
+ *
+ * <p>Changes come from one shared upstream, the change stream on the
+ * {@code users} collection, so they include writes made by every
+ * instance and subscribers add no database load. Each change is
+ * serialized once and offered to every subscriber's bounded buffer. A
+ * subscriber's own virtual thread drains its buffer to the client and
+ * sends a heartbeat comment when idle, so an idle or slow subscriber
+ * holds no platform thread. A subscriber whose buffer is full is
+ * dropped rather than slowing the upstream or buffering without limit;
+ * it reconnects and resumes.</p>
+ *
+ * <p>Event IDs are change stream resume tokens, which are the same on
+ * every instance. The latest {@code replay-capacity} changes are kept, so
+ * a client reconnecting with {@code Last-Event-ID} is first sent what it
+ * missed. If that ID is no longer kept, or the upstream had to restart
+ * from the present, subscribers are sent a {@value #RESET_EVENT} event
+ * and should re-read the users they track.</p>
+ */
+@Component
+public class UserChangeFeed implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeFeed.class);
+
+    /** Name of the events carrying a {@link UserChange}. */
+    public static final String CHANGE_EVENT = "change";
+
+    /** Name of the event telling a subscriber that changes may have been missed. */
+    public static final String RESET_EVENT = "reset";
+
+    private static final FeedEvent CLOSE = new FeedEvent(null, null, null);
+
+    /**
+     * An event ready to be written to subscribers.
+     *
+     * @param id the event ID; empty to clear the client's last event ID
+     * @param name the event name
+     * @param data the serialized payload
+     */
+    public record FeedEvent(String id, String name, String data) {
+    }
+
+    /**
+     * Writes events to one client.
+     */
+    public interface Sink {
+
+        /**
+         * Sends an event.
+         *
+         * @param event the event
+         * @throws IOException if the client is gone
+         */
+        void send(FeedEvent event) throws IOException;
+
+        /**
+         * Sends a comment that keeps an idle connection open.
+         *
+         * @throws IOException if the client is gone
+         */
+        void heartbeat() throws IOException;
+
+        /**
+         * Ends the stream.
+         */
+        void close();
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int replayCapacity;
+    private final int subscriberBuffer;
+    private final int maxSubscribers;
+    private final Duration heartbeat;
+
+    private final FeedEvent[] ring;
+    private final Map<String, Long> positions = new HashMap<>();
+    private long written;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong subscriberIds = new AtomicLong();
+    private volatile boolean running;
+
+    private volatile Counter events;
+    private volatile Counter dropped;
+    private volatile Counter resets;
+
+    /**
+     * Creates the feed.
+     *
+     * @param objectMapper mapper the changes are serialized with
+     * @param replayCapacity number of recent changes kept for resuming clients
+     * @param subscriberBuffer changes buffered per subscriber before it is dropped
+     * @param maxSubscribers maximum number of concurrent subscribers
+     * @param heartbeat idle time after which a heartbeat comment is sent
+     */
+    @Autowired
+    public UserChangeFeed(final ObjectMapper objectMapper,
+                          @Value("${app.feed.replay-capacity:10000}") final int replayCapacity,
+                          @Value("${app.feed.subscriber-buffer:1000}") final int subscriberBuffer,
+                          @Value("${app.feed.max-subscribers:1000}") final int maxSubscribers,
+                          @Value("${app.feed.heartbeat:PT15S}") final Duration heartbeat) {
+        if (replayCapacity < 1 || subscriberBuffer < 1) {
+            throw new IllegalArgumentException("Replay capacity and subscriber buffer must be positive");
+        }
+        this.objectMapper = objectMapper;
+        this.replayCapacity = replayCapacity;
+        this.subscriberBuffer = subscriberBuffer;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeat = heartbeat;
+        this.ring = new FeedEvent[replayCapacity];
+    }
+
+    /**
+     * Publishes a change to every subscriber.
+     *
+     * @param id the change's resume token
+     * @param type the kind of change
+     * @param userId the affected user ID
+     * @param user the user after the change, or {@code null} for deletions
+     */
+    public void publish(final String id, final UserChangeEvent.Type type, final String userId, final User user) {
+        FeedEvent event = new FeedEvent(id, CHANGE_EVENT,
+                objectMapper.writeValueAsString(new UserChange(type, userId, user)));
+        synchronized (this) {
+            int slot = (int) (written % replayCapacity);
+            FeedEvent evicted = ring[slot];
+            if (evicted != null) {
+                positions.remove(evicted.id());
+            }
+            ring[slot] = event;
+            positions.put(id, written);
+            written++;
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(event);
+            }
+        }
+        Counter counter = events;
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Forgets the kept changes and tells every subscriber that changes may
+     * have been missed, for when the upstream restarts from the present.
+     *
+     * @param reason why changes may have been missed
+     */
+    public void reset(final String reason) {
+        FeedEvent event = resetEvent(reason);
+        synchronized (this) {
+            Arrays.fill(ring, null);
+            positions.clear();
+            written = 0;
+            for (Subscription subscription : subscriptions) {
+                subscription.offer(event);
+            }
+        }
+        Counter counter = resets;
+        if (counter != null) {
+            counter.increment();
+        }
+        logger.info("Reset user change feed: {}", reason);
+    }
+
+    /**
+     * Adds a subscriber, first sending it the changes after
+     * {@code lastEventId}.
+     *
+     * @param lastEventId ID of the last change the client received, or {@code null} to start from now
+     * @param sink writes events to the client
+     * @return the subscription, or {@code null} if the feed is stopped or at its subscriber limit
+     */
+    public Subscription subscribe(final String lastEventId, final Sink sink) {
+        if (!running || subscriptions.size() >= maxSubscribers) {
+            return null;
+        }
+        List<FeedEvent> missed = new ArrayList<>();
+        Subscription subscription;
+        synchronized (this) {
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                Long position = positions.get(lastEventId);
+                if (position == null) {
+                    missed.add(resetEvent("Last-Event-ID is no longer available"));
+                } else {
+                    for (long i = position + 1; i < written; i++) {
+                        missed.add(ring[(int) (i % replayCapacity)]);
+                    }
+                }
+            }
+            subscription = new Subscription(subscriberIds.incrementAndGet(), sink,
+                    new ArrayBlockingQueue<>(subscriberBuffer + missed.size()));
+            for (FeedEvent event : missed) {
+                subscription.offer(event);
+            }
+            subscriptions.add(subscription);
+        }
+        Thread.ofVirtual().name("user-change-feed-" + subscription.id).start(subscription::run);
+        return subscription;
+    }
+
+    /**
+     * Gets the number of connected subscribers.
+     *
+     * @return the subscriber count
+     */
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        // Ends the open streams, which would otherwise hold up the server's shutdown
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Gauge.builder("user.feed.subscribers", subscriptions, Set::size)
+                .description("Clients connected to the user change feed")
+                .register(registry);
+        events = Counter.builder("user.feed.events")
+                .description("User changes published to the change feed")
+                .register(registry);
+        dropped = Counter.builder("user.feed.dropped")
+                .description("Change feed subscribers dropped for falling behind")
+                .register(registry);
+        resets = Counter.builder("user.feed.resets")
+                .description("Times change feed subscribers were told to re-read users")
+                .register(registry);
+    }
+
+    private FeedEvent resetEvent(final String reason) {
+        // An empty ID clears the client's Last-Event-ID, whose position is gone
+        return new FeedEvent("", RESET_EVENT, objectMapper.writeValueAsString(Map.of("reason", reason)));
+    }
+
+    /**
+     * One subscriber, with its buffer and the thread draining it.
+     */
+    public final class Subscription {
+
+        private final long id;
+        private final Sink sink;
+        private final BlockingQueue<FeedEvent> queue;
+
+        private Subscription(final long id, final Sink sink, final BlockingQueue<FeedEvent> queue) {
+            this.id = id;
+            this.sink = sink;
+            this.queue = queue;
+        }
+
+        /**
+         * Ends the subscription and its stream. Safe to call more than once.
+         */
+        public void close() {
+            if (subscriptions.remove(this)) {
+                // The buffer may be full; the sender only needs to see the end
+                queue.clear();
+                queue.offer(CLOSE);
+            }
+        }
+
+        private void offer(final FeedEvent event) {
+            if (!queue.offer(event)) {
+                logger.warn("Dropping change feed subscriber {} after {} undelivered changes", id, queue.size());
+                Counter counter = dropped;
+                if (counter != null) {
+                    counter.increment();
+                }
+                close();
+            }
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    FeedEvent event = queue.poll(heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+                    if (event == CLOSE) {
+                        sink.close();
+                        return;
+                    }
+                    if (event == null) {
+                        sink.heartbeat();
+                    } else {
+                        sink.send(event);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Change feed subscriber {} disconnected: {}", id, e.getMessage());
+                subscriptions.remove(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                subscriptions.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.amalitech.health;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks how busy the driver's connection pools are.
+ *
+ * <p>Fed by the driver's pool events, so reading the numbers never
+ * touches the database or takes a pool lock.</p>
+ */
+public class ConnectionPoolStats implements ConnectionPoolListener {
+
+    private final Map<ServerId, Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Point-in-time usage summed over all servers.
+     *
+     * @param checkedOut connections in use
+     * @param maxSize maximum connections
+     * @param waiting threads waiting for a connection
+     */
+    public record Snapshot(int checkedOut, int maxSize, int waiting) {
+
+        /**
+         * Gets the share of connections in use.
+         *
+         * @return a value between 0 and 1, or 0 if there are no pools
+         */
+        public double saturation() {
+            return maxSize == 0 ? 0 : (double) checkedOut / maxSize;
+        }
+    }
+
+    /**
+     * Sums the current usage of all pools.
+     *
+     * @return the usage
+     */
+    public Snapshot snapshot() {
+        int checkedOut = 0;
+        int maxSize = 0;
+        int waiting = 0;
+        for (Pool pool : pools.values()) {
+            checkedOut += pool.checkedOut.get();
+            maxSize += pool.maxSize;
+            waiting += pool.waiting.get();
+        }
+        return new Snapshot(checkedOut, maxSize, waiting);
+    }
+
+    @Override
+    public void connectionPoolCreated(final ConnectionPoolCreatedEvent event) {
+        pools.put(event.getServerId(), new Pool(event.getSettings().getMaxSize()));
+    }
+
+    @Override
+    public void connectionPoolClosed(final ConnectionPoolClosedEvent event) {
+        pools.remove(event.getServerId());
+    }
+
+    @Override
+    public void connectionCheckOutStarted(final ConnectionCheckOutStartedEvent event) {
+        update(event.getServerId(), 0, 1);
+    }
+
+    @Override
+    public void connectionCheckedOut(final ConnectionCheckedOutEvent event) {
+        update(event.getConnectionId().getServerId(), 1, -1);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(final ConnectionCheckOutFailedEvent event) {
+        update(event.getServerId(), 0, -1);
+    }
+
+    @Override
+    public void connectionCheckedIn(final ConnectionCheckedInEvent event) {
+        update(event.getConnectionId().getServerId(), -1, 0);
+    }
+
+    private void update(final ServerId serverId, final int checkedOut, final int waiting) {
+        Pool pool = pools.get(serverId);
+        if (pool != null) {
+            pool.checkedOut.addAndGet(checkedOut);
+            pool.waiting.addAndGet(waiting);
+        }
+    }
+
+    private static final class Pool {
+
+        private final int maxSize;
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private Pool(final int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -1,4 +1,210 @@
 package com.amalitech.health;
 
-public class MongoHealthIndicator {
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MongoDB health indicator answered from a background probe.
+ *
+ * <p>A single daemon thread sends a {@code hello} command at a fixed
+ * interval and caches the outcome: status, round-trip latency
+ * percentiles over recent probes, the member's replica set role, and
+ * connection pool saturation from {@link ConnectionPoolStats}. Health
+ * scrapes only read that cache, so however often liveness and readiness
+ * probes arrive they add no database load and never block on the
+ * network. The server gives each probe half an interval through
+ * {@code maxTimeMS}, so a slow server fails the probe rather than
+ * holding it. A failed probe reports {@code DOWN} however old it is, and
+ * so does a result older than three intervals, since the probe itself is
+ * then stuck.</p>
+ *
+ * <p>Spring Boot's own indicator, which runs a command on every scrape,
+ * is disabled with {@code management.health.mongo.enabled=false}; this
+ * bean takes over the {@code mongo} component name.</p>
+ */
+@Component
+public class MongoHealthIndicator implements HealthIndicator, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoHealthIndicator.class);
+
+    private static final int SAMPLES = 64;
+
+    private final MongoTemplate mongoTemplate;
+    private final ConnectionPoolStats poolStats;
+    private final Duration interval;
+    private final Clock clock;
+
+    private final long[] latencies = new long[SAMPLES];
+    private int sampleCount;
+    private volatile Probe lastProbe;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    /**
+     * Outcome of one probe.
+     */
+    private record Probe(boolean up, Instant at, Map<String, Object> details, Throwable error) {
+    }
+
+    /**
+     * Creates the indicator.
+     *
+     * @param mongoTemplate template used to send the probe
+     * @param poolStats connection pool usage
+     * @param interval time between probes
+     */
+    @Autowired
+    public MongoHealthIndicator(final MongoTemplate mongoTemplate,
+                                final ConnectionPoolStats poolStats,
+                                @Value("${app.health.mongo.interval:PT10S}") final Duration interval) {
+        this(mongoTemplate, poolStats, interval, Clock.systemUTC());
+    }
+
+    MongoHealthIndicator(final MongoTemplate mongoTemplate, final ConnectionPoolStats poolStats,
+                         final Duration interval, final Clock clock) {
+        this.mongoTemplate = mongoTemplate;
+        this.poolStats = poolStats;
+        this.interval = interval;
+        this.clock = clock;
+    }
+
+    @Override
+    public Health health() {
+        Probe probe = lastProbe;
+        if (probe == null) {
+            return Health.unknown().withDetail("reason", "No probe has completed yet").build();
+        }
+        Health.Builder builder;
+        if (!probe.up()) {
+            builder = Health.down(probe.error());
+        } else if (probe.at().plus(interval.multipliedBy(3)).isBefore(clock.instant())) {
+            builder = Health.down().withDetail("reason", "Last probe is older than three intervals");
+        } else {
+            builder = Health.up();
+        }
+        return builder.withDetails(probe.details()).build();
+    }
+
+    /**
+     * Probes the database now, on the calling thread, and caches the result.
+     *
+     * @throws RuntimeException if the database did not answer
+     */
+    public void ping() {
+        long start = System.nanoTime();
+        try {
+            Document hello = mongoTemplate.executeCommand(
+                    new Document("hello", 1).append("maxTimeMS", Math.max(1, interval.toMillis() / 2)));
+            long nanos = System.nanoTime() - start;
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("role", roleOf(hello));
+            if (hello.containsKey("setName")) {
+                details.put("replicaSet", hello.getString("setName"));
+            }
+            details.put("latency", recordLatency(nanos));
+            details.put("pool", poolDetails());
+            lastProbe = new Probe(true, clock.instant(), details, null);
+        } catch (RuntimeException e) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("pool", poolDetails());
+            lastProbe = new Probe(false, clock.instant(), details, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "mongo-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::probeQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void probeQuietly() {
+        try {
+            ping();
+        } catch (RuntimeException e) {
+            logger.warn("MongoDB health probe failed: {}", e.getMessage());
+        }
+    }
+
+    private static String roleOf(final Document hello) {
+        if (Boolean.TRUE.equals(hello.getBoolean("isWritablePrimary"))) {
+            return hello.containsKey("setName") ? "primary" : "standalone";
+        }
+        if (Boolean.TRUE.equals(hello.getBoolean("secondary"))) {
+            return "secondary";
+        }
+        if ("isdbgrid".equals(hello.getString("msg"))) {
+            return "mongos";
+        }
+        return "other";
+    }
+
+    private synchronized Map<String, Object> recordLatency(final long nanos) {
+        latencies[sampleCount % SAMPLES] = nanos;
+        sampleCount++;
+        long[] sorted = Arrays.copyOf(latencies, Math.min(sampleCount, SAMPLES));
+        Arrays.sort(sorted);
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("lastMs", millis(nanos));
+        latency.put("p50Ms", millis(percentile(sorted, 0.50)));
+        latency.put("p95Ms", millis(percentile(sorted, 0.95)));
+        latency.put("p99Ms", millis(percentile(sorted, 0.99)));
+        latency.put("samples", sorted.length);
+        return latency;
+    }
+
+    private Map<String, Object> poolDetails() {
+        ConnectionPoolStats.Snapshot pool = poolStats.snapshot();
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("checkedOut", pool.checkedOut());
+        details.put("maxSize", pool.maxSize());
+        details.put("waitQueue", pool.waiting());
+        details.put("saturation", Math.round(pool.saturation() * 1000) / 1000.0);
+        return details;
+    }
+
+    private static long percentile(final long[] sorted, final double quantile) {
+        return sorted[Math.max(0, (int) Math.ceil(sorted.length * quantile) - 1)];
+    }
+
+    private static double millis(final long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
 }
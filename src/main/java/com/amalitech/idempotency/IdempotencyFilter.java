@@ -0,0 +1,270 @@
+package com.amalitech.idempotency;
+
+import com.amalitech.controller.UserController;
+import com.amalitech.dto.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes {@code POST /api/v1/users} safe to retry by honouring the
+ * {@code Idempotency-Key} request header.
+ *
+ * <p>The first request with a key executes normally and its status,
+ * body bytes and the headers a client acts on ({@code ETag},
+ * {@code Location}, {@code Preference-Applied}) are stored in the
+ * {@link IdempotencyStore}. Retries with the
+ * same key and payload get the stored response replayed without reaching
+ * the controller, and requests arriving while the first one is still
+ * running wait for its result. Server errors are not stored, so a retry
+ * after a 5xx executes again.</p>
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    /** Request header carrying the client-chosen key. */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /** Response header set when a stored response is replayed. */
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    private static final String USERS_PATH = "/api/v1/users";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final Duration waitTimeout;
+
+    /**
+     * Creates the filter.
+     *
+     * @param store the response store
+     * @param objectMapper mapper used to render error responses
+     * @param waitTimeout how long a concurrent request waits for the first one
+     */
+    public IdempotencyFilter(
+            final IdempotencyStore store,
+            final ObjectMapper objectMapper,
+            @Value("${app.idempotency.wait-timeout:PT10S}") final Duration waitTimeout) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.waitTimeout = waitTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(final HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !HttpMethod.POST.matches(request.getMethod())
+                || !(USERS_PATH.equals(path) || (USERS_PATH + "/").equals(path))
+                || request.getHeader(IDEMPOTENCY_KEY_HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request,
+                                    final HttpServletResponse response,
+                                    final FilterChain chain) throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY_HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(request, response, HttpStatus.BAD_REQUEST,
+                    IDEMPOTENCY_KEY_HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters.");
+            return;
+        }
+        byte[] body = request.getInputStream().readAllBytes();
+        byte[] fingerprint = fingerprint(request, body);
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            IdempotencyStore.Reservation reservation = store.reserve(key, fingerprint);
+            if (reservation.owner()) {
+                execute(new CachedBodyRequest(request, body), response, chain, reservation);
+                return;
+            }
+            if (!reservation.matches(fingerprint)) {
+                logger.warn("Idempotency key {} reused with a different request to {}", key, request.getRequestURI());
+                writeError(request, response, HttpStatus.UNPROCESSABLE_CONTENT,
+                        IDEMPOTENCY_KEY_HEADER + " was already used with a different request.");
+                return;
+            }
+            StoredResponse stored;
+            try {
+                stored = reservation.response().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                writeError(request, response, HttpStatus.CONFLICT,
+                        "A request with this " + IDEMPOTENCY_KEY_HEADER + " is still being processed.");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException("Interrupted while waiting for idempotent request", e);
+            } catch (ExecutionException e) {
+                throw new ServletException("Idempotent request failed", e.getCause());
+            }
+            if (stored != null) {
+                logger.debug("Replaying stored response for idempotency key {}", key);
+                replay(stored, response);
+                return;
+            }
+            // The first request was released without a stored response; try to take over
+        }
+        writeError(request, response, HttpStatus.CONFLICT,
+                "A request with this " + IDEMPOTENCY_KEY_HEADER + " is still being processed.");
+    }
+
+    private void execute(final HttpServletRequest request,
+                         final HttpServletResponse response,
+                         final FilterChain chain,
+                         final IdempotencyStore.Reservation reservation) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            chain.doFilter(request, wrapper);
+            if (wrapper.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                reservation.complete(new StoredResponse(
+                        wrapper.getStatus(),
+                        wrapper.getContentType(),
+                        wrapper.getHeader(HttpHeaders.ETAG),
+                        wrapper.getHeader(HttpHeaders.LOCATION),
+                        wrapper.getHeader(UserController.PREFERENCE_APPLIED_HEADER),
+                        wrapper.getContentAsByteArray()));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                reservation.release();
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void replay(final StoredResponse stored, final HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.eTag() != null) {
+            response.setHeader(HttpHeaders.ETAG, stored.eTag());
+        }
+        if (stored.location() != null) {
+            response.setHeader(HttpHeaders.LOCATION, stored.location());
+        }
+        if (stored.preferenceApplied() != null) {
+            response.setHeader(UserController.PREFERENCE_APPLIED_HEADER, stored.preferenceApplied());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    private void writeError(final HttpServletRequest request,
+                            final HttpServletResponse response,
+                            final HttpStatus status,
+                            final String message) throws IOException {
+        ErrorResponse error = new ErrorResponse(
+                status.value(), status.getReasonPhrase(), message, request.getRequestURI());
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getOutputStream().write(objectMapper.writeValueAsBytes(error));
+    }
+
+    private static byte[] fingerprint(final HttpServletRequest request, final byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(body);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Request wrapper that serves an already consumed body again.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(final HttpServletRequest request, final byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(final ReadListener listener) {
+                    throw new UnsupportedOperationException("Asynchronous reads are not supported");
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.amalitech.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Bounded, TTL-evicted in-memory store of responses keyed by
+ * {@code Idempotency-Key}.
+ *
+ * <p>The first request for a key reserves it and later completes the
+ * reservation with its response. Concurrent requests with the same key
+ * receive the same pending future and wait for it instead of executing
+ * the operation again. Entries are evicted once they expire or, when the
+ * store is full, in insertion order.</p>
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final int MAX_EVICTIONS_PER_INSERT = 64;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Clock clock;
+
+    /**
+     * Creates the store.
+     *
+     * @param ttl how long a completed response is replayed
+     * @param maxEntries maximum number of keys kept at once
+     */
+    @Autowired
+    public IdempotencyStore(
+            @Value("${app.idempotency.ttl:PT24H}") final Duration ttl,
+            @Value("${app.idempotency.max-entries:10000}") final int maxEntries) {
+        this(ttl, maxEntries, Clock.systemUTC());
+    }
+
+    IdempotencyStore(final Duration ttl, final int maxEntries, final Clock clock) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * Reserves a key or joins an existing reservation.
+     *
+     * @param key the idempotency key
+     * @param fingerprint digest of the request the key was sent with
+     * @return the reservation; {@link Reservation#owner()} is {@code true}
+     *         if the caller must execute the request and complete it
+     */
+    public Reservation reserve(final String key, final byte[] fingerprint) {
+        long now = clock.millis();
+        boolean[] created = new boolean[1];
+        Entry entry = entries.compute(key, (k, existing) -> {
+            if (existing != null && !existing.isExpired(now)) {
+                return existing;
+            }
+            created[0] = true;
+            return new Entry(fingerprint, now + ttl.toMillis());
+        });
+        if (created[0]) {
+            insertionOrder.add(key);
+            evict(now);
+        }
+        return new Reservation(key, entry, created[0]);
+    }
+
+    /**
+     * Gets the number of keys currently held.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(final long now) {
+        // Bounded so that a store full of in-flight keys cannot spin here
+        int budget = MAX_EVICTIONS_PER_INSERT;
+        while (budget-- > 0 && (entries.size() > maxEntries || headExpired(now))) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            Entry entry = entries.get(oldest);
+            if (entry == null) {
+                continue;
+            }
+            // Only drop completed entries; removing an in-flight one would
+            // let a retry run the operation a second time.
+            if (entry.response.isDone()) {
+                entries.remove(oldest, entry);
+            } else {
+                insertionOrder.add(oldest);
+            }
+        }
+    }
+
+    private boolean headExpired(final long now) {
+        String head = insertionOrder.peek();
+        if (head == null) {
+            return false;
+        }
+        Entry entry = entries.get(head);
+        return entry == null || entry.isExpired(now);
+    }
+
+    private void release(final String key, final Entry entry) {
+        entries.remove(key, entry);
+    }
+
+    private static final class Entry {
+        private final byte[] fingerprint;
+        private final long expiresAt;
+        private final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        private Entry(final byte[] fingerprint, final long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(final long now) {
+            return response.isDone() && now >= expiresAt;
+        }
+    }
+
+    /**
+     * Handle on a reserved or joined idempotency key.
+     */
+    public final class Reservation {
+
+        private final String key;
+        private final Entry entry;
+        private final boolean owner;
+
+        private Reservation(final String key, final Entry entry, final boolean owner) {
+            this.key = key;
+            this.entry = entry;
+            this.owner = owner;
+        }
+
+        /**
+         * Tells whether this caller created the reservation.
+         *
+         * @return {@code true} if the caller must execute the request
+         */
+        public boolean owner() {
+            return owner;
+        }
+
+        /**
+         * Tells whether the key was first used with the same request.
+         *
+         * @param fingerprint digest of the current request
+         * @return {@code true} if the fingerprints are equal
+         */
+        public boolean matches(final byte[] fingerprint) {
+            return Arrays.equals(entry.fingerprint, fingerprint);
+        }
+
+        /**
+         * Gets the response of the first request. Completes with
+         * {@code null} if that request was not stored and the key has
+         * been released for a new attempt.
+         *
+         * @return the pending or completed response
+         */
+        public CompletableFuture<StoredResponse> response() {
+            return entry.response;
+        }
+
+        /**
+         * Records the response so that retries replay it.
+         *
+         * @param response the response to store
+         */
+        public void complete(final StoredResponse response) {
+            entry.response.complete(response);
+        }
+
+        /**
+         * Drops the reservation without storing a response, for example
+         * after a server error, so a retry executes the request again.
+         */
+        public void release() {
+            IdempotencyStore.this.release(key, entry);
+            entry.response.complete(null);
+        }
+    }
+}
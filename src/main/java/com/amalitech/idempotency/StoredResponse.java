@@ -0,0 +1,18 @@
+package com.amalitech.idempotency;
+
+/**
+ * Response recorded for an idempotency key and replayed verbatim to
+ * retries of the same request.
+ *
+ * @param status the HTTP status code
+ * @param contentType the response content type, may be {@code null}
+ * @param eTag the response entity tag, may be {@code null}
+ * @param location the {@code Location} header, such as the ticket of an
+ *                 asynchronous write; may be {@code null}
+ * @param preferenceApplied the {@code Preference-Applied} header, may be
+ *                          {@code null}
+ * @param body the raw response body
+ */
+public record StoredResponse(int status, String contentType, String eTag, String location,
+                             String preferenceApplied, byte[] body) {
+}
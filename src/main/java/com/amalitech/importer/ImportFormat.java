@@ -0,0 +1,57 @@
+package com.amalitech.importer;
+
+import com.amalitech.exception.InvalidImportException;
+
+import java.util.Locale;
+
+/**
+ * Supported import file formats.
+ */
+enum ImportFormat {
+
+    /** Comma-separated values with a header row naming the columns. */
+    CSV,
+
+    /** One JSON object per line. */
+    NDJSON;
+
+    /**
+     * Resolves the format from an explicit value, the content type or the
+     * file extension, in that order.
+     *
+     * @param explicit the format requested by the client, may be {@code null}
+     * @param contentType the uploaded part's content type, may be {@code null}
+     * @param fileName the uploaded file name, may be {@code null}
+     * @return the format
+     * @throws InvalidImportException if no format can be determined
+     */
+    static ImportFormat resolve(final String explicit, final String contentType, final String fileName) {
+        if (explicit != null && !explicit.isBlank()) {
+            try {
+                return valueOf(explicit.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidImportException("Unsupported import format: " + explicit);
+            }
+        }
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            if (type.startsWith("text/csv")) {
+                return CSV;
+            }
+            if (type.startsWith("application/x-ndjson") || type.startsWith("application/jsonl")) {
+                return NDJSON;
+            }
+        }
+        if (fileName != null) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+        }
+        throw new InvalidImportException(
+                "Cannot determine the import format; pass format=CSV or format=NDJSON");
+    }
+}
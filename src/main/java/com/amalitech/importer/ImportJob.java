@@ -0,0 +1,137 @@
+package com.amalitech.importer;
+
+import com.amalitech.dto.ImportJobStatus;
+import com.amalitech.dto.RejectedRow;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mutable progress of one import, written by the job thread and read by
+ * status requests.
+ */
+final class ImportJob {
+
+    private final String id;
+    private final String fileName;
+    private final ImportFormat format;
+    private final Path file;
+    private final long totalBytes;
+    private final int sampleSize;
+    private final Clock clock;
+    private final Instant submittedAt;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final List<RejectedRow> rejectedSample = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile ImportJobStatus.State state = ImportJobStatus.State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    ImportJob(final String id, final String fileName, final ImportFormat format, final Path file,
+              final long totalBytes, final int sampleSize, final Clock clock) {
+        this.id = id;
+        this.fileName = fileName;
+        this.format = format;
+        this.file = file;
+        this.totalBytes = totalBytes;
+        this.sampleSize = sampleSize;
+        this.clock = clock;
+        this.submittedAt = clock.instant();
+    }
+
+    String id() {
+        return id;
+    }
+
+    ImportFormat format() {
+        return format;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    AtomicLong bytesRead() {
+        return bytesRead;
+    }
+
+    boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    Instant finishedAt() {
+        return finishedAt;
+    }
+
+    void start() {
+        startedAt = clock.instant();
+        state = ImportJobStatus.State.RUNNING;
+    }
+
+    void complete() {
+        finishedAt = clock.instant();
+        state = ImportJobStatus.State.COMPLETED;
+    }
+
+    void fail(final String reason) {
+        error = reason;
+        finishedAt = clock.instant();
+        state = ImportJobStatus.State.FAILED;
+    }
+
+    void processed(final int rows) {
+        processed.addAndGet(rows);
+    }
+
+    void imported(final int rows) {
+        imported.addAndGet(rows);
+    }
+
+    void reject(final long line, final String reason, final boolean duplicate) {
+        rejected.incrementAndGet();
+        if (duplicate) {
+            duplicates.incrementAndGet();
+        }
+        if (rejectedSample.size() < sampleSize) {
+            rejectedSample.add(new RejectedRow(line, reason));
+        }
+    }
+
+    ImportJobStatus status() {
+        long rows = processed.get();
+        long bytes = Math.min(bytesRead.get(), totalBytes);
+        Double percent = null;
+        Double rate = null;
+        Long eta = null;
+        if (startedAt != null) {
+            Instant end = finishedAt != null ? finishedAt : clock.instant();
+            double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+            rate = Math.round(rows / seconds * 10) / 10.0;
+            percent = totalBytes == 0 ? 100.0 : Math.round(bytes * 1000.0 / totalBytes) / 10.0;
+            if (finishedAt != null) {
+                eta = 0L;
+            } else if (bytes > 0) {
+                eta = Math.round((totalBytes - bytes) / (bytes / seconds));
+            }
+        }
+        List<RejectedRow> sample;
+        synchronized (rejectedSample) {
+            sample = List.copyOf(rejectedSample);
+        }
+        return new ImportJobStatus(id, state, fileName, format.name(), rows, imported.get(),
+                rejected.get(), duplicates.get(), bytes, totalBytes, percent, rate, eta,
+                submittedAt, startedAt, finishedAt, error, sample);
+    }
+}
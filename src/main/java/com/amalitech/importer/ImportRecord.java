@@ -0,0 +1,21 @@
+package com.amalitech.importer;
+
+import com.amalitech.model.User;
+
+/**
+ * One parsed row of an import file.
+ *
+ * @param line the 1-based line the row starts on
+ * @param user the parsed user, or {@code null} if the row could not be parsed
+ * @param error why the row could not be parsed
+ */
+record ImportRecord(long line, User user, String error) {
+
+    static ImportRecord parsed(final long line, final User user) {
+        return new ImportRecord(line, user, null);
+    }
+
+    static ImportRecord malformed(final long line, final String error) {
+        return new ImportRecord(line, null, error);
+    }
+}
@@ -0,0 +1,135 @@
+package com.amalitech.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Set of email hashes stored outside the Java heap.
+ *
+ * <p>Import files can hold millions of addresses; keeping them as
+ * {@code String}s in a {@code HashSet} costs well over 100 bytes each
+ * and puts that on the heap for the whole job. This set keeps only a
+ * 64-bit hash per email in an open-addressing table inside a direct
+ * buffer, so a million emails take 16 MB off-heap and create no
+ * garbage. Two different emails sharing a 64-bit hash would be reported
+ * as a duplicate; for files of a few million rows the odds are around
+ * one in a trillion.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class OffHeapEmailSet {
+
+    /** Direct buffers are indexed by int, which caps the table at 2^27 slots. */
+    private static final int MAX_SLOTS = 1 << 27;
+
+    private static final long EMPTY = 0L;
+
+    private ByteBuffer table;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates a set sized for the expected number of emails.
+     *
+     * @param expected expected number of emails
+     */
+    OffHeapEmailSet(final int expected) {
+        allocate(slotsFor(Math.max(expected, 1)));
+    }
+
+    /**
+     * Adds an email.
+     *
+     * @param email the email
+     * @return {@code true} if the email was not present yet
+     */
+    boolean add(final String email) {
+        long hash = hash(email);
+        if ((size + 1L) * 2 > mask + 1L) {
+            grow();
+        }
+        if (insert(table, mask, hash)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of emails in the set.
+     *
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the off-heap memory held by the table.
+     *
+     * @return the capacity in bytes
+     */
+    long capacityBytes() {
+        return (mask + 1L) * Long.BYTES;
+    }
+
+    private static boolean insert(final ByteBuffer target, final int targetMask, final long hash) {
+        int slot = (int) (hash ^ (hash >>> 32)) & targetMask;
+        while (true) {
+            int offset = slot * Long.BYTES;
+            long existing = target.getLong(offset);
+            if (existing == EMPTY) {
+                target.putLong(offset, hash);
+                return true;
+            }
+            if (existing == hash) {
+                return false;
+            }
+            slot = (slot + 1) & targetMask;
+        }
+    }
+
+    private void grow() {
+        int slots = mask + 1;
+        if (slots >= MAX_SLOTS) {
+            throw new IllegalStateException("Email set is full at " + size + " entries");
+        }
+        ByteBuffer old = table;
+        allocate(slots * 2);
+        for (int offset = 0; offset < slots * Long.BYTES; offset += Long.BYTES) {
+            long hash = old.getLong(offset);
+            if (hash != EMPTY) {
+                insert(table, mask, hash);
+            }
+        }
+    }
+
+    private void allocate(final int slots) {
+        // Direct buffers are zero-filled, which marks every slot as empty
+        table = ByteBuffer.allocateDirect(slots * Long.BYTES).order(ByteOrder.nativeOrder());
+        mask = slots - 1;
+    }
+
+    private static int slotsFor(final int expected) {
+        long wanted = Math.min((long) expected * 2, MAX_SLOTS);
+        return (int) Math.max(16, Long.highestOneBit(wanted - 1) << 1);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units followed by the MurmurHash3
+     * finalizer; never returns the empty-slot marker.
+     */
+    static long hash(final String email) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            h ^= email.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+}
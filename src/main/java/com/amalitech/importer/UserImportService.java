@@ -0,0 +1,484 @@
+package com.amalitech.importer;
+
+import com.amalitech.dto.ImportJobStatus;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.exception.InvalidImportException;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Runs bulk user imports in the background.
+ *
+ * <p>An uploaded file is spooled to a temporary file and processed by a
+ * job thread in chunks: rows are parsed as a stream, each chunk is
+ * validated in parallel against the {@link User} constraints, emails are
+ * de-duplicated against the rest of the file with an {@link OffHeapEmailSet}
+ * and against existing users with one query, and the survivors are written
+ * with a single unordered bulk insert. Rows that fail any step are counted
+ * and sampled on the job instead of failing it.</p>
+ *
+ * <p>When the {@link UserOutbox} is in use, each chunk and the outbox
+ * entries of its users are written in one transaction. An insert that
+ * fails inside the transaction aborts the whole chunk, so the chunk is
+ * inserted again without it.</p>
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
+    /** Rough size of one row, used to pre-size the email set. */
+    private static final int BYTES_PER_ROW_ESTIMATE = 48;
+
+    private static final int MAX_INITIAL_EMAILS = 1 << 20;
+
+    private final MongoTemplate mongoTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserOutbox outbox;
+    private final Executor jobExecutor;
+    private final Executor validationExecutor;
+    private final int validationParallelism;
+    private final int batchSize;
+    private final int rejectedSampleSize;
+    private final Duration jobTtl;
+    private final Clock clock;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the service.
+     *
+     * @param mongoTemplate the template used for the bulk writes
+     * @param validator the Bean Validation validator
+     * @param objectMapper mapper for NDJSON rows
+     * @param eventPublisher publisher for user change events
+     * @param outbox outbox the imported users are recorded in
+     * @param batchSize rows per chunk and bulk insert
+     * @param maxConcurrentJobs imports processed at the same time
+     * @param rejectedSampleSize rejected rows kept per job for reporting
+     * @param jobTtl how long finished jobs stay queryable
+     */
+    @Autowired
+    public UserImportService(
+            final MongoTemplate mongoTemplate,
+            final Validator validator,
+            final ObjectMapper objectMapper,
+            final ApplicationEventPublisher eventPublisher,
+            final UserOutbox outbox,
+            @Value("${app.import.batch-size:1000}") final int batchSize,
+            @Value("${app.import.max-concurrent-jobs:2}") final int maxConcurrentJobs,
+            @Value("${app.import.rejected-sample-size:100}") final int rejectedSampleSize,
+            @Value("${app.import.job-ttl:PT24H}") final Duration jobTtl) {
+        this(mongoTemplate, validator, objectMapper, eventPublisher, outbox,
+                Executors.newFixedThreadPool(maxConcurrentJobs, daemonThreads("user-import-")),
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                        daemonThreads("user-import-validate-")),
+                Runtime.getRuntime().availableProcessors(),
+                batchSize, rejectedSampleSize, jobTtl, Clock.systemUTC());
+    }
+
+    UserImportService(final MongoTemplate mongoTemplate, final Validator validator,
+                      final ObjectMapper objectMapper, final ApplicationEventPublisher eventPublisher,
+                      final UserOutbox outbox, final Executor jobExecutor, final Executor validationExecutor,
+                      final int validationParallelism, final int batchSize,
+                      final int rejectedSampleSize, final Duration jobTtl, final Clock clock) {
+        this.mongoTemplate = mongoTemplate;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.outbox = outbox;
+        this.jobExecutor = jobExecutor;
+        this.validationExecutor = validationExecutor;
+        this.validationParallelism = validationParallelism;
+        this.batchSize = batchSize;
+        this.rejectedSampleSize = rejectedSampleSize;
+        this.jobTtl = jobTtl;
+        this.clock = clock;
+    }
+
+    /**
+     * Accepts an uploaded file and schedules its import.
+     *
+     * @param file the uploaded file
+     * @param format {@code CSV} or {@code NDJSON}; detected from the
+     *               content type or file name when {@code null}
+     * @return the status of the queued job
+     * @throws InvalidImportException if the file is empty or its format unknown
+     */
+    public ImportJobStatus submit(final MultipartFile file, final String format) {
+        if (file.isEmpty()) {
+            throw new InvalidImportException("Import file is empty");
+        }
+        ImportFormat importFormat = ImportFormat.resolve(format, file.getContentType(), file.getOriginalFilename());
+        expireJobs();
+        Path spooled;
+        try {
+            spooled = Files.createTempFile("user-import-", "." + importFormat.name().toLowerCase(Locale.ROOT));
+            file.transferTo(spooled);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store the uploaded import file", e);
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), importFormat,
+                spooled, file.getSize(), rejectedSampleSize, clock);
+        jobs.put(job.id(), job);
+        logger.info("Queued import job {} for {} ({} bytes, {})",
+                job.id(), file.getOriginalFilename(), file.getSize(), importFormat);
+        jobExecutor.execute(() -> run(job));
+        return job.status();
+    }
+
+    /**
+     * Gets the progress of a job.
+     *
+     * @param jobId the job identifier
+     * @return the status, or empty if the job is unknown or expired
+     */
+    public Optional<ImportJobStatus> getStatus(final String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(ImportJob::status);
+    }
+
+    /**
+     * Gets the progress of all known jobs, newest first.
+     *
+     * @return the job statuses
+     */
+    public List<ImportJobStatus> getJobs() {
+        return jobs.values().stream()
+                .map(ImportJob::status)
+                .sorted(Comparator.comparing(ImportJobStatus::submittedAt).reversed())
+                .toList();
+    }
+
+    /**
+     * Stops the job and validation threads; running jobs end as failed.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (jobExecutor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+        if (validationExecutor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+    }
+
+    private void run(final ImportJob job) {
+        job.start();
+        long started = System.nanoTime();
+        try (InputStream in = new CountingInputStream(Files.newInputStream(job.file()), job.bytesRead());
+             UserRecordReader reader = new UserRecordReader(
+                     new InputStreamReader(in, StandardCharsets.UTF_8), job.format(), objectMapper)) {
+            long expectedRows = Files.size(job.file()) / BYTES_PER_ROW_ESTIMATE;
+            OffHeapEmailSet seen = new OffHeapEmailSet((int) Math.min(expectedRows, MAX_INITIAL_EMAILS));
+            List<ImportRecord> chunk = new ArrayList<>(batchSize);
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                chunk.add(record);
+                if (chunk.size() == batchSize) {
+                    processChunk(job, seen, chunk);
+                    chunk = new ArrayList<>(batchSize);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(job, seen, chunk);
+            }
+            job.complete();
+            ImportJobStatus status = job.status();
+            logger.info("Import job {} completed: {} imported, {} rejected in {} ms",
+                    job.id(), status.rowsImported(), status.rowsRejected(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (InvalidImportException e) {
+            logger.warn("Import job {} rejected: {}", job.id(), e.getMessage());
+            job.fail(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Import was interrupted by shutdown");
+        } catch (Exception e) {
+            logger.error("Import job {} failed", job.id(), e);
+            job.fail("Import failed: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(job.file());
+            } catch (IOException e) {
+                logger.warn("Could not delete spooled import file {}", job.file(), e);
+            }
+        }
+    }
+
+    private void processChunk(final ImportJob job, final OffHeapEmailSet seen, final List<ImportRecord> chunk)
+            throws InterruptedException {
+        String[] violations = validate(chunk);
+        List<ImportRecord> candidates = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            ImportRecord record = chunk.get(i);
+            if (record.error() != null) {
+                job.reject(record.line(), record.error(), false);
+            } else if (violations[i] != null) {
+                job.reject(record.line(), violations[i], false);
+            } else if (!seen.add(record.user().getEmail())) {
+                job.reject(record.line(), "Duplicate email in file: " + record.user().getEmail(), true);
+            } else {
+                candidates.add(record);
+            }
+        }
+
+        Set<String> existing = existingEmails(candidates);
+        List<ImportRecord> toInsert = new ArrayList<>(candidates.size());
+        for (ImportRecord record : candidates) {
+            if (existing.contains(record.user().getEmail())) {
+                job.reject(record.line(), "Email already exists: " + record.user().getEmail(), true);
+            } else {
+                toInsert.add(record);
+            }
+        }
+        if (!toInsert.isEmpty()) {
+            insert(job, toInsert);
+        }
+        job.processed(chunk.size());
+    }
+
+    /**
+     * Validates the chunk on the validation pool, one slice per thread.
+     *
+     * @return the violation message per row, {@code null} for valid rows
+     */
+    private String[] validate(final List<ImportRecord> chunk) throws InterruptedException {
+        String[] violations = new String[chunk.size()];
+        int slice = Math.max(1, (chunk.size() + validationParallelism - 1) / validationParallelism);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int from = 0; from < chunk.size(); from += slice) {
+            int start = from;
+            int end = Math.min(chunk.size(), from + slice);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    User user = chunk.get(i).user();
+                    if (user != null) {
+                        violations[i] = describe(validator.validate(user));
+                    }
+                }
+            }, validationExecutor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Validation failed", e.getCause());
+        }
+        return violations;
+    }
+
+    private static String describe(final Set<ConstraintViolation<User>> violations) {
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .sorted(Comparator.comparing(v -> v.getPropertyPath().toString()))
+                .map(ConstraintViolation::getMessage)
+                .collect(Collectors.joining("; "));
+    }
+
+    private Set<String> existingEmails(final List<ImportRecord> candidates) {
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        List<String> emails = candidates.stream().map(record -> record.user().getEmail()).toList();
+        Query query = Query.query(Criteria.where("email").in(emails));
+        query.fields().include("email");
+        Set<String> existing = new HashSet<>();
+        for (User user : mongoTemplate.find(query, User.class)) {
+            existing.add(user.getEmail());
+        }
+        return existing;
+    }
+
+    private void insert(final ImportJob job, final List<ImportRecord> records) {
+        List<User> users = new ArrayList<>(records.size());
+        for (ImportRecord record : records) {
+            User user = User.copyOf(record.user());
+            user.setId(new ObjectId().toHexString());
+            user.setVersion(0L);
+            users.add(user);
+        }
+        List<Integer> remaining = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            remaining.add(i);
+        }
+        while (!remaining.isEmpty()) {
+            List<Integer> attempt = remaining;
+            try {
+                job.imported(outbox.write(() -> insertAll(job, records, users, attempt)));
+                return;
+            } catch (RolledBackInserts e) {
+                // The failed inserts aborted the transaction; the rest are inserted again without them
+                e.failures.forEach((row, error) -> reject(job, records.get(row), users.get(row), error));
+                remaining = attempt.stream().filter(row -> !e.failures.containsKey(row)).toList();
+            }
+        }
+    }
+
+    /**
+     * Inserts the given rows and records them in the outbox.
+     *
+     * @return the number of inserted users
+     * @throws RolledBackInserts if inserts failed inside the outbox transaction
+     */
+    private int insertAll(final ImportJob job, final List<ImportRecord> records, final List<User> users,
+                          final List<Integer> rows) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        bulk.insert(rows.stream().map(users::get).toList());
+
+        Map<Integer, BulkWriteError> failed = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.put(rows.get(error.getIndex()), error);
+            }
+            if (outbox.isRecording()) {
+                throw new RolledBackInserts(failed);
+            }
+        }
+        List<UserChangeEvent> events = new ArrayList<>(rows.size());
+        for (int row : rows) {
+            BulkWriteError error = failed.get(row);
+            if (error == null) {
+                events.add(UserChangeEvent.created(users.get(row)));
+            } else {
+                reject(job, records.get(row), users.get(row), error);
+            }
+        }
+        outbox.addAll(events);
+        events.forEach(eventPublisher::publishEvent);
+        return events.size();
+    }
+
+    private static void reject(final ImportJob job, final ImportRecord record, final User user,
+                               final BulkWriteError error) {
+        if (error.getCode() == DUPLICATE_KEY_CODE) {
+            job.reject(record.line(), "Email already exists: " + user.getEmail(), true);
+        } else {
+            job.reject(record.line(), error.getMessage(), false);
+        }
+    }
+
+    private void expireJobs() {
+        Instant cutoff = clock.instant().minus(jobTtl);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt().isBefore(cutoff));
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Tracks how much of the file has been consumed for progress reporting.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong count;
+
+        private CountingInputStream(final InputStream in, final AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = super.skip(n);
+            count.addAndGet(skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * Thrown inside the outbox transaction to roll back a chunk in which
+     * inserts failed.
+     */
+    private static final class RolledBackInserts extends RuntimeException {
+
+        private final transient Map<Integer, BulkWriteError> failures;
+
+        private RolledBackInserts(final Map<Integer, BulkWriteError> failures) {
+            super("Rolled back a chunk with " + failures.size() + " failed insert(s)", null, false, false);
+            this.failures = failures;
+        }
+    }
+}
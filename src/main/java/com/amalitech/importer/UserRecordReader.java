@@ -0,0 +1,203 @@
+package com.amalitech.importer;
+
+import com.amalitech.exception.InvalidImportException;
+import com.amalitech.model.User;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming reader turning an import file into {@link ImportRecord}s one
+ * row at a time, so memory use does not depend on the file size.
+ *
+ * <p>CSV files need a header row naming the {@code name}, {@code email}
+ * and {@code age} columns in any order; fields may be quoted and quoted
+ * fields may contain commas, doubled quotes and line breaks. NDJSON files
+ * hold one object with the same properties per line. Blank lines are
+ * skipped in both formats. Rows that cannot be parsed come back as
+ * malformed records rather than failing the import.</p>
+ */
+final class UserRecordReader implements Closeable {
+
+    private static final List<String> COLUMNS = List.of("name", "email", "age");
+
+    private final BufferedReader reader;
+    private final ImportFormat format;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private long lineNumber;
+
+    /**
+     * Creates a reader.
+     *
+     * @param reader the file contents
+     * @param format the file format
+     * @param objectMapper mapper for NDJSON rows
+     * @throws IOException if the CSV header cannot be read
+     * @throws InvalidImportException if the CSV header lacks a required column
+     */
+    UserRecordReader(final Reader reader, final ImportFormat format, final ObjectMapper objectMapper)
+            throws IOException {
+        this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        this.format = format;
+        this.objectMapper = objectMapper;
+        if (format == ImportFormat.CSV) {
+            readHeader();
+        }
+    }
+
+    /**
+     * Reads the next row.
+     *
+     * @return the next record, or {@code null} at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    ImportRecord next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        return format == ImportFormat.CSV ? parseCsv(line) : parseJson(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readHeader() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                throw new InvalidImportException("CSV file is empty");
+            }
+        } while (line.isBlank());
+        List<String> header = splitCsv(line, lineNumber);
+        for (int i = 0; i < header.size(); i++) {
+            columns.putIfAbsent(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new InvalidImportException("CSV header must contain the columns " + COLUMNS);
+            }
+        }
+    }
+
+    private ImportRecord parseCsv(final String firstLine) throws IOException {
+        long start = lineNumber;
+        List<String> fields;
+        try {
+            fields = splitCsv(firstLine, start);
+        } catch (UnterminatedQuoteException e) {
+            return ImportRecord.malformed(start, "Unterminated quoted field");
+        }
+        String age = field(fields, "age");
+        User user = new User(field(fields, "name"), field(fields, "email"), null);
+        if (age != null && !age.isBlank()) {
+            try {
+                user.setAge(Integer.valueOf(age.trim()));
+            } catch (NumberFormatException e) {
+                return ImportRecord.malformed(start, "Age must be a whole number");
+            }
+        }
+        return ImportRecord.parsed(start, user);
+    }
+
+    private String field(final List<String> fields, final String column) {
+        int index = columns.get(column);
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    /**
+     * Splits one CSV record, reading further lines while a quoted field is
+     * open.
+     */
+    private List<String> splitCsv(final String firstLine, final long start) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        String line = firstLine;
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            if (!quoted) {
+                fields.add(current.toString());
+                return fields;
+            }
+            line = reader.readLine();
+            if (line == null) {
+                throw new UnterminatedQuoteException();
+            }
+            lineNumber++;
+            current.append('\n');
+        }
+    }
+
+    private ImportRecord parseJson(final String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JacksonException e) {
+            return ImportRecord.malformed(lineNumber, "Malformed JSON");
+        }
+        if (node == null || !node.isObject()) {
+            return ImportRecord.malformed(lineNumber, "Expected a JSON object");
+        }
+        JsonNode name = node.get("name");
+        JsonNode email = node.get("email");
+        JsonNode age = node.get("age");
+        if (name != null && !name.isNull() && !name.isString()
+                || email != null && !email.isNull() && !email.isString()) {
+            return ImportRecord.malformed(lineNumber, "Name and email must be strings");
+        }
+        if (age != null && !age.isNull() && !age.canConvertToExactIntegral()) {
+            return ImportRecord.malformed(lineNumber, "Age must be a whole number");
+        }
+        if (age != null && !age.isNull() && !age.canConvertToInt()) {
+            return ImportRecord.malformed(lineNumber, "Age is out of range");
+        }
+        User user = new User(
+                name == null || name.isNull() ? null : name.asString(),
+                email == null || email.isNull() ? null : email.asString(),
+                age == null || age.isNull() ? null : age.asInt());
+        return ImportRecord.parsed(lineNumber, user);
+    }
+
+    private static final class UnterminatedQuoteException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,160 @@
+package com.amalitech.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Actuator endpoint that records the application with Flight Recorder
+ * for a while and returns the {@code .jfr} file, at {@code POST
+ * /actuator/jfr} once {@code jfr} is added to the exposed endpoints.
+ *
+ * <p>The request blocks for the recording's duration, then streams the
+ * file, which is deleted once sent. The {@code profile} settings sample
+ * stacks often enough to find hot paths; {@code default} is cheaper.
+ * Either way the events holding the process environment and system
+ * properties are turned off, since those carry credentials such as the
+ * MongoDB URI. Only one recording runs at a time, and others get
+ * {@code 429 Too Many Requests}. Durations above the configured maximum
+ * are cut to it.</p>
+ */
+@Component
+@WebEndpoint(id = "jfr")
+public class JfrRecordingEndpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrRecordingEndpoint.class);
+
+    private static final Set<String> SETTINGS = Set.of("profile", "default");
+
+    /** Events whose values may hold secrets, disabled in every recording. */
+    private static final Set<String> REDACTED_EVENTS = Set.of(
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty");
+
+    private final Duration defaultDuration;
+    private final Duration maxDuration;
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    /**
+     * Creates the endpoint.
+     *
+     * @param defaultDuration recording length when none is requested
+     * @param maxDuration longest recording allowed
+     */
+    public JfrRecordingEndpoint(
+            @Value("${app.jfr.default-duration:PT30S}") final Duration defaultDuration,
+            @Value("${app.jfr.max-duration:PT5M}") final Duration maxDuration) {
+        this.defaultDuration = defaultDuration;
+        this.maxDuration = maxDuration;
+    }
+
+    /**
+     * Records for the given duration and returns the recording.
+     *
+     * @param duration how long to record, such as {@code 30s}
+     * @param settings {@code profile} (the default) or {@code default}
+     * @return the {@code .jfr} file, or an error status
+     * @throws IOException if the recording cannot be written
+     */
+    @WriteOperation
+    public WebEndpointResponse<Resource> record(@Nullable final Duration duration,
+                                                @Nullable final String settings) throws IOException {
+        Duration length = duration != null ? duration : defaultDuration;
+        String settingsName = settings != null ? settings : "profile";
+        if (length.isNegative() || length.isZero() || !SETTINGS.contains(settingsName)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        if (length.compareTo(maxDuration) > 0) {
+            length = maxDuration;
+        }
+        if (!recording.compareAndSet(false, true)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_TOO_MANY_REQUESTS);
+        }
+        try {
+            return new WebEndpointResponse<>(new TemporaryFileResource(writeRecording(length, settingsName)));
+        } finally {
+            recording.set(false);
+        }
+    }
+
+    private Path writeRecording(final Duration length, final String settingsName) throws IOException {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settingsName);
+        } catch (ParseException e) {
+            throw new IOException("Invalid JFR configuration: " + settingsName, e);
+        }
+        Map<String, String> eventSettings = new HashMap<>(configuration.getSettings());
+        for (String event : REDACTED_EVENTS) {
+            eventSettings.put(event + "#enabled", "false");
+        }
+        try (Recording jfr = new Recording(eventSettings)) {
+            jfr.setName("actuator-" + settingsName);
+            jfr.setToDisk(true);
+            logger.info("Starting {} JFR recording for {}", settingsName, length);
+            jfr.start();
+            try {
+                Thread.sleep(length.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("JFR recording interrupted; returning what was recorded");
+            }
+            jfr.stop();
+            Path file = Files.createTempFile("user-management-", ".jfr");
+            jfr.dump(file);
+            logger.info("JFR recording written ({} bytes)", Files.size(file));
+            return file;
+        }
+    }
+
+    /**
+     * File that is deleted once it has been read. Not reported as a file,
+     * so it is streamed through {@link #getInputStream()} rather than sent
+     * with a zero-copy transfer that would bypass the delete.
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+
+        private TemporaryFileResource(final Path file) {
+            super(file);
+        }
+
+        @Override
+        public boolean isFile() {
+            return false;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+    }
+}
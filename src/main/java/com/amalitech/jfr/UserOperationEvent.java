@@ -0,0 +1,140 @@
+package com.amalitech.jfr;
+
+import com.amalitech.metrics.MongoRoundTrips;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.Optional;
+
+/**
+ * Flight Recorder event for one user operation in the service layer.
+ *
+ * <p>While no recording has the event enabled, {@link #begin(String, String)}
+ * returns an inert event and every other call is a field write or a
+ * no-op. While enabled, the MongoDB commands sent from the calling thread
+ * during the operation are tallied, so each event carries its database
+ * time and command count next to its total duration. Commands sent from
+ * other threads, such as hedged reads or a coalesced update written by
+ * another request, are not included.</p>
+ */
+@Name("com.amalitech.UserOperation")
+@Label("User Operation")
+@Category({"User Management", "Service"})
+@Description("A create, read, update, patch or delete of a user")
+@StackTrace(false)
+public class UserOperationEvent extends Event {
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("User ID")
+    private String userId;
+
+    @Label("Outcome")
+    @Description("success, not-found, or the simple name of the exception thrown")
+    private String outcome = "success";
+
+    @Label("Cache Hit")
+    private boolean cacheHit;
+
+    @Label("MongoDB Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long mongoTime;
+
+    @Label("MongoDB Commands")
+    private int mongoCommands;
+
+    private transient MongoRoundTrips.Tally tally;
+
+    /**
+     * Starts timing an operation.
+     *
+     * @param operation the operation name
+     * @param userId the user ID, or {@code null} if not known yet
+     * @return the event, to be finished by the same thread
+     */
+    public static UserOperationEvent begin(final String operation, final String userId) {
+        UserOperationEvent event = new UserOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.userId = userId;
+            event.tally = MongoRoundTrips.start();
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * Sets the user ID once it is known.
+     *
+     * @param id the user ID
+     */
+    public void setUserId(final String id) {
+        this.userId = id;
+    }
+
+    /**
+     * Marks the operation as answered from the cache.
+     */
+    public void markCacheHit() {
+        this.cacheHit = true;
+    }
+
+    /**
+     * Marks the operation as failed.
+     *
+     * @param error the exception thrown
+     */
+    public void markFailed(final Throwable error) {
+        this.outcome = error.getClass().getSimpleName();
+    }
+
+    /**
+     * Records an optional result, marking the operation not found if empty.
+     *
+     * @param result the result
+     * @param <T> the result type
+     * @return the result
+     */
+    public <T> Optional<T> result(final Optional<T> result) {
+        if (result.isEmpty()) {
+            outcome = "not-found";
+        }
+        return result;
+    }
+
+    /**
+     * Records a boolean result, marking the operation not found if false.
+     *
+     * @param result the result
+     * @return the result
+     */
+    public boolean result(final boolean result) {
+        if (!result) {
+            outcome = "not-found";
+        }
+        return result;
+    }
+
+    /**
+     * Ends the operation and commits the event if it passes the
+     * recording's threshold.
+     */
+    public void finish() {
+        if (tally == null) {
+            return;
+        }
+        tally.close();
+        end();
+        if (shouldCommit()) {
+            mongoTime = tally.elapsedNanos();
+            mongoCommands = tally.commands() + tally.cursorBatches();
+            commit();
+        }
+    }
+}
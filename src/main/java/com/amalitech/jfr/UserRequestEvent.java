@@ -0,0 +1,34 @@
+package com.amalitech.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one HTTP request handled by the user
+ * controller, from handler selection until the response is complete.
+ * Its duration minus that of the nested {@link UserOperationEvent} is the
+ * time spent in the web layer: binding, validation and serialization.
+ */
+@Name("com.amalitech.UserRequest")
+@Label("User Request")
+@Category({"User Management", "HTTP"})
+@Description("An HTTP request to the users API")
+@StackTrace(false)
+public class UserRequestEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("HTTP Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+}
@@ -0,0 +1,47 @@
+package com.amalitech.jfr;
+
+import com.amalitech.controller.UserController;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Emits a {@link UserRequestEvent} around every {@link UserController}
+ * handler. Nothing is allocated beyond the event itself, and only while
+ * a recording has the event enabled.
+ */
+@Component
+public class UserRequestEventInterceptor implements HandlerInterceptor {
+
+    private static final String EVENT_ATTRIBUTE = UserRequestEventInterceptor.class.getName() + ".event";
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response,
+                             final Object handler) {
+        if (handler instanceof HandlerMethod method && method.getBeanType() == UserController.class) {
+            UserRequestEvent event = new UserRequestEvent();
+            if (event.isEnabled()) {
+                event.endpoint = method.getMethod().getName();
+                event.begin();
+                request.setAttribute(EVENT_ATTRIBUTE, event);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response,
+                                final Object handler, final Exception ex) {
+        if (request.getAttribute(EVENT_ATTRIBUTE) instanceof UserRequestEvent event) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.method = request.getMethod();
+                event.path = request.getRequestURI();
+                event.status = response.getStatus();
+                event.commit();
+            }
+        }
+    }
+}
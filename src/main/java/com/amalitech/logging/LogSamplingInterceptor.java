@@ -0,0 +1,106 @@
+package com.amalitech.logging;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides per request whether its success logs are written.
+ *
+ * <p>Each handler is sampled at its own rate from
+ * {@code app.logging.sampling.endpoints}, given as comma-separated
+ * {@code Controller.method=rate} pairs, or at
+ * {@code app.logging.sampling.rate} otherwise. A request that is not
+ * sampled drops its DEBUG and INFO records through
+ * {@link RequestLogSamplingFilter}; its warnings and errors, including
+ * those of the exception handlers, are always logged.</p>
+ *
+ * <p>The decision lives in a thread-local, so it is cleared whenever the
+ * request leaves the thread: on completion, and when the handler starts
+ * asynchronous processing. It is kept as a request attribute, so the
+ * dispatch that completes an asynchronous request reuses it rather than
+ * sampling again.</p>
+ */
+@Component
+public class LogSamplingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String DECISION_ATTRIBUTE = LogSamplingInterceptor.class.getName() + ".SUPPRESSED";
+
+    private final double defaultRate;
+    private final Map<String, Double> endpointRates;
+
+    /**
+     * Creates the interceptor.
+     *
+     * @param defaultRate share of requests logged, between 0 and 1
+     * @param endpointRates per-handler rates, as {@code Controller.method=rate} pairs
+     */
+    public LogSamplingInterceptor(
+            @Value("${app.logging.sampling.rate:1.0}") final double defaultRate,
+            @Value("${app.logging.sampling.endpoints:}") final String endpointRates) {
+        this.defaultRate = defaultRate;
+        this.endpointRates = parseRates(endpointRates);
+    }
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response,
+                             final Object handler) {
+        if (!(handler instanceof HandlerMethod method)) {
+            RequestLogSampling.clear();
+            return true;
+        }
+        Boolean suppressed = (Boolean) request.getAttribute(DECISION_ATTRIBUTE);
+        if (suppressed == null) {
+            double rate = rateOf(method.getBeanType().getSimpleName() + "." + method.getMethod().getName());
+            suppressed = rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate;
+            request.setAttribute(DECISION_ATTRIBUTE, suppressed);
+        }
+        RequestLogSampling.setSuppressed(suppressed);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(final HttpServletRequest request, final HttpServletResponse response,
+                                               final Object handler) {
+        // afterCompletion runs on the thread of the later dispatch, not this one
+        RequestLogSampling.clear();
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response,
+                                final Object handler, final Exception ex) {
+        RequestLogSampling.clear();
+    }
+
+    /**
+     * Gets the sampling rate of a handler.
+     *
+     * @param endpoint the handler as {@code Controller.method}
+     * @return the share of its requests that are logged
+     */
+    double rateOf(final String endpoint) {
+        return endpointRates.getOrDefault(endpoint, defaultRate);
+    }
+
+    private static Map<String, Double> parseRates(final String value) {
+        Map<String, Double> rates = new HashMap<>();
+        for (String pair : value.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected Controller.method=rate but got: " + pair.trim());
+            }
+            rates.put(pair.substring(0, separator).trim(), Double.parseDouble(pair.substring(separator + 1).trim()));
+        }
+        return rates;
+    }
+}
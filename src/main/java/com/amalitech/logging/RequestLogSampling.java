@@ -0,0 +1,40 @@
+package com.amalitech.logging;
+
+/**
+ * Whether the request on the current thread was sampled out of success
+ * logging. Set by {@link LogSamplingInterceptor} and read by
+ * {@link RequestLogSamplingFilter} on every log call, so it is a plain
+ * thread-local flag rather than an MDC entry.
+ */
+public final class RequestLogSampling {
+
+    private static final ThreadLocal<Boolean> SUPPRESSED = new ThreadLocal<>();
+
+    private RequestLogSampling() {
+    }
+
+    /**
+     * Suppresses or allows success logging for the rest of the current request.
+     *
+     * @param suppressed {@code true} to drop records below WARN
+     */
+    public static void setSuppressed(final boolean suppressed) {
+        SUPPRESSED.set(suppressed ? Boolean.TRUE : Boolean.FALSE);
+    }
+
+    /**
+     * Tells whether records below WARN are dropped on this thread.
+     *
+     * @return {@code true} if the current request was sampled out
+     */
+    public static boolean isSuppressed() {
+        return SUPPRESSED.get() == Boolean.TRUE;
+    }
+
+    /**
+     * Forgets the decision once the request completes.
+     */
+    public static void clear() {
+        SUPPRESSED.remove();
+    }
+}
@@ -0,0 +1,27 @@
+package com.amalitech.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+/**
+ * Logback turbo filter that drops records below WARN while the current
+ * request is sampled out. It runs before the logger's level check and
+ * before the message is formatted or an event is created, so a dropped
+ * record costs one thread-local read; it also makes
+ * {@code isDebugEnabled()} and {@code isInfoEnabled()} return
+ * {@code false}. Warnings and errors always pass.
+ */
+public class RequestLogSamplingFilter extends TurboFilter {
+
+    @Override
+    public FilterReply decide(final Marker marker, final Logger logger, final Level level, final String format,
+                              final Object[] params, final Throwable t) {
+        if (level.isGreaterOrEqual(Level.WARN) || !RequestLogSampling.isSuppressed()) {
+            return FilterReply.NEUTRAL;
+        }
+        return FilterReply.DENY;
+    }
+}
@@ -0,0 +1,28 @@
+package com.amalitech.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how many MongoDB round trips one request to an endpoint may
+ * make. Requests over budget are counted and logged by
+ * {@link MongoBudgetFilter}, and tests assert against it with
+ * {@link MongoRoundTrips.Tally#assertWithin(int)}.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MongoBudget {
+
+    /**
+     * Gets the most commands one request may send. Cursor batches
+     * ({@code getMore}) are not counted, since they grow with the size of
+     * the result rather than with the code path.
+     *
+     * @return the budget
+     */
+    int value();
+}
@@ -0,0 +1,203 @@
+package com.amalitech.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the MongoDB round trips of every HTTP request and checks them
+ * against the endpoint's {@link MongoBudget}.
+ *
+ * <p>Per endpoint, the number of commands and the bytes sent and received
+ * are published as {@code mongo.request.commands} and
+ * {@code mongo.request.bytes}, and requests over budget increment
+ * {@code mongo.request.budget.exceeded} and are logged with the commands
+ * they sent, which is how an added lookup per request shows up. With
+ * {@code app.mongo-budget.response-header=true}, as in the {@code dev}
+ * profile, the counts are also returned in the
+ * {@value #ROUND_TRIPS_HEADER} header; the response body is then
+ * buffered so the header can follow the handler. Asynchronous responses,
+ * such as event streams, are written through unbuffered and without the
+ * header, and only their initial handling is counted.</p>
+ */
+@Component
+public class MongoBudgetFilter extends OncePerRequestFilter {
+
+    /** Response header carrying the request's MongoDB round trips. */
+    public static final String ROUND_TRIPS_HEADER = "Mongo-Round-Trips";
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoBudgetFilter.class);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean responseHeader;
+    private final Map<Method, EndpointMeters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the filter.
+     *
+     * @param meterRegistry registry the per-endpoint meters are added to
+     * @param responseHeader whether to return the counts in a response header
+     */
+    public MongoBudgetFilter(
+            final MeterRegistry meterRegistry,
+            @Value("${app.mongo-budget.response-header:false}") final boolean responseHeader) {
+        this.meterRegistry = meterRegistry;
+        this.responseHeader = responseHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(final HttpServletRequest request, final HttpServletResponse response,
+                                    final FilterChain filterChain) throws ServletException, IOException {
+        MongoRoundTrips.Tally tally = MongoRoundTrips.start();
+        try {
+            if (!responseHeader) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            ContentCachingResponseWrapper wrapper = new SynchronousBodyCachingWrapper(request, response);
+            try {
+                filterChain.doFilter(request, wrapper);
+            } finally {
+                if (!request.isAsyncStarted()) {
+                    wrapper.setHeader(ROUND_TRIPS_HEADER, describe(tally, budgetOf(handlerOf(request))));
+                }
+                wrapper.copyBodyToResponse();
+            }
+        } finally {
+            tally.close();
+            record(handlerOf(request), tally);
+        }
+    }
+
+    private void record(final HandlerMethod handler, final MongoRoundTrips.Tally tally) {
+        if (handler == null) {
+            return;
+        }
+        EndpointMeters endpointMeters = meters.get(handler.getMethod());
+        if (endpointMeters == null) {
+            endpointMeters = meters.computeIfAbsent(handler.getMethod(),
+                    method -> new EndpointMeters(meterRegistry, endpointOf(handler)));
+        }
+        endpointMeters.commands.record(tally.commands());
+        endpointMeters.bytesSent.record(tally.bytesSent());
+        endpointMeters.bytesReceived.record(tally.bytesReceived());
+        Integer budget = budgetOf(handler);
+        if (budget != null && tally.commands() > budget) {
+            endpointMeters.exceeded.increment();
+            logger.warn("{} sent {} MongoDB commands, over its budget of {}: {}",
+                    endpointOf(handler), tally.commands(), budget, tally.commandNames());
+        }
+    }
+
+    private static HandlerMethod handlerOf(final HttpServletRequest request) {
+        return request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler
+                ? handler : null;
+    }
+
+    private static Integer budgetOf(final HandlerMethod handler) {
+        MongoBudget budget = handler == null ? null : handler.getMethodAnnotation(MongoBudget.class);
+        return budget == null ? null : budget.value();
+    }
+
+    private static String endpointOf(final HandlerMethod handler) {
+        return handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName();
+    }
+
+    static String describe(final MongoRoundTrips.Tally tally, final Integer budget) {
+        StringBuilder header = new StringBuilder().append(tally.commands());
+        if (budget != null) {
+            header.append("; budget=").append(budget);
+        }
+        return header.append("; cursor-batches=").append(tally.cursorBatches())
+                .append("; bytes-sent=").append(tally.bytesSent())
+                .append("; bytes-received=").append(tally.bytesReceived())
+                .toString();
+    }
+
+    /**
+     * Buffers the body until the request goes asynchronous; from then on
+     * writes go straight to the response, so streamed events are not held
+     * back until the stream ends.
+     */
+    private static final class SynchronousBodyCachingWrapper extends ContentCachingResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        private SynchronousBodyCachingWrapper(final HttpServletRequest request, final HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            return request.isAsyncStarted() ? getResponse().getOutputStream() : super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            return request.isAsyncStarted() ? getResponse().getWriter() : super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (request.isAsyncStarted()) {
+                copyBodyToResponse(false);
+                getResponse().flushBuffer();
+            } else {
+                super.flushBuffer();
+            }
+        }
+    }
+
+    /**
+     * Meters of one endpoint.
+     */
+    private static final class EndpointMeters {
+
+        private final DistributionSummary commands;
+        private final DistributionSummary bytesSent;
+        private final DistributionSummary bytesReceived;
+        private final Counter exceeded;
+
+        private EndpointMeters(final MeterRegistry registry, final String endpoint) {
+            this.commands = DistributionSummary.builder("mongo.request.commands")
+                    .description("MongoDB commands sent per HTTP request")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            this.bytesSent = bytes(registry, endpoint, "sent");
+            this.bytesReceived = bytes(registry, endpoint, "received");
+            this.exceeded = Counter.builder("mongo.request.budget.exceeded")
+                    .description("HTTP requests that sent more MongoDB commands than their budget")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+        }
+
+        private static DistributionSummary bytes(final MeterRegistry registry, final String endpoint,
+                                                 final String direction) {
+            return DistributionSummary.builder("mongo.request.bytes")
+                    .description("MongoDB bytes per HTTP request")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpoint).tag("direction", direction)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.amalitech.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDocument;
+import org.bson.BsonReader;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records latency, documents returned and wire size of every command the
+ * MongoDB driver sends.
+ *
+ * <p>Meters are tagged with the collection, the command name as
+ * {@code operation}, and {@code outcome}. They are created the first time
+ * a combination is seen and then looked up through two plain map reads,
+ * and timings use the driver's own elapsed time, so recording a command
+ * allocates nothing on the steady-state path. The collection is only
+ * named in the started event; it is carried to the completion event in a
+ * fixed ring indexed by request ID rather than a map of boxed IDs.</p>
+ *
+ * <p>Byte counts come from the BSON length prefix of the command and
+ * reply buffers; a reply the driver has already decoded into a plain
+ * document is not counted.</p>
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    private static final int IN_FLIGHT_SLOTS = 1024;
+    private static final String NO_COLLECTION = "none";
+
+    private final MeterRegistry registry;
+    private final Map<String, Map<String, CommandMeters>> meters = new ConcurrentHashMap<>();
+
+    private final AtomicIntegerArray inFlightIds = new AtomicIntegerArray(IN_FLIGHT_SLOTS);
+    private final AtomicReferenceArray<String> inFlightCollections = new AtomicReferenceArray<>(IN_FLIGHT_SLOTS);
+
+    /**
+     * Creates the listener.
+     *
+     * @param registry registry the meters are added to
+     */
+    public MongoCommandMetrics(final MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        String collection = collectionOf(event.getCommandName(), event.getCommand());
+        int slot = event.getRequestId() & (IN_FLIGHT_SLOTS - 1);
+        inFlightCollections.set(slot, collection);
+        inFlightIds.set(slot, event.getRequestId());
+        int bytes = sizeOf(event.getCommand());
+        if (bytes >= 0) {
+            metersFor(event.getCommandName(), collection).requestBytes.record(bytes);
+        }
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        CommandMeters commandMeters = metersFor(event.getCommandName(), takeCollection(event.getRequestId()));
+        commandMeters.success.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        BsonDocument response = event.getResponse();
+        int documents = documentsIn(response);
+        if (documents >= 0) {
+            commandMeters.documents.record(documents);
+        }
+        int bytes = sizeOf(response);
+        if (bytes >= 0) {
+            commandMeters.responseBytes.record(bytes);
+        }
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        metersFor(event.getCommandName(), takeCollection(event.getRequestId()))
+                .failure.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    private String takeCollection(final int requestId) {
+        int slot = requestId & (IN_FLIGHT_SLOTS - 1);
+        String collection = inFlightCollections.get(slot);
+        return inFlightIds.get(slot) == requestId && collection != null ? collection : NO_COLLECTION;
+    }
+
+    private CommandMeters metersFor(final String command, final String collection) {
+        Map<String, CommandMeters> byCollection = meters.get(command);
+        if (byCollection == null) {
+            byCollection = meters.computeIfAbsent(command, key -> new ConcurrentHashMap<>());
+        }
+        CommandMeters commandMeters = byCollection.get(collection);
+        if (commandMeters == null) {
+            commandMeters = byCollection.computeIfAbsent(collection,
+                    key -> new CommandMeters(registry, command, key));
+        }
+        return commandMeters;
+    }
+
+    /**
+     * Names the collection a command targets: the value of the command
+     * key for CRUD commands, or the {@code collection} field of getMore.
+     */
+    static String collectionOf(final String command, final BsonDocument body) {
+        if (body == null) {
+            return NO_COLLECTION;
+        }
+        BsonValue target = "getMore".equals(command) ? body.get("collection") : body.get(command);
+        return target != null && target.isString() ? target.asString().getValue() : NO_COLLECTION;
+    }
+
+    /**
+     * Counts the documents a reply carries: the batch of a cursor reply, or
+     * {@code n} for counts.
+     *
+     * @return the count, or -1 if the reply does not return documents
+     */
+    static int documentsIn(final BsonDocument response) {
+        if (response == null) {
+            return -1;
+        }
+        BsonValue cursor = response.get("cursor");
+        if (cursor != null && cursor.isDocument()) {
+            BsonValue batch = cursor.asDocument().get("firstBatch");
+            if (batch == null) {
+                batch = cursor.asDocument().get("nextBatch");
+            }
+            return batch != null && batch.isArray() ? ((BsonArray) batch).size() : -1;
+        }
+        BsonValue value = response.get("value");
+        if (value != null && response.containsKey("lastErrorObject")) {
+            return value.isDocument() ? 1 : 0;
+        }
+        BsonValue n = response.get("n");
+        return n != null && n.isNumber() && !response.containsKey("nModified") ? n.asNumber().intValue() : -1;
+    }
+
+    /**
+     * Reads the encoded size of a document that is still backed by its
+     * wire buffer.
+     *
+     * @return the size in bytes, or -1 if unknown
+     */
+    static int sizeOf(final BsonDocument document) {
+        if (document instanceof RawBsonDocument raw) {
+            return raw.getByteBuffer().remaining();
+        }
+        if (document == null) {
+            return -1;
+        }
+        // Wire-backed documents hand out a binary reader over a duplicate of their buffer,
+        // whose first four bytes are the document length; it is left to the GC, not closed
+        BsonReader reader = document.asBsonReader();
+        if (reader instanceof BsonBinaryReader binary) {
+            return binary.getBsonInput().readInt32();
+        }
+        return -1;
+    }
+
+    /**
+     * Meters of one command on one collection.
+     */
+    private static final class CommandMeters {
+
+        private final Timer success;
+        private final Timer failure;
+        private final DistributionSummary documents;
+        private final DistributionSummary requestBytes;
+        private final DistributionSummary responseBytes;
+
+        private CommandMeters(final MeterRegistry registry, final String command, final String collection) {
+            this.success = timer(registry, command, collection, "success");
+            this.failure = timer(registry, command, collection, "failure");
+            this.documents = DistributionSummary.builder("mongo.command.documents")
+                    .description("Documents returned per command")
+                    .tag("operation", command).tag("collection", collection)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.requestBytes = bytes(registry, command, collection, "request");
+            this.responseBytes = bytes(registry, command, collection, "response");
+        }
+
+        private static Timer timer(final MeterRegistry registry, final String command,
+                                   final String collection, final String outcome) {
+            return Timer.builder("mongo.command")
+                    .description("MongoDB command round-trip time")
+                    .tag("operation", command).tag("collection", collection).tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        private static DistributionSummary bytes(final MeterRegistry registry, final String command,
+                                                 final String collection, final String direction) {
+            return DistributionSummary.builder("mongo.command.bytes")
+                    .description("Encoded size of MongoDB commands and replies")
+                    .baseUnit("bytes")
+                    .tag("operation", command).tag("collection", collection).tag("direction", direction)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
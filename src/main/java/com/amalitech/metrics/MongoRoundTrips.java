@@ -0,0 +1,231 @@
+package com.amalitech.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Counts the MongoDB commands, bytes and time spent on behalf of a unit
+ * of work, such as one HTTP request.
+ *
+ * <p>A tally is started on the current thread and counts every command
+ * the driver sends from that thread until it is closed. Reads hedged
+ * onto another thread are counted on that thread instead; work done on
+ * behalf of a waiting caller, such as a coalesced update, is counted in
+ * the caller's tally through {@link #countedIn}. Tallies nest: closing an
+ * inner tally adds its counts to the outer one, so a test can measure a
+ * single call inside a request.</p>
+ *
+ * <pre>
+ * try (MongoRoundTrips.Tally tally = MongoRoundTrips.start()) {
+ *     userService.getUserById(id);
+ *     tally.assertWithin(1);
+ * }
+ * </pre>
+ */
+public final class MongoRoundTrips implements CommandListener {
+
+    private static final ThreadLocal<Tally> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Starts a tally on the current thread.
+     *
+     * @return the tally, to be closed on the same thread
+     */
+    public static Tally start() {
+        Tally tally = new Tally(CURRENT.get());
+        CURRENT.set(tally);
+        return tally;
+    }
+
+    /**
+     * Gets the tally open on the current thread.
+     *
+     * @return the innermost open tally, or {@code null} if there is none
+     */
+    public static Tally current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs work on the current thread but counts its commands in the given
+     * tally, typically one opened by another thread. That thread must be
+     * waiting for the work and send no commands until it is done.
+     *
+     * @param tally the tally to count in, or {@code null} to count nowhere
+     * @param work the work
+     * @param <T> the result type
+     * @return the work's result
+     */
+    public static <T> T countedIn(final Tally tally, final Supplier<T> work) {
+        Tally own = CURRENT.get();
+        if (tally == own) {
+            return work.get();
+        }
+        CURRENT.set(tally);
+        try {
+            return work.get();
+        } finally {
+            if (own == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(own);
+            }
+        }
+    }
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        Tally tally = CURRENT.get();
+        if (tally != null) {
+            tally.sent(event.getCommandName(), MongoCommandMetrics.sizeOf(event.getCommand()));
+        }
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        Tally tally = CURRENT.get();
+        if (tally != null) {
+            tally.received(MongoCommandMetrics.sizeOf(event.getResponse()),
+                    event.getElapsedTime(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        Tally tally = CURRENT.get();
+        if (tally != null) {
+            tally.received(0, event.getElapsedTime(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * Commands and bytes counted on one thread.
+     */
+    public static final class Tally implements AutoCloseable {
+
+        private final Tally parent;
+        private final List<String> commandNames = new ArrayList<>(4);
+        private int commands;
+        private int cursorBatches;
+        private long bytesSent;
+        private long bytesReceived;
+        private long elapsedNanos;
+        private boolean closed;
+
+        private Tally(final Tally parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Gets the number of commands sent, not counting cursor batches.
+         *
+         * @return the command count
+         */
+        public int commands() {
+            return commands;
+        }
+
+        /**
+         * Gets the number of {@code getMore} and {@code killCursors} commands sent.
+         *
+         * @return the cursor batch count
+         */
+        public int cursorBatches() {
+            return cursorBatches;
+        }
+
+        /**
+         * Gets the encoded size of the commands sent.
+         *
+         * @return bytes sent
+         */
+        public long bytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Gets the encoded size of the replies received.
+         *
+         * @return bytes received
+         */
+        public long bytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * Gets the total round-trip time of the commands, cursor batches included.
+         *
+         * @return elapsed time in nanoseconds
+         */
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Lists the commands counted against the budget, in order.
+         *
+         * @return the command names
+         */
+        public List<String> commandNames() {
+            return List.copyOf(commandNames);
+        }
+
+        /**
+         * Fails if more commands were sent than the budget allows.
+         *
+         * @param budget the most commands allowed
+         * @throws AssertionError if the budget was exceeded
+         */
+        public void assertWithin(final int budget) {
+            if (commands > budget) {
+                throw new AssertionError("Expected at most " + budget + " MongoDB round trip(s) but "
+                        + commands + " were sent: " + commandNames);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (parent == null) {
+                CURRENT.remove();
+                return;
+            }
+            CURRENT.set(parent);
+            parent.commands += commands;
+            parent.commandNames.addAll(commandNames);
+            parent.cursorBatches += cursorBatches;
+            parent.bytesSent += bytesSent;
+            parent.bytesReceived += bytesReceived;
+            parent.elapsedNanos += elapsedNanos;
+        }
+
+        private void sent(final String command, final int bytes) {
+            if ("getMore".equals(command) || "killCursors".equals(command)) {
+                cursorBatches++;
+            } else {
+                commands++;
+                commandNames.add(command);
+            }
+            if (bytes > 0) {
+                bytesSent += bytes;
+            }
+        }
+
+        private void received(final int bytes, final long nanos) {
+            if (bytes > 0) {
+                bytesReceived += bytes;
+            }
+            elapsedNanos += nanos;
+        }
+    }
+}
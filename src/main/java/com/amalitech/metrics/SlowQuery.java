@@ -0,0 +1,36 @@
+package com.amalitech.metrics;
+
+import java.time.Instant;
+
+/**
+ * A MongoDB command that took longer than the slow query threshold.
+ *
+ * @param at when the command completed
+ * @param database the database it ran against
+ * @param collection the collection it targeted
+ * @param operation the command name
+ * @param shape the command with every value replaced by {@code "?"}
+ * @param durationMs round-trip time in milliseconds
+ * @param outcome {@code success} or {@code failure}
+ * @param returned documents in the reply, or {@code null} if not applicable
+ * @param docsExamined documents the sampled plan examined, or {@code null} if not explained
+ * @param keysExamined index keys the sampled plan examined, or {@code null} if not explained
+ * @param plan winning plan stages, outermost first, or {@code null} if not explained
+ */
+public record SlowQuery(Instant at, String database, String collection, String operation, String shape,
+                        double durationMs, String outcome, Integer returned, Long docsExamined,
+                        Long keysExamined, String plan) {
+
+    /**
+     * Copies this entry with the results of an explain.
+     *
+     * @param docsExamined documents examined
+     * @param keysExamined index keys examined
+     * @param plan winning plan stages
+     * @return the explained entry
+     */
+    public SlowQuery withPlan(final Long docsExamined, final Long keysExamined, final String plan) {
+        return new SlowQuery(at, database, collection, operation, shape, durationMs, outcome, returned,
+                docsExamined, keysExamined, plan);
+    }
+}
@@ -0,0 +1,352 @@
+package com.amalitech.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the most recent MongoDB commands that exceeded a latency
+ * threshold, with enough detail to spot a missing index.
+ *
+ * <p>Queries and writes with a filter are remembered from their started
+ * event, since the driver only exposes the command there. Only the part
+ * an explain needs is copied, without session fields and with just the
+ * first statement of a batched write, so a large bulk write is not copied
+ * whole on the chance that it turns out slow. When one
+ * completes slower than the threshold, its shape, with every value
+ * replaced by {@code "?"}, is logged and added to a bounded ring of recent
+ * entries. The first slow occurrence of a shape in each explain interval
+ * is also re-run as an {@code explain} with {@code executionStats} on a
+ * background executor, which adds documents and keys examined and the
+ * winning plan: a {@code COLLSCAN}, or far more documents examined than
+ * returned, points at the missing index. Other occurrences are recorded
+ * without a plan, so a burst of slow queries costs at most one explain
+ * per shape.</p>
+ */
+public class SlowQueryDetector implements CommandListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlowQueryDetector.class);
+
+    private static final int IN_FLIGHT_SLOTS = 1024;
+    private static final int MAX_TRACKED_SHAPES = 1000;
+    private static final BsonString REDACTED = new BsonString("?");
+
+    private static final Set<String> FILTERED_COMMANDS =
+            Set.of("find", "aggregate", "count", "distinct", "findAndModify", "update", "delete");
+
+    // Session and transport fields that explain rejects or that do not describe the query
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "autocommit",
+            "startTransaction", "readConcern", "writeConcern", "apiVersion", "apiStrict", "apiDeprecationErrors");
+
+    /**
+     * Runs an explain command.
+     */
+    @FunctionalInterface
+    public interface Explainer {
+
+        /**
+         * Runs the command against a database.
+         *
+         * @param database the database name
+         * @param command the explain command
+         * @return the server's reply
+         */
+        Document explain(String database, BsonDocument command);
+    }
+
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final long explainIntervalMillis;
+    private final Explainer explainer;
+    private final Executor explainExecutor;
+    private final Clock clock;
+
+    private final AtomicIntegerArray inFlightIds = new AtomicIntegerArray(IN_FLIGHT_SLOTS);
+    private final AtomicReferenceArray<BsonDocument> inFlightCommands = new AtomicReferenceArray<>(IN_FLIGHT_SLOTS);
+    private final Map<String, Long> explainedAt = new ConcurrentHashMap<>();
+
+    private final SlowQuery[] recent;
+    private long written;
+
+    /**
+     * Creates a detector.
+     *
+     * @param enabled whether commands are tracked at all
+     * @param threshold round-trip time above which a command is slow
+     * @param capacity number of recent slow commands kept
+     * @param explainInterval how often the same shape may be explained
+     * @param explainer runs explain commands
+     * @param explainExecutor executor explains run on
+     * @param clock clock used for timestamps and the explain interval
+     */
+    public SlowQueryDetector(final boolean enabled, final Duration threshold, final int capacity,
+                             final Duration explainInterval, final Explainer explainer,
+                             final Executor explainExecutor, final Clock clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.enabled = enabled;
+        this.thresholdNanos = threshold.toNanos();
+        this.explainIntervalMillis = explainInterval.toMillis();
+        this.explainer = explainer;
+        this.explainExecutor = explainExecutor;
+        this.clock = clock;
+        this.recent = new SlowQuery[capacity];
+    }
+
+    @Override
+    public void commandStarted(final CommandStartedEvent event) {
+        if (!enabled || !FILTERED_COMMANDS.contains(event.getCommandName())) {
+            return;
+        }
+        // The event's document is backed by a pooled buffer that is released after this call
+        int slot = event.getRequestId() & (IN_FLIGHT_SLOTS - 1);
+        inFlightCommands.set(slot, explainable(event.getCommand()));
+        inFlightIds.set(slot, event.getRequestId());
+    }
+
+    @Override
+    public void commandSucceeded(final CommandSucceededEvent event) {
+        BsonDocument command = take(event.getRequestId());
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        if (command != null && nanos >= thresholdNanos) {
+            slow(command, event.getDatabaseName(), event.getCommandName(), nanos, "success",
+                    MongoCommandMetrics.documentsIn(event.getResponse()));
+        }
+    }
+
+    @Override
+    public void commandFailed(final CommandFailedEvent event) {
+        BsonDocument command = take(event.getRequestId());
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        if (command != null && nanos >= thresholdNanos) {
+            slow(command, event.getDatabaseName(), event.getCommandName(), nanos, "failure", -1);
+        }
+    }
+
+    /**
+     * Lists recent slow commands, newest first.
+     *
+     * @return the entries
+     */
+    public synchronized List<SlowQuery> recent() {
+        int size = (int) Math.min(written, recent.length);
+        List<SlowQuery> entries = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            entries.add(recent[(int) ((written - i) % recent.length)]);
+        }
+        return entries;
+    }
+
+    /**
+     * Forgets all recorded slow commands.
+     */
+    public synchronized void clear() {
+        Arrays.fill(recent, null);
+        written = 0;
+        explainedAt.clear();
+    }
+
+    private BsonDocument take(final int requestId) {
+        int slot = requestId & (IN_FLIGHT_SLOTS - 1);
+        BsonDocument command = inFlightCommands.get(slot);
+        if (command == null || inFlightIds.get(slot) != requestId
+                || !inFlightCommands.compareAndSet(slot, command, null)) {
+            return null;
+        }
+        return command;
+    }
+
+    private void slow(final BsonDocument query, final String database, final String operation,
+                      final long nanos, final String outcome, final int returned) {
+        String shape = redact(query, true).toJson();
+        SlowQuery entry = new SlowQuery(clock.instant(), database, MongoCommandMetrics.collectionOf(operation, query),
+                operation, shape, Math.round(nanos / 10_000.0) / 100.0, outcome,
+                returned < 0 ? null : returned, null, null, null);
+        if (shouldExplain(shape)) {
+            try {
+                explainExecutor.execute(() -> add(explain(entry, database, query)));
+                return;
+            } catch (RejectedExecutionException e) {
+                explainedAt.remove(shape);
+            }
+        }
+        add(entry);
+    }
+
+    private boolean shouldExplain(final String shape) {
+        long now = clock.millis();
+        Long last = explainedAt.get(shape);
+        if (last == null) {
+            if (explainedAt.size() >= MAX_TRACKED_SHAPES) {
+                explainedAt.clear();
+            }
+            return explainedAt.putIfAbsent(shape, now) == null;
+        }
+        return now - last >= explainIntervalMillis && explainedAt.replace(shape, last, now);
+    }
+
+    private SlowQuery explain(final SlowQuery entry, final String database, final BsonDocument query) {
+        try {
+            Document reply = explainer.explain(database, new BsonDocument("explain", query)
+                    .append("verbosity", new BsonString("executionStats")));
+            Document stats = section(reply, "executionStats");
+            Document planner = section(reply, "queryPlanner");
+            Document winningPlan = planner == null ? null : planner.get("winningPlan", Document.class);
+            return entry.withPlan(
+                    stats == null ? null : longValue(stats.get("totalDocsExamined")),
+                    stats == null ? null : longValue(stats.get("totalKeysExamined")),
+                    winningPlan == null ? null : describePlan(winningPlan));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to explain slow MongoDB {} on {}: {}", entry.operation(), entry.collection(),
+                    e.getMessage());
+            return entry;
+        }
+    }
+
+    private void add(final SlowQuery entry) {
+        logger.warn("Slow MongoDB {} on {}.{} took {} ms (returned {}, examined {}, plan {}): {}",
+                entry.operation(), entry.database(), entry.collection(), entry.durationMs(), entry.returned(),
+                entry.docsExamined(), entry.plan(), entry.shape());
+        synchronized (this) {
+            recent[(int) (written % recent.length)] = entry;
+            written++;
+        }
+    }
+
+    /**
+     * Copies the part of a command that explain accepts: no session or
+     * transport fields, and only the first statement of a batched write.
+     * The copy shares nothing with the command.
+     */
+    static BsonDocument explainable(final BsonDocument command) {
+        BsonDocument query = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            String key = field.getKey();
+            if (key.startsWith("$") || SESSION_FIELDS.contains(key)) {
+                continue;
+            }
+            BsonValue value = field.getValue();
+            if (("updates".equals(key) || "deletes".equals(key)) && value.isArray()) {
+                BsonArray statements = value.asArray();
+                value = statements.isEmpty() ? new BsonArray() : new BsonArray(List.of(copy(statements.get(0))));
+            } else {
+                value = copy(value);
+            }
+            query.append(key, value);
+        }
+        return query;
+    }
+
+    private static BsonValue copy(final BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().clone();
+        }
+        if (value.isArray()) {
+            return value.asArray().clone();
+        }
+        return value;
+    }
+
+    /**
+     * Replaces every value with {@code "?"}, keeping field names and
+     * operators. The collection name, the value of the first field, is kept;
+     * arrays of values collapse to a single {@code "?"} so that {@code $in}
+     * lists of different lengths share a shape.
+     */
+    static BsonDocument redact(final BsonDocument document, final boolean command) {
+        BsonDocument redacted = new BsonDocument();
+        boolean first = command;
+        for (Map.Entry<String, BsonValue> field : document.entrySet()) {
+            BsonValue value = field.getValue();
+            redacted.append(field.getKey(), first && value.isString() ? value : redact(value));
+            first = false;
+        }
+        return redacted;
+    }
+
+    private static BsonValue redact(final BsonValue value) {
+        if (value.isDocument()) {
+            return redact(value.asDocument(), false);
+        }
+        if (value.isArray()) {
+            BsonArray redacted = new BsonArray();
+            for (BsonValue element : value.asArray()) {
+                if (!element.isDocument()) {
+                    return REDACTED;
+                }
+                redacted.add(redact(element.asDocument(), false));
+            }
+            return redacted;
+        }
+        return REDACTED;
+    }
+
+    /**
+     * Finds a section of an explain reply; aggregations nest it in the
+     * {@code $cursor} stage.
+     */
+    private static Document section(final Document reply, final String name) {
+        Document section = reply.get(name, Document.class);
+        if (section != null) {
+            return section;
+        }
+        Object stages = reply.get("stages");
+        if (stages instanceof List<?> list && !list.isEmpty() && list.get(0) instanceof Document stage
+                && stage.get("$cursor") instanceof Document cursor) {
+            return cursor.get(name, Document.class);
+        }
+        return null;
+    }
+
+    /**
+     * Describes a winning plan as its stages, outermost first, e.g.
+     * {@code FETCH > IXSCAN {"email": 1}}.
+     */
+    static String describePlan(final Document winningPlan) {
+        Document stage = winningPlan.get("queryPlan") instanceof Document queryPlan ? queryPlan : winningPlan;
+        StringBuilder plan = new StringBuilder();
+        while (stage != null) {
+            if (plan.length() > 0) {
+                plan.append(" > ");
+            }
+            plan.append(stage.getString("stage"));
+            if (stage.get("keyPattern") instanceof Document keyPattern) {
+                plan.append(' ').append(keyPattern.toJson());
+            }
+            Document input = stage.get("inputStage", Document.class);
+            if (input == null && stage.get("inputStages") instanceof List<?> inputs && !inputs.isEmpty()
+                    && inputs.get(0) instanceof Document firstInput) {
+                input = firstInput;
+            }
+            stage = input;
+        }
+        return plan.toString();
+    }
+
+    private static Long longValue(final Object value) {
+        return value instanceof Number number ? number.longValue() : null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.amalitech.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint listing recent slow MongoDB commands, exposed at
+ * {@code /actuator/slowqueries}.
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryDetector detector;
+
+    /**
+     * Creates the endpoint.
+     *
+     * @param detector the detector whose entries are listed
+     */
+    public SlowQueryEndpoint(final SlowQueryDetector detector) {
+        this.detector = detector;
+    }
+
+    /**
+     * Lists recent slow commands, newest first.
+     *
+     * @return the entries
+     */
+    @ReadOperation
+    public List<SlowQuery> slowQueries() {
+        return detector.recent();
+    }
+
+    /**
+     * Forgets recorded slow commands, so the next occurrence of each shape
+     * is explained again.
+     */
+    @DeleteOperation
+    public void clear() {
+        detector.clear();
+    }
+}
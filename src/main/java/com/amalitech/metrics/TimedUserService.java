@@ -0,0 +1,205 @@
+package com.amalitech.metrics;
+
+import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import com.amalitech.resilience.ResilientUserService;
+import com.amalitech.service.PatchResult;
+import com.amalitech.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService} that records the latency of every call as a
+ * {@code user.service} timer, tagged with the method and its outcome.
+ *
+ * <p>It is the outermost decorator, so the recorded time covers the
+ * circuit breaker, retries and the cache as seen by the controller.
+ * Timers publish percentile histograms, so p99 can be aggregated across
+ * instances. They are registered up front and each method records with
+ * two {@link System#nanoTime()} reads and no lambda, so timing a call
+ * allocates nothing.</p>
+ */
+@Service
+@Primary
+public class TimedUserService implements UserService {
+
+    private static final String[] METHODS = {
+        "createUser", "getAllUsers", "getUserById", "getUserVersion",
+        "updateUser", "patchUser", "deleteUser"
+    };
+    private static final int CREATE = 0;
+    private static final int GET_ALL = 1;
+    private static final int GET_BY_ID = 2;
+    private static final int GET_VERSION = 3;
+    private static final int UPDATE = 4;
+    private static final int PATCH = 5;
+    private static final int DELETE = 6;
+
+    private final UserService delegate;
+    private final Timer[] successTimers = new Timer[METHODS.length];
+    private final Timer[] failureTimers = new Timer[METHODS.length];
+
+    @Autowired
+    public TimedUserService(ResilientUserService delegate, MeterRegistry meterRegistry) {
+        this((UserService) delegate, meterRegistry);
+    }
+
+    TimedUserService(UserService delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        for (int i = 0; i < METHODS.length; i++) {
+            successTimers[i] = timer(meterRegistry, METHODS[i], "success");
+            failureTimers[i] = timer(meterRegistry, METHODS[i], "failure");
+        }
+    }
+
+    @Override
+    public User createUser(User user) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            User created = delegate.createUser(user);
+            success = true;
+            return created;
+        } finally {
+            record(CREATE, start, success);
+        }
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            List<User> users = delegate.getAllUsers();
+            success = true;
+            return users;
+        } finally {
+            record(GET_ALL, start, success);
+        }
+    }
+
+    @Override
+    public Optional<User> getUserById(String id) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<User> user = delegate.getUserById(id);
+            success = true;
+            return user;
+        } finally {
+            record(GET_BY_ID, start, success);
+        }
+    }
+
+    @Override
+    public Optional<Long> getUserVersion(String id) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<Long> version = delegate.getUserVersion(id);
+            success = true;
+            return version;
+        } finally {
+            record(GET_VERSION, start, success);
+        }
+    }
+
+    @Override
+    public Optional<User> updateUser(String id, User user) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<User> updated = delegate.updateUser(id, user);
+            success = true;
+            return updated;
+        } finally {
+            record(UPDATE, start, success);
+        }
+    }
+
+    @Override
+    public Optional<User> updateUser(String id, User user, long expectedVersion) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<User> updated = delegate.updateUser(id, user, expectedVersion);
+            success = true;
+            return updated;
+        } finally {
+            record(UPDATE, start, success);
+        }
+    }
+
+    @Override
+    public Optional<PatchResult> patchUser(String id, UserPatch patch) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<PatchResult> result = delegate.patchUser(id, patch);
+            success = true;
+            return result;
+        } finally {
+            record(PATCH, start, success);
+        }
+    }
+
+    @Override
+    public Optional<PatchResult> patchUser(String id, UserPatch patch, long expectedVersion) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Optional<PatchResult> result = delegate.patchUser(id, patch, expectedVersion);
+            success = true;
+            return result;
+        } finally {
+            record(PATCH, start, success);
+        }
+    }
+
+    @Override
+    public boolean deleteUser(String id) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean deleted = delegate.deleteUser(id);
+            success = true;
+            return deleted;
+        } finally {
+            record(DELETE, start, success);
+        }
+    }
+
+    @Override
+    public boolean deleteUser(String id, long expectedVersion) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            boolean deleted = delegate.deleteUser(id, expectedVersion);
+            success = true;
+            return deleted;
+        } finally {
+            record(DELETE, start, success);
+        }
+    }
+
+    private void record(int method, long start, boolean success) {
+        Timer timer = success ? successTimers[method] : failureTimers[method];
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String method, String outcome) {
+        return Timer.builder("user.service")
+                .description("Latency of UserService calls")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
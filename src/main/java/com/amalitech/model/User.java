@@ -1,5 +1,6 @@
 package com.amalitech.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Max;
@@ -7,6 +8,7 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -59,6 +61,14 @@ public final class User {
             maximum = "100")
     private Integer age;
 
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Schema(description = "Document version, incremented on every change "
+                        + "and exposed as the ETag of the resource",
+            example = "3",
+            accessMode = Schema.AccessMode.READ_ONLY)
+    private Long version;
+
     /**
      * Default constructor.
      */
@@ -78,6 +88,22 @@ public final class User {
         this.age = age;
     }
 
+    /**
+     * Creates a detached copy of the given user.
+     *
+     * @param source the user to copy, may be {@code null}
+     * @return a new user with the same field values, or {@code null}
+     */
+    public static User copyOf(final User source) {
+        if (source == null) {
+            return null;
+        }
+        User copy = new User(source.name, source.email, source.age);
+        copy.id = source.id;
+        copy.version = source.version;
+        return copy;
+    }
+
     /**
      * Gets the user ID.
      *
@@ -149,4 +175,22 @@ public final class User {
     public void setAge(final Integer age) {
         this.age = age;
     }
+
+    /**
+     * Gets the document version.
+     *
+     * @return the version, or {@code null} if the user was never saved
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the document version.
+     *
+     * @param version the version to set
+     */
+    public void setVersion(final Long version) {
+        this.version = version;
+    }
 }
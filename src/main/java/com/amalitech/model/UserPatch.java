@@ -0,0 +1,164 @@
+package com.amalitech.model;
+
+import com.amalitech.exception.PatchValidationException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A validated JSON Merge Patch (RFC 7396) for a {@link User}.
+ *
+ * <p>Only the fields present in the patch document are type-checked
+ * and validated against the constraints declared on {@link User}, so a
+ * patch never has to repeat unchanged fields.</p>
+ */
+public final class UserPatch {
+
+    private static final String NAME = "name";
+    private static final String EMAIL = "email";
+    private static final String AGE = "age";
+
+    private static final Set<String> PATCHABLE_FIELDS = Set.of(NAME, EMAIL, AGE);
+    private static final Set<String> READ_ONLY_FIELDS = Set.of("id", "version");
+
+    private final Map<String, Object> changes;
+
+    private UserPatch(final Map<String, Object> changes) {
+        this.changes = Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Parses and validates a merge patch document.
+     *
+     * @param document the parsed JSON object
+     * @param validator the Bean Validation validator
+     * @return the validated patch
+     * @throws PatchValidationException if a field is unknown, read-only,
+     *         has the wrong type or violates a constraint
+     */
+    public static UserPatch from(final Map<String, Object> document, final Validator validator) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        Map<String, String> fieldErrors = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            String field = entry.getKey();
+            Object raw = entry.getValue();
+            if (READ_ONLY_FIELDS.contains(field)) {
+                fieldErrors.put(field, "Field is read-only");
+                continue;
+            }
+            if (!PATCHABLE_FIELDS.contains(field)) {
+                fieldErrors.put(field, "Unknown field");
+                continue;
+            }
+            Object value;
+            try {
+                value = AGE.equals(field) ? toAge(raw) : toText(raw);
+            } catch (IllegalArgumentException e) {
+                fieldErrors.put(field, e.getMessage());
+                continue;
+            }
+            Set<ConstraintViolation<User>> violations = validator.validateValue(User.class, field, value);
+            if (!violations.isEmpty()) {
+                fieldErrors.put(field, violations.iterator().next().getMessage());
+                continue;
+            }
+            changes.put(field, value);
+        }
+        if (!fieldErrors.isEmpty()) {
+            throw new PatchValidationException(fieldErrors);
+        }
+        return new UserPatch(changes);
+    }
+
+    /**
+     * Returns the fields whose patched value differs from the current
+     * state of the user.
+     *
+     * @param current the stored user
+     * @return the changed fields and their new values, in patch order
+     */
+    public Map<String, Object> changedFields(final User current) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        changes.forEach((field, value) -> {
+            if (!Objects.equals(currentValue(current, field), value)) {
+                changed.put(field, value);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Applies the given field values to a user.
+     *
+     * @param target the user to modify
+     * @param fields field values, as returned by {@link #changedFields(User)}
+     */
+    public static void apply(final User target, final Map<String, Object> fields) {
+        fields.forEach((field, value) -> {
+            switch (field) {
+                case NAME -> target.setName((String) value);
+                case EMAIL -> target.setEmail((String) value);
+                case AGE -> target.setAge((Integer) value);
+                default -> throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        });
+    }
+
+    /**
+     * Gets the patched email, if the patch sets one.
+     *
+     * @return the new email, or {@code null}
+     */
+    public String getEmail() {
+        return (String) changes.get(EMAIL);
+    }
+
+    /**
+     * Gets all fields set by the patch.
+     *
+     * @return an unmodifiable view of the patched fields
+     */
+    public Map<String, Object> getChanges() {
+        return changes;
+    }
+
+    private static Object currentValue(final User user, final String field) {
+        return switch (field) {
+            case NAME -> user.getName();
+            case EMAIL -> user.getEmail();
+            case AGE -> user.getAge();
+            default -> throw new IllegalArgumentException("Unknown field: " + field);
+        };
+    }
+
+    private static String toText(final Object raw) {
+        if (raw == null || raw instanceof String) {
+            return (String) raw;
+        }
+        throw new IllegalArgumentException("Must be a string");
+    }
+
+    private static Integer toAge(final Object raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (raw instanceof Integer || raw instanceof Long || raw instanceof Short
+                || raw instanceof BigInteger || raw instanceof BigDecimal
+                || raw instanceof Double || raw instanceof Float) {
+            BigDecimal number = new BigDecimal(raw.toString());
+            try {
+                return number.intValueExact();
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Age must be a whole number");
+            }
+        }
+        throw new IllegalArgumentException("Age must be a whole number");
+    }
+}
@@ -0,0 +1,33 @@
+package com.amalitech.outbox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sink that keeps published changes in memory, for tests and local runs.
+ */
+public class InMemoryOutboxSink implements OutboxSink {
+
+    private final List<OutboxEntry> entries = new ArrayList<>();
+
+    @Override
+    public synchronized void publish(final List<OutboxEntry> batch) {
+        entries.addAll(batch);
+    }
+
+    /**
+     * Lists everything published so far, in publication order.
+     *
+     * @return a copy of the published changes
+     */
+    public synchronized List<OutboxEntry> entries() {
+        return new ArrayList<>(entries);
+    }
+
+    /**
+     * Forgets everything published so far.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
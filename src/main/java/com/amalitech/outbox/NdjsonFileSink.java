@@ -0,0 +1,77 @@
+package com.amalitech.outbox;
+
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sink that appends each change as one JSON line to a file.
+ *
+ * <p>A batch is written with a single write and forced to disk before
+ * {@link #publish} returns, so a batch that was removed from the outbox
+ * is never lost. A line cut short by a crash is followed by the
+ * redelivered batch on a new line.</p>
+ */
+public class NdjsonFileSink implements OutboxSink {
+
+    private static final byte NEWLINE = '\n';
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates the sink, creating the file's directory if needed.
+     *
+     * @param file the file to append to
+     * @param objectMapper mapper used to write the entries
+     */
+    public NdjsonFileSink(final Path file, final ObjectMapper objectMapper) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create directory of " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void publish(final List<OutboxEntry> entries) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(entries.size() * 256 + 1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            if (position > 0 && !endsWithNewline(channel)) {
+                lines.write(NEWLINE);
+            }
+            for (OutboxEntry entry : entries) {
+                lines.writeBytes(objectMapper.writeValueAsBytes(entry));
+                lines.write(NEWLINE);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to " + file, e);
+        }
+    }
+
+    private static boolean endsWithNewline(final FileChannel channel) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, channel.size() - 1);
+        return last.get(0) == NEWLINE;
+    }
+}
@@ -0,0 +1,48 @@
+package com.amalitech.outbox;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A user change waiting in the outbox to be relayed downstream.
+ *
+ * @param id the entry ID, also the ID of the published message
+ * @param userId the affected user ID
+ * @param type the kind of change
+ * @param userVersion version of the user after the change, or one past the
+ *                    last version for deletions; orders the changes of a user
+ * @param occurredAt when the change was made
+ * @param before the user before the change, or {@code null} for creations
+ * @param after the user after the change, or {@code null} for deletions
+ */
+@Document(collection = OutboxEntry.COLLECTION)
+public record OutboxEntry(@Id String id, String userId, UserChangeEvent.Type type, long userVersion,
+                          Instant occurredAt, User before, User after) {
+
+    /** Collection holding the entries that have not been relayed yet. */
+    public static final String COLLECTION = "user_outbox";
+
+    /**
+     * Creates the entry for a change.
+     *
+     * @param event the change
+     * @param occurredAt when it was made
+     * @return the entry
+     */
+    public static OutboxEntry of(final UserChangeEvent event, final Instant occurredAt) {
+        return new OutboxEntry(new ObjectId().toHexString(), event.userId(), event.type(),
+                versionOf(event), occurredAt, event.before(), event.after());
+    }
+
+    private static long versionOf(final UserChangeEvent event) {
+        if (event.after() != null) {
+            return event.after().getVersion() != null ? event.after().getVersion() : 0L;
+        }
+        return event.before().getVersion() != null ? event.before().getVersion() + 1 : 1L;
+    }
+}
@@ -0,0 +1,45 @@
+package com.amalitech.outbox;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Health indicator telling whether user changes are recorded in the
+ * outbox, and so relayed.
+ *
+ * <p>An outbox enabled against a standalone server is {@code DOWN}, since
+ * every change is lost to the relay. An outbox disabled on purpose stays
+ * {@code UP}, with {@code recording: false} in its details.</p>
+ */
+@Component
+public class OutboxHealthIndicator implements HealthIndicator {
+
+    private final UserOutbox outbox;
+
+    /**
+     * Creates the indicator.
+     *
+     * @param outbox the outbox whose state is reported
+     */
+    public OutboxHealthIndicator(final UserOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public Health health() {
+        if (!outbox.isEnabled()) {
+            return Health.up()
+                    .withDetail("recording", false)
+                    .withDetail("reason", "Disabled by app.outbox.enabled=false")
+                    .build();
+        }
+        if (!outbox.transactionsSupported()) {
+            return Health.down()
+                    .withDetail("recording", false)
+                    .withDetail("reason", "MongoDB is a standalone server, which has no transactions")
+                    .build();
+        }
+        return Health.up().withDetail("recording", true).build();
+    }
+}
@@ -0,0 +1,300 @@
+package com.amalitech.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relays outbox entries to the {@link OutboxSink}, oldest first.
+ *
+ * <p>A single thread polls the outbox for a batch, publishes it and then
+ * removes it, so every committed change is delivered at least once: a
+ * failure or crash between publishing and removing delivers the batch
+ * again. Only the instance holding a lease in the
+ * {@code outbox_leases} collection relays, which keeps one user's changes
+ * from being published by two instances at once.</p>
+ *
+ * <p>Entry IDs are generated by the writing instance, so an earlier change
+ * of a user written by another instance can sort after a later one. Each
+ * batch is therefore widened to every pending entry of the users it
+ * touches, and those are published in {@code userVersion} order. The
+ * relay creates the {@code userId, userVersion} index that widening
+ * query needs before its first batch.</p>
+ *
+ * <p>Lag is published as {@code outbox.relay.lag}, the age of the oldest
+ * entry in the last batch, and {@code outbox.relay.delivery}, the time
+ * from each change to its publication.</p>
+ */
+@Component
+public class OutboxRelay implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    static final String LEASE_COLLECTION = "outbox_leases";
+    private static final String LEASE_ID = "user-outbox-relay";
+
+    private final MongoTemplate mongoTemplate;
+    private final OutboxSink sink;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Duration leaseTtl;
+    private final Clock clock;
+    private final String owner;
+
+    private boolean indexed;
+    private Instant leaseRenewAt = Instant.MIN;
+    private volatile Instant oldestPending;
+
+    private volatile Counter published;
+    private volatile Counter failures;
+    private volatile Timer delivery;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * Creates the relay.
+     *
+     * @param mongoTemplate template the outbox is read and cleared with
+     * @param sink destination of the changes
+     * @param enabled whether the outbox is in use
+     * @param batchSize maximum number of entries fetched per poll
+     * @param pollInterval wait after a poll that found less than a full batch
+     * @param leaseTtl how long the relay lease lasts without renewal
+     */
+    @Autowired
+    public OutboxRelay(final MongoTemplate mongoTemplate, final OutboxSink sink,
+                       @Value("${app.outbox.enabled:false}") final boolean enabled,
+                       @Value("${app.outbox.batch-size:500}") final int batchSize,
+                       @Value("${app.outbox.poll-interval:PT0.2S}") final Duration pollInterval,
+                       @Value("${app.outbox.lease-ttl:PT10S}") final Duration leaseTtl) {
+        this(mongoTemplate, sink, enabled, batchSize, pollInterval, leaseTtl, Clock.systemUTC(),
+                ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID());
+    }
+
+    OutboxRelay(final MongoTemplate mongoTemplate, final OutboxSink sink, final boolean enabled,
+                final int batchSize, final Duration pollInterval, final Duration leaseTtl,
+                final Clock clock, final String owner) {
+        this.mongoTemplate = mongoTemplate;
+        this.sink = sink;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.leaseTtl = leaseTtl;
+        this.clock = clock;
+        this.owner = owner;
+    }
+
+    /**
+     * Relays one batch if this instance holds the lease.
+     *
+     * @return the number of entries fetched, 0 if none or not the lease holder
+     * @throws RuntimeException if the batch could not be published or removed
+     */
+    int relayOnce() {
+        if (!indexed) {
+            createIndexes();
+        }
+        if (!holdLease()) {
+            oldestPending = null;
+            return 0;
+        }
+        List<OutboxEntry> batch = mongoTemplate.find(
+                new Query().with(Sort.by("_id")).limit(batchSize), OutboxEntry.class);
+        if (batch.isEmpty()) {
+            oldestPending = null;
+            return 0;
+        }
+        oldestPending = batch.stream().map(OutboxEntry::occurredAt).min(Comparator.naturalOrder()).orElse(null);
+
+        Set<String> userIds = new LinkedHashSet<>();
+        for (OutboxEntry entry : batch) {
+            userIds.add(entry.userId());
+        }
+        List<OutboxEntry> pending = mongoTemplate.find(
+                Query.query(Criteria.where("userId").in(userIds)), OutboxEntry.class);
+        List<OutboxEntry> ordered = orderByUser(userIds, batch, pending);
+
+        sink.publish(ordered);
+        List<String> ids = ordered.stream().map(OutboxEntry::id).toList();
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), OutboxEntry.class);
+
+        Instant now = clock.instant();
+        for (OutboxEntry entry : ordered) {
+            record(entry, now);
+        }
+        logger.debug("Relayed {} outbox entries for {} users", ordered.size(), userIds.size());
+        return batch.size();
+    }
+
+    /**
+     * Groups entries by user, in the order the users first appear in the
+     * batch, with each user's entries in version order.
+     */
+    static List<OutboxEntry> orderByUser(final Set<String> userIds, final List<OutboxEntry> batch,
+                                         final List<OutboxEntry> pending) {
+        Map<String, Map<String, OutboxEntry>> byUser = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            byUser.put(userId, new LinkedHashMap<>());
+        }
+        for (OutboxEntry entry : batch) {
+            byUser.get(entry.userId()).put(entry.id(), entry);
+        }
+        for (OutboxEntry entry : pending) {
+            Map<String, OutboxEntry> entries = byUser.get(entry.userId());
+            if (entries != null) {
+                entries.putIfAbsent(entry.id(), entry);
+            }
+        }
+        List<OutboxEntry> ordered = new ArrayList<>();
+        Comparator<OutboxEntry> byVersion = Comparator.comparingLong(OutboxEntry::userVersion)
+                .thenComparing(OutboxEntry::id);
+        for (Map<String, OutboxEntry> entries : byUser.values()) {
+            entries.values().stream().sorted(byVersion).forEach(ordered::add);
+        }
+        return ordered;
+    }
+
+    private void createIndexes() {
+        mongoTemplate.indexOps(OutboxEntry.class).createIndex(
+                new Index("userId", Sort.Direction.ASC).on("userVersion", Sort.Direction.ASC));
+        indexed = true;
+    }
+
+    /**
+     * Takes or renews the lease once half of it has elapsed.
+     */
+    private boolean holdLease() {
+        Instant now = clock.instant();
+        if (now.isBefore(leaseRenewAt)) {
+            return true;
+        }
+        Query query = Query.query(Criteria.where("_id").is(LEASE_ID)
+                .orOperator(Criteria.where("owner").is(owner), Criteria.where("expiresAt").lt(now)));
+        Update update = new Update().set("owner", owner).set("expiresAt", now.plus(leaseTtl));
+        try {
+            mongoTemplate.upsert(query, update, LEASE_COLLECTION);
+        } catch (DuplicateKeyException e) {
+            // Held by another instance, so the upsert tried to insert a second lease
+            leaseRenewAt = Instant.MIN;
+            return false;
+        }
+        if (leaseRenewAt == Instant.MIN) {
+            logger.info("Acquired outbox relay lease as {}", owner);
+        }
+        leaseRenewAt = now.plus(leaseTtl.dividedBy(2));
+        return true;
+    }
+
+    private void record(final OutboxEntry entry, final Instant now) {
+        Counter counter = published;
+        if (counter != null) {
+            counter.increment();
+            delivery.record(Duration.between(entry.occurredAt(), now));
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            long wait;
+            try {
+                wait = relayOnce() < batchSize ? pollInterval.toMillis() : 0;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to relay outbox entries; retrying in {}: {}", pollInterval, e.getMessage());
+                Counter counter = failures;
+                if (counter != null) {
+                    counter.increment();
+                }
+                wait = pollInterval.toMillis();
+            }
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "outbox-relay");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        failures = Counter.builder("outbox.relay.failures")
+                .description("Outbox batches that failed to publish and will be retried")
+                .register(registry);
+        delivery = Timer.builder("outbox.relay.delivery")
+                .description("Time from a user change to its publication")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("outbox.relay.lag", this, relay -> {
+            Instant oldest = relay.oldestPending;
+            return oldest == null ? 0 : Duration.between(oldest, relay.clock.instant()).toMillis() / 1000.0;
+        })
+                .description("Age of the oldest entry in the last outbox batch")
+                .baseUnit("seconds")
+                .register(registry);
+        published = Counter.builder("outbox.relay.published")
+                .description("User changes published from the outbox")
+                .register(registry);
+    }
+}
@@ -0,0 +1,25 @@
+package com.amalitech.outbox;
+
+import java.util.List;
+
+/**
+ * Destination of relayed user changes.
+ *
+ * <p>A batch is removed from the outbox only after {@link #publish}
+ * returns, so a sink must not return before the batch is durably
+ * handed off. Any batch may be delivered again after a failure or a
+ * restart; consumers deduplicate by entry ID or skip changes whose
+ * {@code userVersion} they have already seen.</p>
+ */
+@FunctionalInterface
+public interface OutboxSink {
+
+    /**
+     * Publishes a batch. Changes of the same user are in the order they
+     * were made.
+     *
+     * @param entries the changes
+     * @throws RuntimeException if the batch was not published
+     */
+    void publish(List<OutboxEntry> entries);
+}
@@ -0,0 +1,262 @@
+package com.amalitech.outbox;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.resilience.Retrier;
+import com.amalitech.resilience.RetryBudget;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.connection.ClusterType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.TransientClientSessionException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Writes user changes and their outbox entries in one MongoDB transaction.
+ *
+ * <p>A write path runs its change through {@link #write} and records
+ * each resulting event with {@link #add}. Either both the user document
+ * and the outbox entry are committed, or neither is, so
+ * {@link OutboxRelay} sees exactly the committed changes. A transaction
+ * aborted by a write conflict is run again, up to three times in all,
+ * after a short jittered backoff and only while the retry budget shared
+ * with every other MongoDB retry allows it. Listeners of {@link UserChangeEvent} run after the commit, so an
+ * aborted attempt is never observed.</p>
+ *
+ * <p>The outbox is opt-in with {@code app.outbox.enabled=true}, since
+ * transactions need a replica set or sharded cluster. Once enabled, a
+ * standalone server is refused rather than silently left unrecorded:
+ * startup fails if the server is known to be standalone, and if it could
+ * not be reached at startup, every change fails once it turns out to be.
+ * {@link OutboxHealthIndicator} is then {@code DOWN}. While the outbox is
+ * disabled, changes are written without a transaction, no outbox entry is
+ * recorded and they are counted as {@code outbox.unrecorded}.</p>
+ */
+@Component
+public class UserOutbox implements SmartLifecycle, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserOutbox.class);
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String STANDALONE_MESSAGE = "app.outbox.enabled is true, but MongoDB is a standalone "
+            + "server, which has no transactions; run a replica set or set app.outbox.enabled=false";
+
+    /** Write conflicts clear as soon as the other transaction ends, so backoffs stay short. */
+    private static final Duration BASE_DELAY = Duration.ofMillis(5);
+    private static final Duration MAX_DELAY = Duration.ofMillis(100);
+
+    private final MongoTemplate mongoTemplate;
+    private final TransactionTemplate transactions;
+    private final Retrier retrier;
+    private final BooleanSupplier transactionsSupported;
+    private final boolean enabled;
+    private final Clock clock;
+    private final AtomicBoolean warnedStandalone = new AtomicBoolean();
+
+    private volatile Counter unrecorded;
+    private volatile boolean running;
+
+    /**
+     * Creates the outbox.
+     *
+     * @param mongoTemplate template the entries are inserted with
+     * @param transactionManager manager of the MongoDB transactions
+     * @param mongoClient client whose cluster type tells whether transactions are available
+     * @param retryBudget budget every retry of an aborted transaction is drawn from
+     * @param enabled whether changes are recorded in the outbox
+     */
+    @Autowired
+    public UserOutbox(final MongoTemplate mongoTemplate, final MongoTransactionManager transactionManager,
+                      final MongoClient mongoClient, final RetryBudget retryBudget,
+                      @Value("${app.outbox.enabled:false}") final boolean enabled) {
+        this(mongoTemplate, transactionManager,
+                () -> mongoClient.getClusterDescription().getType() != ClusterType.STANDALONE,
+                new Retrier("outbox", MAX_ATTEMPTS, BASE_DELAY, MAX_DELAY, retryBudget, UserOutbox::isTransient),
+                enabled, Clock.systemUTC());
+    }
+
+    UserOutbox(final MongoTemplate mongoTemplate, final PlatformTransactionManager transactionManager,
+               final BooleanSupplier transactionsSupported, final Retrier retrier, final boolean enabled,
+               final Clock clock) {
+        this.mongoTemplate = mongoTemplate;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.retrier = retrier;
+        this.transactionsSupported = transactionsSupported;
+        this.enabled = enabled;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs a change, in a transaction when the outbox is in use.
+     *
+     * @param change the writes and the {@link #add} calls for their events
+     * @param <T> the result type
+     * @return the change's result
+     * @throws IllegalStateException if the outbox is enabled against a
+     *                               standalone server
+     */
+    public <T> T write(final Supplier<T> change) {
+        if (!enabled) {
+            return change.get();
+        }
+        if (!transactionsSupported.getAsBoolean()) {
+            if (warnedStandalone.compareAndSet(false, true)) {
+                logger.error(STANDALONE_MESSAGE);
+            }
+            throw new IllegalStateException(STANDALONE_MESSAGE);
+        }
+        // An aborted transaction applied nothing, so even a non-idempotent change can run again
+        return retrier.execute(() -> transactions.execute(status -> change.get()));
+    }
+
+    /**
+     * Records a change in the outbox, as part of the transaction of the
+     * enclosing {@link #write}. Outside a transaction nothing is recorded.
+     *
+     * @param event the change
+     */
+    public void add(final UserChangeEvent event) {
+        if (isRecording()) {
+            mongoTemplate.insert(OutboxEntry.of(event, clock.instant()));
+        } else {
+            countUnrecorded(1);
+        }
+    }
+
+    /**
+     * Records several changes in the outbox with one insert, as part of
+     * the transaction of the enclosing {@link #write}. Outside a
+     * transaction nothing is recorded.
+     *
+     * @param events the changes
+     */
+    public void addAll(final Collection<UserChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (isRecording()) {
+            Instant now = clock.instant();
+            mongoTemplate.insert(events.stream().map(event -> OutboxEntry.of(event, now)).toList(),
+                    OutboxEntry.class);
+        } else {
+            countUnrecorded(events.size());
+        }
+    }
+
+    /**
+     * Tells whether changes made now are recorded, that is whether they run
+     * in the transaction of an enclosing {@link #write}. Within it, a failed
+     * write aborts every other write of the transaction.
+     *
+     * @return {@code true} inside an outbox transaction
+     */
+    public boolean isRecording() {
+        return TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * Tells whether changes are meant to be recorded in the outbox.
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Tells whether the server supports transactions, as far as is known.
+     * Before the first connection the cluster type is unknown, and
+     * transactions are assumed.
+     */
+    boolean transactionsSupported() {
+        return transactionsSupported.getAsBoolean();
+    }
+
+    /**
+     * Checks that the outbox can record changes, and fails startup if it
+     * is enabled against a standalone server. When the server cannot be
+     * reached yet, the check is left to the first change, which fails the
+     * same way.
+     *
+     * @throws IllegalStateException if the server has no transactions
+     */
+    @Override
+    public void start() {
+        running = true;
+        if (!enabled) {
+            logger.warn("The outbox is disabled by app.outbox.enabled=false; user changes are not relayed");
+            return;
+        }
+        try {
+            // Connects, so that the cluster type is known
+            mongoTemplate.executeCommand(new Document("hello", 1));
+        } catch (RuntimeException e) {
+            logger.warn("Could not reach MongoDB to check for transactions; checking again on the first change: {}",
+                    e.getMessage());
+            return;
+        }
+        if (!transactionsSupported.getAsBoolean()) {
+            running = false;
+            throw new IllegalStateException(STANDALONE_MESSAGE);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        unrecorded = Counter.builder("outbox.unrecorded")
+                .description("User changes written without an outbox entry, which are never relayed")
+                .register(registry);
+        retrier.bindTo(registry);
+    }
+
+    private void countUnrecorded(final int changes) {
+        Counter counter = unrecorded;
+        if (counter != null) {
+            counter.increment(changes);
+        }
+    }
+
+    /**
+     * Tells whether a failed transaction was aborted by the server and can
+     * be run again as a whole.
+     */
+    static boolean isTransient(final Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientClientSessionException
+                    || cause instanceof MongoException mongo
+                    && mongo.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,265 @@
+package com.amalitech.resilience;
+
+import com.amalitech.exception.CircuitOpenException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Count-based circuit breaker.
+ *
+ * <p>While closed, the outcome of the last {@code windowSize} calls is
+ * kept in a ring; once at least {@code minimumCalls} have been recorded
+ * and the share of failures reaches the threshold, the breaker opens.
+ * Only failures matching the failure predicate count; anything else is
+ * the caller's problem, not the dependency's. Calls record their outcome
+ * without a lock: each takes the next slot of the ring and adjusts an
+ * atomic failure count by the outcome it replaced. The state, the time it
+ * was entered and the window are swapped as one value, so closing the
+ * breaker starts a fresh window.</p>
+ *
+ * <p>While open, calls fail immediately with
+ * {@link CircuitOpenException}. The first call after the open duration
+ * moves the breaker to half-open and starts the probe on the probe
+ * executor instead of risking a live request; calls keep failing fast
+ * until the probe answers. A successful probe closes the breaker with
+ * an empty window. A failed probe, or one that does not answer within the
+ * probe timeout, opens it again for another period.</p>
+ */
+public final class CircuitBreaker implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Breaker states.
+     */
+    public enum State {
+        /** Calls pass through. */
+        CLOSED,
+        /** Calls are rejected. */
+        OPEN,
+        /** Calls are rejected while the probe runs. */
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final Runnable probe;
+    private final Executor probeExecutor;
+    private final Duration probeTimeout;
+    private final Predicate<Throwable> failurePredicate;
+    private final Clock clock;
+
+    private final Map<State, LongAdder> transitions = new EnumMap<>(State.class);
+    private final LongAdder rejected = new LongAdder();
+
+    private final AtomicReference<Status> status;
+
+    /**
+     * A state, when it was entered and, while closed, the recent outcomes.
+     */
+    private record Status(State state, long since, Window window) {
+    }
+
+    /**
+     * Ring of the last calls' outcomes, 1 for a failure.
+     */
+    private static final class Window {
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Window(final int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+    }
+
+    /**
+     * Creates a breaker.
+     *
+     * @param name name used in logs, errors and metric tags
+     * @param windowSize number of recent calls the failure rate is based on
+     * @param minimumCalls calls needed before the breaker may open
+     * @param failureRateThreshold failure share, between 0 and 1, that opens the breaker
+     * @param openDuration how long the breaker stays open before probing
+     * @param probe health check run when half-open; throws on failure
+     * @param probeExecutor executor the probe runs on
+     * @param probeTimeout how long the probe may take before it counts as failed
+     * @param failurePredicate which failures count against the dependency
+     * @param clock clock used for the open duration
+     */
+    public CircuitBreaker(final String name, final int windowSize, final int minimumCalls,
+                          final double failureRateThreshold, final Duration openDuration,
+                          final Runnable probe, final Executor probeExecutor, final Duration probeTimeout,
+                          final Predicate<Throwable> failurePredicate, final Clock clock) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Minimum calls must be between 1 and the window size");
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.probe = probe;
+        this.probeExecutor = probeExecutor;
+        this.probeTimeout = probeTimeout;
+        this.failurePredicate = failurePredicate;
+        this.clock = clock;
+        this.status = new AtomicReference<>(new Status(State.CLOSED, clock.millis(), new Window(windowSize)));
+        for (State target : State.values()) {
+            transitions.put(target, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs a call through the breaker.
+     *
+     * @param call the call
+     * @param <T> the result type
+     * @return the call's result
+     * @throws CircuitOpenException if the breaker is not closed
+     */
+    public <T> T execute(final Supplier<T> call) {
+        acquire();
+        try {
+            T result = call.get();
+            record(false);
+            return result;
+        } catch (RuntimeException e) {
+            record(failurePredicate.test(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the current state.
+     *
+     * @return the state
+     */
+    public State getState() {
+        return status.get().state();
+    }
+
+    /**
+     * Gets the breaker name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Gauge.builder("circuit.breaker.state", this, breaker -> breaker.getState().ordinal())
+                .tag("name", name)
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .register(registry);
+        transitions.forEach((target, count) ->
+                FunctionCounter.builder("circuit.breaker.transitions", count, LongAdder::sum)
+                        .tag("name", name).tag("state", target.name().toLowerCase())
+                        .register(registry));
+        FunctionCounter.builder("circuit.breaker.rejected", rejected, LongAdder::sum)
+                .tag("name", name).register(registry);
+    }
+
+    private void acquire() {
+        Status current = status.get();
+        if (current.state() == State.CLOSED) {
+            return;
+        }
+        long remaining = current.since() + openDuration.toMillis() - clock.millis();
+        if (current.state() == State.OPEN && remaining <= 0) {
+            Status halfOpen = transition(current, State.HALF_OPEN);
+            if (halfOpen != null) {
+                startProbe(halfOpen);
+            }
+        }
+        rejected.increment();
+        throw new CircuitOpenException(name, Duration.ofMillis(Math.max(remaining, 1000)));
+    }
+
+    /**
+     * Runs the probe, and settles the half-open state it was started for
+     * once it answers or times out; a late answer finds the state changed
+     * and is ignored.
+     */
+    private void startProbe(final Status halfOpen) {
+        CompletableFuture<Void> answer;
+        try {
+            answer = CompletableFuture.runAsync(probe, probeExecutor);
+        } catch (RuntimeException e) {
+            logger.warn("Circuit breaker '{}' could not start its probe: {}", name, e.getMessage());
+            transition(halfOpen, State.OPEN);
+            return;
+        }
+        answer.orTimeout(probeTimeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                logger.info("Circuit breaker '{}' probe succeeded", name);
+                transition(halfOpen, State.CLOSED);
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            logger.warn("Circuit breaker '{}' probe failed: {}", name, cause instanceof TimeoutException
+                    ? "no answer within " + probeTimeout : cause.getMessage());
+            transition(halfOpen, State.OPEN);
+        });
+    }
+
+    private void record(final boolean failure) {
+        Status current = status.get();
+        if (current.state() != State.CLOSED) {
+            return;
+        }
+        Window window = current.window();
+        long call = window.calls.getAndIncrement();
+        int outcome = failure ? 1 : 0;
+        int replaced = window.outcomes.getAndSet((int) (call % windowSize), outcome);
+        int failures = window.failures.addAndGet(outcome - replaced);
+        long recorded = Math.min(call + 1, windowSize);
+        if (failure && recorded >= minimumCalls && failures >= failureRateThreshold * recorded
+                && transition(current, State.OPEN) != null) {
+            logger.warn("Circuit breaker '{}' opened after {} failures in {} calls", name, failures, recorded);
+        }
+    }
+
+    /**
+     * Moves from a status to a state, unless another thread moved first.
+     *
+     * @return the new status, or {@code null} if the status had changed
+     */
+    private Status transition(final Status from, final State to) {
+        Status next = new Status(to, clock.millis(), to == State.CLOSED ? new Window(windowSize) : null);
+        if (!status.compareAndSet(from, next)) {
+            return null;
+        }
+        transitions.get(to).increment();
+        logger.info("Circuit breaker '{}' moved from {} to {}", name, from.state(), to);
+        return next;
+    }
+}
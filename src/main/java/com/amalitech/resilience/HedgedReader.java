@@ -0,0 +1,218 @@
+package com.amalitech.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Sends a backup request when a read is slower than usual, and takes
+ * whichever answer arrives first.
+ *
+ * <p>The primary read runs on the executor while the caller waits up to
+ * the hedge delay: the 95th percentile of recent primary latencies,
+ * clamped between a floor and a ceiling, so only reads already slower
+ * than 19 in 20 of their peers are hedged. The hedge read is sent to a
+ * different member, and the first successful result wins; if one read
+ * fails, the other is awaited. A hedge that finds nothing is not an
+ * answer, since the member it read from may not have replicated the
+ * document yet, so the primary read is awaited instead. Hedges are
+ * rationed by a budget that
+ * allows at most a fixed share of reads to be duplicated, so a slow
+ * cluster is never hit with twice the load.</p>
+ *
+ * <p>Latencies are kept in a ring of recent samples; the percentile is
+ * recomputed every {@value #RECOMPUTE_EVERY} samples by the thread that
+ * records it. When disabled, reads run on the caller's thread.</p>
+ */
+public final class HedgedReader implements MeterBinder {
+
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 128;
+    private static final int MIN_SAMPLES = 100;
+
+    private final boolean enabled;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+    private final Executor executor;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+    private final AtomicInteger recorded = new AtomicInteger();
+    private volatile long delayNanos;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * Creates a reader.
+     *
+     * @param enabled whether reads are hedged at all
+     * @param minDelay smallest hedge delay
+     * @param maxDelay largest hedge delay, also used until enough samples exist
+     * @param budget budget of hedges relative to reads
+     * @param executor executor the reads run on
+     */
+    public HedgedReader(final boolean enabled, final Duration minDelay, final Duration maxDelay,
+                        final RetryBudget budget, final Executor executor) {
+        this.enabled = enabled;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.budget = budget;
+        this.executor = executor;
+        this.delayNanos = maxDelayNanos;
+    }
+
+    /**
+     * Performs a read, hedging it if the first attempt is slow.
+     *
+     * @param primary the regular read
+     * @param hedge the same read, routed to another member
+     * @param <T> the result type
+     * @return the first successful result, where a {@code null} from the
+     *         hedge does not count as one
+     */
+    public <T> T read(final Supplier<T> primary, final Supplier<T> hedge) {
+        if (!enabled) {
+            return primary.get();
+        }
+        reads.increment();
+        budget.recordRequest();
+        CompletableFuture<T> first;
+        try {
+            first = timed(primary);
+        } catch (RejectedExecutionException e) {
+            return primary.get();
+        }
+        try {
+            return first.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return hedgeOrWait(first, hedge);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading", e);
+        }
+    }
+
+    /**
+     * Gets the current hedge delay.
+     *
+     * @return the delay
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("hedge.reads", reads, LongAdder::sum)
+                .description("Reads eligible for hedging").register(registry);
+        FunctionCounter.builder("hedge.sent", hedges, LongAdder::sum)
+                .description("Hedge requests sent").register(registry);
+        FunctionCounter.builder("hedge.wins", hedgeWins, LongAdder::sum)
+                .description("Hedge requests that answered first").register(registry);
+        Gauge.builder("hedge.delay", this, reader -> reader.delayNanos / 1_000_000.0)
+                .baseUnit("milliseconds").register(registry);
+    }
+
+    private <T> T hedgeOrWait(final CompletableFuture<T> first, final Supplier<T> hedge) {
+        CompletableFuture<T> second = null;
+        if (budget.tryAcquire()) {
+            try {
+                second = CompletableFuture.supplyAsync(hedge, executor);
+                hedges.increment();
+            } catch (RejectedExecutionException e) {
+                second = null;
+            }
+        }
+        CompletableFuture<T> winner = second == null ? first : firstSuccess(first, second);
+        try {
+            return winner.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private <T> CompletableFuture<T> firstSuccess(final CompletableFuture<T> first,
+                                                  final CompletableFuture<T> hedged) {
+        // First success wins; a failure only counts once both reads have failed
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        first.whenComplete((result, error) -> {
+            if (error == null) {
+                winner.complete(result);
+            } else {
+                hedged.whenComplete((ignored, hedgeError) -> winner.completeExceptionally(error));
+            }
+        });
+        hedged.whenComplete((result, error) -> {
+            if (error == null && result != null) {
+                if (winner.complete(result)) {
+                    hedgeWins.increment();
+                }
+            } else {
+                // Not found on a secondary may only mean not replicated yet
+                first.whenComplete((ignored, firstError) -> {
+                    if (firstError != null) {
+                        winner.completeExceptionally(firstError);
+                    }
+                });
+            }
+        });
+        return winner;
+    }
+
+    private <T> CompletableFuture<T> timed(final Supplier<T> read) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return read.get();
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }, executor);
+    }
+
+    private void record(final long nanos) {
+        int count = recorded.incrementAndGet();
+        latencies.set((count - 1) & (SAMPLES - 1), nanos);
+        if (count >= MIN_SAMPLES && count % RECOMPUTE_EVERY == 0) {
+            int size = Math.min(count, SAMPLES);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            long p95 = sorted[(int) Math.ceil(size * 0.95) - 1];
+            delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, p95));
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable cause) {
+        Throwable error = cause instanceof CompletionException && cause.getCause() != null
+                ? cause.getCause() : cause;
+        if (error instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        return new IllegalStateException(error);
+    }
+}
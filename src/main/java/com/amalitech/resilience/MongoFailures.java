@@ -0,0 +1,75 @@
+package com.amalitech.resilience;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * Classifies exceptions raised by Mongo data access.
+ */
+public final class MongoFailures {
+
+    private MongoFailures() {
+    }
+
+    /**
+     * Tells whether a failure means the database could not be reached or
+     * did not answer in time, as opposed to rejecting the request itself
+     * (duplicate keys, version conflicts, validation).
+     *
+     * <p>Both driver exceptions and the Spring exceptions
+     * {@code MongoTemplate} translates them into are recognised, anywhere
+     * in the cause chain.</p>
+     *
+     * @param ex the failure
+     * @return {@code true} if the database is unavailable
+     */
+    public static boolean isUnavailable(final Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoSocketException
+                    || cause instanceof MongoTimeoutException
+                    || cause instanceof MongoExecutionTimeoutException
+                    || cause instanceof MongoNotPrimaryException
+                    || cause instanceof MongoNodeIsRecoveringException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof QueryTimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a failure is likely to go away on its own, so that an
+     * idempotent operation may be retried: the database was unavailable,
+     * or the server labelled the error as retryable, as it does during a
+     * primary election.
+     *
+     * @param ex the failure
+     * @return {@code true} if a retry may succeed
+     */
+    public static boolean isTransient(final Throwable ex) {
+        if (isUnavailable(ex)) {
+            return true;
+        }
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongo
+                    && (mongo.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)
+                        || mongo.hasErrorLabel("RetryableWriteError"))) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
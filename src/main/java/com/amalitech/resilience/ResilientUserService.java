@@ -0,0 +1,153 @@
+package com.amalitech.resilience;
+
+import com.amalitech.cache.CachedUser;
+import com.amalitech.cache.UserCache;
+import com.amalitech.exception.CircuitOpenException;
+import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import com.amalitech.service.PatchResult;
+import com.amalitech.service.UserService;
+import com.amalitech.service.UserServiceImpl;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * {@link UserService} that guards {@link UserServiceImpl} with the Mongo
+ * circuit breaker and retries.
+ *
+ * <p>Every call goes through the breaker, so once the database is known
+ * to be down requests fail fast with a 503 instead of each waiting for
+ * the driver's timeouts. Idempotent calls are retried inside the breaker
+ * on transient failures, within the shared retry budget: reads, and
+ * creates, whose ID is assigned before the first attempt so a retry can
+ * ask the primary whether a previous attempt was applied. Other writes
+ * are not retried, since repeating a conditional update or a delete
+ * whose reply was lost would report a conflict or a missing user. Reads
+ * by ID are answered from the cache even past its TTL when the breaker
+ * is open or the database cannot be reached, and the response is
+ * labelled stale by {@link StaleResponseAdvice}. Writes are never
+ * faked.</p>
+ */
+@Service
+public class ResilientUserService implements UserService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ResilientUserService.class);
+    
+    private final UserServiceImpl delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Retrier retrier;
+    private final UserCache userCache;
+    
+    public ResilientUserService(UserServiceImpl delegate, CircuitBreaker circuitBreaker, Retrier retrier,
+                                UserCache userCache) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.retrier = retrier;
+        this.userCache = userCache;
+    }
+    
+    @Override
+    public User createUser(User user) {
+        // The caller's object is left as it was, whatever the attempts assign to it
+        User copy = User.copyOf(user);
+        if (copy.getId() != null) {
+            // A caller-chosen ID may belong to someone else, so a retry could not tell it applied
+            return circuitBreaker.execute(() -> delegate.createUser(copy));
+        }
+        String id = new ObjectId().toHexString();
+        copy.setId(id);
+        AtomicBoolean attempted = new AtomicBoolean();
+        return withRetries(() -> {
+            // The cache and secondaries may not have seen an insert whose reply was lost
+            if (attempted.getAndSet(true) && delegate.existsOnPrimary(id)) {
+                logger.info("Earlier attempt to create user with ID: {} was applied", id);
+                // No one has been given the new ID yet, so the user is still as inserted
+                copy.setVersion(0L);
+                return copy;
+            }
+            return delegate.createUser(copy);
+        });
+    }
+    
+    @Override
+    public List<User> getAllUsers() {
+        return withRetries(delegate::getAllUsers);
+    }
+    
+    @Override
+    public Optional<User> getUserById(String id) {
+        try {
+            return withRetries(() -> delegate.getUserById(id));
+        } catch (RuntimeException e) {
+            if (!isUnavailable(e)) {
+                throw e;
+            }
+            Optional<CachedUser> stale = userCache.getStale(id);
+            if (stale.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Database unavailable; serving user with ID: {} from cache, {}s old",
+                id, stale.get().age().toSeconds());
+            StaleResponseAdvice.markStale(stale.get().age());
+            return Optional.of(stale.get().user());
+        }
+    }
+    
+    @Override
+    public Optional<Long> getUserVersion(String id) {
+        try {
+            return withRetries(() -> delegate.getUserVersion(id));
+        } catch (RuntimeException e) {
+            if (!isUnavailable(e)) {
+                throw e;
+            }
+            // Unknown version: the caller falls through to a full read, which may be served stale
+            return Optional.empty();
+        }
+    }
+    
+    @Override
+    public Optional<User> updateUser(String id, User user) {
+        return circuitBreaker.execute(() -> delegate.updateUser(id, user));
+    }
+    
+    @Override
+    public Optional<User> updateUser(String id, User user, long expectedVersion) {
+        return circuitBreaker.execute(() -> delegate.updateUser(id, user, expectedVersion));
+    }
+    
+    @Override
+    public Optional<PatchResult> patchUser(String id, UserPatch patch) {
+        return circuitBreaker.execute(() -> delegate.patchUser(id, patch));
+    }
+    
+    @Override
+    public Optional<PatchResult> patchUser(String id, UserPatch patch, long expectedVersion) {
+        return circuitBreaker.execute(() -> delegate.patchUser(id, patch, expectedVersion));
+    }
+    
+    @Override
+    public boolean deleteUser(String id) {
+        return circuitBreaker.execute(() -> delegate.deleteUser(id));
+    }
+    
+    @Override
+    public boolean deleteUser(String id, long expectedVersion) {
+        return circuitBreaker.execute(() -> delegate.deleteUser(id, expectedVersion));
+    }
+    
+    private <T> T withRetries(Supplier<T> call) {
+        return circuitBreaker.execute(() -> retrier.execute(call));
+    }
+    
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof CircuitOpenException || MongoFailures.isUnavailable(e);
+    }
+}
@@ -0,0 +1,137 @@
+package com.amalitech.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Retries idempotent calls that failed transiently.
+ *
+ * <p>Delays grow exponentially from the base delay up to the maximum,
+ * with full jitter: each delay is drawn uniformly between zero and the
+ * exponential bound, so clients that failed together do not retry in
+ * lockstep. Every retry must also be granted by the shared
+ * {@link RetryBudget}. Only call this for operations that are safe to
+ * run more than once.</p>
+ */
+public final class Retrier implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(Retrier.class);
+
+    private final String name;
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+    private final Predicate<Throwable> retryable;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    /**
+     * Creates a retrier.
+     *
+     * @param name name used in logs and metric tags
+     * @param maxAttempts attempts per call, including the first
+     * @param baseDelay upper bound of the first delay
+     * @param maxDelay upper bound of any delay
+     * @param budget the shared retry budget
+     * @param retryable which failures may be retried
+     */
+    public Retrier(final String name, final int maxAttempts, final Duration baseDelay, final Duration maxDelay,
+                   final RetryBudget budget, final Predicate<Throwable> retryable) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required");
+        }
+        this.name = name;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.budget = budget;
+        this.retryable = retryable;
+    }
+
+    /**
+     * Runs a call, retrying transient failures.
+     *
+     * @param call the idempotent call
+     * @param <T> the result type
+     * @return the call's result
+     */
+    public <T> T execute(final Supplier<T> call) {
+        budget.recordRequest();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = call.get();
+                if (attempt > 1) {
+                    recovered.increment();
+                }
+                return result;
+            } catch (RuntimeException e) {
+                if (!retryable.test(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+                if (!budget.tryAcquire()) {
+                    budgetExhausted.increment();
+                    logger.warn("Retry budget '{}' exhausted; not retrying: {}", name, e.getMessage());
+                    throw e;
+                }
+                retries.increment();
+                logger.debug("Retrying '{}' call after attempt {} failed: {}", name, attempt, e.getMessage());
+                if (!backOff(attempt)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("retry.calls", retries, LongAdder::sum)
+                .tag("name", name).tag("result", "retried").register(registry);
+        FunctionCounter.builder("retry.calls", recovered, LongAdder::sum)
+                .tag("name", name).tag("result", "recovered").register(registry);
+        FunctionCounter.builder("retry.calls", exhausted, LongAdder::sum)
+                .tag("name", name).tag("result", "attempts-exhausted").register(registry);
+        FunctionCounter.builder("retry.budget.exhausted", budgetExhausted, LongAdder::sum)
+                .tag("name", name).register(registry);
+    }
+
+    /**
+     * Sleeps before the next attempt.
+     *
+     * @return {@code false} if interrupted
+     */
+    private boolean backOff(final int attempt) {
+        long bound = baseDelayNanos;
+        for (int i = 1; i < attempt && bound < maxDelayNanos; i++) {
+            bound <<= 1;
+        }
+        bound = Math.min(bound, maxDelayNanos);
+        if (bound <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.amalitech.resilience;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caps retries at a fraction of recent traffic.
+ *
+ * <p>Per-call retry limits still multiply load during an outage: with
+ * three attempts per call, a failing database sees three times the
+ * requests. The budget instead allows, over a sliding window, at most
+ * {@code ratio} retries per request plus a small fixed allowance so that
+ * low-traffic periods can still retry. Once the budget is spent, failures
+ * are returned to the caller immediately.</p>
+ *
+ * <p>Counts are kept in a ring of time buckets updated without locking;
+ * a bucket is reset when the clock moves past it. Races at bucket
+ * boundaries can lose an increment, which only makes the budget slightly
+ * more or less generous for an instant.</p>
+ */
+public final class RetryBudget {
+
+    private static final int BUCKETS = 10;
+
+    private final double ratio;
+    private final long minRetries;
+    private final long bucketMillis;
+    private final Clock clock;
+
+    private final AtomicLongArray epochs = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray requests = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray retries = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Creates a budget.
+     *
+     * @param ratio retries allowed per request
+     * @param minRetries retries always allowed per window
+     * @param window the sliding window
+     * @param clock clock used for the window
+     */
+    public RetryBudget(final double ratio, final long minRetries, final Duration window, final Clock clock) {
+        this.ratio = ratio;
+        this.minRetries = minRetries;
+        this.bucketMillis = Math.max(1, window.toMillis() / BUCKETS);
+        this.clock = clock;
+    }
+
+    /**
+     * Records a request, which earns the budget {@code ratio} retries.
+     */
+    public void recordRequest() {
+        requests.incrementAndGet(bucket(clock.millis()));
+    }
+
+    /**
+     * Withdraws one retry if the budget allows it.
+     *
+     * @return {@code true} if the caller may retry
+     */
+    public boolean tryAcquire() {
+        long now = clock.millis();
+        int current = bucket(now);
+        long oldest = now / bucketMillis - BUCKETS;
+        long totalRequests = 0;
+        long totalRetries = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (epochs.get(i) > oldest) {
+                totalRequests += requests.get(i);
+                totalRetries += retries.get(i);
+            }
+        }
+        if (totalRetries + 1 > ratio * totalRequests + minRetries) {
+            return false;
+        }
+        retries.incrementAndGet(current);
+        return true;
+    }
+
+    private int bucket(final long now) {
+        long epoch = now / bucketMillis;
+        int index = (int) (epoch % BUCKETS);
+        long seen = epochs.get(index);
+        if (seen != epoch && epochs.compareAndSet(index, seen, epoch)) {
+            requests.set(index, 0);
+            retries.set(index, 0);
+        }
+        return index;
+    }
+}
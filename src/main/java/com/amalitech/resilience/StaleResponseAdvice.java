@@ -0,0 +1,68 @@
+package com.amalitech.resilience;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.time.Duration;
+
+/**
+ * Labels responses built from stale cached data.
+ *
+ * <p>Data access code that falls back to an expired cache entry calls
+ * {@link #markStale(Duration)}; when the response body is written, this
+ * advice adds {@code Warning: 110} and an {@code Age} header so clients
+ * can tell the data may be out of date (RFC 9111).</p>
+ */
+@RestControllerAdvice
+public class StaleResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    /** Response header carrying the staleness warning. */
+    public static final String WARNING_HEADER = "Warning";
+
+    /** Warning sent with stale responses. */
+    public static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    private static final String STALE_AGE_ATTRIBUTE = StaleResponseAdvice.class.getName() + ".age";
+
+    /**
+     * Records that the current request is being answered from stale data.
+     * Does nothing outside a web request.
+     *
+     * @param age how old the served data is
+     */
+    public static void markStale(final Duration age) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(STALE_AGE_ATTRIBUTE, age, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    public boolean supports(final MethodParameter returnType,
+                            final Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(final Object body, final MethodParameter returnType,
+                                  final MediaType selectedContentType,
+                                  final Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  final ServerHttpRequest request, final ServerHttpResponse response) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && attributes.getAttribute(STALE_AGE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                        instanceof Duration age) {
+            response.getHeaders().set(WARNING_HEADER, STALE_WARNING);
+            response.getHeaders().set(HttpHeaders.AGE, Long.toString(age.toSeconds()));
+        }
+        return body;
+    }
+}
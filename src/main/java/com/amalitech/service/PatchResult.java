@@ -0,0 +1,13 @@
+package com.amalitech.service;
+
+import com.amalitech.model.User;
+
+/**
+ * Outcome of applying a merge patch to a user.
+ *
+ * @param user the user after the patch
+ * @param modified {@code false} if every patched field already had the
+ *                 requested value and nothing was written
+ */
+public record PatchResult(User user, boolean modified) {
+}
@@ -0,0 +1,265 @@
+package com.amalitech.service;
+
+import com.amalitech.exception.DuplicateEmailException;
+import com.amalitech.metrics.MongoRoundTrips;
+import com.amalitech.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+
+/**
+ * Merges concurrent full updates of the same user into one write.
+ *
+ * <p>Callers enqueue their update in a slot kept per user ID while it has
+ * updates in flight, and then try to become the slot's combiner. The
+ * combiner drains the slot and writes only the latest update, since a full
+ * replacement makes the earlier ones invisible anyway. Every caller gets
+ * the resulting document through its own future. If the latest update is
+ * rejected for a duplicate email, it alone fails and the next latest is
+ * tried. Updates of different users never share a slot, so they are
+ * written in parallel as without coalescing; a burst on a hot user costs
+ * one write instead of one per request.</p>
+ *
+ * <p>Waiters park until their update completes or the combiner, when it
+ * is done, wakes the first of them still queued to take over. A caller
+ * interrupted before its update is drained withdraws it, so it is never
+ * written; once drained, the update is written and the caller waits for
+ * it. Any failure of a write, errors included, completes every update
+ * drained with it.</p>
+ *
+ * <p>The combiner writes on behalf of other requests, so each write's
+ * MongoDB commands are counted in the {@link MongoRoundTrips} tally of
+ * the request whose update was written, and the email check of
+ * superseded updates in that of one of them. Their budgets and
+ * operation events then see the same commands as without coalescing.
+ * Only the combiner's latency includes the other requests' writes.</p>
+ */
+final class UpdateCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateCoalescer.class);
+
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+    private final BiFunction<String, User, Optional<User>> writer;
+    private final BiFunction<String, Collection<String>, Set<String>> takenEmails;
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param writer writes one full update and returns the updated user
+     * @param takenEmails returns which of the emails belong to users
+     *                    other than the given ID
+     */
+    UpdateCoalescer(final BiFunction<String, User, Optional<User>> writer,
+                    final BiFunction<String, Collection<String>, Set<String>> takenEmails) {
+        this.writer = writer;
+        this.takenEmails = takenEmails;
+    }
+
+    /**
+     * Applies a full update, possibly merged with concurrent updates of
+     * the same user.
+     *
+     * @param id the user ID
+     * @param user the new field values
+     * @return the user after the write that included this update, or
+     *         empty if the user does not exist
+     */
+    Optional<User> update(final String id, final User user) {
+        Request request = new Request(user);
+        // Enqueued under the map's lock, so a slot is never removed with a request in it
+        Slot slot = slots.compute(id, (key, existing) -> {
+            Slot target = existing != null ? existing : new Slot();
+            target.queue.add(request);
+            return target;
+        });
+        boolean interrupted = false;
+        try {
+            while (!request.result.isDone()) {
+                if (slot.combining.compareAndSet(false, true)) {
+                    try {
+                        combine(id, slot);
+                    } finally {
+                        slot.combining.set(false);
+                        handOff(id, slot);
+                    }
+                } else {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        interrupted = true;
+                        if (request.cancel()) {
+                            slot.queue.remove(request);
+                            handOff(id, slot);
+                            throw new IllegalStateException("Interrupted while waiting for update of user " + id);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return outcome(request.result);
+    }
+
+    /**
+     * Drains whatever is queued in the slot right now and writes it.
+     */
+    private void combine(final String id, final Slot slot) {
+        List<Request> claimed = new ArrayList<>();
+        Request next;
+        while ((next = slot.queue.poll()) != null) {
+            if (next.claim()) {
+                claimed.add(next);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+        try {
+            write(id, claimed);
+        } catch (Throwable e) {
+            // Delivered to every waiter, the combiner included, through its future
+            claimed.forEach(request -> request.fail(e));
+        }
+    }
+
+    /**
+     * Wakes the first waiter still queued so it takes over combining, or
+     * drops the slot once nothing is queued.
+     */
+    private void handOff(final String id, final Slot slot) {
+        for (Request waiting : slot.queue) {
+            if (waiting.isQueued()) {
+                LockSupport.unpark(waiting.waiter);
+                return;
+            }
+        }
+        slots.computeIfPresent(id, (key, existing) ->
+                existing == slot && slot.queue.isEmpty() && !slot.combining.get() ? null : existing);
+    }
+
+    private void write(final String id, final List<Request> requests) {
+        List<Request> pending = new ArrayList<>(requests);
+        while (!pending.isEmpty()) {
+            Request latest = pending.remove(pending.size() - 1);
+            try {
+                Optional<User> result = MongoRoundTrips.countedIn(latest.tally,
+                        () -> writer.apply(id, latest.user));
+                latest.complete(result);
+                if (!pending.isEmpty()) {
+                    logger.debug("Coalesced {} updates of user {} into one write", pending.size() + 1, id);
+                    completeSuperseded(id, latest, pending, result);
+                }
+                return;
+            } catch (DuplicateEmailException e) {
+                latest.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Completes updates overwritten by a later one in the same write. Each
+     * still fails if its own email belongs to another user, as it would
+     * have when applied on its own.
+     */
+    private void completeSuperseded(final String id, final Request winner,
+                                    final List<Request> superseded, final Optional<User> result) {
+        Set<String> otherEmails = new LinkedHashSet<>();
+        for (Request request : superseded) {
+            if (!request.user.getEmail().equals(winner.user.getEmail())) {
+                otherEmails.add(request.user.getEmail());
+            }
+        }
+        // Counted for a superseded request, whose result is not complete yet
+        Set<String> taken = otherEmails.isEmpty() || result.isEmpty()
+                ? Set.of() : MongoRoundTrips.countedIn(superseded.get(0).tally,
+                        () -> takenEmails.apply(id, otherEmails));
+        for (Request request : superseded) {
+            if (taken.contains(request.user.getEmail())) {
+                request.fail(new DuplicateEmailException(request.user.getEmail()));
+            } else {
+                request.complete(result);
+            }
+        }
+    }
+
+    private static Optional<User> outcome(final CompletableFuture<Optional<User>> result) {
+        if (result.state() == Future.State.SUCCESS) {
+            return result.resultNow();
+        }
+        Throwable cause = result.exceptionNow();
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    private static final class Slot {
+        private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean combining = new AtomicBoolean();
+    }
+
+    private static final class Request {
+        private static final int QUEUED = 0;
+        private static final int CLAIMED = 1;
+        private static final int CANCELLED = 2;
+
+        private final User user;
+        private final Thread waiter = Thread.currentThread();
+        private final MongoRoundTrips.Tally tally = MongoRoundTrips.current();
+        private final CompletableFuture<Optional<User>> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        private Request(final User user) {
+            this.user = user;
+        }
+
+        /** Takes the update for writing; fails if its caller withdrew it. */
+        private boolean claim() {
+            return state.compareAndSet(QUEUED, CLAIMED);
+        }
+
+        /** Withdraws the update; fails once a combiner has taken it. */
+        private boolean cancel() {
+            return state.compareAndSet(QUEUED, CANCELLED);
+        }
+
+        private boolean isQueued() {
+            return state.get() == QUEUED;
+        }
+
+        private void complete(final Optional<User> user) {
+            result.complete(user);
+            wake();
+        }
+
+        private void fail(final Throwable e) {
+            result.completeExceptionally(e);
+            wake();
+        }
+
+        private void wake() {
+            if (waiter != Thread.currentThread()) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.amalitech.service;
 
 import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
 
 import java.util.List;
 import java.util.Optional;
@@ -9,6 +10,11 @@ public interface UserService {
     User createUser(User user);
     List<User> getAllUsers();
     Optional<User> getUserById(String id);
+    Optional<Long> getUserVersion(String id);
     Optional<User> updateUser(String id, User user);
+    Optional<User> updateUser(String id, User user, long expectedVersion);
+    Optional<PatchResult> patchUser(String id, UserPatch patch);
+    Optional<PatchResult> patchUser(String id, UserPatch patch, long expectedVersion);
     boolean deleteUser(String id);
+    boolean deleteUser(String id, long expectedVersion);
 }
@@ -1,30 +1,80 @@
 package com.amalitech.service;
 
+import com.amalitech.cache.UserCache;
+import com.amalitech.config.ReadRouting;
+import com.amalitech.delta.UserChangeSequencer;
+import com.amalitech.delta.UserTombstone;
+import com.amalitech.event.UserChangeEvent;
 import com.amalitech.exception.DuplicateEmailException;
+import com.amalitech.exception.PreconditionFailedException;
+import com.amalitech.jfr.UserOperationEvent;
 import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import com.amalitech.outbox.UserOutbox;
+import com.amalitech.resilience.HedgedReader;
+import com.mongodb.ReadPreference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class UserServiceImpl implements UserService {
     
     private static final Logger logger = LoggerFactory.getLogger(UserServiceImpl.class);
     
+    private static final int MAX_PATCH_ATTEMPTS = 3;
+    
     private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserCache userCache;
+    private final ReadRouting readRouting;
+    private final HedgedReader hedgedReader;
+    private final UserOutbox outbox;
+    private final UpdateCoalescer updateCoalescer;
     
-    public UserServiceImpl(MongoTemplate mongoTemplate) {
+    public UserServiceImpl(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher,
+                           UserCache userCache, ReadRouting readRouting, HedgedReader hedgedReader,
+                           UserOutbox outbox) {
         this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.userCache = userCache;
+        this.readRouting = readRouting;
+        this.hedgedReader = hedgedReader;
+        this.outbox = outbox;
+        this.updateCoalescer = new UpdateCoalescer((id, user) -> doUpdate(id, user, null), this::emailsTakenByOther);
     }
     
     @Override
     public User createUser(User user) {
+        UserOperationEvent event = UserOperationEvent.begin("create", user.getId());
+        try {
+            User savedUser = insertUser(user);
+            event.setUserId(savedUser.getId());
+            return savedUser;
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
+        }
+    }
+    
+    private User insertUser(User user) {
         logger.debug("Creating new user with email: {}", user.getEmail());
         
         // Check if email already exists
@@ -34,7 +84,11 @@ public class UserServiceImpl implements UserService {
         }
         
         try {
-            User savedUser = mongoTemplate.save(user);
+            User savedUser = outbox.write(() -> {
+                User saved = mongoTemplate.save(user);
+                publish(UserChangeEvent.created(saved));
+                return saved;
+            });
             logger.info("Successfully created user with ID: {} and email: {}", savedUser.getId(), savedUser.getEmail());
             return savedUser;
         } catch (Exception e) {
@@ -48,7 +102,9 @@ public class UserServiceImpl implements UserService {
         logger.debug("Fetching all users from database");
         
         try {
-            List<User> users = mongoTemplate.findAll(User.class);
+            // Listing tolerates slightly stale data, so it can be served by a secondary
+            Query query = new Query().withReadPreference(readRouting.heavyReads());
+            List<User> users = mongoTemplate.find(query, User.class);
             logger.info("Successfully retrieved {} users", users.size());
             return users;
         } catch (Exception e) {
@@ -59,10 +115,43 @@ public class UserServiceImpl implements UserService {
     
     @Override
     public Optional<User> getUserById(String id) {
+        UserOperationEvent event = UserOperationEvent.begin("get", id);
+        try {
+            return event.result(findUser(id, event));
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
+        }
+    }
+    
+    private Optional<User> findUser(String id, UserOperationEvent event) {
         logger.debug("Fetching user by ID: {}", id);
         
+        Optional<User> cached = userCache.get(id);
+        if (cached.isPresent()) {
+            logger.debug("Serving user with ID: {} from cache", id);
+            event.markCacheHit();
+            return cached;
+        }
+        
         try {
-            User user = mongoTemplate.findById(id, User.class);
+            // A slow primary read is backed up by the same read on a secondary. Only the
+            // primary's answer is cached, as the secondary's may be out of date; the primary
+            // read still completes and fills the cache when the hedge answers first.
+            Query hedge = new Query(Criteria.where("_id").is(id)).withReadPreference(readRouting.hedgedReads());
+            // Taken before the read, so a deletion that lands meanwhile keeps the user out of the cache
+            long generation = userCache.generation();
+            User user = hedgedReader.read(
+                () -> {
+                    User found = mongoTemplate.findById(id, User.class);
+                    if (found != null) {
+                        userCache.put(found, generation);
+                    }
+                    return found;
+                },
+                () -> mongoTemplate.findOne(hedge, User.class));
             if (user != null) {
                 logger.info("Successfully found user with ID: {}", id);
             } else {
@@ -75,36 +164,103 @@ public class UserServiceImpl implements UserService {
         }
     }
     
+    /**
+     * Tells whether a user is stored, asking the primary rather than the
+     * cache or a secondary, which may not have seen a write yet.
+     *
+     * @param id the user ID
+     * @return {@code true} if the primary has the user
+     */
+    public boolean existsOnPrimary(String id) {
+        Query query = new Query(Criteria.where("_id").is(id)).withReadPreference(ReadPreference.primary());
+        return mongoTemplate.exists(query, User.class);
+    }
+    
     @Override
-    public Optional<User> updateUser(String id, User user) {
-        logger.debug("Updating user with ID: {}", id);
+    public Optional<Long> getUserVersion(String id) {
+        logger.debug("Fetching version of user with ID: {}", id);
         
-        // Check if user exists
-        User existingUser = mongoTemplate.findById(id, User.class);
-        if (existingUser == null) {
-            logger.warn("Attempt to update non-existent user with ID: {}", id);
-            return Optional.empty();
+        Optional<User> cached = userCache.get(id);
+        if (cached.isPresent() && cached.get().getVersion() != null) {
+            return Optional.of(cached.get().getVersion());
         }
         
-        // Check if email is being changed and new email already exists
-        if (!existingUser.getEmail().equals(user.getEmail()) && emailExists(user.getEmail())) {
-            logger.warn("Attempt to update user {} with duplicate email: {}", id, user.getEmail());
-            throw new DuplicateEmailException(user.getEmail());
+        try {
+            // Only _id and version are needed to revalidate a client's cached copy
+            Query query = new Query(Criteria.where("_id").is(id));
+            query.fields().include("version");
+            User projection = mongoTemplate.findOne(query, User.class);
+            return Optional.ofNullable(projection).map(User::getVersion);
+        } catch (Exception e) {
+            logger.error("Error fetching version of user with ID: {}", id, e);
+            throw e;
+        }
+    }
+    
+    @Override
+    public Optional<User> updateUser(String id, User user) {
+        UserOperationEvent event = UserOperationEvent.begin("update", id);
+        try {
+            // Unconditional updates are last-write-wins, so concurrent ones can share a write
+            return event.result(updateCoalescer.update(id, user));
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
         }
+    }
+    
+    @Override
+    public Optional<User> updateUser(String id, User user, long expectedVersion) {
+        UserOperationEvent event = UserOperationEvent.begin("update", id);
+        try {
+            return event.result(doUpdate(id, user, expectedVersion));
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
+        }
+    }
+    
+    private Optional<User> doUpdate(String id, User user, Long expectedVersion) {
+        logger.debug("Updating user with ID: {} (expected version: {})", id, expectedVersion);
         
         try {
-            // Update user fields
-            String oldEmail = existingUser.getEmail();
-            existingUser.setName(user.getName());
-            existingUser.setEmail(user.getEmail());
-            existingUser.setAge(user.getAge());
-            
-            // Save updated user
-            User updatedUser = mongoTemplate.save(existingUser);
+            // Apply the change and bump the version in a single round trip,
+            // conditional on the version the client last saw; clearing the
+            // change sequence queues the user to be sequenced again
+            Update update = new Update()
+                    .set("name", user.getName())
+                    .set("email", user.getEmail())
+                    .set("age", user.getAge())
+                    .inc("version", 1)
+                    .unset(UserChangeSequencer.FIELD);
+            // Most updates keep the email, which needs no uniqueness check, so the
+            // first attempt only matches a user whose email is already the new one
+            Query sameEmail = byIdAndVersion(id, expectedVersion)
+                    .addCriteria(Criteria.where("email").is(user.getEmail()));
+            UserChangeEvent change = applyUpdate(sameEmail, update, user);
+            if (change == null) {
+                // Check if another user already owns the new email
+                if (emailTakenByOther(user.getEmail(), id)) {
+                    logger.warn("Attempt to update user {} with duplicate email: {}", id, user.getEmail());
+                    throw new DuplicateEmailException(user.getEmail());
+                }
+                change = applyUpdate(byIdAndVersion(id, expectedVersion), update, user);
+            }
+            if (change == null) {
+                return handleMissedCondition(id, expectedVersion, "update");
+            }
             logger.info("Successfully updated user with ID: {}. Email changed from {} to {}", 
-                id, oldEmail, updatedUser.getEmail());
-            return Optional.of(updatedUser);
-        } catch (DuplicateEmailException e) {
+                id, change.before().getEmail(), change.after().getEmail());
+            return Optional.of(change.after());
+        } catch (DuplicateKeyException e) {
+            // Lost a race with a concurrent write of the same email
+            logger.warn("Concurrent update of user {} with duplicate email: {}", id, user.getEmail());
+            throw new DuplicateEmailException(user.getEmail());
+        } catch (PreconditionFailedException | DuplicateEmailException e) {
             throw e;
         } catch (Exception e) {
             logger.error("Error updating user with ID: {}", id, e);
@@ -112,31 +268,227 @@ public class UserServiceImpl implements UserService {
         }
     }
     
+    /**
+     * Replaces the fields of the user matching a query.
+     *
+     * @return the change, or {@code null} if no user matched
+     */
+    private UserChangeEvent applyUpdate(Query query, Update update, User user) {
+        return outbox.write(() -> {
+            User before = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().returnNew(false), User.class);
+            if (before == null) {
+                return null;
+            }
+            User updatedUser = User.copyOf(before);
+            updatedUser.setName(user.getName());
+            updatedUser.setEmail(user.getEmail());
+            updatedUser.setAge(user.getAge());
+            updatedUser.setVersion(before.getVersion() != null ? before.getVersion() + 1 : 1L);
+            return publish(UserChangeEvent.updated(before, updatedUser));
+        });
+    }
+    
     @Override
-    public boolean deleteUser(String id) {
-        logger.debug("Deleting user with ID: {}", id);
+    public Optional<PatchResult> patchUser(String id, UserPatch patch) {
+        return tracedPatch(id, patch, null);
+    }
+    
+    @Override
+    public Optional<PatchResult> patchUser(String id, UserPatch patch, long expectedVersion) {
+        return tracedPatch(id, patch, expectedVersion);
+    }
+    
+    private Optional<PatchResult> tracedPatch(String id, UserPatch patch, Long expectedVersion) {
+        UserOperationEvent event = UserOperationEvent.begin("patch", id);
+        try {
+            return event.result(doPatch(id, patch, expectedVersion));
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
+        }
+    }
+    
+    private Optional<PatchResult> doPatch(String id, UserPatch patch, Long expectedVersion) {
+        logger.debug("Patching user with ID: {} (expected version: {})", id, expectedVersion);
         
-        // Check if user exists
-        User existingUser = mongoTemplate.findById(id, User.class);
-        if (existingUser == null) {
-            logger.warn("Attempt to delete non-existent user with ID: {}", id);
-            return false;
+        for (int attempt = 1; attempt <= MAX_PATCH_ATTEMPTS; attempt++) {
+            User current = mongoTemplate.findById(id, User.class);
+            if (current == null) {
+                logger.warn("Attempt to patch non-existent user with ID: {}", id);
+                return Optional.empty();
+            }
+            long currentVersion = current.getVersion() != null ? current.getVersion() : 0L;
+            if (expectedVersion != null && expectedVersion != currentVersion) {
+                logger.warn("Version conflict on patch of user {}: expected {}, found {}",
+                    id, expectedVersion, currentVersion);
+                throw new PreconditionFailedException(id, expectedVersion);
+            }
+            
+            // Skip the write entirely when every patched field already has its value
+            Map<String, Object> changed = patch.changedFields(current);
+            if (changed.isEmpty()) {
+                logger.info("Patch of user {} changes nothing; skipping write", id);
+                return Optional.of(new PatchResult(current, false));
+            }
+            if (changed.containsKey("email") && emailTakenByOther(patch.getEmail(), id)) {
+                logger.warn("Attempt to patch user {} with duplicate email: {}", id, patch.getEmail());
+                throw new DuplicateEmailException(patch.getEmail());
+            }
+            
+            Update update = new Update();
+            changed.forEach(update::set);
+            update.inc("version", 1).unset(UserChangeSequencer.FIELD);
+            UserChangeEvent change;
+            try {
+                change = outbox.write(() -> {
+                    User before = mongoTemplate.findAndModify(
+                            byIdAndVersion(id, currentVersion), update,
+                            FindAndModifyOptions.options().returnNew(false), User.class);
+                    if (before == null) {
+                        return null;
+                    }
+                    User patchedUser = User.copyOf(before);
+                    UserPatch.apply(patchedUser, changed);
+                    patchedUser.setVersion(currentVersion + 1);
+                    return publish(UserChangeEvent.updated(before, patchedUser));
+                });
+            } catch (DuplicateKeyException e) {
+                logger.warn("Concurrent patch of user {} with duplicate email: {}", id, patch.getEmail());
+                throw new DuplicateEmailException(patch.getEmail());
+            }
+            if (change != null) {
+                logger.info("Successfully patched user with ID: {} (fields: {})", id, changed.keySet());
+                return Optional.of(new PatchResult(change.after(), true));
+            }
+            if (expectedVersion != null) {
+                return handleMissedCondition(id, expectedVersion, "patch");
+            }
+            // The user changed between our read and write; re-apply the patch to the new state
+            logger.debug("User {} changed during patch attempt {}; retrying", id, attempt);
         }
+        throw new OptimisticLockingFailureException(
+            "User " + id + " was modified concurrently " + MAX_PATCH_ATTEMPTS + " times while patching");
+    }
+    
+    @Override
+    public boolean deleteUser(String id) {
+        return doDelete(id, null);
+    }
+    
+    @Override
+    public boolean deleteUser(String id, long expectedVersion) {
+        return doDelete(id, expectedVersion);
+    }
+    
+    private boolean doDelete(String id, Long expectedVersion) {
+        UserOperationEvent event = UserOperationEvent.begin("delete", id);
+        try {
+            return event.result(removeUser(id, expectedVersion));
+        } catch (RuntimeException e) {
+            event.markFailed(e);
+            throw e;
+        } finally {
+            event.finish();
+        }
+    }
+    
+    private boolean removeUser(String id, Long expectedVersion) {
+        logger.debug("Deleting user with ID: {} (expected version: {})", id, expectedVersion);
         
         try {
-            // Delete user
-            Query query = new Query(Criteria.where("_id").is(id));
-            mongoTemplate.remove(query, User.class);
-            logger.info("Successfully deleted user with ID: {} (email: {})", id, existingUser.getEmail());
+            // Remove and return the document atomically so no prior existence check is needed
+            User deletedUser = outbox.write(() -> {
+                User deleted = mongoTemplate.findAndRemove(byIdAndVersion(id, expectedVersion), User.class);
+                if (deleted != null) {
+                    recordTombstone(id);
+                    publish(UserChangeEvent.deleted(deleted));
+                }
+                return deleted;
+            });
+            if (deletedUser == null) {
+                return handleMissedCondition(id, expectedVersion, "delete").isPresent();
+            }
+            logger.info("Successfully deleted user with ID: {} (email: {})", id, deletedUser.getEmail());
             return true;
+        } catch (PreconditionFailedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error deleting user with ID: {}", id, e);
             throw e;
         }
     }
     
+    /**
+     * Leaves a tombstone for delta sync, pending a change sequence. A user
+     * deleted again after being re-created replaces its old tombstone.
+     */
+    private void recordTombstone(String id) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(id)),
+                new Update().currentDate("deletedAt").unset(UserChangeSequencer.FIELD),
+                UserTombstone.class);
+    }
+    
+    /**
+     * Records a change in the outbox and announces it to listeners, which
+     * run once the enclosing outbox transaction commits.
+     */
+    private UserChangeEvent publish(UserChangeEvent event) {
+        outbox.add(event);
+        eventPublisher.publishEvent(event);
+        return event;
+    }
+    
+    /**
+     * Builds the filter for a conditional write. Documents written before
+     * versioning have no version field, which {@code is(0)} does not
+     * match, so version 0 also accepts a missing field.
+     */
+    private Query byIdAndVersion(String id, Long expectedVersion) {
+        Criteria criteria = Criteria.where("_id").is(id);
+        if (expectedVersion != null) {
+            if (expectedVersion == 0L) {
+                criteria = criteria.orOperator(
+                        Criteria.where("version").is(0L),
+                        Criteria.where("version").exists(false));
+            } else {
+                criteria = criteria.and("version").is(expectedVersion);
+            }
+        }
+        return new Query(criteria);
+    }
+    
+    /**
+     * Resolves why a conditional write matched nothing. This extra read
+     * only happens on the failure path.
+     */
+    private <T> Optional<T> handleMissedCondition(String id, Long expectedVersion, String operation) {
+        if (expectedVersion != null
+                && mongoTemplate.exists(new Query(Criteria.where("_id").is(id)), User.class)) {
+            logger.warn("Version conflict on {} of user {}: expected version {}", operation, id, expectedVersion);
+            throw new PreconditionFailedException(id, expectedVersion);
+        }
+        logger.warn("Attempt to {} non-existent user with ID: {}", operation, id);
+        return Optional.empty();
+    }
+    
     private boolean emailExists(String email) {
         Query query = new Query(Criteria.where("email").is(email));
         return mongoTemplate.exists(query, User.class);
     }
+    
+    private boolean emailTakenByOther(String email, String id) {
+        Query query = new Query(Criteria.where("email").is(email).and("_id").ne(id));
+        return mongoTemplate.exists(query, User.class);
+    }
+    
+    private Set<String> emailsTakenByOther(String id, Collection<String> emails) {
+        Query query = new Query(Criteria.where("email").in(emails).and("_id").ne(id));
+        query.fields().include("email");
+        return mongoTemplate.find(query, User.class).stream()
+            .map(User::getEmail)
+            .collect(Collectors.toSet());
+    }
 }
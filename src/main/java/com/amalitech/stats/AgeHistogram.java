@@ -0,0 +1,172 @@
+package com.amalitech.stats;
+
+import com.amalitech.config.ReadRouting;
+import com.amalitech.dto.AgeStatistics;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory histogram of user ages, one bucket per age between
+ * {@link User#MIN_AGE} and {@link User#MAX_AGE}.
+ *
+ * <p>The histogram is seeded once from a {@code $group} aggregation before
+ * the web server starts and is then maintained incrementally from
+ * {@link UserChangeEvent}s. Seeding before any request is served keeps a
+ * write from landing both in the aggregation and in the increments, or in
+ * neither. Every bucket is a {@link LongAdder}, so concurrent writers
+ * never contend on a lock and a snapshot costs one pass over the buckets
+ * regardless of collection size.</p>
+ */
+@Component
+public class AgeHistogram implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgeHistogram.class);
+
+    /** Number of buckets, one per allowed age. */
+    static final int BUCKET_COUNT = User.MAX_AGE - User.MIN_AGE + 1;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadRouting readRouting;
+    private final LongAdder[] cells = new LongAdder[BUCKET_COUNT];
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param mongoTemplate template used for the initial seeding
+     * @param readRouting routing that sends the seeding query to a secondary
+     */
+    public AgeHistogram(final MongoTemplate mongoTemplate, final ReadRouting readRouting) {
+        this.mongoTemplate = mongoTemplate;
+        this.readRouting = readRouting;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cells[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Seeds the histogram once every singleton exists, which is before
+     * the lifecycle phase starts the web server and the background writers.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        seed();
+    }
+
+    /**
+     * Seeds the histogram from the current contents of the collection.
+     * A failure is logged rather than propagated so that an unreachable
+     * database does not prevent the application from starting.
+     */
+    public void seed() {
+        try {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.group("age").count().as("count"))
+                    .withOptions(AggregationOptions.builder()
+                            .readPreference(readRouting.heavyReads())
+                            .build());
+            long seeded = 0;
+            for (Document bucket : mongoTemplate.aggregate(aggregation, User.class, Document.class)) {
+                Object age = bucket.get("_id");
+                Number count = bucket.get("count", Number.class);
+                if (age instanceof Number && count != null) {
+                    add(((Number) age).intValue(), count.longValue());
+                    seeded += count.longValue();
+                }
+            }
+            logger.info("Seeded age histogram with {} users", seeded);
+        } catch (Exception e) {
+            logger.error("Failed to seed age histogram; statistics will only reflect new writes", e);
+        }
+    }
+
+    /**
+     * Applies a user mutation to the histogram.
+     *
+     * @param event the change event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(final UserChangeEvent event) {
+        Integer oldAge = event.before() != null ? event.before().getAge() : null;
+        Integer newAge = event.after() != null ? event.after().getAge() : null;
+        if (oldAge != null && oldAge.equals(newAge)) {
+            return;
+        }
+        if (oldAge != null) {
+            add(oldAge, -1);
+        }
+        if (newAge != null) {
+            add(newAge, 1);
+        }
+    }
+
+    /**
+     * Computes the current age statistics.
+     *
+     * @return an immutable snapshot of the distribution
+     */
+    public AgeStatistics snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        long ageSum = 0;
+        Integer min = null;
+        Integer max = null;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long value = Math.max(0, cells[i].sum());
+            buckets[i] = value;
+            if (value > 0) {
+                int age = User.MIN_AGE + i;
+                count += value;
+                ageSum += value * age;
+                if (min == null) {
+                    min = age;
+                }
+                max = age;
+            }
+        }
+        Double mean = count > 0 ? (double) ageSum / count : null;
+        return new AgeStatistics(count, mean, min, max,
+                percentile(buckets, count, 0.50),
+                percentile(buckets, count, 0.90),
+                percentile(buckets, count, 0.95),
+                percentile(buckets, count, 0.99),
+                User.MIN_AGE, buckets, Instant.now());
+    }
+
+    private void add(final int age, final long delta) {
+        if (age < User.MIN_AGE || age > User.MAX_AGE) {
+            logger.debug("Ignoring out-of-range age {} in histogram", age);
+            return;
+        }
+        cells[age - User.MIN_AGE].add(delta);
+    }
+
+    /**
+     * Nearest-rank percentile over the bucket counts.
+     */
+    private static Integer percentile(final long[] buckets, final long count, final double quantile) {
+        if (count == 0) {
+            return null;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i];
+            if (cumulative >= rank) {
+                return User.MIN_AGE + i;
+            }
+        }
+        return User.MAX_AGE;
+    }
+}
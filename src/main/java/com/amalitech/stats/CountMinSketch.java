@@ -0,0 +1,101 @@
+package com.amalitech.stats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch over string keys.
+ *
+ * <p>Estimates never under-count as long as the true count of every key
+ * stays non-negative, which holds for user counts since each decrement
+ * matches an earlier increment. The error is bounded by
+ * {@code e / width} of the total count with probability
+ * {@code 1 - e^-depth}.</p>
+ *
+ * <p>Instances are not thread-safe; callers synchronize externally.</p>
+ */
+public final class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[][] counters;
+
+    /**
+     * Creates a sketch.
+     *
+     * @param depth number of independent hash rows
+     * @param width number of counters per row
+     */
+    public CountMinSketch(final int depth, final int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth and width must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth][width];
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code key}.
+     *
+     * @param key the key
+     * @param delta the amount to add, may be negative
+     */
+    public void add(final String key, final long delta) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            counters[row][index(h1, h2, row)] += delta;
+        }
+    }
+
+    /**
+     * Estimates the count of {@code key}.
+     *
+     * @param key the key
+     * @return the estimated count, never negative
+     */
+    public long estimate(final String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[row][index(h1, h2, row)]);
+        }
+        return Math.max(0, min);
+    }
+
+    /**
+     * Resets every counter to zero.
+     */
+    public void clear() {
+        for (long[] row : counters) {
+            Arrays.fill(row, 0L);
+        }
+    }
+
+    private int index(final int h1, final int h2, final int row) {
+        int combined = h1 + row * h2;
+        return (combined & Integer.MAX_VALUE) % width;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with a murmur3 mix so
+     * both 32-bit halves are usable for double hashing.
+     */
+    private static long hash64(final String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,299 @@
+package com.amalitech.stats;
+
+import com.amalitech.config.ReadRouting;
+import com.amalitech.dto.DomainCount;
+import com.amalitech.dto.DomainStatistics;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Streaming per-domain user counts.
+ *
+ * <p>Counts are kept in a {@link CountMinSketch} fed from
+ * {@link UserChangeEvent}s, and the heaviest domains are tracked in a
+ * bounded min-heap so the top list can be served without touching the
+ * database. The sketch is seeded before the web server starts, so no
+ * write is counted both by the seed and by its event. An exact mode runs a
+ * {@code $group} aggregation with {@code allowDiskUse} and consumes it
+ * through a cursor.</p>
+ */
+@Component
+public class EmailDomainSketch implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailDomainSketch.class);
+
+    /** Upper bound on the number of distinct domain strings kept for interning. */
+    private static final int MAX_INTERNED_DOMAINS = 100_000;
+
+    private static final int CURSOR_BATCH_SIZE = 1_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ReadRouting readRouting;
+    private final int topK;
+    private final int heapCapacity;
+    private final CountMinSketch sketch;
+    private final Map<String, Long> heavyHitters = new HashMap<>();
+    private final PriorityQueue<String> minHeap;
+    private final ConcurrentHashMap<String, String> domainPool = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the sketch.
+     *
+     * @param mongoTemplate template used for seeding and exact queries
+     * @param readRouting routing that sends seeding and exact queries to a secondary
+     * @param topK number of domains to report by default
+     * @param depth number of Count-Min hash rows
+     * @param width number of counters per Count-Min row
+     */
+    public EmailDomainSketch(
+            final MongoTemplate mongoTemplate,
+            final ReadRouting readRouting,
+            @Value("${app.stats.domains.top-k:50}") final int topK,
+            @Value("${app.stats.domains.sketch-depth:5}") final int depth,
+            @Value("${app.stats.domains.sketch-width:8192}") final int width) {
+        this.mongoTemplate = mongoTemplate;
+        this.readRouting = readRouting;
+        this.topK = topK;
+        // Track more candidates than reported so domains near the cut-off
+        // are not lost when their rank fluctuates.
+        this.heapCapacity = topK * 2;
+        this.sketch = new CountMinSketch(depth, width);
+        this.minHeap = new PriorityQueue<>(heapCapacity,
+                Comparator.comparingLong((String domain) -> heavyHitters.get(domain)));
+    }
+
+    /**
+     * Seeds the sketch once every singleton exists, which is before the
+     * lifecycle phase starts the web server and the background writers.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        seed();
+    }
+
+    /**
+     * Seeds the sketch from an exact aggregation over all domains.
+     * A failure is logged so that an unreachable database does not
+     * prevent startup.
+     */
+    public void seed() {
+        try (Stream<Document> rows = streamDomainCounts(null)) {
+            long[] seeded = new long[1];
+            rows.forEach(row -> {
+                String domain = row.getString("_id");
+                Number count = row.get("count", Number.class);
+                if (domain != null && count != null) {
+                    record(domain, count.longValue());
+                    seeded[0] += count.longValue();
+                }
+            });
+            logger.info("Seeded email domain sketch with {} users", seeded[0]);
+        } catch (Exception e) {
+            logger.error("Failed to seed email domain sketch; counts will only reflect new writes", e);
+        }
+    }
+
+    /**
+     * Applies a user mutation to the sketch.
+     *
+     * @param event the change event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChange(final UserChangeEvent event) {
+        String oldDomain = event.before() != null ? domainOf(event.before().getEmail()) : null;
+        String newDomain = event.after() != null ? domainOf(event.after().getEmail()) : null;
+        if (oldDomain != null && oldDomain.equals(newDomain)) {
+            return;
+        }
+        if (oldDomain != null) {
+            record(oldDomain, -1);
+        }
+        if (newDomain != null) {
+            record(newDomain, 1);
+        }
+    }
+
+    /**
+     * Returns the heaviest domains from the sketch.
+     *
+     * @param limit maximum number of domains, capped at the configured top-K
+     * @return estimated counts, highest first
+     */
+    public DomainStatistics approximateTop(final int limit) {
+        List<DomainCount> result;
+        synchronized (this) {
+            result = new ArrayList<>(heavyHitters.size());
+            for (String domain : heavyHitters.keySet()) {
+                long estimate = sketch.estimate(domain);
+                if (estimate > 0) {
+                    result.add(new DomainCount(domain, estimate));
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(DomainCount::count).reversed()
+                .thenComparing(DomainCount::domain));
+        int bounded = Math.min(Math.max(limit, 0), topK);
+        return new DomainStatistics(false,
+                List.copyOf(result.subList(0, Math.min(bounded, result.size()))), Instant.now());
+    }
+
+    /**
+     * Runs an exact {@code $group} aggregation for the heaviest domains.
+     *
+     * @param limit maximum number of domains
+     * @return exact counts, highest first; none if the limit is below 1
+     */
+    public DomainStatistics exactTop(final int limit) {
+        List<DomainCount> result = new ArrayList<>();
+        if (limit < 1) {
+            // $limit rejects 0, and nothing is asked for anyway
+            return new DomainStatistics(true, result, Instant.now());
+        }
+        try (Stream<Document> rows = streamDomainCounts(limit)) {
+            rows.forEach(row -> {
+                Number count = row.get("count", Number.class);
+                String domain = row.getString("_id");
+                if (domain != null && count != null) {
+                    result.add(new DomainCount(intern(domain), count.longValue()));
+                }
+            });
+        }
+        return new DomainStatistics(true, result, Instant.now());
+    }
+
+    /**
+     * Estimates the number of users for one domain.
+     *
+     * @param domain the email domain
+     * @return the estimated count
+     */
+    public synchronized DomainCount approximateCount(final String domain) {
+        String normalized = domain.toLowerCase(Locale.ROOT);
+        return new DomainCount(normalized, sketch.estimate(normalized));
+    }
+
+    /**
+     * Counts users for one domain directly in the database.
+     *
+     * <p>Emails are matched on their suffix, which no index can serve, so
+     * this reads every user's email from the heavy-read member, like
+     * {@link #exactTop}. A stored and indexed domain field would make it a
+     * single index lookup, but every write path would have to keep it in
+     * step with the email; the sketch answers the frequent case
+     * instead.</p>
+     *
+     * @param domain the email domain
+     * @return the exact count
+     */
+    public DomainCount exactCount(final String domain) {
+        String normalized = domain.toLowerCase(Locale.ROOT);
+        Query query = new Query(Criteria.where("email").regex(
+                "@" + Pattern.quote(normalized) + "$", "i"))
+                .withReadPreference(readRouting.heavyReads());
+        return new DomainCount(normalized, mongoTemplate.count(query, User.class));
+    }
+
+    /**
+     * Extracts the lower-cased domain part of an email address.
+     *
+     * @param email the email address
+     * @return the domain, or {@code null} if the address has none
+     */
+    static String domainOf(final String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.lastIndexOf('@');
+        if (at < 0 || at == email.length() - 1) {
+            return null;
+        }
+        return email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized void record(final String domain, final long delta) {
+        String canonical = intern(domain);
+        sketch.add(canonical, delta);
+        long estimate = sketch.estimate(canonical);
+        if (heavyHitters.containsKey(canonical)) {
+            minHeap.remove(canonical);
+            heavyHitters.put(canonical, estimate);
+            minHeap.offer(canonical);
+        } else if (heavyHitters.size() < heapCapacity) {
+            heavyHitters.put(canonical, estimate);
+            minHeap.offer(canonical);
+        } else {
+            String smallest = minHeap.peek();
+            if (smallest != null && estimate > heavyHitters.get(smallest)) {
+                minHeap.poll();
+                heavyHitters.remove(smallest);
+                heavyHitters.put(canonical, estimate);
+                minHeap.offer(canonical);
+            }
+        }
+    }
+
+    /**
+     * Returns one shared instance per distinct domain so that the heap
+     * and the API results do not keep duplicate strings alive.
+     */
+    private String intern(final String domain) {
+        String existing = domainPool.get(domain);
+        if (existing != null) {
+            return existing;
+        }
+        if (domainPool.size() >= MAX_INTERNED_DOMAINS) {
+            return domain;
+        }
+        existing = domainPool.putIfAbsent(domain, domain);
+        return existing != null ? existing : domain;
+    }
+
+    private Stream<Document> streamDomainCounts(final Integer limit) {
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(Aggregation.project()
+                .and(StringOperators.ToLower.lowerValueOf(
+                        ArrayOperators.ArrayElemAt.arrayOf(
+                                StringOperators.valueOf("email").split("@")).elementAt(-1)))
+                .as("domain"));
+        stages.add(Aggregation.group("domain").count().as("count"));
+        if (limit != null) {
+            stages.add(Aggregation.sort(Sort.by(Sort.Direction.DESC, "count")));
+            stages.add(Aggregation.limit(limit));
+        }
+        Aggregation aggregation = Aggregation.newAggregation(stages)
+                .withOptions(AggregationOptions.builder()
+                        .allowDiskUse(true)
+                        .cursorBatchSize(CURSOR_BATCH_SIZE)
+                        .readPreference(readRouting.heavyReads())
+                        .build());
+        return mongoTemplate.aggregateStream(aggregation, User.class, Document.class);
+    }
+}
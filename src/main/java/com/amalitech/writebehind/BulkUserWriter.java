@@ -0,0 +1,273 @@
+package com.amalitech.writebehind;
+
+import com.amalitech.delta.UserChangeSequencer;
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a batch of queued creates with a single unordered bulk insert,
+ * and its updates one by one.
+ *
+ * <p>A batch costs one query for conflicting emails and one bulk insert
+ * however many creates it holds. Each update is a {@code findAndModify}
+ * returning the document as it was, like a synchronous update, so the
+ * before-image of its change event is exactly the state it replaced even
+ * when a request writes the same user concurrently. Failures are reported
+ * per write so one bad entry does not fail the rest of its batch.</p>
+ *
+ * <p>When the {@link UserOutbox} is in use, the batch and the outbox
+ * entries of its changes are written in one transaction, which adds the
+ * outbox insert and the commit. A write that fails inside the transaction
+ * aborts the whole batch, so the batch is written again without it.</p>
+ */
+@Component
+public class BulkUserWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkUserWriter.class);
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserOutbox outbox;
+
+    /**
+     * Creates the writer.
+     *
+     * @param mongoTemplate the template used for the bulk writes
+     * @param eventPublisher publisher for user change events
+     * @param outbox outbox the changes are recorded in
+     */
+    public BulkUserWriter(final MongoTemplate mongoTemplate,
+                          final ApplicationEventPublisher eventPublisher,
+                          final UserOutbox outbox) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.outbox = outbox;
+    }
+
+    /**
+     * Writes the given batch.
+     *
+     * @param batch the queued writes, in submission order
+     * @return one outcome per write
+     */
+    public List<WriteOutcome> write(final List<PendingWrite> batch) {
+        Map<String, WriteOutcome> outcomes = new LinkedHashMap<>();
+        List<PendingWrite> accepted = new ArrayList<>();
+
+        // Updates to the same user within a batch collapse to the latest one,
+        // since an unordered bulk write would not preserve their order
+        Map<String, PendingWrite> latestUpdate = new HashMap<>();
+        for (PendingWrite write : batch) {
+            if (write.operation() == WriteTicket.Operation.UPDATE) {
+                latestUpdate.put(write.userId(), write);
+            }
+        }
+        Map<String, String> emailOwners = existingEmailOwners(batch);
+        Set<String> claimedEmails = new HashSet<>();
+        List<PendingWrite> superseded = new ArrayList<>();
+
+        for (PendingWrite write : batch) {
+            String email = write.user().getEmail();
+            if (write.operation() == WriteTicket.Operation.UPDATE && latestUpdate.get(write.userId()) != write) {
+                superseded.add(write);
+                continue;
+            }
+            String owner = emailOwners.get(email);
+            boolean takenInStore = owner != null && !owner.equals(write.userId());
+            if (takenInStore || !claimedEmails.add(email)) {
+                outcomes.put(write.ticket(), WriteOutcome.failure(write.ticket(),
+                        "Email already exists: " + email));
+                continue;
+            }
+            accepted.add(write);
+        }
+        if (!accepted.isEmpty()) {
+            execute(accepted, outcomes);
+        }
+        for (PendingWrite write : superseded) {
+            WriteOutcome latest = outcomes.get(latestUpdate.get(write.userId()).ticket());
+            outcomes.put(write.ticket(), new WriteOutcome(write.ticket(), latest.userId(), latest.error()));
+        }
+        return new ArrayList<>(outcomes.values());
+    }
+
+    private void execute(final List<PendingWrite> accepted, final Map<String, WriteOutcome> outcomes) {
+        List<PendingWrite> remaining = accepted;
+        while (!remaining.isEmpty()) {
+            List<PendingWrite> attempt = remaining;
+            try {
+                outcomes.putAll(outbox.write(() -> apply(attempt)));
+                return;
+            } catch (RolledBackWrites e) {
+                // The failed writes aborted the transaction; the rest are written again without them
+                e.failures.forEach((ticket, error) -> outcomes.put(ticket, WriteOutcome.failure(ticket, error)));
+                remaining = attempt.stream().filter(write -> !e.failures.containsKey(write.ticket())).toList();
+                logger.debug("Retrying {} queued write(s) without {} failed one(s)",
+                        remaining.size(), e.failures.size());
+            }
+        }
+    }
+
+    /**
+     * Writes the batch and records its changes in the outbox.
+     *
+     * @return the outcome per ticket
+     * @throws RolledBackWrites if writes failed inside the outbox transaction
+     */
+    private Map<String, WriteOutcome> apply(final List<PendingWrite> accepted) {
+        Map<String, WriteOutcome> outcomes = new HashMap<>();
+        List<UserChangeEvent> events = new ArrayList<>();
+        insertCreates(accepted, outcomes, events);
+        for (PendingWrite write : accepted) {
+            if (write.operation() == WriteTicket.Operation.UPDATE) {
+                applyUpdate(write, outcomes, events);
+            }
+        }
+        outbox.addAll(events);
+        events.forEach(eventPublisher::publishEvent);
+        logger.debug("Flushed {} queued write(s) with {} failure(s)", accepted.size(),
+                outcomes.values().stream().filter(outcome -> !outcome.succeeded()).count());
+        return outcomes;
+    }
+
+    private void insertCreates(final List<PendingWrite> accepted,
+                               final Map<String, WriteOutcome> outcomes,
+                               final List<UserChangeEvent> events) {
+        List<PendingWrite> creates = accepted.stream()
+                .filter(write -> write.operation() == WriteTicket.Operation.CREATE)
+                .toList();
+        if (creates.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        List<User> inserted = new ArrayList<>(creates.size());
+        for (PendingWrite write : creates) {
+            User user = write.user();
+            User created = new User(user.getName(), user.getEmail(), user.getAge());
+            created.setId(new ObjectId().toHexString());
+            created.setVersion(0L);
+            inserted.add(created);
+            bulk.insert(created);
+        }
+
+        Map<Integer, String> failedIndexes = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failedIndexes.put(error.getIndex(), error.getCode() == DUPLICATE_KEY_CODE
+                        ? "Email already exists: " + creates.get(error.getIndex()).user().getEmail()
+                        : error.getMessage());
+            }
+            if (outbox.isRecording()) {
+                Map<String, String> failures = new HashMap<>();
+                failedIndexes.forEach((index, error) -> failures.put(creates.get(index).ticket(), error));
+                throw new RolledBackWrites(failures);
+            }
+            logger.warn("Bulk insert completed with {} failed operation(s) out of {}",
+                    failedIndexes.size(), creates.size());
+        }
+
+        for (int i = 0; i < creates.size(); i++) {
+            PendingWrite write = creates.get(i);
+            String failure = failedIndexes.get(i);
+            if (failure != null) {
+                outcomes.put(write.ticket(), WriteOutcome.failure(write.ticket(), failure));
+            } else {
+                User created = inserted.get(i);
+                outcomes.put(write.ticket(), WriteOutcome.success(write.ticket(), created.getId()));
+                events.add(UserChangeEvent.created(created));
+            }
+        }
+    }
+
+    private void applyUpdate(final PendingWrite write,
+                             final Map<String, WriteOutcome> outcomes,
+                             final List<UserChangeEvent> events) {
+        User user = write.user();
+        Update update = new Update()
+                .set("name", user.getName())
+                .set("email", user.getEmail())
+                .set("age", user.getAge())
+                .inc("version", 1)
+                .unset(UserChangeSequencer.FIELD);
+        User before;
+        try {
+            before = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(write.userId())), update,
+                    FindAndModifyOptions.options().returnNew(false), User.class);
+        } catch (DuplicateKeyException e) {
+            String error = "Email already exists: " + user.getEmail();
+            if (outbox.isRecording()) {
+                throw new RolledBackWrites(Map.of(write.ticket(), error));
+            }
+            outcomes.put(write.ticket(), WriteOutcome.failure(write.ticket(), error));
+            return;
+        }
+        if (before == null) {
+            outcomes.put(write.ticket(), WriteOutcome.failure(write.ticket(),
+                    "User not found with id: " + write.userId()));
+            return;
+        }
+        User updated = User.copyOf(before);
+        updated.setName(user.getName());
+        updated.setEmail(user.getEmail());
+        updated.setAge(user.getAge());
+        updated.setVersion(before.getVersion() != null ? before.getVersion() + 1 : 1L);
+        outcomes.put(write.ticket(), WriteOutcome.success(write.ticket(), write.userId()));
+        events.add(UserChangeEvent.updated(before, updated));
+    }
+
+    private Map<String, String> existingEmailOwners(final List<PendingWrite> batch) {
+        Set<String> emails = batch.stream()
+                .map(write -> write.user().getEmail())
+                .collect(Collectors.toSet());
+        Query query = Query.query(Criteria.where("email").in(emails));
+        query.fields().include("email");
+        Map<String, String> owners = new HashMap<>();
+        for (User user : mongoTemplate.find(query, User.class)) {
+            owners.put(user.getEmail(), user.getId());
+        }
+        return owners;
+    }
+
+    /**
+     * Thrown inside the outbox transaction to roll back a batch in which
+     * writes failed.
+     */
+    private static final class RolledBackWrites extends RuntimeException {
+
+        private final transient Map<String, String> failures;
+
+        private RolledBackWrites(final Map<String, String> failures) {
+            super("Rolled back a batch with " + failures.size() + " failed write(s)", null, false, false);
+            this.failures = failures;
+        }
+    }
+}
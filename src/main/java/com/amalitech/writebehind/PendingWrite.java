@@ -0,0 +1,15 @@
+package com.amalitech.writebehind;
+
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.model.User;
+
+/**
+ * A write waiting in the write-behind queue.
+ *
+ * @param ticket the ticket identifier
+ * @param operation create or update
+ * @param userId the user to update; {@code null} for creates
+ * @param user the submitted field values
+ */
+record PendingWrite(String ticket, WriteTicket.Operation operation, String userId, User user) {
+}
@@ -0,0 +1,307 @@
+package com.amalitech.writebehind;
+
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.exception.WriteQueueFullException;
+import com.amalitech.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded queue that accepts user writes for asynchronous processing and
+ * flushes them in batches.
+ *
+ * <p>A single writer thread waits for the first queued write, then keeps
+ * collecting until the batch is full or the flush interval has elapsed,
+ * and hands the batch to {@link BulkUserWriter}. Finished tickets are
+ * kept in the order they finished; between batches, at most every ten
+ * seconds, those older than the ticket TTL are dropped, and after each
+ * flush the oldest are dropped while more tickets than the maximum are
+ * held.
+ * Pending tickets are never dropped. Submissions fail fast with {@link WriteQueueFullException} when the
+ * queue is at capacity. On shutdown the queue stops accepting writes and
+ * everything already queued is flushed before the Mongo client is
+ * closed.</p>
+ */
+@Component
+public class WriteBehindQueue implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    /** Stops after the web server so in-flight requests can still enqueue. */
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    /** Minimum time between two sweeps of expired tickets. */
+    static final Duration EXPIRY_INTERVAL = Duration.ofSeconds(10);
+
+    private final BulkUserWriter writer;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Map<String, WriteTicket> tickets = new ConcurrentHashMap<>();
+    private final Queue<String> finishedOrder = new ConcurrentLinkedQueue<>();
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration ticketTtl;
+    private final int maxTickets;
+    private final Clock clock;
+
+    private volatile boolean running;
+    private Thread worker;
+    private Instant expireAt = Instant.MIN;
+
+    /**
+     * Creates the queue.
+     *
+     * @param writer the batch writer
+     * @param capacity maximum number of queued writes
+     * @param batchSize maximum number of writes per flush
+     * @param flushInterval how long a partial batch waits for more writes
+     * @param ticketTtl how long finished tickets stay queryable
+     * @param maxTickets number of tickets above which the oldest finished ones are dropped
+     */
+    @Autowired
+    public WriteBehindQueue(
+            final BulkUserWriter writer,
+            @Value("${app.write-behind.capacity:10000}") final int capacity,
+            @Value("${app.write-behind.batch-size:500}") final int batchSize,
+            @Value("${app.write-behind.flush-interval:PT0.2S}") final Duration flushInterval,
+            @Value("${app.write-behind.ticket-ttl:PT1H}") final Duration ticketTtl,
+            @Value("${app.write-behind.max-tickets:100000}") final int maxTickets) {
+        this(writer, capacity, batchSize, flushInterval, ticketTtl, maxTickets, Clock.systemUTC());
+    }
+
+    WriteBehindQueue(final BulkUserWriter writer, final int capacity, final int batchSize,
+                     final Duration flushInterval, final Duration ticketTtl, final int maxTickets,
+                     final Clock clock) {
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.ticketTtl = ticketTtl;
+        this.maxTickets = maxTickets;
+        this.clock = clock;
+    }
+
+    /**
+     * Queues the creation of a user.
+     *
+     * @param user the validated user to create
+     * @return the pending ticket
+     * @throws WriteQueueFullException if the queue cannot accept the write
+     */
+    public WriteTicket submitCreate(final User user) {
+        return submit(WriteTicket.Operation.CREATE, null, user);
+    }
+
+    /**
+     * Queues a full update of a user.
+     *
+     * @param id the user ID
+     * @param user the validated new field values
+     * @return the pending ticket
+     * @throws WriteQueueFullException if the queue cannot accept the write
+     */
+    public WriteTicket submitUpdate(final String id, final User user) {
+        return submit(WriteTicket.Operation.UPDATE, id, user);
+    }
+
+    /**
+     * Looks up a ticket.
+     *
+     * @param ticket the ticket identifier
+     * @return the ticket, or empty if unknown or expired
+     */
+    public Optional<WriteTicket> getTicket(final String ticket) {
+        return Optional.ofNullable(tickets.get(ticket));
+    }
+
+    /**
+     * Gets the number of writes waiting to be flushed.
+     *
+     * @return the queue depth
+     */
+    public int depth() {
+        return queue.size();
+    }
+
+    private WriteTicket submit(final WriteTicket.Operation operation, final String id, final User user) {
+        if (!running) {
+            throw new WriteQueueFullException("Asynchronous writes are not being accepted right now.");
+        }
+        String ticketId = UUID.randomUUID().toString();
+        WriteTicket ticket = new WriteTicket(ticketId, operation, WriteTicket.Status.PENDING,
+                id, null, clock.instant(), null);
+        tickets.put(ticketId, ticket);
+        if (!queue.offer(new PendingWrite(ticketId, operation, id, User.copyOf(user)))) {
+            tickets.remove(ticketId);
+            logger.warn("Write-behind queue is full; rejecting {} request", operation);
+            throw new WriteQueueFullException("Write queue is full. Retry later.");
+        }
+        return ticket;
+    }
+
+    private void runLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            expireTicketsIfDue();
+            try {
+                PendingWrite first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Write-behind writer interrupted; remaining writes are flushed on stop");
+                flush(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    void flush(final List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<WriteOutcome> outcomes;
+        try {
+            outcomes = writer.write(batch);
+        } catch (RuntimeException e) {
+            logger.error("Failed to flush {} queued write(s)", batch.size(), e);
+            Instant now = clock.instant();
+            for (PendingWrite write : batch) {
+                finish(write.ticket(), ticket -> ticket.failed("Write failed: " + e.getMessage(), now));
+            }
+            evictFinished();
+            return;
+        }
+        Instant now = clock.instant();
+        for (WriteOutcome outcome : outcomes) {
+            finish(outcome.ticket(), ticket -> outcome.succeeded()
+                    ? ticket.completed(outcome.userId(), now)
+                    : ticket.failed(outcome.error(), now));
+        }
+        evictFinished();
+    }
+
+    private void finish(final String ticketId, final UnaryOperator<WriteTicket> outcome) {
+        if (tickets.computeIfPresent(ticketId, (k, ticket) -> outcome.apply(ticket)) != null) {
+            finishedOrder.add(ticketId);
+        }
+    }
+
+    private void evictFinished() {
+        while (tickets.size() > maxTickets) {
+            String oldest = finishedOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            tickets.remove(oldest);
+        }
+    }
+
+    private void expireTicketsIfDue() {
+        Instant now = clock.instant();
+        if (now.isBefore(expireAt)) {
+            return;
+        }
+        expireAt = now.plus(EXPIRY_INTERVAL);
+        expireTickets();
+    }
+
+    void expireTickets() {
+        Instant cutoff = clock.instant().minus(ticketTtl);
+        // Tickets finish in order, so the sweep stops at the first one still fresh
+        String oldest;
+        while ((oldest = finishedOrder.peek()) != null) {
+            WriteTicket ticket = tickets.get(oldest);
+            if (ticket != null && !ticket.completedAt().isBefore(cutoff)) {
+                return;
+            }
+            finishedOrder.poll();
+            tickets.remove(oldest);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "user-write-behind");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Write-behind queue started (batch size {}, flush interval {})", batchSize, flushInterval);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = worker;
+        if (thread == null) {
+            return;
+        }
+        // The writer notices within one flush interval; interrupting it could abort a bulk write
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            // Flushing here too would run two bulk writes at once; the writer drains the queue itself
+            logger.warn("Write-behind writer still busy after stop; {} queued write(s) are left to it",
+                    queue.size());
+            worker = null;
+            return;
+        }
+        // Anything offered while the writer was exiting is flushed here
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            flush(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+        }
+        worker = null;
+        logger.info("Write-behind queue stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,23 @@
+package com.amalitech.writebehind;
+
+/**
+ * Result of one queued write after its batch was flushed.
+ *
+ * @param ticket the ticket identifier
+ * @param userId the written user's ID, if the write succeeded
+ * @param error why the write failed, or {@code null} on success
+ */
+record WriteOutcome(String ticket, String userId, String error) {
+
+    static WriteOutcome success(final String ticket, final String userId) {
+        return new WriteOutcome(ticket, userId, null);
+    }
+
+    static WriteOutcome failure(final String ticket, final String error) {
+        return new WriteOutcome(ticket, null, error);
+    }
+
+    boolean succeeded() {
+        return error == null;
+    }
+}
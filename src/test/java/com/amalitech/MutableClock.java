@@ -0,0 +1,48 @@
+package com.amalitech;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * UTC clock for tests that only moves when told to.
+ */
+public final class MutableClock extends Clock {
+
+    private volatile Instant instant;
+
+    /**
+     * Creates a clock stopped at an instant.
+     *
+     * @param instant the starting instant
+     */
+    public MutableClock(final Instant instant) {
+        this.instant = instant;
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param duration how far to move it
+     */
+    public void advance(final Duration duration) {
+        instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(final ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
@@ -0,0 +1,47 @@
+package com.amalitech;
+
+import com.amalitech.controller.UserController;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Starts the whole application context, so that a bean Spring cannot
+ * construct fails the build rather than the deployment. No database is
+ * needed: the client points at a closed port and every startup read that
+ * fails is logged and skipped.
+ */
+@SpringBootTest
+@DisplayName("Application Context Tests")
+class UserManagementSpringBootTest {
+
+    @TempDir
+    static Path dataDirectory;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @DynamicPropertySource
+    static void properties(final DynamicPropertyRegistry registry) {
+        registry.add("spring.mongodb.uri",
+                () -> "mongodb://localhost:1/usermanagement?serverSelectionTimeoutMS=100&connectTimeoutMS=100");
+        registry.add("app.audit.directory", () -> dataDirectory.resolve("audit").toString());
+        registry.add("app.outbox.file", () -> dataDirectory.resolve("outbox.ndjson").toString());
+    }
+
+    @Test
+    @DisplayName("Should start the application context")
+    void contextLoads() {
+        // Assert
+        assertNotNull(context.getBean(UserController.class));
+    }
+}
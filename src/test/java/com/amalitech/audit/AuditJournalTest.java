@@ -0,0 +1,217 @@
+package com.amalitech.audit;
+
+import com.amalitech.MutableClock;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("AuditJournal Tests")
+class AuditJournalTest {
+
+    private static final Duration RETENTION = Duration.ofDays(30);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+
+    @Test
+    @DisplayName("Should read back appended changes with their before and after values")
+    void append_ThenReplay_ReturnsRecordsInOrder() {
+        // Arrange
+        AuditJournal journal = journal(1 << 16);
+        User created = user("1", "Ama", 30, 0L);
+        User renamed = user("1", "Ama Mensah", 30, 1L);
+
+        // Act
+        journal.append(UserChangeEvent.created(created));
+        journal.append(UserChangeEvent.updated(created, renamed));
+        journal.append(UserChangeEvent.deleted(renamed));
+        journal.sync();
+
+        // Assert
+        List<AuditRecord> records = replay(1);
+        assertEquals(3, records.size());
+        assertEquals(List.of(1L, 2L, 3L), records.stream().map(AuditRecord::sequence).toList());
+        assertNull(records.get(0).before());
+        assertEquals("Ama", records.get(1).before().getName());
+        assertEquals("Ama Mensah", records.get(1).after().getName());
+        assertEquals(1L, records.get(1).after().getVersion());
+        assertEquals(UserChangeEvent.Type.DELETED, records.get(2).type());
+        assertNull(records.get(2).after());
+        assertEquals(clock.instant(), records.get(2).at());
+    }
+
+    @Test
+    @DisplayName("Should rotate segments and find a user's history across them")
+    void append_PastSegmentSize_RotatesAndSearchesAllSegments() throws IOException {
+        // Arrange
+        AuditJournal journal = journal(512);
+
+        // Act
+        for (int i = 0; i < 20; i++) {
+            journal.append(UserChangeEvent.created(user(String.valueOf(i % 4), "User " + i, 20 + i, 0L)));
+        }
+
+        // Assert
+        assertTrue(AuditSegments.segments(directory).size() > 1);
+        List<AuditRecord> history = new AuditJournalReader(directory).history("2");
+        assertEquals(List.of(3L, 7L, 11L, 15L, 19L), history.stream().map(AuditRecord::sequence).toList());
+        assertEquals(List.of(15L, 16L, 17L, 18L, 19L, 20L),
+                replay(15).stream().map(AuditRecord::sequence).toList());
+    }
+
+    @Test
+    @DisplayName("Should continue after the last intact record when reopened after a torn write")
+    void open_AfterTornRecord_ContinuesSequence() throws IOException {
+        // Arrange
+        AuditJournal journal = journal(1 << 16);
+        journal.append(UserChangeEvent.created(user("1", "Ama", 30, 0L)));
+        journal.append(UserChangeEvent.created(user("2", "Kofi", 40, 0L)));
+        Path segment = AuditSegments.segments(directory).get(0);
+        MappedByteBuffer mapped = AuditSegments.map(segment, FileChannel.MapMode.READ_WRITE);
+        int secondRecord = AuditRecordCodec.HEADER + mapped.getInt(0);
+        // Corrupt the payload of the second record, as a crash mid-write would
+        mapped.put(secondRecord + AuditRecordCodec.HEADER + 20, (byte) 0x7f);
+        mapped.force();
+
+        // Act
+        AuditJournal reopened = journal(1 << 16);
+        long sequence = reopened.append(UserChangeEvent.created(user("3", "Esi", 25, 0L)));
+
+        // Assert
+        assertEquals(2L, sequence);
+        List<AuditRecord> records = replay(1);
+        assertEquals(List.of("1", "3"), records.stream().map(AuditRecord::userId).toList());
+    }
+
+    @Test
+    @DisplayName("Should delete segments whose records are all past retention")
+    void deleteExpired_OldSegments_DeletesOnlyExpired() throws IOException {
+        // Arrange
+        AuditJournal journal = journal(512);
+        for (int i = 0; i < 10; i++) {
+            journal.append(UserChangeEvent.created(user(String.valueOf(i), "Old " + i, 30, 0L)));
+        }
+        int oldSegments = AuditSegments.segments(directory).size();
+        clock.advance(RETENTION.plusDays(1));
+        for (int i = 0; i < 10; i++) {
+            journal.append(UserChangeEvent.created(user(String.valueOf(i), "New " + i, 30, 0L)));
+        }
+
+        // Act
+        journal.deleteExpired();
+
+        // Assert
+        List<Path> segments = AuditSegments.segments(directory);
+        assertTrue(oldSegments > 1);
+        // Only the segment holding the last old record, which also holds new ones, is kept
+        assertTrue(AuditSegments.firstSequenceOf(segments.get(0)) <= 10);
+        assertTrue(segments.size() == 1 || AuditSegments.firstSequenceOf(segments.get(1)) > 10);
+        assertTrue(AuditSegments.firstSequenceOf(segments.get(0)) > 1);
+        assertEquals(10, replay(11).size());
+    }
+
+    @Test
+    @DisplayName("Should swap in the prepared spare on rotation and prepare the next one")
+    void append_PastSegmentSize_UsesPreparedSpare() throws IOException {
+        // Arrange
+        AuditJournal journal = journal(512);
+        Path spare = directory.resolve(AuditJournal.SPARE_NAME);
+        assertTrue(Files.exists(spare));
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            journal.append(UserChangeEvent.created(user(String.valueOf(i), "User " + i, 30, 0L)));
+        }
+        journal.sync();
+
+        // Assert
+        assertTrue(Files.exists(spare));
+        assertTrue(AuditSegments.segments(directory).size() > 1);
+        assertEquals(10, replay(1).size());
+    }
+
+    @Test
+    @DisplayName("Should name a spare left holding records by a crash when reopened")
+    void open_SpareWithRecords_NamesItAndContinues() throws IOException {
+        // Arrange
+        AuditJournal journal = journal(512);
+        for (int i = 0; i < 10; i++) {
+            journal.append(UserChangeEvent.created(user(String.valueOf(i), "User " + i, 30, 0L)));
+        }
+        List<Path> segments = AuditSegments.segments(directory);
+        Path spare = directory.resolve(AuditJournal.SPARE_NAME);
+        // As if the JVM died after swapping in the spare but before naming it
+        Files.delete(spare);
+        Files.move(segments.get(segments.size() - 1), spare);
+
+        // Act
+        AuditJournal reopened = journal(512);
+        long sequence = reopened.append(UserChangeEvent.created(user("10", "User 10", 30, 0L)));
+
+        // Assert
+        assertEquals(11L, sequence);
+        assertEquals(11, replay(1).size());
+    }
+
+    @Test
+    @DisplayName("Should print a user's history from the command line")
+    void cli_Search_PrintsMatchingRecords() {
+        // Arrange
+        AuditJournal journal = journal(1 << 16);
+        User created = user("42", "Ama", 30, 0L);
+        journal.append(UserChangeEvent.created(created));
+        journal.append(UserChangeEvent.created(user("7", "Kofi", 40, 0L)));
+        journal.append(UserChangeEvent.deleted(created));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        int status = AuditJournalCli.run(new String[] {directory.toString(), "search", "42"},
+                new PrintStream(out, true, StandardCharsets.UTF_8), System.err);
+
+        // Assert
+        assertEquals(0, status);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(2, lines.length);
+        assertEquals("1 2026-01-01T00:00:00Z CREATED 42 before=- "
+                + "after={id=42, name=Ama, email=user42@example.com, age=30, version=0}", lines[0]);
+        assertTrue(lines[1].startsWith("3 2026-01-01T00:00:00Z DELETED 42 before={id=42"));
+    }
+
+    private AuditJournal journal(final int segmentBytes) {
+        return new AuditJournal(directory, segmentBytes, RETENTION, Duration.ofMillis(50), clock);
+    }
+
+    private List<AuditRecord> replay(final long from) {
+        List<AuditRecord> records = new ArrayList<>();
+        new AuditJournalReader(directory).replay(from, records::add);
+        return records;
+    }
+
+    private static User user(final String id, final String name, final int age, final Long version) {
+        User user = new User(name, "user" + id + "@example.com", age);
+        user.setId(id);
+        user.setVersion(version);
+        return user;
+    }
+}
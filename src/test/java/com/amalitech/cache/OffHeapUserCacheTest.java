@@ -0,0 +1,209 @@
+package com.amalitech.cache;
+
+import com.amalitech.MutableClock;
+import com.amalitech.model.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OffHeapUserCache Tests")
+class OffHeapUserCacheTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+
+    private static User user(String id, String name, Integer age, Long version) {
+        User user = new User(name, id + "@example.com", age);
+        user.setId(id);
+        user.setVersion(version);
+        return user;
+    }
+
+    @Test
+    @DisplayName("Should round-trip every field, including nulls and non-ASCII text")
+    void testRoundTrip() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(100, 256, Duration.ofMinutes(5), clock);
+        User full = user("507f1f77bcf86cd799439011", "Zoë Ñúñez", 42, 3L);
+        User sparse = user("507f1f77bcf86cd799439012", null, null, null);
+
+        // Act
+        cache.put(full);
+        cache.put(sparse);
+        User cachedFull = cache.get(full.getId()).orElseThrow();
+        User cachedSparse = cache.get(sparse.getId()).orElseThrow();
+
+        // Assert
+        assertEquals("Zoë Ñúñez", cachedFull.getName());
+        assertEquals(full.getEmail(), cachedFull.getEmail());
+        assertEquals(42, cachedFull.getAge());
+        assertEquals(3L, cachedFull.getVersion());
+        assertNull(cachedSparse.getName());
+        assertNull(cachedSparse.getAge());
+        assertNull(cachedSparse.getVersion());
+        assertTrue(cache.get("unknown").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should decode a fresh copy on every read")
+    void testCopyOnRead() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), clock);
+        cache.put(user("a", "Alice", 30, 1L));
+
+        // Act
+        User first = cache.get("a").orElseThrow();
+        first.setName("Mutated");
+
+        // Assert
+        assertEquals("Alice", cache.get("a").orElseThrow().getName());
+        assertNotSame(first, cache.get("a").orElseThrow());
+    }
+
+    @Test
+    @DisplayName("Should not replace a newer cached version with an older one")
+    void testVersionGuard() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), clock);
+        cache.put(user("a", "Newer", 30, 5L));
+
+        // Act
+        cache.put(user("a", "Older", 30, 4L));
+
+        // Assert
+        assertEquals("Newer", cache.get("a").orElseThrow().getName());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should expire entries after the TTL and drop invalidated ones")
+    void testExpiryAndInvalidate() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), clock);
+        cache.put(user("a", "Alice", 30, 1L));
+        cache.put(user("b", "Bob", 30, 1L));
+
+        // Act
+        cache.invalidate("b");
+        clock.advance(Duration.ofMinutes(6));
+
+        // Assert
+        assertTrue(cache.get("a").isEmpty());
+        assertTrue(cache.get("b").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should not cache a user loaded before it was invalidated")
+    void testLoadRacingInvalidation() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), clock);
+        long beforeDelete = cache.generation();
+        cache.invalidate("a");
+        long afterDelete = cache.generation();
+
+        // Act
+        cache.put(user("a", "Deleted", 30, 1L), beforeDelete);
+        cache.put(user("b", "Bob", 30, 1L), beforeDelete);
+
+        // Assert
+        assertTrue(cache.get("a").isEmpty());
+        assertTrue(cache.get("b").isPresent());
+        cache.put(user("a", "Recreated", 30, 1L), afterDelete);
+        assertEquals("Recreated", cache.get("a").orElseThrow().getName());
+    }
+
+    @Test
+    @DisplayName("Should not cache a user loaded before the cache was cleared")
+    void testLoadRacingClear() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), clock);
+        long beforeClear = cache.generation();
+        cache.clear();
+
+        // Act
+        cache.put(user("a", "Alice", 30, 1L), beforeClear);
+
+        // Assert
+        assertTrue(cache.get("a").isEmpty());
+        cache.put(user("a", "Alice", 30, 1L), cache.generation());
+        assertTrue(cache.get("a").isPresent());
+    }
+
+    @Test
+    @DisplayName("Should evict entries without a second chance when full")
+    void testClockEviction() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(128, 256, Duration.ofMinutes(5), clock);
+        cache.put(user("u0", "User", 30, 1L));
+
+        // Act
+        for (int i = 1; i < 2_000; i++) {
+            cache.get("u0");
+            cache.put(user("u" + i, "User", 30, 1L));
+        }
+
+        // Assert
+        assertTrue(cache.get("u0").isPresent());
+        assertTrue(cache.get("u1999").isPresent());
+        assertEquals(128, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should keep the index consistent across many inserts and removals")
+    void testIndexIntegrity() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(4_000, 128, Duration.ofMinutes(5), clock);
+
+        // Act
+        for (int i = 0; i < 3_000; i++) {
+            cache.put(user("id" + i, "User " + i, 30, 1L));
+        }
+        for (int i = 0; i < 3_000; i += 3) {
+            cache.invalidate("id" + i);
+        }
+
+        // Assert
+        for (int i = 0; i < 3_000; i++) {
+            assertEquals(i % 3 != 0, cache.get("id" + i).isPresent(), "id" + i);
+        }
+        assertEquals(2_000, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should keep expired entries for stale reads until the stale TTL passes")
+    void testStaleReads() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 256, Duration.ofMinutes(5), Duration.ofHours(1), clock);
+        cache.put(user("a", "Alice", 30, 1L));
+
+        // Act
+        clock.advance(Duration.ofMinutes(20));
+        boolean freshAfterTtl = cache.get("a").isPresent();
+        CachedUser stale = cache.getStale("a").orElseThrow();
+        clock.advance(Duration.ofHours(1));
+
+        // Assert
+        assertFalse(freshAfterTtl);
+        assertEquals("Alice", stale.user().getName());
+        assertEquals(Duration.ofMinutes(20), stale.age());
+        assertTrue(cache.getStale("a").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Should skip users too large for a slot")
+    void testOversizedRecord() {
+        // Arrange
+        OffHeapUserCache cache = new OffHeapUserCache(10, 64, Duration.ofMinutes(5), clock);
+
+        // Act
+        cache.put(user("a", "A name that is far too long to fit in a sixty-four byte slot", 30, 1L));
+
+        // Assert
+        assertTrue(cache.get("a").isEmpty());
+    }
+}
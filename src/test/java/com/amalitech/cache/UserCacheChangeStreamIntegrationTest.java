@@ -0,0 +1,116 @@
+package com.amalitech.cache;
+
+import com.amalitech.feed.UserChangeFeed;
+import com.amalitech.model.User;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the change stream listener against a single-node replica set,
+ * which is what {@link MongoDBContainer} starts. Skipped without Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("User cache change stream integration Tests")
+class UserCacheChangeStreamIntegrationTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private OffHeapUserCache cache;
+    private UserChangeStreamListener listener;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+        mongoTemplate = new MongoTemplate(client, "usermanagement_it");
+        mongoTemplate.dropCollection(User.class);
+        mongoTemplate.dropCollection(UserChangeStreamListener.TOKEN_COLLECTION);
+        mongoTemplate.createCollection(User.class);
+        cache = new OffHeapUserCache(1_000, 256, Duration.ofMinutes(5), Clock.systemUTC());
+        listener = newListener();
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+        client.close();
+    }
+
+    private UserChangeStreamListener newListener() {
+        return new UserChangeStreamListener(mongoTemplate, cache, mock(UserChangeFeed.class), true, "it-node",
+                Duration.ofMillis(200), Duration.ofMillis(100));
+    }
+
+    @Test
+    @DisplayName("Should refresh and invalidate entries for writes made by another node")
+    void testFollowsWritesFromOtherNodes() throws Exception {
+        // Arrange
+        User user = mongoTemplate.insert(new User("Alice", "alice@example.com", 30));
+        cache.put(user);
+        listener.start();
+        await(listener::isStreaming);
+
+        // Act: another node updates the user directly in the database
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(user.getId())),
+                new Update().set("name", "Alicia").inc("version", 1), User.class);
+
+        // Assert
+        await(() -> cache.get(user.getId()).map(User::getName).equals(Optional.of("Alicia")));
+
+        // Act: another node deletes the user
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(user.getId())), User.class);
+
+        // Assert
+        await(() -> cache.get(user.getId()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should resume from the persisted token after a restart")
+    void testResumesAfterRestart() throws Exception {
+        // Arrange
+        listener.start();
+        await(listener::isStreaming);
+        mongoTemplate.insert(new User("Warmup", "warmup@example.com", 30));
+        Thread.sleep(300);
+        listener.stop();
+
+        // Act: a write lands while the node is down
+        User missed = mongoTemplate.insert(new User("Bob", "bob@example.com", 40));
+        listener = newListener();
+        listener.start();
+
+        // Assert
+        await(() -> cache.get(missed.getId()).isPresent());
+    }
+
+    private static void await(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+        while (!condition.get()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 15 seconds");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
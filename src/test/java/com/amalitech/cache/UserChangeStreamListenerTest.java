@@ -0,0 +1,182 @@
+package com.amalitech.cache;
+
+import com.amalitech.delta.UserChangeSequencer;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.feed.UserChangeFeed;
+import com.amalitech.model.User;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("UserChangeStreamListener Tests")
+class UserChangeStreamListenerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoConverter converter;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private UserChangeFeed changeFeed;
+
+    private UserChangeStreamListener listener;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        listener = new UserChangeStreamListener(mongoTemplate, userCache, changeFeed, true, "node-1",
+                Duration.ofMinutes(1), Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Should refresh the cache from the post-image of inserts and updates")
+    void testApplyUpdate() {
+        // Arrange
+        Document fullDocument = new Document("_id", new ObjectId()).append("name", "Alice");
+        User user = new User("Alice", "alice@example.com", 30);
+        user.setId("u1");
+        when(converter.read(User.class, fullDocument)).thenReturn(user);
+
+        // Act
+        listener.apply("token-1", OperationType.INSERT, null, fullDocument);
+        listener.apply("token-2", OperationType.UPDATE, null, fullDocument);
+
+        // Assert
+        verify(userCache, times(2)).put(user);
+        verify(changeFeed).publish("token-1", UserChangeEvent.Type.CREATED, "u1", user);
+        verify(changeFeed).publish("token-2", UserChangeEvent.Type.UPDATED, "u1", user);
+    }
+
+    @Test
+    @DisplayName("Should invalidate deleted users and updates without a post-image")
+    void testApplyDelete() {
+        // Arrange
+        ObjectId id = new ObjectId();
+        BsonDocument key = new BsonDocument("_id", new BsonObjectId(id));
+
+        // Act
+        listener.apply("token-1", OperationType.DELETE, key, null);
+        listener.apply("token-2", OperationType.UPDATE, new BsonDocument("_id", new BsonString("legacy")), null);
+
+        // Assert
+        verify(userCache).invalidate(id.toHexString());
+        verify(userCache).invalidate("legacy");
+        verify(userCache, never()).put(any());
+        verify(changeFeed).publish("token-1", UserChangeEvent.Type.DELETED, id.toHexString(), null);
+        verifyNoMoreInteractions(changeFeed);
+    }
+
+    @Test
+    @DisplayName("Should clear the cache and reset the feed when the collection is dropped")
+    void testApplyDrop() {
+        // Act
+        listener.apply("token-1", OperationType.DROP, null, null);
+
+        // Assert
+        verify(userCache).clear();
+        verify(changeFeed).reset(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Should fall back to TTL-only mode when change streams are unsupported")
+    void testFallbackWhenUnsupported() throws Exception {
+        // Arrange
+        MongoCollection<Document> users = mock(MongoCollection.class);
+        MongoCollection<Document> tokens = mock(MongoCollection.class);
+        FindIterable<Document> noToken = mock(FindIterable.class);
+        when(mongoTemplate.getCollection("users")).thenReturn(users);
+        when(mongoTemplate.getCollection(UserChangeStreamListener.TOKEN_COLLECTION)).thenReturn(tokens);
+        when(tokens.find(any(Bson.class))).thenReturn(noToken);
+        BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(40573))
+                .append("errmsg", new BsonString("The $changeStream stage is only supported on replica sets"));
+        when(users.watch()).thenThrow(new MongoCommandException(response, new ServerAddress()));
+
+        // Act
+        listener.start();
+        verify(users, timeout(2_000)).watch();
+        Thread.sleep(50);
+
+        // Assert
+        assertTrue(listener.isRunning());
+        assertFalse(listener.isStreaming());
+        verifyNoInteractions(userCache);
+        listener.stop();
+        assertFalse(listener.isRunning());
+    }
+
+    @Test
+    @DisplayName("Should skip updates that only stamp the change sequence or the initial version")
+    void testIsStamp() {
+        // Arrange
+        BsonDocument key = new BsonDocument("_id", new BsonObjectId(new ObjectId()));
+        ChangeStreamDocument<Document> stamp = update(key,
+                new BsonDocument(UserChangeSequencer.FIELD, new BsonInt64(42)), List.of());
+        ChangeStreamDocument<Document> backfill = update(key,
+                new BsonDocument("version", new BsonInt64(0)), List.of());
+        ChangeStreamDocument<Document> edit = update(key,
+                new BsonDocument("age", new BsonInt32(31)).append("version", new BsonInt64(2)), List.of());
+        ChangeStreamDocument<Document> unstamp = update(key,
+                new BsonDocument("age", new BsonInt32(31)), List.of(UserChangeSequencer.FIELD));
+
+        // Act & Assert
+        assertTrue(UserChangeStreamListener.isStamp(stamp));
+        assertTrue(UserChangeStreamListener.isStamp(backfill));
+        assertFalse(UserChangeStreamListener.isStamp(edit));
+        assertFalse(UserChangeStreamListener.isStamp(unstamp));
+    }
+
+    @Test
+    @DisplayName("Should not start when the change stream is disabled")
+    void testDisabled() {
+        // Arrange
+        UserChangeStreamListener disabled = new UserChangeStreamListener(mongoTemplate, new NoOpUserCache(),
+                changeFeed, false, "node-1", Duration.ofMinutes(1), Duration.ofSeconds(5));
+
+        // Act
+        disabled.start();
+
+        // Assert
+        assertFalse(disabled.isRunning());
+        verify(mongoTemplate, never()).getCollection(any());
+    }
+
+    private static ChangeStreamDocument<Document> update(final BsonDocument key, final BsonDocument updated,
+                                                         final List<String> removed) {
+        return new ChangeStreamDocument<>(OperationType.UPDATE.getValue(), new BsonDocument(), null, null, null,
+                null, null, key, null, new UpdateDescription(removed, updated), null, null, null, null, null);
+    }
+}
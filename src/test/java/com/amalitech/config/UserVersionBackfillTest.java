@@ -0,0 +1,65 @@
+package com.amalitech.config;
+
+import com.amalitech.model.User;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("UserVersionBackfill Tests")
+class UserVersionBackfillTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserVersionBackfill backfill = new UserVersionBackfill(mongoTemplate);
+
+    @Test
+    @DisplayName("Should update legacy users in batches, then record that the backfill ran")
+    void backfill_LegacyUsers_UpdatesInBatchesAndMarks() {
+        // Arrange
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users")))
+                .thenReturn(users(UserVersionBackfill.BATCH_SIZE), users(3));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+        // Act
+        backfill.backfill();
+
+        // Assert
+        verify(mongoTemplate, times(2)).updateMulti(any(Query.class), any(Update.class), eq(User.class));
+        verify(mongoTemplate).upsert(any(Query.class), any(Update.class), eq(UserVersionBackfill.MARKER_COLLECTION));
+    }
+
+    @Test
+    @DisplayName("Should not scan users again once the backfill has run")
+    void backfill_MarkerPresent_DoesNothing() {
+        // Arrange
+        when(mongoTemplate.exists(any(Query.class), eq(UserVersionBackfill.MARKER_COLLECTION))).thenReturn(true);
+
+        // Act
+        backfill.backfill();
+
+        // Assert
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), any(String.class));
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(Update.class), eq(User.class));
+    }
+
+    private static List<Document> users(final int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document("_id", new ObjectId())).toList();
+    }
+}
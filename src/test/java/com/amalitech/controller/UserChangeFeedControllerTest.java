@@ -0,0 +1,99 @@
+package com.amalitech.controller;
+
+import com.amalitech.cache.UserChangeStreamListener;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.feed.UserChangeFeed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@DisplayName("UserChangeFeedController Tests")
+class UserChangeFeedControllerTest {
+
+    @Mock
+    private UserChangeStreamListener changeStream;
+
+    private UserChangeFeed changeFeed;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        changeFeed = new UserChangeFeed(JsonMapper.builder().build(), 10, 10, 10, Duration.ofSeconds(30));
+        changeFeed.start();
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new UserChangeFeedController(changeFeed, changeStream, Duration.ofSeconds(5)))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeFeed.stop();
+    }
+
+    @Test
+    @DisplayName("Should return 503 while the change stream is not being followed")
+    void testUnavailableWithoutChangeStream() throws Exception {
+        // Arrange
+        when(changeStream.isStreaming()).thenReturn(false);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/changes").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"));
+        assertEquals(0, changeFeed.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("Should stream missed and new changes as server-sent events")
+    void testStreamsChanges() throws Exception {
+        // Arrange
+        when(changeStream.isStreaming()).thenReturn(true);
+        changeFeed.publish("token-1", UserChangeEvent.Type.CREATED, "u1", null);
+        changeFeed.publish("token-2", UserChangeEvent.Type.DELETED, "u1", null);
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/v1/users/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header(UserChangeFeedController.LAST_EVENT_ID_HEADER, "token-1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        changeFeed.publish("token-3", UserChangeEvent.Type.DELETED, "u2", null);
+
+        // Assert
+        String body = awaitContent(result, "id:token-3");
+        assertEquals(1, changeFeed.subscriberCount());
+        assertTrue(result.getResponse().getContentType().startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+        assertFalse(body.contains("token-1"));
+        assertTrue(body.contains("id:token-2\nevent:change\ndata:{\"type\":\"DELETED\",\"userId\":\"u1\"}\n\n"));
+        assertTrue(body.indexOf("token-2") < body.indexOf("token-3"));
+    }
+
+    private static String awaitContent(final MvcResult result, final String expected) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        String body = result.getResponse().getContentAsString();
+        while (!body.contains(expected) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            body = result.getResponse().getContentAsString();
+        }
+        assertTrue(body.contains(expected), "Stream did not contain " + expected + ": " + body);
+        return body;
+    }
+}
@@ -0,0 +1,136 @@
+package com.amalitech.controller;
+
+import com.amalitech.cache.NoOpUserCache;
+import com.amalitech.config.ReadRouting;
+import com.amalitech.exception.GlobalExceptionHandler;
+import com.amalitech.metrics.MongoBudget;
+import com.amalitech.metrics.MongoBudgetFilter;
+import com.amalitech.metrics.MongoRoundTrips;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.amalitech.resilience.HedgedReader;
+import com.amalitech.resilience.RetryBudget;
+import com.amalitech.service.UserServiceImpl;
+import com.amalitech.writebehind.WriteBehindQueue;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+
+/**
+ * Checks every {@link UserController} endpoint against its declared
+ * {@link MongoBudget} on a real database, so an added round trip fails
+ * the build. Skipped without Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("UserController MongoDB budget integration Tests")
+class UserControllerMongoBudgetIntegrationTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private MongoClient client;
+    private MongoTemplate mongoTemplate;
+    private MockMvc mockMvc;
+    private User existing;
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(MONGO.getReplicaSetUrl()))
+            .addCommandListener(new MongoRoundTrips())
+            .build());
+        mongoTemplate = new MongoTemplate(client, "usermanagement_budget");
+        mongoTemplate.dropCollection(User.class);
+        UserServiceImpl userService = new UserServiceImpl(mongoTemplate, event -> { }, new NoOpUserCache(),
+            new ReadRouting("secondaryPreferred", Duration.ofSeconds(90)),
+            new HedgedReader(false, Duration.ZERO, Duration.ZERO, null, Runnable::run),
+            new UserOutbox(mongoTemplate, new MongoTransactionManager(mongoTemplate.getMongoDatabaseFactory()),
+                client, new RetryBudget(0.1, 10, Duration.ofSeconds(10), Clock.systemUTC()), true));
+        UserController controller = new UserController(userService,
+            Validation.buildDefaultValidatorFactory().getValidator(), mock(WriteBehindQueue.class));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .addFilters(new MongoBudgetFilter(new SimpleMeterRegistry(), true))
+            .build();
+        existing = mongoTemplate.save(new User("John Doe", "john@example.com", 30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    @DisplayName("Should create a user within budget")
+    void testCreateWithinBudget() throws Exception {
+        assertWithinBudget("createUser", post("/api/v1/users")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"name\":\"Jane\",\"email\":\"jane@example.com\",\"age\":25}"));
+    }
+
+    @Test
+    @DisplayName("Should list users within budget")
+    void testListWithinBudget() throws Exception {
+        assertWithinBudget("getAllUsers", get("/api/v1/users"));
+    }
+
+    @Test
+    @DisplayName("Should get a user within budget, with and without a stale entity tag")
+    void testGetWithinBudget() throws Exception {
+        assertWithinBudget("getUserById", get("/api/v1/users/{id}", existing.getId()));
+        assertWithinBudget("getUserById", get("/api/v1/users/{id}", existing.getId())
+            .header(HttpHeaders.IF_NONE_MATCH, "\"99\""));
+    }
+
+    @Test
+    @DisplayName("Should update, patch and delete within budget, including failed preconditions")
+    void testWritesWithinBudget() throws Exception {
+        String body = "{\"name\":\"John\",\"email\":\"john@example.com\",\"age\":31}";
+        assertWithinBudget("updateUser", put("/api/v1/users/{id}", existing.getId())
+            .contentType(MediaType.APPLICATION_JSON).content(body));
+        assertWithinBudget("updateUser", put("/api/v1/users/{id}", existing.getId())
+            .header(HttpHeaders.IF_MATCH, "\"99\"")
+            .contentType(MediaType.APPLICATION_JSON).content(body));
+        assertWithinBudget("patchUser", patch("/api/v1/users/{id}", existing.getId())
+            .contentType(UserController.MERGE_PATCH_JSON).content("{\"age\":32}"));
+        assertWithinBudget("deleteUser", delete("/api/v1/users/{id}", existing.getId())
+            .header(HttpHeaders.IF_MATCH, "\"99\""));
+        assertWithinBudget("deleteUser", delete("/api/v1/users/{id}", existing.getId()));
+    }
+
+    private void assertWithinBudget(final String endpoint, final RequestBuilder request) throws Exception {
+        int budget = Arrays.stream(UserController.class.getDeclaredMethods())
+            .filter(method -> method.getName().equals(endpoint))
+            .findFirst().orElseThrow()
+            .getAnnotation(MongoBudget.class).value();
+        try (MongoRoundTrips.Tally tally = MongoRoundTrips.start()) {
+            mockMvc.perform(request).andExpect(header().exists(MongoBudgetFilter.ROUND_TRIPS_HEADER));
+            tally.assertWithin(budget);
+        }
+    }
+}
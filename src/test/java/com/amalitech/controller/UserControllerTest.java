@@ -1,25 +1,41 @@
 package com.amalitech.controller;
 
+import com.amalitech.dto.WriteTicket;
 import com.amalitech.exception.DuplicateEmailException;
 import com.amalitech.exception.GlobalExceptionHandler;
+import com.amalitech.exception.PreconditionFailedException;
+import com.amalitech.exception.WriteQueueFullException;
+import com.amalitech.metrics.MongoBudget;
 import com.amalitech.model.User;
 import com.amalitech.service.UserService;
+import com.amalitech.model.UserPatch;
+import com.amalitech.service.PatchResult;
+import com.amalitech.writebehind.WriteBehindQueue;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.lang.reflect.Method;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -30,6 +46,12 @@ class UserControllerTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private WriteBehindQueue writeBehindQueue;
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
     @InjectMocks
     private UserController userController;
 
@@ -307,6 +329,69 @@ class UserControllerTest {
         verify(userService, times(1)).getUserById(userId);
     }
 
+    @Test
+    @DisplayName("Should return strong ETag with user representation")
+    void testGetUserByIdReturnsETag() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        testUser.setVersion(3L);
+        when(userService.getUserById(userId)).thenReturn(java.util.Optional.of(testUser));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(jsonPath("$.version", is(3)));
+    }
+
+    @Test
+    @DisplayName("Should return 304 Not Modified when If-None-Match matches")
+    void testGetUserByIdNotModified() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.getUserVersion(userId)).thenReturn(java.util.Optional.of(3L));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/{id}", userId)
+                .header("If-None-Match", "\"2\", \"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(content().string(""));
+
+        verify(userService, never()).getUserById(anyString());
+    }
+
+    @Test
+    @DisplayName("Should return full representation when If-None-Match is stale")
+    void testGetUserByIdModifiedSinceETag() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        testUser.setVersion(4L);
+        when(userService.getUserVersion(userId)).thenReturn(java.util.Optional.of(4L));
+        when(userService.getUserById(userId)).thenReturn(java.util.Optional.of(testUser));
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/{id}", userId)
+                .header("If-None-Match", "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""))
+                .andExpect(jsonPath("$.id", is(userId)));
+    }
+
+    @Test
+    @DisplayName("Should return 404 when If-None-Match is sent for a missing user")
+    void testGetUserByIdNotModifiedMissingUser() throws Exception {
+        // Arrange
+        String userId = "nonexistent123";
+        when(userService.getUserVersion(userId)).thenReturn(java.util.Optional.empty());
+        when(userService.getUserById(userId)).thenReturn(java.util.Optional.empty());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/{id}", userId)
+                .header("If-None-Match", "*"))
+                .andExpect(status().isNotFound());
+    }
+
     // US-006: Input Validation Tests
     
     @Test
@@ -632,7 +717,8 @@ class UserControllerTest {
                 .andExpect(status().isConflict())
                 .andExpect(jsonPath("$.message", is("Email already exists: duplicate@example.com")));
     }
-
+
+
     // US-009: Comprehensive Controller Tests - Edge Cases
 
     @Test
@@ -882,4 +968,351 @@ class UserControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
-}
\ No newline at end of file
+
+    // Optimistic concurrency Tests
+
+    @Test
+    @DisplayName("Should pass If-Match version to conditional update")
+    void testUpdateUserWithIfMatch() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        User updateData = new User("Jane Updated", "jane.updated@example.com", 28);
+        User updatedUser = new User("Jane Updated", "jane.updated@example.com", 28);
+        updatedUser.setId(userId);
+        updatedUser.setVersion(4L);
+        when(userService.updateUser(eq(userId), any(User.class), eq(3L)))
+                .thenReturn(java.util.Optional.of(updatedUser));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("If-Match", "\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateData)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"4\""));
+
+        verify(userService, never()).updateUser(anyString(), any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should return 412 Precondition Failed on version conflict during update")
+    void testUpdateUserVersionConflict() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        User updateData = new User("Jane Updated", "jane.updated@example.com", 28);
+        when(userService.updateUser(eq(userId), any(User.class), eq(2L)))
+                .thenThrow(new PreconditionFailedException(userId, 2L));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("If-Match", "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(updateData)))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.status", is(412)))
+                .andExpect(jsonPath("$.error", is("Precondition Failed")));
+    }
+
+    @Test
+    @DisplayName("Should treat If-Match wildcard as unconditional update")
+    void testUpdateUserWithWildcardIfMatch() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.updateUser(eq(userId), any(User.class))).thenReturn(java.util.Optional.of(testUser));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("If-Match", "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Should reject weak or malformed If-Match with 412")
+    void testUpdateUserWithWeakIfMatch() throws Exception {
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", "507f1f77bcf86cd799439011")
+                .header("If-Match", "W/\"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isPreconditionFailed());
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should take the one version from an If-Match list, skipping weak and foreign tags")
+    void testUpdateUserWithIfMatchList() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.updateUser(eq(userId), any(User.class), eq(3L)))
+                .thenReturn(java.util.Optional.of(testUser));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("If-Match", "W/\"2\", \"abc\",\"3\" , \"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Should reject an If-Match list naming two versions, or one that is malformed, with 400")
+    void testUpdateUserWithInvalidIfMatchList() throws Exception {
+        // Act & Assert
+        for (String ifMatch : new String[] {"\"3\", \"4\"", "3", "\"3\" x", "*, \"3\""}) {
+            mockMvc.perform(put("/api/v1/users/{id}", "507f1f77bcf86cd799439011")
+                    .header("If-Match", ifMatch)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(testUser)))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.status", is(400)));
+        }
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should pass If-Match version to conditional delete")
+    void testDeleteUserWithIfMatch() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.deleteUser(userId, 3L)).thenReturn(true);
+
+        // Act & Assert
+        mockMvc.perform(delete("/api/v1/users/{id}", userId)
+                .header("If-Match", "\"3\""))
+                .andExpect(status().isNoContent());
+
+        verify(userService, never()).deleteUser(userId);
+    }
+
+    @Test
+    @DisplayName("Should return 412 Precondition Failed on version conflict during delete")
+    void testDeleteUserVersionConflict() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.deleteUser(userId, 3L)).thenThrow(new PreconditionFailedException(userId, 3L));
+
+        // Act & Assert
+        mockMvc.perform(delete("/api/v1/users/{id}", userId)
+                .header("If-Match", "\"3\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    // Partial update Tests
+
+    @Test
+    @DisplayName("Should apply merge patch and report modification")
+    void testPatchUserModified() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        User patched = new User("John Doe", "john.doe@example.com", 31);
+        patched.setId(userId);
+        patched.setVersion(2L);
+        when(userService.patchUser(eq(userId), any(UserPatch.class)))
+                .thenReturn(java.util.Optional.of(new PatchResult(patched, true)));
+
+        // Act & Assert
+        mockMvc.perform(patch("/api/v1/users/{id}", userId)
+                .contentType("application/merge-patch+json")
+                .content("{\"age\":31}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Patch-Result", "modified"))
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.age", is(31)));
+
+        verify(userService).patchUser(eq(userId), argThat((UserPatch p) ->
+                p.getChanges().equals(java.util.Map.of("age", 31))));
+    }
+
+    @Test
+    @DisplayName("Should report no-op when patch changes nothing")
+    void testPatchUserNoOp() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.patchUser(eq(userId), any(UserPatch.class)))
+                .thenReturn(java.util.Optional.of(new PatchResult(testUser, false)));
+
+        // Act & Assert
+        mockMvc.perform(patch("/api/v1/users/{id}", userId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"John Doe\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Patch-Result", "no-op"));
+    }
+
+    @Test
+    @DisplayName("Should validate only supplied patch fields")
+    void testPatchUserValidationFailure() throws Exception {
+        // Act & Assert
+        mockMvc.perform(patch("/api/v1/users/{id}", "507f1f77bcf86cd799439011")
+                .contentType("application/merge-patch+json")
+                .content("{\"age\":12,\"email\":\"not-an-email\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", is("Validation failed")))
+                .andExpect(jsonPath("$.fieldErrors.age", is("Age must be at least 18")))
+                .andExpect(jsonPath("$.fieldErrors.email", is("Email must be a valid email address")))
+                .andExpect(jsonPath("$.fieldErrors.name").doesNotExist());
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should return 404 when patching non-existent user")
+    void testPatchUserNotFound() throws Exception {
+        // Arrange
+        when(userService.patchUser(eq("nonexistent123"), any(UserPatch.class)))
+                .thenReturn(java.util.Optional.empty());
+
+        // Act & Assert
+        mockMvc.perform(patch("/api/v1/users/{id}", "nonexistent123")
+                .contentType("application/merge-patch+json")
+                .content("{\"age\":40}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Should pass If-Match version to conditional patch")
+    void testPatchUserWithIfMatch() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userService.patchUser(eq(userId), any(UserPatch.class), eq(5L)))
+                .thenThrow(new PreconditionFailedException(userId, 5L));
+
+        // Act & Assert
+        mockMvc.perform(patch("/api/v1/users/{id}", userId)
+                .header("If-Match", "\"5\"")
+                .contentType("application/merge-patch+json")
+                .content("{\"age\":40}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    private static WriteTicket pendingTicket(WriteTicket.Operation operation, String userId) {
+        return new WriteTicket("ticket-1", operation, WriteTicket.Status.PENDING,
+                userId, null, Instant.parse("2026-02-13T02:22:32Z"), null);
+    }
+
+    @Test
+    @DisplayName("Should queue creation and return 202 when respond-async is preferred")
+    void testCreateUserAsync() throws Exception {
+        // Arrange
+        when(writeBehindQueue.submitCreate(any(User.class)))
+                .thenReturn(pendingTicket(WriteTicket.Operation.CREATE, null));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/users")
+                .header("Prefer", "respond-async, wait=5")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", org.hamcrest.Matchers.endsWith("/api/v1/users/writes/ticket-1")))
+                .andExpect(header().string("Preference-Applied", "respond-async"))
+                .andExpect(jsonPath("$.status", is("PENDING")))
+                .andExpect(jsonPath("$.operation", is("CREATE")));
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should validate before queueing an asynchronous creation")
+    void testCreateUserAsyncValidation() throws Exception {
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/users")
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"\",\"email\":\"bad\",\"age\":10}"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(writeBehindQueue);
+    }
+
+    @Test
+    @DisplayName("Should return 503 with Retry-After when the write queue is full")
+    void testCreateUserAsyncQueueFull() throws Exception {
+        // Arrange
+        when(writeBehindQueue.submitCreate(any(User.class)))
+                .thenThrow(new WriteQueueFullException("Write queue is full. Retry later."));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/users")
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.status", is(503)));
+    }
+
+    @Test
+    @DisplayName("Should queue update when respond-async is preferred")
+    void testUpdateUserAsync() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(writeBehindQueue.submitUpdate(eq(userId), any(User.class)))
+                .thenReturn(pendingTicket(WriteTicket.Operation.UPDATE, userId));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.userId", is(userId)));
+
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Should update synchronously when If-Match accompanies respond-async")
+    void testUpdateUserAsyncWithIfMatch() throws Exception {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        testUser.setId(userId);
+        testUser.setVersion(3L);
+        when(userService.updateUser(eq(userId), any(User.class), eq(2L)))
+                .thenReturn(java.util.Optional.of(testUser));
+
+        // Act & Assert
+        mockMvc.perform(put("/api/v1/users/{id}", userId)
+                .header("Prefer", "respond-async")
+                .header("If-Match", "\"2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+
+        verifyNoInteractions(writeBehindQueue);
+    }
+
+    @Test
+    @DisplayName("Should return ticket status and 404 for unknown tickets")
+    void testGetWriteTicket() throws Exception {
+        // Arrange
+        WriteTicket completed = pendingTicket(WriteTicket.Operation.CREATE, null)
+                .completed("507f1f77bcf86cd799439011", Instant.parse("2026-02-13T02:22:33Z"));
+        when(writeBehindQueue.getTicket("ticket-1")).thenReturn(java.util.Optional.of(completed));
+        when(writeBehindQueue.getTicket("missing")).thenReturn(java.util.Optional.empty());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/v1/users/writes/{ticket}", "ticket-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("COMPLETED")))
+                .andExpect(jsonPath("$.userId", is("507f1f77bcf86cd799439011")));
+        mockMvc.perform(get("/api/v1/users/writes/{ticket}", "missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Should declare a MongoDB round-trip budget on every endpoint")
+    void testEveryEndpointHasMongoBudget() {
+        // Act & Assert
+        for (Method method : UserController.class.getDeclaredMethods()) {
+            if (AnnotatedElementUtils.hasAnnotation(method, RequestMapping.class)) {
+                assertNotNull(method.getAnnotation(MongoBudget.class),
+                        method.getName() + " has no @MongoBudget");
+            }
+        }
+    }
+}
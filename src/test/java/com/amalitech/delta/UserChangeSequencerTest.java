@@ -0,0 +1,167 @@
+package com.amalitech.delta;
+
+import com.amalitech.model.User;
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("UserChangeSequencer Tests")
+class UserChangeSequencerTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-31T00:00:00Z");
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations userBulk = mock(BulkOperations.class);
+    private final BulkOperations tombstoneBulk = mock(BulkOperations.class);
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.indexOps(any(Class.class))).thenReturn(mock(IndexOperations.class));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, User.class)).thenReturn(userBulk);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, UserTombstone.class)).thenReturn(tombstoneBulk);
+    }
+
+    @Test
+    @DisplayName("Should stamp pending users, then tombstones, with consecutive positions before publishing them")
+    void stampOnce_PendingChanges_StampsInOrderAndPublishes() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of(user("u1"), user("u2")));
+        when(mongoTemplate.find(any(Query.class), eq(UserTombstone.class)))
+                .thenReturn(List.of(new UserTombstone("t1", null, NOW)));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq(UserChangeSequencer.SEQUENCE_COLLECTION)))
+                .thenReturn(new Document("_id", UserChangeSequencer.SEQUENCE_ID).append("seq", 13L));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserChangeSequencer sequencer = sequencer();
+        sequencer.bindTo(registry);
+
+        // Act
+        int stamped = sequencer.stampOnce();
+
+        // Assert
+        assertEquals(3, stamped);
+        ArgumentCaptor<Update> userStamps = ArgumentCaptor.forClass(Update.class);
+        InOrder order = inOrder(userBulk, tombstoneBulk, mongoTemplate);
+        order.verify(userBulk, times(2)).updateOne(any(Query.class), userStamps.capture());
+        order.verify(userBulk).execute();
+        order.verify(tombstoneBulk).updateOne(any(Query.class), argThat((Update update) -> position(update) == 13L));
+        order.verify(tombstoneBulk).execute();
+        order.verify(mongoTemplate).updateFirst(any(Query.class),
+                argThat((UpdateDefinition update) -> update.getUpdateObject().get("$max", Document.class)
+                        .get("stamped", Number.class).longValue() == 13L),
+                eq(UserChangeSequencer.SEQUENCE_COLLECTION));
+        assertEquals(List.of(11L, 12L), userStamps.getAllValues().stream().map(UserChangeSequencerTest::position)
+                .toList());
+        assertEquals(3, registry.get("user.delta.stamped").counter().count());
+        assertEquals(13, registry.get("user.delta.sequence").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should leave pending changes alone while another instance holds the lease")
+    void stampOnce_LeaseHeldElsewhere_StampsNothing() {
+        // Arrange
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), anyString()))
+                .thenThrow(new DuplicateKeyException("E11000"));
+
+        // Act
+        int stamped = sequencer().stampOnce();
+
+        // Assert
+        assertEquals(0, stamped);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(User.class));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), anyString());
+    }
+
+    @Test
+    @DisplayName("Should purge expired tombstones even while changes are always pending")
+    void stampOnce_PendingChanges_StillPurges() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of(user("u1")));
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq(UserChangeSequencer.SEQUENCE_COLLECTION)))
+                .thenReturn(new Document("_id", UserChangeSequencer.SEQUENCE_ID).append("seq", 1L));
+        when(mongoTemplate.findOne(any(Query.class), eq(UserTombstone.class)))
+                .thenReturn(new UserTombstone("t7", 7L, NOW.minus(Duration.ofDays(40))));
+        when(mongoTemplate.remove(any(Query.class), eq(UserTombstone.class))).thenReturn(DeleteResult.acknowledged(1));
+        UserChangeSequencer sequencer = sequencer();
+
+        // Act
+        int first = sequencer.stampOnce();
+        int second = sequencer.stampOnce();
+
+        // Assert
+        assertEquals(1, first);
+        assertEquals(1, second);
+        verify(mongoTemplate, times(1)).remove(any(Query.class), eq(UserTombstone.class));
+    }
+
+    @Test
+    @DisplayName("Should move the horizon past expired tombstones before deleting them")
+    void purgeExpired_ExpiredTombstones_MovesHorizonThenDeletes() {
+        // Arrange
+        when(mongoTemplate.findOne(any(Query.class), eq(UserTombstone.class)))
+                .thenReturn(new UserTombstone("t7", 7L, NOW.minus(Duration.ofDays(40))));
+        when(mongoTemplate.remove(any(Query.class), eq(UserTombstone.class))).thenReturn(DeleteResult.acknowledged(3));
+
+        // Act
+        long deleted = sequencer().purgeExpired();
+
+        // Assert
+        assertEquals(3, deleted);
+        InOrder order = inOrder(mongoTemplate);
+        order.verify(mongoTemplate).updateFirst(any(Query.class),
+                argThat((UpdateDefinition update) -> update.getUpdateObject().get("$max", Document.class)
+                        .get("horizon", Number.class).longValue() == 7L),
+                eq(UserChangeSequencer.SEQUENCE_COLLECTION));
+        order.verify(mongoTemplate).remove(argThat((Query query) -> query.getQueryObject()
+                .get(UserChangeSequencer.FIELD, Document.class).get("$lte").equals(7L)), eq(UserTombstone.class));
+    }
+
+    private UserChangeSequencer sequencer() {
+        return new UserChangeSequencer(mongoTemplate, true, 100, Duration.ofMillis(10), Duration.ofSeconds(10),
+                Duration.ofDays(30), Clock.fixed(NOW, ZoneOffset.UTC), "me");
+    }
+
+    private static long position(final Update update) {
+        return update.getUpdateObject().get("$set", Document.class)
+                .get(UserChangeSequencer.FIELD, Number.class).longValue();
+    }
+
+    private static User user(final String id) {
+        User user = new User("User " + id, id + "@example.com", 30);
+        user.setId(id);
+        return user;
+    }
+}
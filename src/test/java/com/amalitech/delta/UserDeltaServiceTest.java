@@ -0,0 +1,128 @@
+package com.amalitech.delta;
+
+import com.amalitech.dto.UserDelta;
+import com.amalitech.dto.UserDeltaEntry;
+import com.amalitech.exception.DeltaExpiredException;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("UserDeltaService Tests")
+class UserDeltaServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserDeltaService deltaService = new UserDeltaService(mongoTemplate);
+
+    @BeforeEach
+    void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE,
+                new MongoMappingContext());
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+    }
+
+    @Test
+    @DisplayName("Should merge users and tombstones in sequence order up to the limit")
+    void changesSince_MoreThanLimit_ReturnsFirstPage() {
+        // Arrange
+        sequence(20, 0);
+        ObjectId first = new ObjectId();
+        ObjectId third = new ObjectId();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users"))).thenReturn(List.of(
+                user(first, 11), user(third, 14)));
+        when(mongoTemplate.find(any(Query.class), eq(UserTombstone.class))).thenReturn(List.of(
+                new UserTombstone("gone", 12L, Instant.now()), new UserTombstone("later", 15L, Instant.now())));
+
+        // Act
+        UserDelta delta = deltaService.changesSince(10, 3);
+
+        // Assert
+        assertEquals(List.of(11L, 12L, 14L), delta.changes().stream().map(UserDeltaEntry::seq).toList());
+        assertEquals(first.toHexString(), delta.changes().get(0).id());
+        assertEquals("alice@example.com", delta.changes().get(0).user().getEmail());
+        assertTrue(delta.changes().get(1).deleted());
+        assertNull(delta.changes().get(1).user());
+        assertTrue(delta.hasMore());
+        assertEquals(14, delta.next());
+    }
+
+    @Test
+    @DisplayName("Should continue from the stamped watermark once every change is returned")
+    void changesSince_LastPage_ReturnsWatermark() {
+        // Arrange
+        sequence(20, 0);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("users")))
+                .thenReturn(List.of(user(new ObjectId(), 17)));
+        when(mongoTemplate.find(any(Query.class), eq(UserTombstone.class))).thenReturn(List.of());
+
+        // Act
+        UserDelta delta = deltaService.changesSince(15, 100);
+
+        // Assert
+        assertEquals(1, delta.changes().size());
+        assertFalse(delta.hasMore());
+        assertEquals(20, delta.next());
+    }
+
+    @Test
+    @DisplayName("Should answer from the sequence document alone when the client is up to date")
+    void changesSince_UpToDate_ReturnsNothing() {
+        // Arrange
+        sequence(20, 5);
+
+        // Act
+        UserDelta delta = deltaService.changesSince(20, 100);
+
+        // Assert
+        assertTrue(delta.changes().isEmpty());
+        assertEquals(20, delta.next());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), anyString());
+    }
+
+    @Test
+    @DisplayName("Should reject a sequence behind the horizon of purged tombstones")
+    void changesSince_BehindHorizon_Throws() {
+        // Arrange
+        sequence(20, 5);
+
+        // Act & Assert
+        assertThrows(DeltaExpiredException.class, () -> deltaService.changesSince(4, 100));
+    }
+
+    private void sequence(final long stamped, final long horizon) {
+        when(mongoTemplate.findById(UserChangeSequencer.SEQUENCE_ID, Document.class,
+                UserChangeSequencer.SEQUENCE_COLLECTION))
+                .thenReturn(new Document("_id", UserChangeSequencer.SEQUENCE_ID)
+                        .append("seq", stamped).append("stamped", stamped).append("horizon", horizon));
+    }
+
+    private static Document user(final ObjectId id, final long seq) {
+        return new Document("_id", id).append("name", "Alice").append("email", "alice@example.com")
+                .append("age", 30).append("version", 1L).append(UserChangeSequencer.FIELD, seq);
+    }
+}
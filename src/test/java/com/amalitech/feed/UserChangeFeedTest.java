@@ -0,0 +1,195 @@
+package com.amalitech.feed;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UserChangeFeed Tests")
+class UserChangeFeedTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private SimpleMeterRegistry registry;
+    private UserChangeFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        feed = new UserChangeFeed(objectMapper, 3, 2, 10, Duration.ofSeconds(30));
+        feed.bindTo(registry);
+        feed.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.stop();
+    }
+
+    @Test
+    @DisplayName("Should send each change to every subscriber with its resume token as ID")
+    void testFanOut() throws Exception {
+        // Arrange
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        feed.subscribe(null, first);
+        feed.subscribe(null, second);
+        User user = new User("Alice", "alice@example.com", 30);
+        user.setId("u1");
+
+        // Act
+        feed.publish("token-1", UserChangeEvent.Type.CREATED, "u1", user);
+        feed.publish("token-2", UserChangeEvent.Type.DELETED, "u1", null);
+
+        // Assert
+        for (RecordingSink sink : new RecordingSink[] {first, second}) {
+            UserChangeFeed.FeedEvent created = sink.next();
+            assertEquals("token-1", created.id());
+            assertEquals(UserChangeFeed.CHANGE_EVENT, created.name());
+            JsonNode data = objectMapper.readTree(created.data());
+            assertEquals("CREATED", data.get("type").asString());
+            assertEquals("alice@example.com", data.get("user").get("email").asString());
+            JsonNode deleted = objectMapper.readTree(sink.next().data());
+            assertEquals("DELETED", deleted.get("type").asString());
+            assertFalse(deleted.has("user"));
+        }
+        assertEquals(2, feed.subscriberCount());
+        assertEquals(2, registry.get("user.feed.events").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should replay missed changes after Last-Event-ID and reset when it is no longer kept")
+    void testResume() throws Exception {
+        // Arrange
+        for (int i = 1; i <= 4; i++) {
+            feed.publish("token-" + i, UserChangeEvent.Type.UPDATED, "u" + i, null);
+        }
+        RecordingSink resumed = new RecordingSink();
+        RecordingSink expired = new RecordingSink();
+
+        // Act
+        feed.subscribe("token-2", resumed);
+        feed.subscribe("token-1", expired);
+        feed.publish("token-5", UserChangeEvent.Type.UPDATED, "u5", null);
+
+        // Assert
+        assertEquals("token-3", resumed.next().id());
+        assertEquals("token-4", resumed.next().id());
+        assertEquals("token-5", resumed.next().id());
+        UserChangeFeed.FeedEvent reset = expired.next();
+        assertEquals(UserChangeFeed.RESET_EVENT, reset.name());
+        assertEquals("", reset.id());
+        assertEquals("token-5", expired.next().id());
+    }
+
+    @Test
+    @DisplayName("Should drop a subscriber whose buffer fills without holding up the others")
+    void testDropsSlowSubscriber() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink(release);
+        RecordingSink fast = new RecordingSink();
+        feed.subscribe(null, slow);
+        feed.subscribe(null, fast);
+
+        // Act: the slow client takes one change and then stops reading, while the fast one keeps up
+        feed.publish("token-1", UserChangeEvent.Type.UPDATED, "u1", null);
+        assertEquals("token-1", slow.next().id());
+        assertEquals("token-1", fast.next().id());
+        for (int i = 2; i <= 4; i++) {
+            feed.publish("token-" + i, UserChangeEvent.Type.UPDATED, "u" + i, null);
+            assertEquals("token-" + i, fast.next().id());
+        }
+        release.countDown();
+
+        // Assert
+        assertTrue(slow.closed.await(2, TimeUnit.SECONDS));
+        assertEquals(1, registry.get("user.feed.dropped").counter().count());
+        assertEquals(1, feed.subscriberCount());
+    }
+
+    @Test
+    @DisplayName("Should send heartbeats from a virtual thread while idle and end the streams on stop")
+    void testHeartbeatAndStop() throws Exception {
+        // Arrange
+        UserChangeFeed idleFeed = new UserChangeFeed(objectMapper, 3, 2, 1, Duration.ofMillis(20));
+        idleFeed.start();
+        RecordingSink sink = new RecordingSink();
+        idleFeed.subscribe(null, sink);
+
+        // Act
+        assertTrue(sink.heartbeats.await(2, TimeUnit.SECONDS));
+        boolean overLimit = idleFeed.subscribe(null, new RecordingSink()) == null;
+        idleFeed.stop();
+
+        // Assert
+        assertTrue(sink.virtualThread);
+        assertTrue(overLimit);
+        assertTrue(sink.closed.await(2, TimeUnit.SECONDS));
+        assertEquals(0, idleFeed.subscriberCount());
+        assertNull(idleFeed.subscribe(null, new RecordingSink()));
+    }
+
+    /**
+     * Sink collecting the events it is sent, optionally blocking after the
+     * first one until released.
+     */
+    private static final class RecordingSink implements UserChangeFeed.Sink {
+
+        private final BlockingQueue<UserChangeFeed.FeedEvent> events = new LinkedBlockingQueue<>();
+        private final CountDownLatch heartbeats = new CountDownLatch(2);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private volatile boolean virtualThread;
+
+        private RecordingSink() {
+            this(null);
+        }
+
+        private RecordingSink(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(final UserChangeFeed.FeedEvent event) {
+            events.add(event);
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void heartbeat() {
+            virtualThread = Thread.currentThread().isVirtual();
+            heartbeats.countDown();
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        private UserChangeFeed.FeedEvent next() throws InterruptedException {
+            UserChangeFeed.FeedEvent event = events.poll(2, TimeUnit.SECONDS);
+            assertNotNull(event, "No event received");
+            return event;
+        }
+    }
+}
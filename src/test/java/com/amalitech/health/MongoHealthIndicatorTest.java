@@ -0,0 +1,108 @@
+package com.amalitech.health;
+
+import com.amalitech.MutableClock;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("MongoHealthIndicator Tests")
+class MongoHealthIndicatorTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+
+    private MongoHealthIndicator indicator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        indicator = new MongoHealthIndicator(mongoTemplate, new ConnectionPoolStats(), Duration.ofSeconds(10), clock);
+    }
+
+    @Test
+    @DisplayName("Should report UNKNOWN until the first probe completes")
+    void testUnknownBeforeFirstProbe() {
+        // Act
+        Health health = indicator.health();
+
+        // Assert
+        assertEquals(Status.UNKNOWN, health.getStatus());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("Should answer scrapes from the cached probe with role and latency details")
+    @SuppressWarnings("unchecked")
+    void testUpFromCache() {
+        // Arrange
+        when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(
+            new Document("isWritablePrimary", true).append("setName", "rs0"));
+        indicator.ping();
+
+        // Act
+        Health first = indicator.health();
+        Health second = indicator.health();
+
+        // Assert
+        assertEquals(Status.UP, first.getStatus());
+        assertEquals(first, second);
+        assertEquals("primary", first.getDetails().get("role"));
+        assertEquals("rs0", first.getDetails().get("replicaSet"));
+        Map<String, Object> latency = (Map<String, Object>) first.getDetails().get("latency");
+        assertEquals(1, latency.get("samples"));
+        assertTrue(first.getDetails().containsKey("pool"));
+        verify(mongoTemplate, times(1)).executeCommand(any(Document.class));
+    }
+
+    @Test
+    @DisplayName("Should report DOWN after a failed probe, however old it is")
+    void testDownAndStale() {
+        // Arrange
+        when(mongoTemplate.executeCommand(any(Document.class)))
+            .thenThrow(new DataAccessResourceFailureException("Timed out"));
+
+        // Act
+        assertThrows(DataAccessResourceFailureException.class, () -> indicator.ping());
+        Health down = indicator.health();
+        clock.advance(Duration.ofSeconds(31));
+        Health stale = indicator.health();
+
+        // Assert
+        assertEquals(Status.DOWN, down.getStatus());
+        assertEquals(Status.DOWN, stale.getStatus());
+    }
+
+    @Test
+    @DisplayName("Should report DOWN once a successful probe is older than three intervals")
+    void testStaleUpReportsDown() {
+        // Arrange
+        when(mongoTemplate.executeCommand(any(Document.class))).thenReturn(
+            new Document("isWritablePrimary", true));
+        indicator.ping();
+
+        // Act
+        clock.advance(Duration.ofSeconds(31));
+        Health stale = indicator.health();
+
+        // Assert
+        assertEquals(Status.DOWN, stale.getStatus());
+        verify(mongoTemplate).executeCommand(new Document("hello", 1).append("maxTimeMS", 5_000L));
+    }
+}
@@ -0,0 +1,219 @@
+package com.amalitech.idempotency;
+
+import com.amalitech.MutableClock;
+import com.amalitech.controller.UserController;
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.exception.GlobalExceptionHandler;
+import com.amalitech.model.User;
+import com.amalitech.service.UserService;
+import com.amalitech.writebehind.WriteBehindQueue;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@DisplayName("Idempotency-Key Tests")
+class IdempotencyFilterTest {
+
+    private static final String BODY = "{\"name\":\"John Doe\",\"email\":\"john@example.com\",\"age\":30}";
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private WriteBehindQueue writeBehindQueue;
+
+    private IdempotencyStore store;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        store = new IdempotencyStore(Duration.ofHours(1), 100);
+        IdempotencyFilter filter = new IdempotencyFilter(store, JsonMapper.builder().build(), Duration.ofMillis(200));
+        UserController controller = new UserController(
+                userService, Validation.buildDefaultValidatorFactory().getValidator(), writeBehindQueue);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .addFilters(filter)
+                .build();
+
+        User created = new User("John Doe", "john@example.com", 30);
+        created.setId("1");
+        created.setVersion(0L);
+        when(userService.createUser(any(User.class))).thenReturn(created);
+    }
+
+    @Test
+    @DisplayName("Should replay the stored response without creating the user twice")
+    void testReplay() throws Exception {
+        // Act
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andExpect(header().string("ETag", "\"0\""))
+                .andExpect(jsonPath("$.id").value("1"));
+
+        // Assert
+        verify(userService, times(1)).createUser(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should replay the ticket location of an asynchronous create")
+    void testReplayAsync() throws Exception {
+        // Arrange
+        when(writeBehindQueue.submitCreate(any(User.class))).thenReturn(new WriteTicket("t-1",
+                WriteTicket.Operation.CREATE, WriteTicket.Status.PENDING, null, null, Instant.now(), null));
+
+        // Act
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-async")
+                        .header(UserController.PREFER_HEADER, UserController.RESPOND_ASYNC)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isAccepted());
+
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-async")
+                        .header(UserController.PREFER_HEADER, UserController.RESPOND_ASYNC)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andExpect(header().string("Location", "http://localhost/api/v1/users/writes/t-1"))
+                .andExpect(header().string(UserController.PREFERENCE_APPLIED_HEADER, UserController.RESPOND_ASYNC))
+                .andExpect(jsonPath("$.ticket").value("t-1"));
+
+        // Assert
+        verify(writeBehindQueue, times(1)).submitCreate(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should reject a reused key with a different payload")
+    void testPayloadMismatch() throws Exception {
+        // Arrange
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isCreated());
+
+        // Act & Assert
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY.replace("30", "31")))
+                .andExpect(status().isUnprocessableContent())
+                .andExpect(jsonPath("$.status").value(422));
+
+        verify(userService, times(1)).createUser(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should execute again when the first attempt ended in a server error")
+    void testServerErrorNotStored() throws Exception {
+        // Arrange
+        when(userService.createUser(any(User.class)))
+                .thenThrow(new IllegalStateException("boom"))
+                .thenAnswer(inv -> {
+                    User user = inv.getArgument(0);
+                    user.setId("2");
+                    return user;
+                });
+
+        // Act
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-3")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isInternalServerError());
+        mockMvc.perform(post("/api/v1/users")
+                        .header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, "key-3")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(BODY))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER));
+
+        // Assert
+        verify(userService, times(2)).createUser(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should pass requests without a key straight through")
+    void testNoKey() throws Exception {
+        // Act
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/v1/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(BODY))
+                    .andExpect(status().isCreated());
+        }
+
+        // Assert
+        verify(userService, times(2)).createUser(any(User.class));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    @DisplayName("Should let a concurrent request wait for the first one's response")
+    void testConcurrentReservation() throws Exception {
+        // Arrange
+        byte[] fingerprint = BODY.getBytes(StandardCharsets.UTF_8);
+        IdempotencyStore.Reservation first = store.reserve("key-4", fingerprint);
+        IdempotencyStore.Reservation second = store.reserve("key-4", fingerprint);
+
+        // Act
+        first.complete(new StoredResponse(201, "application/json", "\"0\"", null, null, new byte[] {1}));
+
+        // Assert
+        assertTrue(first.owner());
+        assertFalse(second.owner());
+        assertTrue(second.matches(fingerprint));
+        assertEquals(201, second.response().get().status());
+    }
+
+    @Test
+    @DisplayName("Should forget keys once their TTL has passed")
+    void testExpiry() {
+        // Arrange
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        MutableClock clock = new MutableClock(now);
+        IdempotencyStore expiring = new IdempotencyStore(Duration.ofMinutes(1), 100, clock);
+        byte[] fingerprint = {1};
+        expiring.reserve("key-5", fingerprint)
+                .complete(new StoredResponse(201, null, null, null, null, new byte[0]));
+
+        // Act
+        clock.advance(Duration.ofSeconds(61));
+        IdempotencyStore.Reservation again = expiring.reserve("key-5", fingerprint);
+
+        // Assert
+        assertTrue(again.owner());
+    }
+}
@@ -0,0 +1,44 @@
+package com.amalitech.importer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("OffHeapEmailSet Tests")
+class OffHeapEmailSetTest {
+
+    @Test
+    @DisplayName("Should report each email as new only once")
+    void testAddDetectsDuplicates() {
+        // Arrange
+        OffHeapEmailSet set = new OffHeapEmailSet(4);
+
+        // Act & Assert
+        assertTrue(set.add("a@example.com"));
+        assertTrue(set.add("b@example.com"));
+        assertFalse(set.add("a@example.com"));
+        assertTrue(set.add("A@example.com"));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    @DisplayName("Should grow beyond its initial size without losing entries")
+    void testGrowth() {
+        // Arrange
+        OffHeapEmailSet set = new OffHeapEmailSet(1);
+        long initialBytes = set.capacityBytes();
+
+        // Act
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(set.add("user" + i + "@example.com"));
+        }
+
+        // Assert
+        assertEquals(50_000, set.size());
+        assertTrue(set.capacityBytes() > initialBytes);
+        for (int i = 0; i < 50_000; i += 997) {
+            assertFalse(set.add("user" + i + "@example.com"));
+        }
+    }
+}
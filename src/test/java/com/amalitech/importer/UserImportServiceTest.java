@@ -0,0 +1,176 @@
+package com.amalitech.importer;
+
+import com.amalitech.dto.ImportJobStatus;
+import com.amalitech.dto.RejectedRow;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.exception.InvalidImportException;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.mock.web.MockMultipartFile;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("UserImportService Tests")
+class UserImportServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private UserOutbox outbox;
+
+    private UserImportService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOperations);
+        when(outbox.write(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        // Jobs run on the calling thread; validation still fans out to a pool
+        service = new UserImportService(mongoTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                JsonMapper.builder().build(), eventPublisher, outbox,
+                Runnable::run, Executors.newFixedThreadPool(2), 2,
+                3, 10, Duration.ofHours(1), Clock.systemUTC());
+    }
+
+    private static MockMultipartFile csv(String content) {
+        return new MockMultipartFile("file", "users.csv", "text/csv", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Should import valid rows in batches and report rejected ones")
+    void testImport() {
+        // Arrange
+        User existing = new User("Existing", "taken@example.com", 50);
+        existing.setId("e1");
+        when(mongoTemplate.find(any(Query.class), eq(User.class)))
+                .thenReturn(List.of(existing))
+                .thenReturn(List.of());
+        String content = "name,email,age\n"
+                + "Alice,a@example.com,30\n"
+                + "Taken,taken@example.com,30\n"
+                + "Young,y@example.com,12\n"
+                + "Bob,b@example.com,40\n"
+                + "Alice Again,a@example.com,31\n"
+                + "Carl,c@example.com,50\n";
+
+        // Act
+        ImportJobStatus status = service.submit(csv(content), null);
+        ImportJobStatus done = service.getStatus(status.jobId()).orElseThrow();
+
+        // Assert
+        assertEquals(ImportJobStatus.State.COMPLETED, done.state());
+        assertEquals("CSV", done.format());
+        assertEquals(6, done.rowsProcessed());
+        assertEquals(3, done.rowsImported());
+        assertEquals(3, done.rowsRejected());
+        assertEquals(2, done.duplicateEmails());
+        assertEquals(done.totalBytes(), done.bytesRead());
+        assertEquals(100.0, done.percentComplete());
+        assertEquals(0L, done.etaSeconds());
+        assertEquals(List.of(3L, 4L, 6L),
+                done.rejectedSample().stream().map(row -> row.line()).sorted().toList());
+        assertTrue(done.rejectedSample().contains(new RejectedRow(4, "Age must be at least 18")));
+        assertTrue(done.rejectedSample().contains(
+                new RejectedRow(6, "Duplicate email in file: a@example.com")));
+        verify(bulkOperations, times(2)).insert(anyList());
+        verify(bulkOperations, times(2)).execute();
+        ArgumentCaptor<UserChangeEvent> events = ArgumentCaptor.forClass(UserChangeEvent.class);
+        verify(eventPublisher, times(3)).publishEvent(events.capture());
+        assertTrue(events.getAllValues().stream()
+                .allMatch(event -> event.type() == UserChangeEvent.Type.CREATED && event.userId() != null));
+        verify(outbox, times(2)).addAll(anyCollection());
+    }
+
+    @Test
+    @DisplayName("Should insert a chunk again without the rows that failed inside the outbox transaction")
+    void testRolledBackChunkRetried() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of());
+        when(outbox.isRecording()).thenReturn(true);
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0);
+        doThrow(new BulkOperationException("duplicate", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(duplicate), null, new ServerAddress(), Set.of())))
+                .doReturn(null)
+                .when(bulkOperations).execute();
+
+        // Act
+        ImportJobStatus status = service.submit(csv("name,email,age\nRaced,r@example.com,30\nBob,b@example.com,40\n"),
+                null);
+        ImportJobStatus done = service.getStatus(status.jobId()).orElseThrow();
+
+        // Assert
+        assertEquals(1, done.rowsImported());
+        assertEquals(1, done.duplicateEmails());
+        assertEquals(List.of(new RejectedRow(2, "Email already exists: r@example.com")), done.rejectedSample());
+        ArgumentCaptor<List<User>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations, times(2)).insert(inserted.capture());
+        assertEquals(List.of("b@example.com"),
+                inserted.getAllValues().get(1).stream().map(User::getEmail).toList());
+        verify(outbox).addAll(argThat(events -> events.size() == 1));
+        verify(eventPublisher, times(1)).publishEvent(any(UserChangeEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should fail the job when the CSV header is unusable")
+    void testBadHeader() {
+        // Act
+        ImportJobStatus status = service.submit(csv("first,second\n1,2\n"), null);
+        ImportJobStatus done = service.getStatus(status.jobId()).orElseThrow();
+
+        // Assert
+        assertEquals(ImportJobStatus.State.FAILED, done.state());
+        assertTrue(done.error().contains("name, email, age"));
+        verifyNoInteractions(bulkOperations);
+    }
+
+    @Test
+    @DisplayName("Should reject uploads that are empty or in an unknown format")
+    void testRejectsUpload() {
+        // Act & Assert
+        assertThrows(InvalidImportException.class, () -> service.submit(csv(""), null));
+        MockMultipartFile unknown = new MockMultipartFile("file", "users.bin",
+                "application/octet-stream", new byte[] {1});
+        assertThrows(InvalidImportException.class, () -> service.submit(unknown, null));
+        assertTrue(service.getJobs().isEmpty());
+    }
+}
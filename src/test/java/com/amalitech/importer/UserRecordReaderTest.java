@@ -0,0 +1,86 @@
+package com.amalitech.importer;
+
+import com.amalitech.exception.InvalidImportException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UserRecordReader Tests")
+class UserRecordReaderTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+    private List<ImportRecord> readAll(String content, ImportFormat format) throws IOException {
+        List<ImportRecord> records = new ArrayList<>();
+        try (UserRecordReader reader = new UserRecordReader(new StringReader(content), format, objectMapper)) {
+            ImportRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    @DisplayName("Should map CSV columns by header and handle quoted fields")
+    void testCsv() throws IOException {
+        // Arrange
+        String csv = "email,age,name\n"
+                + "a@example.com,30,Alice\n"
+                + "\n"
+                + "b@example.com,41,\"Smith, \"\"Bob\"\"\"\n"
+                + "c@example.com,22,\"Multi\nLine\"\n"
+                + "d@example.com,old,Dan\n";
+
+        // Act
+        List<ImportRecord> records = readAll(csv, ImportFormat.CSV);
+
+        // Assert
+        assertEquals(4, records.size());
+        assertEquals("Alice", records.get(0).user().getName());
+        assertEquals(30, records.get(0).user().getAge());
+        assertEquals(2, records.get(0).line());
+        assertEquals("Smith, \"Bob\"", records.get(1).user().getName());
+        assertEquals(4, records.get(1).line());
+        assertEquals("Multi\nLine", records.get(2).user().getName());
+        assertEquals(7, records.get(3).line());
+        assertEquals("Age must be a whole number", records.get(3).error());
+    }
+
+    @Test
+    @DisplayName("Should reject a CSV header without the required columns")
+    void testCsvMissingColumn() {
+        // Act & Assert
+        assertThrows(InvalidImportException.class,
+                () -> readAll("name,email\nAlice,a@example.com\n", ImportFormat.CSV));
+    }
+
+    @Test
+    @DisplayName("Should parse NDJSON rows and flag malformed ones")
+    void testNdjson() throws IOException {
+        // Arrange
+        String ndjson = "{\"name\":\"Alice\",\"email\":\"a@example.com\",\"age\":30}\n"
+                + "{not json}\n"
+                + "{\"name\":\"Bob\",\"email\":\"b@example.com\",\"age\":30.5}\n"
+                + "{\"name\":\"Carl\",\"email\":\"c@example.com\"}\n";
+
+        // Act
+        List<ImportRecord> records = readAll(ndjson, ImportFormat.NDJSON);
+
+        // Assert
+        assertEquals(4, records.size());
+        assertEquals("a@example.com", records.get(0).user().getEmail());
+        assertEquals("Malformed JSON", records.get(1).error());
+        assertEquals("Age must be a whole number", records.get(2).error());
+        assertNull(records.get(3).user().getAge());
+        assertEquals(4, records.get(3).line());
+    }
+}
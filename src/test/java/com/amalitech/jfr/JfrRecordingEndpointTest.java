@@ -0,0 +1,71 @@
+package com.amalitech.jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("JfrRecordingEndpoint Tests")
+class JfrRecordingEndpointTest {
+
+    private final JfrRecordingEndpoint endpoint =
+        new JfrRecordingEndpoint(Duration.ofSeconds(30), Duration.ofMillis(200));
+
+    @Test
+    @DisplayName("Should stream a recording cut to the maximum duration and delete it once read")
+    void testRecordingStreamed() throws Exception {
+        // Act
+        long start = System.nanoTime();
+        WebEndpointResponse<Resource> response = endpoint.record(Duration.ofMinutes(10), "default");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert
+        assertEquals(WebEndpointResponse.STATUS_OK, response.getStatus());
+        assertTrue(elapsedMillis < 10_000);
+        Path file = response.getBody().getFile().toPath();
+        byte[] magic;
+        try (InputStream in = response.getBody().getInputStream()) {
+            magic = in.readNBytes(3);
+        }
+        assertEquals("FLR", new String(magic, StandardCharsets.US_ASCII));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    @DisplayName("Should leave the environment and system properties out of the recording")
+    void testSecretsNotRecorded() throws Exception {
+        // Act
+        WebEndpointResponse<Resource> response = endpoint.record(Duration.ofMillis(100), "profile");
+
+        // Assert
+        Path file = response.getBody().getFile().toPath();
+        List<String> events = RecordingFile.readAllEvents(file).stream()
+                .map(RecordedEvent::getEventType)
+                .map(EventType::getName)
+                .toList();
+        Files.delete(file);
+        assertFalse(events.isEmpty());
+        assertFalse(events.contains("jdk.InitialEnvironmentVariable"));
+        assertFalse(events.contains("jdk.InitialSystemProperty"));
+    }
+
+    @Test
+    @DisplayName("Should reject unknown settings and non-positive durations")
+    void testBadRequests() throws Exception {
+        // Assert
+        assertEquals(WebEndpointResponse.STATUS_BAD_REQUEST, endpoint.record(null, "custom").getStatus());
+        assertEquals(WebEndpointResponse.STATUS_BAD_REQUEST, endpoint.record(Duration.ZERO, null).getStatus());
+    }
+}
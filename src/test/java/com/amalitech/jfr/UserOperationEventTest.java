@@ -0,0 +1,109 @@
+package com.amalitech.jfr;
+
+import com.amalitech.cache.UserCache;
+import com.amalitech.config.ReadRouting;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.amalitech.resilience.HedgedReader;
+import com.amalitech.service.UserServiceImpl;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("UserOperationEvent Tests")
+class UserOperationEventTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserCache userCache = mock(UserCache.class);
+
+    private UserServiceImpl userService;
+    private Recording recording;
+
+    @BeforeEach
+    void setUp() {
+        UserOutbox outbox = mock(UserOutbox.class);
+        when(outbox.write(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        userService = new UserServiceImpl(mongoTemplate, mock(ApplicationEventPublisher.class), userCache,
+            new ReadRouting("secondaryPreferred", Duration.ofSeconds(90)),
+            new HedgedReader(false, Duration.ZERO, Duration.ZERO, null, Runnable::run), outbox);
+        recording = new Recording();
+        recording.enable(UserOperationEvent.class).withThreshold(Duration.ZERO);
+        recording.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        recording.close();
+    }
+
+    @Test
+    @DisplayName("Should record a cache hit and a miss that reached MongoDB")
+    void testGetEvents() throws IOException {
+        // Arrange
+        User user = new User("John Doe", "john@example.com", 30);
+        user.setId("1");
+        when(userCache.get("1")).thenReturn(Optional.of(user));
+        when(userCache.get("2")).thenReturn(Optional.empty());
+
+        // Act
+        userService.getUserById("1");
+        userService.getUserById("2");
+
+        // Assert
+        List<RecordedEvent> events = stopAndRead();
+        assertEquals(2, events.size());
+        assertEquals("get", events.get(0).getString("operation"));
+        assertEquals("1", events.get(0).getString("userId"));
+        assertTrue(events.get(0).getBoolean("cacheHit"));
+        assertEquals("success", events.get(0).getString("outcome"));
+        assertFalse(events.get(1).getBoolean("cacheHit"));
+        assertEquals("not-found", events.get(1).getString("outcome"));
+        verify(mongoTemplate).findById("2", User.class);
+    }
+
+    @Test
+    @DisplayName("Should record the exception of a failed operation")
+    void testFailureOutcome() throws IOException {
+        // Arrange
+        when(mongoTemplate.findAndRemove(any(), eq(User.class))).thenThrow(new IllegalStateException("boom"));
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> userService.deleteUser("1"));
+
+        // Assert
+        RecordedEvent event = stopAndRead().get(0);
+        assertEquals("delete", event.getString("operation"));
+        assertEquals("IllegalStateException", event.getString("outcome"));
+    }
+
+    private List<RecordedEvent> stopAndRead() throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("user-operation-", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.amalitech.UserOperation"))
+                .toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
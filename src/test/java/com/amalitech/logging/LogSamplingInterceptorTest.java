@@ -0,0 +1,113 @@
+package com.amalitech.logging;
+
+import com.amalitech.controller.UserController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("LogSamplingInterceptor Tests")
+class LogSamplingInterceptorTest {
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @AfterEach
+    void tearDown() {
+        RequestLogSampling.clear();
+    }
+
+    @Test
+    @DisplayName("Should use the endpoint rate and fall back to the default rate")
+    void rateOf_EndpointOverride_UsesEndpointRate() {
+        // Arrange
+        LogSamplingInterceptor interceptor =
+                new LogSamplingInterceptor(0.1, "UserController.getUserById=0.01, UserController.getAllUsers = 0");
+
+        // Act & Assert
+        assertEquals(0.01, interceptor.rateOf("UserController.getUserById"));
+        assertEquals(0.0, interceptor.rateOf("UserController.getAllUsers"));
+        assertEquals(0.1, interceptor.rateOf("UserController.createUser"));
+    }
+
+    @Test
+    @DisplayName("Should suppress requests sampled at rate 0 until the request completes")
+    void preHandle_RateZero_SuppressesUntilCompletion() throws Exception {
+        // Arrange
+        LogSamplingInterceptor interceptor = new LogSamplingInterceptor(1.0, "UserController.getUserById=0");
+        HandlerMethod handler = handler("getUserById");
+
+        // Act
+        interceptor.preHandle(request, response, handler);
+        boolean suppressed = RequestLogSampling.isSuppressed();
+        interceptor.afterCompletion(request, response, handler, null);
+
+        // Assert
+        assertTrue(suppressed);
+        assertFalse(RequestLogSampling.isSuppressed());
+    }
+
+    @Test
+    @DisplayName("Should never suppress requests sampled at rate 1")
+    void preHandle_RateOne_DoesNotSuppress() throws Exception {
+        // Arrange
+        LogSamplingInterceptor interceptor = new LogSamplingInterceptor(0.0, "UserController.createUser=1.0");
+        HandlerMethod handler = handler("createUser");
+
+        // Act
+        interceptor.preHandle(request, response, handler);
+
+        // Assert
+        assertFalse(RequestLogSampling.isSuppressed());
+    }
+
+    @Test
+    @DisplayName("Should clear the decision when asynchronous handling starts and reuse it on the async dispatch")
+    void afterConcurrentHandlingStarted_AsyncRequest_ClearsThenReuses() throws Exception {
+        // Arrange
+        LogSamplingInterceptor interceptor = new LogSamplingInterceptor(1.0, "UserController.getUserById=0");
+        HandlerMethod handler = handler("getUserById");
+        interceptor.preHandle(request, response, handler);
+
+        // Act
+        interceptor.afterConcurrentHandlingStarted(request, response, handler);
+        boolean leaked = RequestLogSampling.isSuppressed();
+        interceptor.preHandle(request, response, handler);
+
+        // Assert
+        assertFalse(leaked);
+        assertTrue(RequestLogSampling.isSuppressed());
+    }
+
+    @Test
+    @DisplayName("Should not let a stale decision apply to a request without a handler method")
+    void preHandle_OtherHandler_ClearsDecision() throws Exception {
+        // Arrange
+        LogSamplingInterceptor interceptor = new LogSamplingInterceptor(1.0, "");
+        RequestLogSampling.setSuppressed(true);
+
+        // Act
+        interceptor.preHandle(request, response, new Object());
+
+        // Assert
+        assertFalse(RequestLogSampling.isSuppressed());
+    }
+
+    private static HandlerMethod handler(final String name) {
+        for (Method method : UserController.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return new HandlerMethod(mock(UserController.class), method);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
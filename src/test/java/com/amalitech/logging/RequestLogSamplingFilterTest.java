@@ -0,0 +1,45 @@
+package com.amalitech.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("RequestLogSamplingFilter Tests")
+class RequestLogSamplingFilterTest {
+
+    private final RequestLogSamplingFilter filter = new RequestLogSamplingFilter();
+    private final Logger logger = new LoggerContext().getLogger("com.amalitech.controller.UserController");
+
+    @AfterEach
+    void tearDown() {
+        RequestLogSampling.clear();
+    }
+
+    @Test
+    @DisplayName("Should drop DEBUG and INFO records of a suppressed request")
+    void decide_Suppressed_DeniesBelowWarn() {
+        // Arrange
+        RequestLogSampling.setSuppressed(true);
+
+        // Act & Assert
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+        assertEquals(FilterReply.DENY, filter.decide(null, logger, Level.INFO, "msg", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.WARN, "msg", null, null));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.ERROR, "msg", null, null));
+    }
+
+    @Test
+    @DisplayName("Should leave records of sampled requests and other threads to the logger level")
+    void decide_NotSuppressed_Neutral() {
+        // Act & Assert
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.INFO, "msg", null, null));
+        RequestLogSampling.setSuppressed(false);
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.DEBUG, "msg", null, null));
+    }
+}
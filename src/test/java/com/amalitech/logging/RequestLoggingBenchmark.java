@@ -0,0 +1,129 @@
+package com.amalitech.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.logging.logback.StructuredLogEncoder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the logging cost a {@code GET /api/v1/users/{id}} request pays
+ * on its own thread, with the previous setup and the current one.
+ *
+ * <p>Each simulated request writes the records of that path: two INFO
+ * lines from the controller, a DEBUG and an INFO line from the service.
+ * The sink discards bytes but takes {@value #SINK_NANOS_PER_WRITE} ns per
+ * write, standing in for a console or pipe. Run with
+ * {@code mvn test -Dtest=RequestLoggingBenchmark -Dbenchmark=true}.</p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@DisplayName("Request logging benchmark")
+class RequestLoggingBenchmark {
+
+    private static final int WARMUP_REQUESTS = 50_000;
+    private static final int MEASURED_REQUESTS = 200_000;
+    private static final long SINK_NANOS_PER_WRITE = 2_000;
+
+    @Test
+    @DisplayName("Per-request logging cost before and after")
+    void compare() {
+        double before = measure(false);
+        double after = measure(true);
+        System.out.printf("Synchronous pattern logging, DEBUG, every request: %8.0f ns/request%n", before);
+        System.out.printf("Async JSON logging, INFO, 1%% sampled:             %8.0f ns/request%n", after);
+    }
+
+    private static double measure(final boolean current) {
+        LoggerContext context = new LoggerContext();
+        context.putObject(Environment.class.getName(), new StandardEnvironment());
+        if (current) {
+            context.addTurboFilter(new RequestLogSamplingFilter());
+        }
+        OutputStreamAppender<ILoggingEvent> sink = new OutputStreamAppender<>();
+        sink.setContext(context);
+        sink.setEncoder(current ? jsonEncoder(context) : patternEncoder(context));
+        sink.setOutputStream(new SlowNullOutputStream());
+        sink.start();
+        Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        if (current) {
+            AsyncAppender async = new AsyncAppender();
+            async.setContext(context);
+            async.setQueueSize(8192);
+            async.addAppender(sink);
+            async.start();
+            root.addAppender(async);
+        } else {
+            root.addAppender(sink);
+        }
+        Logger controller = context.getLogger("com.amalitech.controller.UserController");
+        Logger service = context.getLogger("com.amalitech.service.UserServiceImpl");
+        context.getLogger("com.amalitech").setLevel(current ? Level.INFO : Level.DEBUG);
+        try {
+            run(controller, service, current, WARMUP_REQUESTS);
+            long start = System.nanoTime();
+            run(controller, service, current, MEASURED_REQUESTS);
+            return (System.nanoTime() - start) / (double) MEASURED_REQUESTS;
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static void run(final Logger controller, final Logger service, final boolean sampled,
+                            final int requests) {
+        for (int i = 0; i < requests; i++) {
+            String id = "507f1f77bcf86cd7994" + (i % 100_000);
+            if (sampled) {
+                RequestLogSampling.setSuppressed(ThreadLocalRandom.current().nextDouble() >= 0.01);
+            }
+            controller.info("Received GET request for user ID: {}", id);
+            service.debug("Fetching user by ID: {}", id);
+            service.info("Successfully found user with ID: {}", id);
+            controller.info("Successfully found user ID: {}", id);
+            RequestLogSampling.clear();
+        }
+    }
+
+    private static Encoder<ILoggingEvent> patternEncoder(final LoggerContext context) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+        return encoder;
+    }
+
+    private static Encoder<ILoggingEvent> jsonEncoder(final LoggerContext context) {
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setContext(context);
+        encoder.setFormat("ecs");
+        encoder.start();
+        return encoder;
+    }
+
+    /**
+     * Discards bytes, spending a fixed time per write like a terminal would.
+     */
+    private static final class SlowNullOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            LockSupport.parkNanos(SINK_NANOS_PER_WRITE);
+        }
+    }
+}
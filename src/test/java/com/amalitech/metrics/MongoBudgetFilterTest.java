@@ -0,0 +1,120 @@
+package com.amalitech.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MongoBudgetFilter Tests")
+class MongoBudgetFilterTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final MongoRoundTrips listener = new MongoRoundTrips();
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("Should return the round trips in a header and count requests over budget")
+    void testOverBudgetReported() throws Exception {
+        // Arrange
+        MongoBudgetFilter filter = new MongoBudgetFilter(registry, true);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/users/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(request, response, handledBy("getOne", 2));
+
+        // Assert
+        assertEquals("2; budget=1; cursor-batches=0; bytes-sent=0; bytes-received=0",
+            response.getHeader(MongoBudgetFilter.ROUND_TRIPS_HEADER));
+        assertEquals("{}", response.getContentAsString());
+        assertEquals(1, registry.get("mongo.request.budget.exceeded")
+            .tag("endpoint", "Endpoints.getOne").counter().count());
+        assertEquals(2, registry.get("mongo.request.commands")
+            .tag("endpoint", "Endpoints.getOne").summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Should only publish metrics when the header is disabled")
+    void testWithinBudgetWithoutHeader() throws Exception {
+        // Arrange
+        MongoBudgetFilter filter = new MongoBudgetFilter(registry, false);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/users/1"), response, handledBy("getOne", 1));
+
+        // Assert
+        assertNull(response.getHeader(MongoBudgetFilter.ROUND_TRIPS_HEADER));
+        assertEquals(0, registry.get("mongo.request.budget.exceeded")
+            .tag("endpoint", "Endpoints.getOne").counter().count());
+        assertEquals(1, registry.get("mongo.request.commands")
+            .tag("endpoint", "Endpoints.getOne").summary().count());
+    }
+
+    @Test
+    @DisplayName("Should write asynchronous responses through without buffering them")
+    void testAsyncResponseNotBuffered() throws Exception {
+        // Arrange
+        MongoBudgetFilter filter = new MongoBudgetFilter(registry, true);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/users/changes");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        StringBuilder writtenDuringRequest = new StringBuilder();
+
+        // Act
+        filter.doFilter(request, response, (req, res) -> {
+            req.startAsync();
+            res.getWriter().write("event:change\n\n");
+            res.flushBuffer();
+            writtenDuringRequest.append(response.getContentAsString());
+        });
+
+        // Assert
+        assertEquals("event:change\n\n", writtenDuringRequest.toString());
+        assertNull(response.getHeader(MongoBudgetFilter.ROUND_TRIPS_HEADER));
+    }
+
+    private FilterChain handledBy(final String method, final int commands) {
+        return (request, response) -> {
+            try {
+                request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+                    new HandlerMethod(new Endpoints(), Endpoints.class.getMethod(method)));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+            for (int i = 0; i < commands; i++) {
+                listener.commandStarted(new CommandStartedEvent(null, 1L, i, CONNECTION, "usermanagement",
+                    "find", new BsonDocument("find", new BsonString("users"))));
+            }
+            response.getWriter().write("{}");
+        };
+    }
+
+    static final class Endpoints {
+
+        @MongoBudget(1)
+        public void getOne() {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.amalitech.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MongoCommandMetrics Tests")
+class MongoCommandMetricsTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private SimpleMeterRegistry registry;
+    private MongoCommandMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new MongoCommandMetrics(registry);
+    }
+
+    @Test
+    @DisplayName("Should time a find by collection and count the documents and bytes returned")
+    void testFindRecorded() {
+        // Arrange
+        BsonDocument command = new BsonDocument("find", new BsonString("users"))
+            .append("$db", new BsonString("usermanagement"));
+        BsonDocument reply = new BsonDocument("cursor", new BsonDocument("firstBatch",
+            new BsonArray(List.of(new BsonDocument("_id", new BsonInt32(1)),
+                new BsonDocument("_id", new BsonInt32(2))))))
+            .append("ok", new BsonInt32(1));
+        RawBsonDocument rawReply = new RawBsonDocument(reply, new BsonDocumentCodec());
+
+        // Act
+        metrics.commandStarted(new CommandStartedEvent(null, 1L, 7, CONNECTION, "usermanagement", "find", command));
+        metrics.commandSucceeded(new CommandSucceededEvent(null, 1L, 7, CONNECTION, "usermanagement", "find",
+            rawReply, TimeUnit.MILLISECONDS.toNanos(3)));
+
+        // Assert
+        Timer timer = registry.get("mongo.command")
+            .tags("operation", "find", "collection", "users", "outcome", "success").timer();
+        assertEquals(1, timer.count());
+        assertEquals(3, timer.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        DistributionSummary documents = registry.get("mongo.command.documents")
+            .tags("operation", "find", "collection", "users").summary();
+        assertEquals(2, documents.totalAmount());
+        DistributionSummary responseBytes = registry.get("mongo.command.bytes")
+            .tags("operation", "find", "direction", "response").summary();
+        assertEquals(rawReply.getByteBuffer().remaining(), responseBytes.totalAmount());
+    }
+
+    @Test
+    @DisplayName("Should carry the collection of a getMore to its failure")
+    void testFailureTaggedWithCollection() {
+        // Arrange
+        BsonDocument command = new BsonDocument("getMore", new BsonInt64(42))
+            .append("collection", new BsonString("users"));
+
+        // Act
+        metrics.commandStarted(new CommandStartedEvent(null, 1L, 8, CONNECTION, "usermanagement", "getMore",
+            command));
+        metrics.commandFailed(new CommandFailedEvent(null, 1L, 8, CONNECTION, "usermanagement", "getMore",
+            TimeUnit.MILLISECONDS.toNanos(5), new IllegalStateException("cursor killed")));
+
+        // Assert
+        Timer timer = registry.get("mongo.command")
+            .tags("operation", "getMore", "collection", "users", "outcome", "failure").timer();
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    @DisplayName("Should count documents from cursor batches, counts and findAndModify replies")
+    void testDocumentsIn() {
+        // Assert
+        assertEquals(0, MongoCommandMetrics.documentsIn(new BsonDocument("cursor",
+            new BsonDocument("nextBatch", new BsonArray()))));
+        assertEquals(12, MongoCommandMetrics.documentsIn(new BsonDocument("n", new BsonInt32(12))));
+        assertEquals(1, MongoCommandMetrics.documentsIn(new BsonDocument("lastErrorObject", new BsonDocument())
+            .append("value", new BsonDocument("_id", new BsonInt32(1)))));
+        assertEquals(-1, MongoCommandMetrics.documentsIn(new BsonDocument("n", new BsonInt32(1))
+            .append("nModified", new BsonInt32(1))));
+    }
+}
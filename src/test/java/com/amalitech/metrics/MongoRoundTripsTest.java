@@ -0,0 +1,123 @@
+package com.amalitech.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MongoRoundTrips Tests")
+class MongoRoundTripsTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final MongoRoundTrips listener = new MongoRoundTrips();
+    private int requestId;
+
+    @Test
+    @DisplayName("Should count commands and bytes, keeping cursor batches apart")
+    void testCountsCommands() {
+        // Arrange
+        RawBsonDocument find = new RawBsonDocument(
+            new BsonDocument("find", new BsonString("users")), new BsonDocumentCodec());
+
+        // Act
+        MongoRoundTrips.Tally tally = MongoRoundTrips.start();
+        try {
+            send("find", find);
+            send("getMore", new BsonDocument("getMore", new BsonInt64(1)));
+        } finally {
+            tally.close();
+        }
+
+        // Assert
+        assertEquals(1, tally.commands());
+        assertEquals(1, tally.cursorBatches());
+        assertEquals(find.getByteBuffer().remaining(), tally.bytesSent());
+        assertEquals(List.of("find"), tally.commandNames());
+    }
+
+    @Test
+    @DisplayName("Should add a closed inner tally to the outer one and ignore commands outside any tally")
+    void testNestedTallies() {
+        // Act
+        send("find", new BsonDocument("find", new BsonString("users")));
+        MongoRoundTrips.Tally outer = MongoRoundTrips.start();
+        try (MongoRoundTrips.Tally inner = MongoRoundTrips.start()) {
+            send("insert", new BsonDocument("insert", new BsonString("users")));
+            inner.assertWithin(1);
+        }
+        send("find", new BsonDocument("find", new BsonString("users")));
+        outer.close();
+        send("find", new BsonDocument("find", new BsonString("users")));
+
+        // Assert
+        assertEquals(List.of("insert", "find"), outer.commandNames());
+    }
+
+    @Test
+    @DisplayName("Should count work done for another tally there and then restore the thread's own")
+    void testCountedIn() throws Exception {
+        // Arrange
+        MongoRoundTrips.Tally[] callerTally = new MongoRoundTrips.Tally[1];
+        Thread caller = new Thread(() -> {
+            callerTally[0] = MongoRoundTrips.start();
+        });
+        caller.start();
+        caller.join();
+
+        // Act
+        MongoRoundTrips.Tally own = MongoRoundTrips.start();
+        try {
+            MongoRoundTrips.countedIn(callerTally[0], () -> {
+                send("update", new BsonDocument("update", new BsonString("users")));
+                return null;
+            });
+            send("find", new BsonDocument("find", new BsonString("users")));
+        } finally {
+            own.close();
+        }
+
+        // Assert
+        assertEquals(List.of("update"), callerTally[0].commandNames());
+        assertEquals(List.of("find"), own.commandNames());
+        assertNull(MongoRoundTrips.current());
+    }
+
+    @Test
+    @DisplayName("Should fail the assertion with the commands sent when over budget")
+    void testAssertWithinFails() {
+        // Arrange
+        MongoRoundTrips.Tally tally = MongoRoundTrips.start();
+        try {
+            send("find", new BsonDocument("find", new BsonString("users")));
+            send("find", new BsonDocument("find", new BsonString("users")));
+        } finally {
+            tally.close();
+        }
+
+        // Act
+        AssertionError error = assertThrows(AssertionError.class, () -> tally.assertWithin(1));
+
+        // Assert
+        assertTrue(error.getMessage().contains("at most 1"));
+        assertTrue(error.getMessage().contains("[find, find]"));
+    }
+
+    private void send(final String command, final BsonDocument body) {
+        listener.commandStarted(new CommandStartedEvent(null, 1L, ++requestId, CONNECTION, "usermanagement",
+            command, body));
+    }
+}
@@ -0,0 +1,164 @@
+package com.amalitech.metrics;
+
+import com.amalitech.MutableClock;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SlowQueryDetector Tests")
+class SlowQueryDetectorTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    private final List<BsonDocument> explained = new ArrayList<>();
+
+    private SlowQueryDetector detector;
+    private int requestId;
+
+    @BeforeEach
+    void setUp() {
+        Document reply = new Document("queryPlanner", new Document("winningPlan",
+                new Document("stage", "COLLSCAN")))
+            .append("executionStats", new Document("totalDocsExamined", 5000).append("totalKeysExamined", 0));
+        detector = new SlowQueryDetector(true, Duration.ofMillis(100), 2, Duration.ofMinutes(10),
+            (database, command) -> {
+                explained.add(command);
+                return reply;
+            }, Runnable::run, clock);
+    }
+
+    @Test
+    @DisplayName("Should ignore commands faster than the threshold")
+    void testFastCommandIgnored() {
+        // Act
+        run(findByEmail("john@example.com"), 20);
+
+        // Assert
+        assertTrue(detector.recent().isEmpty());
+        assertTrue(explained.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should record a slow query with a redacted shape and its explained plan")
+    void testSlowQueryExplained() {
+        // Act
+        run(findByEmail("john@example.com"), 250);
+
+        // Assert
+        SlowQuery entry = detector.recent().get(0);
+        assertEquals("users", entry.collection());
+        assertEquals("find", entry.operation());
+        assertEquals(250.0, entry.durationMs());
+        assertEquals(1, entry.returned());
+        assertEquals(5000L, entry.docsExamined());
+        assertEquals("COLLSCAN", entry.plan());
+        assertFalse(entry.shape().contains("john@example.com"));
+        assertTrue(entry.shape().contains("\"email\": \"?\""));
+        assertTrue(entry.shape().contains("\"find\": \"users\""));
+        BsonDocument explain = explained.get(0);
+        assertEquals("executionStats", explain.getString("verbosity").getValue());
+        assertFalse(explain.getDocument("explain").containsKey("$db"));
+        assertFalse(explain.getDocument("explain").containsKey("lsid"));
+    }
+
+    @Test
+    @DisplayName("Should explain each shape at most once per interval and keep only the newest entries")
+    void testExplainSampledPerShape() {
+        // Act
+        run(findByEmail("a@example.com"), 150);
+        run(findByEmail("b@example.com"), 150);
+        clock.advance(Duration.ofMinutes(11));
+        run(findByEmail("c@example.com"), 150);
+
+        // Assert
+        assertEquals(2, explained.size());
+        List<SlowQuery> recent = detector.recent();
+        assertEquals(2, recent.size());
+        assertNotNull(recent.get(0).plan());
+        assertNull(recent.get(1).plan());
+    }
+
+    @Test
+    @DisplayName("Should keep only the first statement of a batched write, detached from the command")
+    void testBatchedWriteCopiesFirstStatement() {
+        // Arrange
+        BsonArray updates = new BsonArray();
+        for (int i = 0; i < 3; i++) {
+            updates.add(new BsonDocument("q", new BsonDocument("_id", new BsonInt32(i)))
+                .append("u", new BsonDocument("$set", new BsonDocument("age", new BsonInt32(30)))));
+        }
+        BsonDocument command = new BsonDocument("update", new BsonString("users"))
+            .append("updates", updates)
+            .append("lsid", new BsonDocument("id", new BsonString("session")));
+
+        // Act
+        requestId++;
+        detector.commandStarted(new CommandStartedEvent(null, 1L, requestId, CONNECTION, "usermanagement",
+            "update", command));
+        // The driver releases the command's buffer once the started event returns
+        updates.get(0).asDocument().put("q", new BsonDocument("email", new BsonString("reused")));
+        detector.commandSucceeded(new CommandSucceededEvent(null, 1L, requestId, CONNECTION, "usermanagement",
+            "update", new BsonDocument("n", new BsonInt32(3)), TimeUnit.MILLISECONDS.toNanos(200)));
+
+        // Assert
+        BsonDocument query = explained.get(0).getDocument("explain");
+        assertEquals(1, query.getArray("updates").size());
+        assertEquals(new BsonInt32(0), query.getArray("updates").get(0).asDocument()
+            .getDocument("q").get("_id"));
+        assertFalse(query.containsKey("lsid"));
+        assertEquals("users", detector.recent().get(0).collection());
+    }
+
+    @Test
+    @DisplayName("Should collapse value arrays so $in lists share a shape")
+    void testRedactCollapsesArrays() {
+        // Arrange
+        BsonDocument command = new BsonDocument("find", new BsonString("users"))
+            .append("filter", new BsonDocument("age", new BsonDocument("$in",
+                new BsonArray(List.of(new BsonInt32(20), new BsonInt32(30))))));
+
+        // Act
+        BsonDocument shape = SlowQueryDetector.redact(command, true);
+
+        // Assert
+        assertEquals("{\"find\": \"users\", \"filter\": {\"age\": {\"$in\": \"?\"}}}", shape.toJson());
+    }
+
+    private void run(final BsonDocument command, final long millis) {
+        requestId++;
+        detector.commandStarted(new CommandStartedEvent(null, 1L, requestId, CONNECTION, "usermanagement",
+            "find", command));
+        BsonDocument reply = new BsonDocument("cursor", new BsonDocument("firstBatch",
+            new BsonArray(List.of(new BsonDocument("_id", new BsonInt32(1))))));
+        detector.commandSucceeded(new CommandSucceededEvent(null, 1L, requestId, CONNECTION, "usermanagement",
+            "find", reply, TimeUnit.MILLISECONDS.toNanos(millis)));
+    }
+
+    private static BsonDocument findByEmail(final String email) {
+        return new BsonDocument("find", new BsonString("users"))
+            .append("filter", new BsonDocument("email", new BsonString(email)))
+            .append("lsid", new BsonDocument("id", new BsonString("session")))
+            .append("$db", new BsonString("usermanagement"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.amalitech.metrics;
+
+import com.amalitech.model.User;
+import com.amalitech.service.UserService;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("TimedUserService Tests")
+class TimedUserServiceTest {
+
+    @Mock
+    private UserService delegate;
+
+    private SimpleMeterRegistry registry;
+    private TimedUserService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        registry = new SimpleMeterRegistry();
+        service = new TimedUserService(delegate, registry);
+    }
+
+    @Test
+    @DisplayName("Should record a successful call under its method")
+    void testSuccessRecorded() {
+        // Arrange
+        User user = new User("John Doe", "john@example.com", 30);
+        when(delegate.getUserById("1")).thenReturn(Optional.of(user));
+
+        // Act
+        Optional<User> result = service.getUserById("1");
+
+        // Assert
+        assertSame(user, result.orElseThrow());
+        Timer timer = registry.get("user.service").tags("method", "getUserById", "outcome", "success").timer();
+        assertEquals(1, timer.count());
+        assertEquals(0, registry.get("user.service")
+            .tags("method", "getUserById", "outcome", "failure").timer().count());
+    }
+
+    @Test
+    @DisplayName("Should record a failed call and rethrow its exception")
+    void testFailureRecorded() {
+        // Arrange
+        DataAccessResourceFailureException failure = new DataAccessResourceFailureException("down");
+        when(delegate.deleteUser("1", 3L)).thenThrow(failure);
+
+        // Act
+        DataAccessResourceFailureException thrown =
+            assertThrows(DataAccessResourceFailureException.class, () -> service.deleteUser("1", 3L));
+
+        // Assert
+        assertSame(failure, thrown);
+        assertEquals(1, registry.get("user.service")
+            .tags("method", "deleteUser", "outcome", "failure").timer().count());
+    }
+}
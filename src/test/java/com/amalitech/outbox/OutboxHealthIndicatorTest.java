@@ -0,0 +1,61 @@
+package com.amalitech.outbox;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("OutboxHealthIndicator Tests")
+class OutboxHealthIndicatorTest {
+
+    private final UserOutbox outbox = mock(UserOutbox.class);
+    private final OutboxHealthIndicator indicator = new OutboxHealthIndicator(outbox);
+
+    @Test
+    @DisplayName("Should be up and recording when transactions are available")
+    void health_Transactions_Up() {
+        // Arrange
+        when(outbox.isEnabled()).thenReturn(true);
+        when(outbox.transactionsSupported()).thenReturn(true);
+
+        // Act
+        Health health = indicator.health();
+
+        // Assert
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(true, health.getDetails().get("recording"));
+    }
+
+    @Test
+    @DisplayName("Should be down when the outbox is enabled against a standalone server")
+    void health_Standalone_Down() {
+        // Arrange
+        when(outbox.isEnabled()).thenReturn(true);
+        when(outbox.transactionsSupported()).thenReturn(false);
+
+        // Act
+        Health health = indicator.health();
+
+        // Assert
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals(false, health.getDetails().get("recording"));
+    }
+
+    @Test
+    @DisplayName("Should stay up but report not recording when the outbox is disabled")
+    void health_Disabled_UpNotRecording() {
+        // Arrange
+        when(outbox.isEnabled()).thenReturn(false);
+
+        // Act
+        Health health = indicator.health();
+
+        // Assert
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(false, health.getDetails().get("recording"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.amalitech.outbox;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("OutboxRelay Tests")
+class OutboxRelayTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:10Z");
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final IndexOperations indexOps = mock(IndexOperations.class);
+    private final InMemoryOutboxSink sink = new InMemoryOutboxSink();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.indexOps(OutboxEntry.class)).thenReturn(indexOps);
+    }
+
+    @Test
+    @DisplayName("Should publish each user's pending changes in version order, then remove them")
+    void relayOnce_PendingEntries_PublishesInUserOrder() {
+        // Arrange
+        // Version 2 of user a was written by another instance and sorts after this batch
+        OutboxEntry a3 = entry("01", "a", 3);
+        OutboxEntry b1 = entry("02", "b", 1);
+        OutboxEntry a2 = entry("03", "a", 2);
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEntry.class)))
+                .thenReturn(List.of(a3, b1), List.of(a3, a2, b1));
+        OutboxRelay relay = relay();
+
+        // Act
+        int fetched = relay.relayOnce();
+
+        // Assert
+        assertEquals(2, fetched);
+        assertEquals(List.of(a2, a3, b1), sink.entries());
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxEntry.class));
+    }
+
+    @Test
+    @DisplayName("Should keep the batch in the outbox when publishing fails")
+    void relayOnce_SinkFails_KeepsEntries() {
+        // Arrange
+        OutboxEntry entry = entry("01", "a", 1);
+        when(mongoTemplate.find(any(Query.class), eq(OutboxEntry.class))).thenReturn(List.of(entry));
+        OutboxRelay relay = new OutboxRelay(mongoTemplate, entries -> {
+            throw new IllegalStateException("sink down");
+        }, true, 100, Duration.ofMillis(10), Duration.ofSeconds(10), clock(), "me");
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, relay::relayOnce);
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(OutboxEntry.class));
+    }
+
+    @Test
+    @DisplayName("Should not relay while another instance holds the lease")
+    void relayOnce_LeaseHeldElsewhere_DoesNothing() {
+        // Arrange
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), anyString()))
+                .thenThrow(new DuplicateKeyException("lease held"));
+        OutboxRelay relay = relay();
+
+        // Act
+        int fetched = relay.relayOnce();
+
+        // Assert
+        assertEquals(0, fetched);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(OutboxEntry.class));
+    }
+
+    @Test
+    @DisplayName("Should create the index the widening query uses once, before the first batch")
+    void relayOnce_FirstPoll_CreatesUserVersionIndex() {
+        // Arrange
+        OutboxRelay relay = relay();
+
+        // Act
+        relay.relayOnce();
+        relay.relayOnce();
+
+        // Assert
+        verify(indexOps, times(1)).createIndex(argThat(index -> index.getIndexKeys()
+                .equals(new Document("userId", 1).append("userVersion", 1))));
+    }
+
+    @Test
+    @DisplayName("Should append one JSON line per change to the NDJSON file")
+    void ndjsonSink_Publish_AppendsLines() throws IOException {
+        // Arrange
+        Path file = directory.resolve("out/changes.ndjson");
+        ObjectMapper objectMapper = JsonMapper.builder().build();
+        NdjsonFileSink ndjson = new NdjsonFileSink(file, objectMapper);
+
+        // Act
+        ndjson.publish(List.of(entry("01", "a", 1), entry("02", "b", 1)));
+        ndjson.publish(List.of(entry("03", "a", 2)));
+
+        // Assert
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        JsonNode last = objectMapper.readTree(lines.get(2));
+        assertEquals("03", last.get("id").asString());
+        assertEquals("UPDATED", last.get("type").asString());
+        assertEquals(2, last.get("userVersion").asLong());
+        assertEquals("John 2", last.get("after").get("name").asString());
+    }
+
+    private OutboxRelay relay() {
+        return new OutboxRelay(mongoTemplate, sink, true, 100, Duration.ofMillis(10), Duration.ofSeconds(10),
+                clock(), "me");
+    }
+
+    private static Clock clock() {
+        return Clock.fixed(NOW, ZoneOffset.UTC);
+    }
+
+    private static OutboxEntry entry(final String id, final String userId, final long version) {
+        User before = new User("John " + (version - 1), userId + "@example.com", 30);
+        before.setId(userId);
+        before.setVersion(version - 1);
+        User after = User.copyOf(before);
+        after.setName("John " + version);
+        after.setVersion(version);
+        return new OutboxEntry(id, userId, UserChangeEvent.Type.UPDATED, version, NOW.minusSeconds(5), before, after);
+    }
+}
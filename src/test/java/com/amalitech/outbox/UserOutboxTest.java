@@ -0,0 +1,256 @@
+package com.amalitech.outbox;
+
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import com.amalitech.resilience.Retrier;
+import com.amalitech.resilience.RetryBudget;
+import com.mongodb.MongoCommandException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@DisplayName("UserOutbox Tests")
+class UserOutboxTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final CountingTransactionManager transactionManager = new CountingTransactionManager();
+    private final Clock clock = Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    @DisplayName("Should insert the outbox entry inside a committed transaction")
+    void write_ReplicaSet_RecordsEntryInTransaction() {
+        // Arrange
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> true, retrier(), true, clock);
+        User created = user(0L);
+
+        // Act
+        String id = outbox.write(() -> {
+            outbox.add(UserChangeEvent.created(created));
+            return created.getId();
+        });
+
+        // Assert
+        assertEquals("42", id);
+        assertEquals(1, transactionManager.commits.get());
+        verify(mongoTemplate).insert(argThat((OutboxEntry entry) -> entry.userId().equals("42")
+                && entry.type() == UserChangeEvent.Type.CREATED
+                && entry.userVersion() == 0L
+                && entry.occurredAt().equals(clock.instant())));
+    }
+
+    @Test
+    @DisplayName("Should insert the entries of a batch of changes with one insert")
+    void addAll_InTransaction_InsertsOnce() {
+        // Arrange
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> true, retrier(), true, clock);
+
+        // Act
+        boolean recording = outbox.write(() -> {
+            outbox.addAll(List.of(UserChangeEvent.created(user(0L)), UserChangeEvent.deleted(user(3L))));
+            return outbox.isRecording();
+        });
+
+        // Assert
+        assertTrue(recording);
+        assertFalse(outbox.isRecording());
+        verify(mongoTemplate).insert(argThat((List<OutboxEntry> entries) -> entries.size() == 2
+                && entries.get(1).type() == UserChangeEvent.Type.DELETED
+                && entries.get(1).userVersion() == 4L), eq(OutboxEntry.class));
+    }
+
+    @Test
+    @DisplayName("Should run the change again when the transaction hits a write conflict")
+    void write_TransientError_Retries() {
+        // Arrange
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> true, retrier(), true, clock);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act
+        int result = outbox.write(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw writeConflict();
+            }
+            return attempts.get();
+        });
+
+        // Assert
+        assertEquals(2, result);
+        assertEquals(1, transactionManager.rollbacks.get());
+        assertEquals(1, transactionManager.commits.get());
+    }
+
+    @Test
+    @DisplayName("Should not run the change again once the shared retry budget is spent")
+    void write_BudgetSpent_Throws() {
+        // Arrange
+        RetryBudget spent = new RetryBudget(0, 0, Duration.ofSeconds(10), clock);
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> true,
+                new Retrier("outbox", 3, Duration.ZERO, Duration.ZERO, spent, UserOutbox::isTransient), true, clock);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act & Assert
+        assertThrows(MongoCommandException.class, () -> outbox.write(() -> {
+            attempts.incrementAndGet();
+            throw writeConflict();
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Should not retry other failures")
+    void write_OtherError_Throws() {
+        // Arrange
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> true, retrier(), true, clock);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> outbox.write(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Should write without a transaction or entry when disabled")
+    void write_Disabled_SkipsOutbox() {
+        // Arrange
+        UserOutbox disabled = new UserOutbox(mongoTemplate, transactionManager, () -> true, retrier(), false, clock);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        disabled.bindTo(registry);
+
+        // Act
+        disabled.write(() -> {
+            disabled.add(UserChangeEvent.deleted(user(3L)));
+            return null;
+        });
+
+        // Assert
+        assertEquals(0, transactionManager.commits.get());
+        assertEquals(1, registry.get("outbox.unrecorded").counter().count());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("Should refuse a change when the outbox is enabled against a standalone server")
+    void write_Standalone_Throws() {
+        // Arrange
+        UserOutbox standalone = new UserOutbox(mongoTemplate, transactionManager, () -> false, retrier(), true, clock);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> standalone.write(() -> {
+            attempts.incrementAndGet();
+            return null;
+        }));
+        assertEquals(0, attempts.get());
+        assertEquals(0, transactionManager.commits.get());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("Should fail startup when the outbox is enabled against a standalone server")
+    void start_Standalone_Throws() {
+        // Arrange
+        UserOutbox outbox = new UserOutbox(mongoTemplate, transactionManager, () -> false, retrier(), true, clock);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, outbox::start);
+        assertFalse(outbox.isRunning());
+    }
+
+    @Test
+    @DisplayName("Should start when the server cannot be reached or the outbox is disabled")
+    void start_UnreachableOrDisabled_Starts() {
+        // Arrange
+        when(mongoTemplate.executeCommand(any(Document.class)))
+                .thenThrow(new DataAccessResourceFailureException("Timed out"));
+        UserOutbox unreachable = new UserOutbox(mongoTemplate, transactionManager, () -> false, retrier(), true, clock);
+        UserOutbox disabled = new UserOutbox(mongoTemplate, transactionManager, () -> false, retrier(), false, clock);
+
+        // Act & Assert
+        assertDoesNotThrow(unreachable::start);
+        assertDoesNotThrow(disabled::start);
+        assertTrue(unreachable.isRunning());
+    }
+
+    private Retrier retrier() {
+        RetryBudget budget = new RetryBudget(1.0, 10, Duration.ofSeconds(10), clock);
+        return new Retrier("outbox", 3, Duration.ZERO, Duration.ZERO, budget, UserOutbox::isTransient);
+    }
+
+    private static User user(final Long version) {
+        User user = new User("John Doe", "john@example.com", 30);
+        user.setId("42");
+        user.setVersion(version);
+        return user;
+    }
+
+    private static MongoCommandException writeConflict() {
+        BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(112))
+                .append("codeName", new BsonString("WriteConflict"))
+                .append("errorLabels", new BsonArray(List.of(new BsonString("TransientTransactionError"))));
+        return new MongoCommandException(response, null);
+    }
+
+    /**
+     * Transaction manager that only counts commits and rollbacks, with
+     * real transaction synchronization so {@link UserOutbox#add} sees an
+     * active transaction.
+     */
+    private static final class CountingTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final AtomicInteger commits = new AtomicInteger();
+        private final AtomicInteger rollbacks = new AtomicInteger();
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(final Object transaction, final TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(final DefaultTransactionStatus status) {
+            commits.incrementAndGet();
+        }
+
+        @Override
+        protected void doRollback(final DefaultTransactionStatus status) {
+            rollbacks.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.amalitech.resilience;
+
+import com.amalitech.MutableClock;
+import com.amalitech.exception.CircuitOpenException;
+import com.mongodb.MongoSocketReadException;
+import com.mongodb.ServerAddress;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CircuitBreaker Tests")
+class CircuitBreakerTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    private final AtomicBoolean databaseUp = new AtomicBoolean(false);
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private CircuitBreaker breaker() {
+        Runnable ping = () -> {
+            probes.incrementAndGet();
+            if (!databaseUp.get()) {
+                throw unavailable();
+            }
+        };
+        return new CircuitBreaker("mongo", 10, 4, 0.5, Duration.ofSeconds(10),
+                ping, Runnable::run, Duration.ofSeconds(2), MongoFailures::isUnavailable, clock);
+    }
+
+    private static RuntimeException unavailable() {
+        return new MongoSocketReadException("Connection reset", new ServerAddress());
+    }
+
+    private static void fail(CircuitBreaker breaker, RuntimeException failure) {
+        assertThrows(RuntimeException.class, () -> breaker.execute(() -> {
+            throw failure;
+        }));
+    }
+
+    @Test
+    @DisplayName("Should open once the failure rate reaches the threshold and then fail fast")
+    void testOpensAndFailsFast() {
+        // Arrange
+        CircuitBreaker breaker = breaker();
+        AtomicInteger calls = new AtomicInteger();
+
+        // Act
+        breaker.execute(calls::incrementAndGet);
+        breaker.execute(calls::incrementAndGet);
+        fail(breaker, unavailable());
+        CircuitBreaker.State afterOneFailure = breaker.getState();
+        fail(breaker, unavailable());
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, afterOneFailure);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        CircuitOpenException rejected = assertThrows(CircuitOpenException.class,
+                () -> breaker.execute(calls::incrementAndGet));
+        assertEquals(Duration.ofSeconds(10), rejected.getRetryAfter());
+        assertEquals(2, calls.get());
+        assertEquals(0, probes.get());
+    }
+
+    @Test
+    @DisplayName("Should not count failures that are not about availability")
+    void testIgnoresRequestFailures() {
+        // Arrange
+        CircuitBreaker breaker = breaker();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            fail(breaker, new DuplicateKeyException("E11000 duplicate key"));
+        }
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("Should probe with the ping after the open duration and close when it succeeds")
+    void testProbeCloses() {
+        // Arrange
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            fail(breaker, unavailable());
+        }
+
+        // Act: the first probe fails, the second succeeds
+        clock.advance(Duration.ofSeconds(11));
+        assertThrows(CircuitOpenException.class, () -> breaker.execute(() -> 1));
+        CircuitBreaker.State afterFailedProbe = breaker.getState();
+        clock.advance(Duration.ofSeconds(11));
+        databaseUp.set(true);
+        assertThrows(CircuitOpenException.class, () -> breaker.execute(() -> 1));
+
+        // Assert
+        assertEquals(CircuitBreaker.State.OPEN, afterFailedProbe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2, probes.get());
+        assertEquals(1, breaker.execute(() -> 1));
+    }
+
+    @Test
+    @DisplayName("Should open again when the probe does not answer within its timeout")
+    void testProbeTimesOut() throws InterruptedException {
+        // Arrange
+        CountDownLatch hung = new CountDownLatch(1);
+        CircuitBreaker breaker = new CircuitBreaker("mongo", 10, 4, 0.5, Duration.ofSeconds(10),
+                () -> {
+                    try {
+                        hung.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }, task -> new Thread(task).start(), Duration.ofMillis(50), MongoFailures::isUnavailable, clock);
+        for (int i = 0; i < 4; i++) {
+            fail(breaker, unavailable());
+        }
+        clock.advance(Duration.ofSeconds(11));
+
+        // Act
+        assertThrows(CircuitOpenException.class, () -> breaker.execute(() -> 1));
+        CircuitBreaker.State probing = breaker.getState();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (breaker.getState() == CircuitBreaker.State.HALF_OPEN && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        hung.countDown();
+
+        // Assert
+        assertEquals(CircuitBreaker.State.HALF_OPEN, probing);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitOpenException.class, () -> breaker.execute(() -> 1));
+    }
+
+    @Test
+    @DisplayName("Should count every outcome recorded by concurrent calls")
+    void testConcurrentRecording() throws InterruptedException {
+        // Arrange
+        CircuitBreaker breaker = new CircuitBreaker("mongo", 100, 100, 0.5, Duration.ofSeconds(10),
+                () -> { }, Runnable::run, Duration.ofSeconds(2), MongoFailures::isUnavailable, clock);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    breaker.execute(() -> 1);
+                }
+            });
+        }
+
+        // Act
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 49; i++) {
+            fail(breaker, unavailable());
+        }
+        CircuitBreaker.State belowThreshold = breaker.getState();
+        fail(breaker, unavailable());
+
+        // Assert
+        assertEquals(CircuitBreaker.State.CLOSED, belowThreshold);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,139 @@
+package com.amalitech.resilience;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HedgedReader Tests")
+class HedgedReaderTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private HedgedReader reader(double ratio) {
+        RetryBudget budget = new RetryBudget(ratio, 0, Duration.ofSeconds(10), Clock.systemUTC());
+        return new HedgedReader(true, Duration.ofMillis(20), Duration.ofMillis(20), budget, executor);
+    }
+
+    private String slow(String value) {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+
+    @Test
+    @DisplayName("Should not hedge reads that answer within the delay")
+    void testFastReadNotHedged() {
+        // Arrange
+        HedgedReader reader = reader(1.0);
+        AtomicInteger hedges = new AtomicInteger();
+
+        // Act
+        String result = reader.read(() -> "primary", () -> {
+            hedges.incrementAndGet();
+            return "hedge";
+        });
+
+        // Assert
+        assertEquals("primary", result);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    @DisplayName("Should return the hedge when the primary read is slow")
+    void testSlowReadHedged() {
+        // Arrange
+        HedgedReader reader = reader(1.0);
+
+        // Act
+        long start = System.nanoTime();
+        String result = reader.read(() -> slow("primary"), () -> "hedge");
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert
+        assertEquals("hedge", result);
+        assertTrue(elapsedMillis < 2_000, "Should not wait for the slow read");
+    }
+
+    @Test
+    @DisplayName("Should fall back to the slow read when the hedge fails or the budget is spent")
+    void testHedgeFailsOrBudgetSpent() {
+        // Arrange
+        HedgedReader reader = reader(1.0);
+        HedgedReader noBudget = reader(0.0);
+
+        // Act
+        String afterFailedHedge = reader.read(() -> slowAfterDelay("primary"), () -> {
+            throw new IllegalStateException("Secondary down");
+        });
+        String withoutHedge = noBudget.read(() -> slowAfterDelay("primary"), () -> "hedge");
+
+        // Assert
+        assertEquals("primary", afterFailedHedge);
+        assertEquals("primary", withoutHedge);
+    }
+
+    @Test
+    @DisplayName("Should wait for the slow read when the hedge finds nothing")
+    void testHedgeFindsNothing() {
+        // Arrange
+        HedgedReader reader = reader(1.0);
+        AtomicInteger hedges = new AtomicInteger();
+
+        // Act
+        String result = reader.read(() -> slowAfterDelay("primary"), () -> {
+            hedges.incrementAndGet();
+            return null;
+        });
+
+        // Assert
+        assertEquals("primary", result);
+        assertEquals(1, hedges.get());
+    }
+
+    @Test
+    @DisplayName("Should propagate the failure when both reads fail")
+    void testBothFail() {
+        // Arrange
+        HedgedReader reader = reader(1.0);
+
+        // Act & Assert
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> reader.read(
+            () -> {
+                slowAfterDelay("primary");
+                throw new IllegalStateException("Primary down");
+            },
+            () -> {
+                throw new IllegalStateException("Secondary down");
+            }));
+        assertEquals("Primary down", error.getMessage());
+    }
+
+    private static String slowAfterDelay(String value) {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
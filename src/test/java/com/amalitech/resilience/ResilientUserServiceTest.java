@@ -0,0 +1,181 @@
+package com.amalitech.resilience;
+
+import com.amalitech.cache.CachedUser;
+import com.amalitech.cache.UserCache;
+import com.amalitech.exception.CircuitOpenException;
+import com.amalitech.model.User;
+import com.amalitech.service.UserServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ResilientUserService Tests")
+class ResilientUserServiceTest {
+
+    @Mock
+    private UserServiceImpl delegate;
+
+    @Mock
+    private UserCache userCache;
+
+    private CircuitBreaker circuitBreaker;
+    private ResilientUserService service;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        circuitBreaker = new CircuitBreaker("mongo", 2, 1, 0.5, Duration.ofSeconds(10),
+                () -> { }, Runnable::run, Duration.ofSeconds(2), MongoFailures::isUnavailable, Clock.systemUTC());
+        RetryBudget budget = new RetryBudget(0.1, 10, Duration.ofSeconds(10), Clock.systemUTC());
+        Retrier retrier = new Retrier("mongo", 3, Duration.ZERO, Duration.ZERO, budget, MongoFailures::isTransient);
+        service = new ResilientUserService(delegate, circuitBreaker, retrier, userCache);
+        request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static User user() {
+        User user = new User("Alice", "alice@example.com", 30);
+        user.setId("1");
+        user.setVersion(2L);
+        return user;
+    }
+
+    @Test
+    @DisplayName("Should serve a stale cached user and label the response when the database is down")
+    void testServesStale() {
+        // Arrange
+        when(delegate.getUserById("1")).thenThrow(new DataAccessResourceFailureException("Timed out"));
+        when(userCache.getStale("1")).thenReturn(Optional.of(new CachedUser(user(), Duration.ofSeconds(42))));
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+        ServletServerHttpResponse response = new ServletServerHttpResponse(servletResponse);
+
+        // Act
+        Optional<User> first = service.getUserById("1");
+        Optional<User> second = service.getUserById("1");
+        new StaleResponseAdvice().beforeBodyWrite(first.get(), null, null, null,
+                new ServletServerHttpRequest(request), response);
+        response.getHeaders().forEach((name, values) -> servletResponse.setHeader(name, values.get(0)));
+
+        // Assert
+        assertEquals("Alice", first.get().getName());
+        assertEquals("Alice", second.get().getName());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        verify(delegate, times(3)).getUserById("1");
+        assertEquals(StaleResponseAdvice.STALE_WARNING, servletResponse.getHeader(StaleResponseAdvice.WARNING_HEADER));
+        assertEquals("42", servletResponse.getHeader("Age"));
+    }
+
+    @Test
+    @DisplayName("Should fail fast when the breaker is open and nothing is cached")
+    void testFailsFastWithoutStaleCopy() {
+        // Arrange
+        when(delegate.getUserById("1")).thenThrow(new DataAccessResourceFailureException("Timed out"));
+        when(userCache.getStale("1")).thenReturn(Optional.empty());
+        assertThrows(DataAccessResourceFailureException.class, () -> service.getUserById("1"));
+
+        // Act & Assert
+        assertThrows(CircuitOpenException.class, () -> service.getUserById("1"));
+        assertThrows(CircuitOpenException.class, () -> service.createUser(user()));
+        verify(delegate, never()).createUser(any());
+    }
+
+    @Test
+    @DisplayName("Should retry reads that fail transiently")
+    void testRetriesReads() {
+        // Arrange
+        when(delegate.getUserById("1"))
+            .thenThrow(new DataAccessResourceFailureException("Not primary"))
+            .thenReturn(Optional.of(user()));
+
+        // Act
+        Optional<User> result = service.getUserById("1");
+
+        // Assert
+        assertTrue(result.isPresent());
+        verify(delegate, times(2)).getUserById("1");
+        verify(userCache, never()).getStale(anyString());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    @DisplayName("Should retry creates by their pre-assigned ID without inserting twice")
+    void testRetriesCreateIdempotently() {
+        // Arrange
+        User request = new User("Alice", "alice@example.com", 30);
+        when(delegate.createUser(any(User.class))).thenThrow(new DataAccessResourceFailureException("Reply lost"));
+        when(delegate.existsOnPrimary(anyString())).thenReturn(true);
+
+        // Act
+        User result = service.createUser(request);
+
+        // Assert
+        assertNotNull(result.getId());
+        assertEquals(0L, result.getVersion());
+        assertEquals("alice@example.com", result.getEmail());
+        assertNull(request.getId());
+        verify(delegate, times(1)).createUser(argThat(user -> result.getId().equals(user.getId())));
+        verify(delegate).existsOnPrimary(result.getId());
+        verify(delegate, never()).getUserById(anyString());
+    }
+
+    @Test
+    @DisplayName("Should insert again when the primary does not have the failed create")
+    void testRetriesCreateNotApplied() {
+        // Arrange
+        User request = new User("Alice", "alice@example.com", 30);
+        User created = user();
+        when(delegate.createUser(any(User.class)))
+                .thenThrow(new DataAccessResourceFailureException("Reset"))
+                .thenReturn(created);
+        when(delegate.existsOnPrimary(anyString())).thenReturn(false);
+
+        // Act
+        User result = service.createUser(request);
+
+        // Assert
+        assertSame(created, result);
+        assertNull(request.getId());
+        verify(delegate, times(2)).createUser(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should propagate request errors without serving stale data")
+    void testPropagatesRequestErrors() {
+        // Arrange
+        User update = user();
+        when(delegate.updateUser("1", update)).thenThrow(new DuplicateKeyException("E11000"));
+        when(delegate.getUserById("2")).thenThrow(new IllegalStateException("Bug"));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> service.updateUser("1", update));
+        verify(delegate, times(1)).updateUser("1", update);
+        assertThrows(IllegalStateException.class, () -> service.getUserById("2"));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        verify(userCache, never()).getStale(anyString());
+        assertNull(request.getAttribute(StaleResponseAdvice.class.getName() + ".age"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.amalitech.resilience;
+
+import com.amalitech.MutableClock;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RetryBudget Tests")
+class RetryBudgetTest {
+
+    @Test
+    @DisplayName("Should allow retries in proportion to requests plus the fixed allowance")
+    void testRatio() {
+        // Arrange
+        Clock clock = Clock.fixed(Instant.parse("2026-01-01T00:00:00Z"), ZoneOffset.UTC);
+        RetryBudget budget = new RetryBudget(0.1, 2, Duration.ofSeconds(10), clock);
+        for (int i = 0; i < 100; i++) {
+            budget.recordRequest();
+        }
+
+        // Act
+        int granted = 0;
+        while (budget.tryAcquire()) {
+            granted++;
+        }
+
+        // Assert
+        assertEquals(12, granted);
+    }
+
+    @Test
+    @DisplayName("Should refill once old requests and retries leave the window")
+    void testWindowSlides() {
+        // Arrange
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        RetryBudget budget = new RetryBudget(0.0, 1, Duration.ofSeconds(10), clock);
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // Act
+        clock.advance(Duration.ofSeconds(11));
+
+        // Assert
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    @DisplayName("Should stop a retrier once the budget is spent")
+    void testRetrierStopsWhenBudgetSpent() {
+        // Arrange
+        RetryBudget budget = new RetryBudget(0.0, 1, Duration.ofSeconds(10), Clock.systemUTC());
+        Retrier retrier = new Retrier("mongo", 5, Duration.ZERO, Duration.ZERO, budget, e -> true);
+        int[] attempts = new int[1];
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> retrier.execute(() -> {
+            attempts[0]++;
+            throw new IllegalStateException("Down");
+        }));
+
+        // Assert: one first attempt and the single retry the budget allows
+        assertEquals(2, attempts[0]);
+    }
+}
@@ -0,0 +1,328 @@
+package com.amalitech.service;
+
+import com.amalitech.exception.DuplicateEmailException;
+import com.amalitech.metrics.MongoRoundTrips;
+import com.amalitech.model.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UpdateCoalescer Tests")
+class UpdateCoalescerTest {
+
+    private static User user(String email) {
+        return new User("Name", email, 30);
+    }
+
+    private static User written(String id, User user, long version) {
+        User result = User.copyOf(user);
+        result.setId(id);
+        result.setVersion(version);
+        return result;
+    }
+
+    @Test
+    @DisplayName("Should write a single update directly")
+    void testSingleUpdate() {
+        // Arrange
+        List<String> writes = new ArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            return Optional.of(written(id, user, 1));
+        }, (id, emails) -> Set.of());
+
+        // Act
+        Optional<User> result = coalescer.update("u1", user("a@example.com"));
+
+        // Assert
+        assertEquals("a@example.com", result.orElseThrow().getEmail());
+        assertEquals(List.of("a@example.com"), writes);
+    }
+
+    @Test
+    @DisplayName("Should merge updates queued behind an in-flight write into one write")
+    void testCoalescesBurst() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<String> writes = new CopyOnWriteArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            return Optional.of(written(id, user, writes.size()));
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+
+        // Act
+        Future<Optional<User>> first = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        List<Future<Optional<User>>> burst = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String email = "burst" + i + "@example.com";
+            burst.add(pool.submit(() -> coalescer.update("u1", user(email))));
+        }
+        Thread.sleep(100);
+        releaseFirstWrite.countDown();
+
+        // Assert
+        assertEquals("first@example.com", first.get(5, TimeUnit.SECONDS).orElseThrow().getEmail());
+        User merged = burst.get(0).get(5, TimeUnit.SECONDS).orElseThrow();
+        for (Future<Optional<User>> future : burst) {
+            assertSame(merged, future.get(5, TimeUnit.SECONDS).orElseThrow());
+        }
+        assertEquals(2, writes.size());
+        assertEquals(2L, merged.getVersion());
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should count each write in the round-trip tally of the request it was written for")
+    void testCountsWritesForTheirRequest() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        Map<String, MongoRoundTrips.Tally> writtenIn = new ConcurrentHashMap<>();
+        Map<String, MongoRoundTrips.Tally> requestTallies = new ConcurrentHashMap<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writtenIn.put(user.getEmail(), MongoRoundTrips.current());
+            if (writtenIn.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            return Optional.of(written(id, user, writtenIn.size()));
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+
+        // Act
+        List<Future<Optional<User>>> updates = new ArrayList<>();
+        updates.add(pool.submit(() -> updateCounted(coalescer, "first@example.com", requestTallies)));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            String email = "burst" + i + "@example.com";
+            updates.add(pool.submit(() -> updateCounted(coalescer, email, requestTallies)));
+        }
+        Thread.sleep(100);
+        releaseFirstWrite.countDown();
+        for (Future<Optional<User>> update : updates) {
+            update.get(5, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(2, writtenIn.size());
+        writtenIn.forEach((email, tally) -> assertSame(requestTallies.get(email), tally, email));
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should fail only the update whose email is taken and retry the next latest")
+    void testDuplicateEmailFallback() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<String> writes = new CopyOnWriteArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            if (user.getEmail().startsWith("taken")) {
+                throw new DuplicateEmailException(user.getEmail());
+            }
+            return Optional.of(written(id, user, writes.size()));
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+
+        // Act
+        Future<Optional<User>> first = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        Future<Optional<User>> ok = pool.submit(() -> coalescer.update("u1", user("ok@example.com")));
+        Thread.sleep(50);
+        Future<Optional<User>> taken = pool.submit(() -> coalescer.update("u1", user("taken@example.com")));
+        Thread.sleep(50);
+        releaseFirstWrite.countDown();
+
+        // Assert
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals("ok@example.com", ok.get(5, TimeUnit.SECONDS).orElseThrow().getEmail());
+        Exception failure = assertThrows(Exception.class, () -> taken.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DuplicateEmailException.class, failure.getCause());
+        assertEquals(List.of("first@example.com", "taken@example.com", "ok@example.com"), writes);
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should reject a superseded update whose own email belongs to another user")
+    void testSupersededEmailTaken() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<String> writes = new CopyOnWriteArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            return Optional.of(written(id, user, writes.size()));
+        }, (id, emails) -> emails.contains("other@example.com") ? Set.of("other@example.com") : Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+
+        // Act
+        Future<Optional<User>> first = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        Future<Optional<User>> shadowed = pool.submit(() -> coalescer.update("u1", user("other@example.com")));
+        Thread.sleep(50);
+        Future<Optional<User>> latest = pool.submit(() -> coalescer.update("u1", user("latest@example.com")));
+        Thread.sleep(50);
+        releaseFirstWrite.countDown();
+
+        // Assert
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals("latest@example.com", latest.get(5, TimeUnit.SECONDS).orElseThrow().getEmail());
+        Exception failure = assertThrows(Exception.class, () -> shadowed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DuplicateEmailException.class, failure.getCause());
+        assertEquals(2, writes.size());
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should write different users in parallel")
+    void testDifferentUsersNotSerialized() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            if (id.equals("u1")) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            return Optional.of(written(id, user, 1));
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<Optional<User>> blocked = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        Future<Optional<User>> other = pool.submit(() -> coalescer.update("u2", user("other@example.com")));
+
+        // Assert
+        assertEquals("u2", other.get(5, TimeUnit.SECONDS).orElseThrow().getId());
+        assertFalse(blocked.isDone());
+        releaseFirstWrite.countDown();
+        assertEquals("u1", blocked.get(5, TimeUnit.SECONDS).orElseThrow().getId());
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should not write an update whose caller was interrupted while it was queued")
+    void testInterruptedUpdateWithdrawn() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<String> writes = new CopyOnWriteArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+            }
+            return Optional.of(written(id, user, writes.size()));
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        Future<Optional<User>> first = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        CountDownLatch withdrawn = new CountDownLatch(1);
+        Future<?> abandoned = pool.submit(() -> {
+            try {
+                coalescer.update("u1", user("abandoned@example.com"));
+            } catch (IllegalStateException e) {
+                withdrawn.countDown();
+            }
+        });
+        Thread.sleep(50);
+
+        // Act
+        abandoned.cancel(true);
+        assertTrue(withdrawn.await(5, TimeUnit.SECONDS));
+        releaseFirstWrite.countDown();
+
+        // Assert
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals("next@example.com", coalescer.update("u1", user("next@example.com")).orElseThrow().getEmail());
+        assertEquals(List.of("first@example.com", "next@example.com"), writes);
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should complete every coalesced update when the write throws an error")
+    void testErrorCompletesEveryUpdate() throws Exception {
+        // Arrange
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+        List<String> writes = new CopyOnWriteArrayList<>();
+        UpdateCoalescer coalescer = new UpdateCoalescer((id, user) -> {
+            writes.add(user.getEmail());
+            if (writes.size() == 1) {
+                firstWriteStarted.countDown();
+                await(releaseFirstWrite);
+                return Optional.of(written(id, user, 1));
+            }
+            throw new AssertionError("write failed");
+        }, (id, emails) -> Set.of());
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        // Act
+        Future<Optional<User>> first = pool.submit(() -> coalescer.update("u1", user("first@example.com")));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        List<Future<Optional<User>>> burst = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String email = "burst" + i + "@example.com";
+            burst.add(pool.submit(() -> coalescer.update("u1", user(email))));
+        }
+        Thread.sleep(100);
+        releaseFirstWrite.countDown();
+
+        // Assert
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<Optional<User>> future : burst) {
+            Exception failure = assertThrows(Exception.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AssertionError.class, failure.getCause());
+        }
+        assertEquals(2, writes.size());
+        pool.shutdownNow();
+    }
+
+    private static Optional<User> updateCounted(UpdateCoalescer coalescer, String email,
+                                                Map<String, MongoRoundTrips.Tally> tallies) {
+        try (MongoRoundTrips.Tally tally = MongoRoundTrips.start()) {
+            tallies.put(email, tally);
+            return coalescer.update("u1", user(email));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
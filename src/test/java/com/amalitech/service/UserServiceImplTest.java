@@ -1,21 +1,49 @@
 package com.amalitech.service;
 
+import com.amalitech.cache.UserCache;
+import com.amalitech.config.ReadRouting;
+import com.amalitech.delta.UserChangeSequencer;
+import com.amalitech.delta.UserTombstone;
+import com.amalitech.event.UserChangeEvent;
 import com.amalitech.exception.DuplicateEmailException;
+import com.amalitech.exception.PreconditionFailedException;
 import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import com.amalitech.outbox.UserOutbox;
+import com.amalitech.resilience.HedgedReader;
+import com.amalitech.resilience.RetryBudget;
+import com.mongodb.ReadPreference;
+import com.mongodb.TaggableReadPreference;
+import jakarta.validation.Validation;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @DisplayName("UserServiceImpl Tests")
@@ -24,6 +52,21 @@ class UserServiceImplTest {
     @Mock
     private MongoTemplate mongoTemplate;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserCache userCache;
+
+    @Spy
+    private ReadRouting readRouting = new ReadRouting("secondaryPreferred", Duration.ofSeconds(90));
+
+    @Spy
+    private HedgedReader hedgedReader = new HedgedReader(false, Duration.ZERO, Duration.ZERO, null, Runnable::run);
+
+    @Mock
+    private UserOutbox outbox;
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -32,6 +75,7 @@ class UserServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(outbox.write(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
         
         // Initialize test user
         testUser = new User();
@@ -165,7 +209,7 @@ class UserServiceImplTest {
         user3.setId("3");
         
         List<User> expectedUsers = Arrays.asList(user1, user2, user3);
-        when(mongoTemplate.findAll(User.class)).thenReturn(expectedUsers);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(expectedUsers);
 
         // Act
         List<User> actualUsers = userService.getAllUsers();
@@ -176,14 +220,14 @@ class UserServiceImplTest {
         assertEquals("User One", actualUsers.get(0).getName());
         assertEquals("User Two", actualUsers.get(1).getName());
         assertEquals("User Three", actualUsers.get(2).getName());
-        verify(mongoTemplate, times(1)).findAll(User.class);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(User.class));
     }
 
     @Test
     @DisplayName("Should return empty list when no users exist")
     void testGetAllUsersEmptyList() {
         // Arrange
-        when(mongoTemplate.findAll(User.class)).thenReturn(Arrays.asList());
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(Arrays.asList());
 
         // Act
         List<User> actualUsers = userService.getAllUsers();
@@ -191,20 +235,39 @@ class UserServiceImplTest {
         // Assert
         assertNotNull(actualUsers, "User list should not be null");
         assertEquals(0, actualUsers.size(), "Should return empty list");
-        verify(mongoTemplate, times(1)).findAll(User.class);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(User.class));
     }
 
     @Test
-    @DisplayName("Should call mongoTemplate.findAll with correct class")
+    @DisplayName("Should list users from a secondary with bounded staleness")
     void testGetAllUsersCallsMongoTemplate() {
         // Arrange
-        when(mongoTemplate.findAll(User.class)).thenReturn(Arrays.asList());
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(Arrays.asList());
 
         // Act
         userService.getAllUsers();
 
         // Assert
-        verify(mongoTemplate, times(1)).findAll(User.class);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).find(query.capture(), eq(User.class));
+        ReadPreference readPreference = query.getValue().getReadPreference();
+        assertEquals("secondaryPreferred", readPreference.getName());
+        assertEquals(90_000L, ((TaggableReadPreference) readPreference)
+            .getMaxStaleness(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Should keep point reads on the primary")
+    void testGetUserByIdReadsFromPrimary() {
+        // Arrange
+        when(userCache.get("1")).thenReturn(Optional.empty());
+
+        // Act
+        userService.getUserById("1");
+
+        // Assert
+        verify(mongoTemplate).findById("1", User.class);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(User.class));
     }
 
     // US-003: Get User by ID Tests
@@ -265,11 +328,7 @@ class UserServiceImplTest {
         String userId = "507f1f77bcf86cd799439011";
         User updateData = new User("Jane Updated", "jane.updated@example.com", 28);
         
-        User updatedUser = new User("Jane Updated", "jane.updated@example.com", 28);
-        updatedUser.setId(userId);
-        
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(updatedUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         java.util.Optional<User> result = userService.updateUser(userId, updateData);
@@ -279,8 +338,8 @@ class UserServiceImplTest {
         assertEquals("Jane Updated", result.get().getName());
         assertEquals("jane.updated@example.com", result.get().getEmail());
         assertEquals(28, result.get().getAge());
-        verify(mongoTemplate, times(1)).findById(userId, User.class);
-        verify(mongoTemplate, times(1)).save(any(User.class));
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
@@ -289,15 +348,15 @@ class UserServiceImplTest {
         // Arrange
         String userId = "nonexistent123";
         User updateData = new User("Jane Updated", "jane.updated@example.com", 28);
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(null);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(null);
 
         // Act
         java.util.Optional<User> result = userService.updateUser(userId, updateData);
 
-        // Assert
+        // Assert - One attempt keeping the email, then one after the uniqueness check
         assertFalse(result.isPresent(), "User should not be present");
-        verify(mongoTemplate, times(1)).findById(userId, User.class);
-        verify(mongoTemplate, never()).save(any(User.class));
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
@@ -310,11 +369,7 @@ class UserServiceImplTest {
         User existingUser = new User("Old Name", "old.email@example.com", 30);
         existingUser.setId(userId);
         
-        User savedUser = new User("New Name", "new.email@example.com", 50);
-        savedUser.setId(userId);
-        
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(savedUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
 
         // Act
         java.util.Optional<User> result = userService.updateUser(userId, updateData);
@@ -334,8 +389,7 @@ class UserServiceImplTest {
         String userId = "507f1f77bcf86cd799439011";
         User updateData = new User("Updated Name", "updated@example.com", 35);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(testUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         java.util.Optional<User> result = userService.updateUser(userId, updateData);
@@ -346,20 +400,19 @@ class UserServiceImplTest {
     }
 
     @Test
-    @DisplayName("Should call mongoTemplate save with updated user")
-    void testUpdateUserCallsSave() {
+    @DisplayName("Should update user with a single findAndModify")
+    void testUpdateUserCallsFindAndModify() {
         // Arrange
         String userId = "507f1f77bcf86cd799439011";
         User updateData = new User("Updated", "updated@example.com", 40);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(testUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         userService.updateUser(userId, updateData);
 
         // Assert
-        verify(mongoTemplate, times(1)).save(any(User.class));
+        verify(mongoTemplate, times(1)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     // US-005: Delete User Tests
@@ -369,15 +422,18 @@ class UserServiceImplTest {
     void testDeleteUserSuccess() {
         // Arrange
         String userId = "507f1f77bcf86cd799439011";
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         boolean result = userService.deleteUser(userId);
 
         // Assert
         assertTrue(result, "Delete should return true when user exists");
-        verify(mongoTemplate, times(1)).findById(userId, User.class);
-        verify(mongoTemplate, times(1)).remove(any(org.springframework.data.mongodb.core.query.Query.class), eq(User.class));
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(User.class));
+        verify(mongoTemplate).upsert(any(Query.class), argThat((UpdateDefinition update) ->
+                update.getUpdateObject().get("$unset", Document.class)
+                        .containsKey(UserChangeSequencer.FIELD)), eq(UserTombstone.class));
     }
 
     @Test
@@ -385,43 +441,44 @@ class UserServiceImplTest {
     void testDeleteUserNotFound() {
         // Arrange
         String userId = "nonexistent123";
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(null);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(null);
 
         // Act
         boolean result = userService.deleteUser(userId);
 
         // Assert
         assertFalse(result, "Delete should return false when user doesn't exist");
-        verify(mongoTemplate, times(1)).findById(userId, User.class);
-        verify(mongoTemplate, never()).remove(any(org.springframework.data.mongodb.core.query.Query.class), eq(User.class));
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(User.class));
+        verify(mongoTemplate, never()).upsert(any(Query.class), any(UpdateDefinition.class), eq(UserTombstone.class));
     }
 
     @Test
-    @DisplayName("Should call mongoTemplate.remove when deleting user")
-    void testDeleteUserCallsRemove() {
+    @DisplayName("Should call mongoTemplate.findAndRemove when deleting user")
+    void testDeleteUserCallsFindAndRemove() {
         // Arrange
         String userId = "507f1f77bcf86cd799439011";
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         userService.deleteUser(userId);
 
         // Assert
-        verify(mongoTemplate, times(1)).remove(any(org.springframework.data.mongodb.core.query.Query.class), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(User.class));
     }
 
     @Test
-    @DisplayName("Should check if user exists before deleting")
-    void testDeleteUserChecksExistence() {
+    @DisplayName("Should delete without a separate existence check")
+    void testDeleteUserWithoutExistenceCheck() {
         // Arrange
         String userId = "507f1f77bcf86cd799439011";
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(testUser);
 
         // Act
         userService.deleteUser(userId);
 
         // Assert
-        verify(mongoTemplate, times(1)).findById(userId, User.class);
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
     }
 
     // US-007: Unique Email Enforcement Tests
@@ -469,7 +526,7 @@ class UserServiceImplTest {
         User existingUser = new User("John Doe", "john.doe@example.com", 30);
         existingUser.setId(userId);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(argThat((Query query) -> !matchesEmail(query)), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
         when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(true);
 
         // Act & Assert
@@ -479,7 +536,7 @@ class UserServiceImplTest {
         );
         
         assertEquals("Email already exists: existing@example.com", exception.getMessage());
-        verify(mongoTemplate, never()).save(any(User.class));
+        verify(mongoTemplate, never()).findAndModify(argThat((Query query) -> !matchesEmail(query)), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
@@ -492,15 +549,14 @@ class UserServiceImplTest {
         User existingUser = new User("John Doe", "john.doe@example.com", 30);
         existingUser.setId(userId);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
 
         // Act
         userService.updateUser(userId, updateData);
 
-        // Assert - Should not check email uniqueness when email hasn't changed
+        // Assert - A user that keeps its email needs no uniqueness check
         verify(mongoTemplate, never()).exists(any(Query.class), eq(User.class));
-        verify(mongoTemplate, times(1)).save(any(User.class));
+        verify(mongoTemplate, times(1)).findAndModify(argThat((Query query) -> matchesEmail(query)), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
@@ -513,16 +569,18 @@ class UserServiceImplTest {
         User existingUser = new User("John Doe", "john.doe@example.com", 30);
         existingUser.setId(userId);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(argThat((Query query) -> !matchesEmail(query)), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
         when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(false);
-        when(mongoTemplate.save(any(User.class))).thenReturn(existingUser);
 
         // Act
-        userService.updateUser(userId, updateData);
-
-        // Assert
-        verify(mongoTemplate, times(1)).exists(any(Query.class), eq(User.class));
-        verify(mongoTemplate, times(1)).save(any(User.class));
+        Optional<User> result = userService.updateUser(userId, updateData);
+
+        // Assert - The uniqueness check excludes the user being updated
+        assertEquals("new.email@example.com", result.orElseThrow().getEmail());
+        verify(mongoTemplate, times(1)).exists(argThat((Query query) ->
+                query.getQueryObject().get("email").equals("new.email@example.com")
+                        && query.getQueryObject().containsKey("_id")), eq(User.class));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     // US-009: Comprehensive Unit Tests - Edge Cases and Boundary Values
@@ -660,7 +718,7 @@ class UserServiceImplTest {
     void testGetAllUsersSingleUser() {
         // Arrange
         List<User> singleUserList = List.of(testUser);
-        when(mongoTemplate.findAll(User.class)).thenReturn(singleUserList);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(singleUserList);
 
         // Act
         List<User> users = userService.getAllUsers();
@@ -669,7 +727,7 @@ class UserServiceImplTest {
         assertNotNull(users);
         assertEquals(1, users.size());
         assertEquals(testUser.getId(), users.get(0).getId());
-        verify(mongoTemplate, times(1)).findAll(User.class);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(User.class));
     }
 
     @Test
@@ -682,7 +740,7 @@ class UserServiceImplTest {
             user.setId("id" + i);
             largeUserList.add(user);
         }
-        when(mongoTemplate.findAll(User.class)).thenReturn(largeUserList);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(largeUserList);
 
         // Act
         List<User> users = userService.getAllUsers();
@@ -690,7 +748,7 @@ class UserServiceImplTest {
         // Assert
         assertNotNull(users);
         assertEquals(1000, users.size());
-        verify(mongoTemplate, times(1)).findAll(User.class);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(User.class));
     }
 
     @Test
@@ -747,48 +805,47 @@ class UserServiceImplTest {
         User updateDataMin = new User("John Doe", "john@example.com", 18);
         User updateDataMax = new User("John Doe", "john@example.com", 100);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
-        when(mongoTemplate.save(any(User.class))).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
 
         // Act - Update with minimum age
         java.util.Optional<User> updatedMin = userService.updateUser(userId, updateDataMin);
         
         // Act - Update with maximum age
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
         java.util.Optional<User> updatedMax = userService.updateUser(userId, updateDataMax);
 
         // Assert
         assertTrue(updatedMin.isPresent());
         assertTrue(updatedMax.isPresent());
-        verify(mongoTemplate, times(2)).save(any(User.class));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
     @DisplayName("Should return false when deleting with null ID")
     void testDeleteUserWithNullId() {
         // Arrange
-        when(mongoTemplate.findById(null, User.class)).thenReturn(null);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(null);
 
         // Act
         boolean result = userService.deleteUser(null);
 
         // Assert
         assertFalse(result);
-        verify(mongoTemplate, never()).remove(any(Query.class), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(User.class));
     }
 
     @Test
     @DisplayName("Should return false when deleting with empty ID")
     void testDeleteUserWithEmptyId() {
         // Arrange
-        when(mongoTemplate.findById("", User.class)).thenReturn(null);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(null);
 
         // Act
         boolean result = userService.deleteUser("");
 
         // Assert
         assertFalse(result);
-        verify(mongoTemplate, never()).remove(any(Query.class), eq(User.class));
+        verify(mongoTemplate, times(1)).findAndRemove(any(Query.class), eq(User.class));
     }
 
     @Test
@@ -826,20 +883,19 @@ class UserServiceImplTest {
         User update1 = new User("John Update 1", "john1@example.com", 31);
         User update2 = new User("John Update 2", "john2@example.com", 32);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
         when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(false);
-        when(mongoTemplate.save(any(User.class))).thenReturn(existingUser);
 
         // Act - Simulate two updates
         java.util.Optional<User> result1 = userService.updateUser(userId, update1);
         
-        when(mongoTemplate.findById(userId, User.class)).thenReturn(existingUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(existingUser);
         java.util.Optional<User> result2 = userService.updateUser(userId, update2);
 
         // Assert
         assertTrue(result1.isPresent());
         assertTrue(result2.isPresent());
-        verify(mongoTemplate, times(2)).save(any(User.class));
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
     }
 
     @Test
@@ -859,4 +915,389 @@ class UserServiceImplTest {
         verify(mongoTemplate, times(1)).save(any(User.class));
     }
 
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should fetch only the version projection of a user")
+    void testGetUserVersion() {
+        // Arrange
+        User projection = new User();
+        projection.setId(testUser.getId());
+        projection.setVersion(7L);
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(projection);
+
+        // Act
+        java.util.Optional<Long> version = userService.getUserVersion(testUser.getId());
+
+        // Assert
+        assertEquals(java.util.Optional.of(7L), version);
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+        verify(mongoTemplate).findOne(argThat((Query query) ->
+                query.getFieldsObject().containsKey("version")
+                        && query.getQueryObject().containsKey("_id")), eq(User.class));
+    }
+
+    @Test
+    @DisplayName("Should return empty version when user does not exist")
+    void testGetUserVersionNotFound() {
+        // Arrange
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(null);
+
+        // Act & Assert
+        assertTrue(userService.getUserVersion("missing").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should make update conditional on the expected version")
+    void testUpdateUserWithMatchingVersion() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        testUser.setVersion(3L);
+        User updateData = new User("John Updated", "john.doe@example.com", 31);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(testUser);
+
+        // Act
+        java.util.Optional<User> result = userService.updateUser(userId, updateData, 3L);
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(4L, result.get().getVersion(), "Version should be incremented");
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> Long.valueOf(3L).equals(query.getQueryObject().get("version"))),
+                argThat((UpdateDefinition update) -> update.getUpdateObject().containsKey("$inc")),
+                any(FindAndModifyOptions.class), eq(User.class));
+    }
+
+    @Test
+    @DisplayName("Should throw PreconditionFailedException when version does not match")
+    void testUpdateUserWithStaleVersion() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        User updateData = new User("John Updated", "john.doe@example.com", 31);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(null);
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(false).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(PreconditionFailedException.class,
+                () -> userService.updateUser(userId, updateData, 2L));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("Should return empty Optional when conditional update targets missing user")
+    void testUpdateUserWithVersionNotFound() {
+        // Arrange
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(null);
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(false);
+
+        // Act & Assert
+        assertTrue(userService.updateUser("missing", testUser, 2L).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should translate duplicate key race on update into DuplicateEmailException")
+    void testUpdateUserDuplicateKeyRace() {
+        // Arrange
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(false);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenThrow(new DuplicateKeyException("E11000"));
+
+        // Act & Assert
+        assertThrows(DuplicateEmailException.class,
+                () -> userService.updateUser(testUser.getId(), testUser));
+    }
+
+    @Test
+    @DisplayName("Should publish update event with before and after state")
+    void testUpdateUserPublishesEvent() {
+        // Arrange
+        User before = new User("John Doe", "john.doe@example.com", 30);
+        before.setId(testUser.getId());
+        before.setVersion(1L);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(before);
+
+        // Act
+        userService.updateUser(testUser.getId(), new User("John Doe", "john.doe@example.com", 45));
+
+        // Assert
+        verify(eventPublisher).publishEvent(argThat((Object event) ->
+                event instanceof UserChangeEvent change
+                        && change.before().getAge() == 30
+                        && change.after().getAge() == 45
+                        && change.after().getVersion() == 2L));
+    }
+
+    @Test
+    @DisplayName("Should record changes in the outbox within the write")
+    void testWritesRecordOutboxEntries() {
+        // Arrange
+        User before = new User("John Doe", "john.doe@example.com", 30);
+        before.setId(testUser.getId());
+        before.setVersion(1L);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(before);
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(before);
+
+        // Act
+        userService.updateUser(testUser.getId(), new User("John Doe", "john.doe@example.com", 45), 1L);
+        userService.deleteUser(testUser.getId());
+
+        // Assert
+        verify(outbox, times(2)).write(any());
+        verify(outbox).add(argThat(change -> change.type() == UserChangeEvent.Type.UPDATED
+                && change.after().getVersion() == 2L));
+        verify(outbox).add(argThat(change -> change.type() == UserChangeEvent.Type.DELETED));
+    }
+
+    @Test
+    @DisplayName("Should throw PreconditionFailedException when deleting stale version")
+    void testDeleteUserWithStaleVersion() {
+        // Arrange
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(null);
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(PreconditionFailedException.class,
+                () -> userService.deleteUser(testUser.getId(), 5L));
+    }
+
+    @Test
+    @DisplayName("Should delete user when expected version matches")
+    void testDeleteUserWithMatchingVersion() {
+        // Arrange
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(testUser);
+
+        // Act
+        boolean result = userService.deleteUser(testUser.getId(), 0L);
+
+        // Assert
+        assertTrue(result);
+        verify(mongoTemplate).findAndRemove(argThat((Query query) ->
+                query.getQueryObject().containsKey("$or")), eq(User.class));
+        verify(mongoTemplate, never()).exists(any(Query.class), eq(User.class));
+    }
+
+    private UserPatch patchOf(java.util.Map<String, Object> document) {
+        return UserPatch.from(document, Validation.buildDefaultValidatorFactory().getValidator());
+    }
+
+    @Test
+    @DisplayName("Should write only changed fields when patching")
+    void testPatchUserSetsOnlyChangedFields() {
+        // Arrange
+        testUser.setVersion(2L);
+        when(mongoTemplate.findById(testUser.getId(), User.class)).thenReturn(testUser);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(testUser);
+
+        // Act
+        java.util.Optional<PatchResult> result = userService.patchUser(testUser.getId(),
+                patchOf(java.util.Map.of("name", "John Doe", "age", 31)));
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertTrue(result.get().modified());
+        assertEquals(31, result.get().user().getAge());
+        assertEquals(3L, result.get().user().getVersion());
+        verify(mongoTemplate).findAndModify(
+                argThat((Query query) -> Long.valueOf(2L).equals(query.getQueryObject().get("version"))),
+                argThat((UpdateDefinition update) -> update.getUpdateObject().get("$set", org.bson.Document.class)
+                        .equals(new org.bson.Document("age", 31))),
+                any(FindAndModifyOptions.class), eq(User.class));
+        verify(mongoTemplate, never()).exists(any(Query.class), eq(User.class));
+    }
+
+    @Test
+    @DisplayName("Should skip write when patch changes nothing")
+    void testPatchUserNoOp() {
+        // Arrange
+        when(mongoTemplate.findById(testUser.getId(), User.class)).thenReturn(testUser);
+
+        // Act
+        java.util.Optional<PatchResult> result = userService.patchUser(testUser.getId(),
+                patchOf(java.util.Map.of("email", "john.doe@example.com", "age", 30)));
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertFalse(result.get().modified());
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("Should reject patch with stale expected version without writing")
+    void testPatchUserStaleVersion() {
+        // Arrange
+        testUser.setVersion(4L);
+        when(mongoTemplate.findById(testUser.getId(), User.class)).thenReturn(testUser);
+
+        // Act & Assert
+        assertThrows(PreconditionFailedException.class, () -> userService.patchUser(
+                testUser.getId(), patchOf(java.util.Map.of("age", 40)), 3L));
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
+    }
+
+    @Test
+    @DisplayName("Should reject patch to an email owned by another user")
+    void testPatchUserDuplicateEmail() {
+        // Arrange
+        when(mongoTemplate.findById(testUser.getId(), User.class)).thenReturn(testUser);
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(DuplicateEmailException.class, () -> userService.patchUser(
+                testUser.getId(), patchOf(java.util.Map.of("email", "taken@example.com"))));
+    }
+
+    @Test
+    @DisplayName("Should retry patch when user changes between read and write")
+    void testPatchUserRetriesOnConcurrentChange() {
+        // Arrange
+        User changed = User.copyOf(testUser);
+        changed.setVersion(1L);
+        when(mongoTemplate.findById(testUser.getId(), User.class)).thenReturn(testUser).thenReturn(changed);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(null).thenReturn(changed);
+
+        // Act
+        java.util.Optional<PatchResult> result = userService.patchUser(testUser.getId(),
+                patchOf(java.util.Map.of("age", 44)));
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(2L, result.get().user().getVersion());
+        verify(mongoTemplate, times(2)).findById(testUser.getId(), User.class);
+    }
+
+    @Test
+    @DisplayName("Should return empty Optional when patching non-existent user")
+    void testPatchUserNotFound() {
+        // Arrange
+        when(mongoTemplate.findById("missing", User.class)).thenReturn(null);
+
+        // Act & Assert
+        assertTrue(userService.patchUser("missing", patchOf(java.util.Map.of("age", 40))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should serve getUserById from the cache without querying MongoDB")
+    void testGetUserByIdCacheHit() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(userCache.get(userId)).thenReturn(Optional.of(testUser));
+
+        // Act
+        Optional<User> result = userService.getUserById(userId);
+
+        // Assert
+        assertTrue(result.isPresent());
+        verify(mongoTemplate, never()).findById(anyString(), eq(User.class));
+    }
+
+    @Test
+    @DisplayName("Should cache a user loaded on a cache miss")
+    void testGetUserByIdCachesMiss() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(mongoTemplate.findById(userId, User.class)).thenReturn(testUser);
+        when(userCache.generation()).thenReturn(7L);
+
+        // Act
+        userService.getUserById(userId);
+
+        // Assert
+        verify(userCache, times(1)).put(testUser, 7L);
+    }
+
+    @Test
+    @DisplayName("Should wait for the primary read when the hedge does not find the user")
+    void testGetUserByIdHedgeFindsNothing() {
+        // Arrange
+        String userId = testUser.getId();
+        when(mongoTemplate.findById(userId, User.class)).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            return testUser;
+        });
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(null);
+        UserServiceImpl hedging = hedgingService();
+
+        // Act
+        Optional<User> result = hedging.getUserById(userId);
+
+        // Assert
+        assertEquals(Optional.of(testUser), result);
+        verify(mongoTemplate).findOne(any(Query.class), eq(User.class));
+        verify(userCache).put(eq(testUser), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should cache only the primary's copy when a stale hedge answers first")
+    void testGetUserByIdStaleHedgeNotCached() throws Exception {
+        // Arrange
+        String userId = testUser.getId();
+        testUser.setVersion(2L);
+        User stale = new User("John Doe", "old@example.com", 30);
+        stale.setId(userId);
+        stale.setVersion(1L);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mongoTemplate.findById(userId, User.class)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return testUser;
+        });
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(stale);
+        UserServiceImpl hedging = hedgingService();
+
+        // Act
+        Optional<User> result = hedging.getUserById(userId);
+        verify(userCache, never()).put(any(User.class), anyLong());
+        release.countDown();
+
+        // Assert
+        assertEquals(Optional.of(stale), result);
+        verify(userCache, timeout(2_000)).put(eq(testUser), anyLong());
+        verify(userCache, never()).put(eq(stale), anyLong());
+    }
+
+    /** Whether an update only matches a user that already has the new email. */
+    private static boolean matchesEmail(Query query) {
+        return query != null && query.getQueryObject().containsKey("email");
+    }
+
+    private UserServiceImpl hedgingService() {
+        RetryBudget budget = new RetryBudget(1.0, 0, Duration.ofSeconds(10), Clock.systemUTC());
+        HedgedReader reader = new HedgedReader(true, Duration.ofMillis(20), Duration.ofMillis(20), budget,
+                Executors.newCachedThreadPool());
+        when(userCache.get(anyString())).thenReturn(Optional.empty());
+        return new UserServiceImpl(mongoTemplate, eventPublisher, userCache, readRouting, reader, outbox);
+    }
+
+    @Test
+    @DisplayName("Should check existence on the primary without the cache")
+    void testExistsOnPrimary() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        when(mongoTemplate.exists(any(Query.class), eq(User.class))).thenReturn(true);
+
+        // Act
+        boolean exists = userService.existsOnPrimary(userId);
+
+        // Assert
+        assertTrue(exists);
+        verify(mongoTemplate).exists(argThat((Query query) -> query.getQueryObject().get("_id").equals(userId)
+                && ReadPreference.primary().equals(query.getReadPreference())), eq(User.class));
+        verifyNoInteractions(userCache);
+    }
+
+    @Test
+    @DisplayName("Should answer getUserVersion from the cache when possible")
+    void testGetUserVersionCacheHit() {
+        // Arrange
+        String userId = "507f1f77bcf86cd799439011";
+        testUser.setVersion(7L);
+        when(userCache.get(userId)).thenReturn(Optional.of(testUser));
+
+        // Act
+        Optional<Long> version = userService.getUserVersion(userId);
+
+        // Assert
+        assertEquals(Optional.of(7L), version);
+        verify(mongoTemplate, never()).findOne(any(Query.class), eq(User.class));
+    }
+}
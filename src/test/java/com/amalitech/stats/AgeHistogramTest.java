@@ -0,0 +1,144 @@
+package com.amalitech.stats;
+
+import com.amalitech.config.ReadRouting;
+import com.amalitech.dto.AgeStatistics;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("AgeHistogram Tests")
+class AgeHistogramTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private AgeHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        histogram = new AgeHistogram(mongoTemplate, new ReadRouting("secondaryPreferred", Duration.ofSeconds(90)));
+    }
+
+    private static User user(String id, int age) {
+        User user = new User("User " + id, id + "@example.com", age);
+        user.setId(id);
+        return user;
+    }
+
+    @Test
+    @DisplayName("Should report empty statistics when no users exist")
+    void testEmptySnapshot() {
+        // Act
+        AgeStatistics stats = histogram.snapshot();
+
+        // Assert
+        assertEquals(0, stats.count());
+        assertNull(stats.mean());
+        assertNull(stats.p50());
+        assertEquals(User.MIN_AGE, stats.bucketStart());
+        assertEquals(User.MAX_AGE - User.MIN_AGE + 1, stats.buckets().length);
+    }
+
+    @Test
+    @DisplayName("Should seed buckets from aggregation results")
+    void testSeedFromAggregation() {
+        // Arrange
+        List<Document> rows = List.of(
+                new Document("_id", 20).append("count", 3),
+                new Document("_id", 40).append("count", 1),
+                new Document("_id", 150).append("count", 5));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(User.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(rows, new Document()));
+
+        // Act
+        histogram.seed();
+        AgeStatistics stats = histogram.snapshot();
+
+        // Assert
+        assertEquals(4, stats.count(), "Out-of-range ages should be ignored");
+        assertEquals(25.0, stats.mean());
+        assertEquals(20, stats.min());
+        assertEquals(40, stats.max());
+        assertEquals(3, stats.buckets()[20 - User.MIN_AGE]);
+    }
+
+    @Test
+    @DisplayName("Should seed once every singleton is instantiated")
+    void testSeedsAfterSingletonsInstantiated() {
+        // Arrange
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(User.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(new Document("_id", 30).append("count", 2)),
+                        new Document()));
+
+        // Act
+        histogram.afterSingletonsInstantiated();
+
+        // Assert
+        assertEquals(2, histogram.snapshot().count());
+    }
+
+    @Test
+    @DisplayName("Should not fail when seeding aggregation throws")
+    void testSeedFailureIsTolerated() {
+        // Arrange
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(User.class), eq(Document.class)))
+                .thenThrow(new RuntimeException("database down"));
+
+        // Act & Assert
+        assertDoesNotThrow(() -> histogram.seed());
+        assertEquals(0, histogram.snapshot().count());
+    }
+
+    @Test
+    @DisplayName("Should apply create, update and delete events incrementally")
+    void testIncrementalUpdates() {
+        // Act
+        histogram.onUserChange(UserChangeEvent.created(user("a", 30)));
+        histogram.onUserChange(UserChangeEvent.created(user("b", 30)));
+        histogram.onUserChange(UserChangeEvent.created(user("c", 50)));
+        histogram.onUserChange(UserChangeEvent.updated(user("b", 30), user("b", 31)));
+        histogram.onUserChange(UserChangeEvent.deleted(user("c", 50)));
+        AgeStatistics stats = histogram.snapshot();
+
+        // Assert
+        assertEquals(2, stats.count());
+        assertEquals(1, stats.buckets()[30 - User.MIN_AGE]);
+        assertEquals(1, stats.buckets()[31 - User.MIN_AGE]);
+        assertEquals(0, stats.buckets()[50 - User.MIN_AGE]);
+    }
+
+    @Test
+    @DisplayName("Should compute nearest-rank percentiles")
+    void testPercentiles() {
+        // Arrange
+        for (int age = 21; age <= 30; age++) {
+            histogram.onUserChange(UserChangeEvent.created(user("u" + age, age)));
+        }
+
+        // Act
+        AgeStatistics stats = histogram.snapshot();
+
+        // Assert
+        assertEquals(25, stats.p50());
+        assertEquals(29, stats.p90());
+        assertEquals(30, stats.p95());
+        assertEquals(30, stats.p99());
+    }
+}
@@ -0,0 +1,170 @@
+package com.amalitech.stats;
+
+import com.amalitech.config.ReadRouting;
+import com.amalitech.dto.DomainCount;
+import com.amalitech.dto.DomainStatistics;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("EmailDomainSketch Tests")
+class EmailDomainSketchTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private EmailDomainSketch sketch;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        sketch = new EmailDomainSketch(mongoTemplate,
+                new ReadRouting("secondaryPreferred", Duration.ofSeconds(90)), 3, 5, 1024);
+    }
+
+    private static User user(String id, String email) {
+        User user = new User("User " + id, email, 30);
+        user.setId(id);
+        return user;
+    }
+
+    @Test
+    @DisplayName("Should extract lower-cased domain from email")
+    void testDomainOf() {
+        assertEquals("example.com", EmailDomainSketch.domainOf("John@Example.COM"));
+        assertNull(EmailDomainSketch.domainOf("no-domain@"));
+        assertNull(EmailDomainSketch.domainOf("plain"));
+        assertNull(EmailDomainSketch.domainOf(null));
+    }
+
+    @Test
+    @DisplayName("Should rank heaviest domains from incremental events")
+    void testApproximateTop() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            sketch.onUserChange(UserChangeEvent.created(user("a" + i, "a" + i + "@alpha.com")));
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.onUserChange(UserChangeEvent.created(user("b" + i, "b" + i + "@beta.com")));
+        }
+        sketch.onUserChange(UserChangeEvent.created(user("c", "c@gamma.com")));
+
+        // Act
+        DomainStatistics stats = sketch.approximateTop(2);
+
+        // Assert
+        assertFalse(stats.exact());
+        assertEquals(List.of(new DomainCount("alpha.com", 5), new DomainCount("beta.com", 3)),
+                stats.domains());
+    }
+
+    @Test
+    @DisplayName("Should move counts between domains on email change and delete")
+    void testUpdateAndDelete() {
+        // Arrange
+        User before = user("x", "x@alpha.com");
+        User after = user("x", "x@beta.com");
+        sketch.onUserChange(UserChangeEvent.created(before));
+
+        // Act
+        sketch.onUserChange(UserChangeEvent.updated(before, after));
+
+        // Assert
+        assertEquals(0, sketch.approximateCount("alpha.com").count());
+        assertEquals(1, sketch.approximateCount("BETA.com").count());
+
+        // Act
+        sketch.onUserChange(UserChangeEvent.deleted(after));
+
+        // Assert
+        assertEquals(0, sketch.approximateCount("beta.com").count());
+        assertTrue(sketch.approximateTop(3).domains().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should cap approximate results at configured top-K")
+    void testApproximateTopIsBounded() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            sketch.onUserChange(UserChangeEvent.created(user("u" + i, "u" + i + "@d" + i + ".com")));
+        }
+
+        // Act & Assert
+        assertEquals(3, sketch.approximateTop(50).domains().size());
+    }
+
+    @Test
+    @DisplayName("Should stream exact counts from aggregation cursor")
+    void testExactTop() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(User.class), eq(Document.class)))
+                .thenReturn(Stream.of(
+                        new Document("_id", "alpha.com").append("count", 7),
+                        new Document("_id", "beta.com").append("count", 2L)));
+
+        // Act
+        DomainStatistics stats = sketch.exactTop(2);
+
+        // Assert
+        assertTrue(stats.exact());
+        assertEquals(List.of(new DomainCount("alpha.com", 7), new DomainCount("beta.com", 2)),
+                stats.domains());
+    }
+
+    @Test
+    @DisplayName("Should answer an exact top of no domains without an aggregation")
+    void testExactTopZeroLimit() {
+        // Act
+        DomainStatistics stats = sketch.exactTop(0);
+
+        // Assert
+        assertTrue(stats.exact());
+        assertTrue(stats.domains().isEmpty());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("Should seed sketch from aggregation at startup")
+    void testSeed() {
+        // Arrange
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(User.class), eq(Document.class)))
+                .thenReturn(Stream.of(new Document("_id", "alpha.com").append("count", 4)));
+
+        // Act
+        sketch.seed();
+
+        // Assert
+        assertEquals(4, sketch.approximateCount("alpha.com").count());
+    }
+
+    @Test
+    @DisplayName("Count-Min sketch should never under-estimate")
+    void testCountMinNeverUnderEstimates() {
+        // Arrange
+        CountMinSketch cms = new CountMinSketch(4, 16);
+        for (int i = 0; i < 200; i++) {
+            cms.add("key" + i, i % 7 + 1);
+        }
+
+        // Act & Assert
+        for (int i = 0; i < 200; i++) {
+            assertTrue(cms.estimate("key" + i) >= i % 7 + 1);
+        }
+    }
+}
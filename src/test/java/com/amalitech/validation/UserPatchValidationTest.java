@@ -0,0 +1,98 @@
+package com.amalitech.validation;
+
+import com.amalitech.exception.PatchValidationException;
+import com.amalitech.model.User;
+import com.amalitech.model.UserPatch;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("User Patch Validation Tests")
+class UserPatchValidationTest {
+    
+    private Validator validator;
+    
+    @BeforeEach
+    void setUp() {
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+    }
+    
+    @Test
+    @DisplayName("Should accept patch with a subset of valid fields")
+    void testValidPartialPatch() {
+        // Act
+        UserPatch patch = UserPatch.from(Map.of("age", 42), validator);
+        
+        // Assert
+        assertEquals(Map.of("age", 42), patch.getChanges());
+    }
+    
+    @Test
+    @DisplayName("Should reject null for required fields")
+    void testNullRemovesRequiredField() {
+        // Arrange
+        Map<String, Object> document = new HashMap<>();
+        document.put("name", null);
+        
+        // Act & Assert
+        PatchValidationException ex = assertThrows(PatchValidationException.class,
+                () -> UserPatch.from(document, validator));
+        assertEquals("Name is required and cannot be blank", ex.getFieldErrors().get("name"));
+    }
+    
+    @Test
+    @DisplayName("Should apply User constraints to supplied fields only")
+    void testConstraintViolations() {
+        // Act & Assert
+        PatchValidationException ex = assertThrows(PatchValidationException.class,
+                () -> UserPatch.from(Map.of("age", 101, "email", "bad"), validator));
+        assertEquals("Age must not exceed 100", ex.getFieldErrors().get("age"));
+        assertEquals("Email must be a valid email address", ex.getFieldErrors().get("email"));
+        assertEquals(2, ex.getFieldErrors().size());
+    }
+    
+    @Test
+    @DisplayName("Should reject read-only, unknown and mistyped fields")
+    void testStructuralErrors() {
+        // Act & Assert
+        PatchValidationException ex = assertThrows(PatchValidationException.class,
+                () -> UserPatch.from(Map.of("id", "x", "nickname", "Jo", "age", "thirty", "name", 5), validator));
+        assertEquals("Field is read-only", ex.getFieldErrors().get("id"));
+        assertEquals("Unknown field", ex.getFieldErrors().get("nickname"));
+        assertEquals("Age must be a whole number", ex.getFieldErrors().get("age"));
+        assertEquals("Must be a string", ex.getFieldErrors().get("name"));
+    }
+    
+    @Test
+    @DisplayName("Should accept whole-number decimals for age and reject fractions")
+    void testAgeNumberConversion() {
+        // Act & Assert
+        assertEquals(30, UserPatch.from(Map.of("age", 30.0), validator).getChanges().get("age"));
+        assertThrows(PatchValidationException.class,
+                () -> UserPatch.from(Map.of("age", 30.5), validator));
+    }
+    
+    @Test
+    @DisplayName("Should compute only fields that differ from current state")
+    void testChangedFields() {
+        // Arrange
+        User current = new User("John Doe", "john@example.com", 30);
+        UserPatch patch = UserPatch.from(Map.of("name", "John Doe", "age", 31), validator);
+        
+        // Act
+        Map<String, Object> changed = patch.changedFields(current);
+        UserPatch.apply(current, changed);
+        
+        // Assert
+        assertEquals(Map.of("age", 31), changed);
+        assertEquals(31, current.getAge());
+        assertEquals("John Doe", current.getName());
+    }
+}
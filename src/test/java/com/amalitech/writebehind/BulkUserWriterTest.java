@@ -0,0 +1,209 @@
+package com.amalitech.writebehind;
+
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.event.UserChangeEvent;
+import com.amalitech.model.User;
+import com.amalitech.outbox.UserOutbox;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("BulkUserWriter Tests")
+class BulkUserWriterTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private UserOutbox outbox;
+
+    private BulkUserWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOperations);
+        when(outbox.write(any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        writer = new BulkUserWriter(mongoTemplate, eventPublisher, outbox);
+    }
+
+    private static User stored(String id, String email, long version) {
+        User user = new User("Stored", email, 40);
+        user.setId(id);
+        user.setVersion(version);
+        return user;
+    }
+
+    private static Map<String, WriteOutcome> byTicket(List<WriteOutcome> outcomes) {
+        return outcomes.stream().collect(Collectors.toMap(WriteOutcome::ticket, Function.identity()));
+    }
+
+    @Test
+    @DisplayName("Should insert creates in one bulk operation and publish created events")
+    void testCreates() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of());
+        List<PendingWrite> batch = List.of(
+                new PendingWrite("t1", WriteTicket.Operation.CREATE, null, new User("A", "a@example.com", 20)),
+                new PendingWrite("t2", WriteTicket.Operation.CREATE, null, new User("B", "b@example.com", 21)));
+
+        // Act
+        Map<String, WriteOutcome> outcomes = byTicket(writer.write(batch));
+
+        // Assert
+        assertTrue(outcomes.get("t1").succeeded());
+        assertTrue(outcomes.get("t2").succeeded());
+        assertNotNull(outcomes.get("t1").userId());
+        verify(bulkOperations, times(2)).insert(any(User.class));
+        verify(bulkOperations, times(1)).execute();
+        verify(eventPublisher, times(2)).publishEvent(any(UserChangeEvent.class));
+        verify(outbox).addAll(argThat(events -> events.size() == 2));
+    }
+
+    @Test
+    @DisplayName("Should write a batch again without the writes that failed inside the outbox transaction")
+    void testRolledBackBatchRetried() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of());
+        when(outbox.isRecording()).thenReturn(true);
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1);
+        doThrow(new BulkOperationException("duplicate", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(duplicate), null, new ServerAddress(), Set.of())))
+                .doReturn(null)
+                .when(bulkOperations).execute();
+        List<PendingWrite> batch = List.of(
+                new PendingWrite("t1", WriteTicket.Operation.CREATE, null, new User("A", "a@example.com", 20)),
+                new PendingWrite("t2", WriteTicket.Operation.CREATE, null, new User("B", "raced@example.com", 21)),
+                new PendingWrite("t3", WriteTicket.Operation.CREATE, null, new User("C", "c@example.com", 22)));
+
+        // Act
+        Map<String, WriteOutcome> outcomes = byTicket(writer.write(batch));
+
+        // Assert
+        assertTrue(outcomes.get("t1").succeeded());
+        assertEquals("Email already exists: raced@example.com", outcomes.get("t2").error());
+        assertTrue(outcomes.get("t3").succeeded());
+        verify(outbox, times(2)).write(any());
+        verify(bulkOperations, times(5)).insert(any(User.class));
+        ArgumentCaptor<Collection<UserChangeEvent>> recorded = ArgumentCaptor.forClass(Collection.class);
+        verify(outbox).addAll(recorded.capture());
+        assertEquals(List.of("a@example.com", "c@example.com"),
+                recorded.getValue().stream().map(event -> event.after().getEmail()).toList());
+        verify(eventPublisher, times(2)).publishEvent(any(UserChangeEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should fail writes whose email is taken or claimed earlier in the batch")
+    void testEmailConflicts() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class)))
+                .thenReturn(List.of(stored("u1", "taken@example.com", 0)));
+        List<PendingWrite> batch = List.of(
+                new PendingWrite("t1", WriteTicket.Operation.CREATE, null, new User("A", "taken@example.com", 20)),
+                new PendingWrite("t2", WriteTicket.Operation.CREATE, null, new User("B", "new@example.com", 21)),
+                new PendingWrite("t3", WriteTicket.Operation.CREATE, null, new User("C", "new@example.com", 22)));
+
+        // Act
+        Map<String, WriteOutcome> outcomes = byTicket(writer.write(batch));
+
+        // Assert
+        assertEquals("Email already exists: taken@example.com", outcomes.get("t1").error());
+        assertTrue(outcomes.get("t2").succeeded());
+        assertEquals("Email already exists: new@example.com", outcomes.get("t3").error());
+        verify(bulkOperations, times(1)).insert(any(User.class));
+    }
+
+    @Test
+    @DisplayName("Should collapse updates to the same user and fail updates of missing users")
+    void testUpdates() {
+        // Arrange
+        User before = stored("u1", "old@example.com", 2);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of(before));
+        when(mongoTemplate.findAndModify(argThat((Query query) -> "u1".equals(query.getQueryObject().get("_id"))),
+                any(Update.class), any(FindAndModifyOptions.class), eq(User.class))).thenReturn(before);
+        List<PendingWrite> batch = List.of(
+                new PendingWrite("t1", WriteTicket.Operation.UPDATE, "u1", new User("X", "first@example.com", 30)),
+                new PendingWrite("t2", WriteTicket.Operation.UPDATE, "u1", new User("Y", "second@example.com", 31)),
+                new PendingWrite("t3", WriteTicket.Operation.UPDATE, "missing", new User("Z", "z@example.com", 32)));
+
+        // Act
+        Map<String, WriteOutcome> outcomes = byTicket(writer.write(batch));
+
+        // Assert
+        assertTrue(outcomes.get("t1").succeeded());
+        assertTrue(outcomes.get("t2").succeeded());
+        assertEquals("User not found with id: missing", outcomes.get("t3").error());
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), any(Update.class),
+                argThat((FindAndModifyOptions options) -> !options.isReturnNew()), eq(User.class));
+        verify(bulkOperations, never()).execute();
+        ArgumentCaptor<UserChangeEvent> event = ArgumentCaptor.forClass(UserChangeEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(UserChangeEvent.Type.UPDATED, event.getValue().type());
+        assertEquals("old@example.com", event.getValue().before().getEmail(),
+                "The before-image is the document the write replaced");
+        assertEquals("second@example.com", event.getValue().after().getEmail());
+        assertEquals(3L, event.getValue().after().getVersion());
+    }
+
+    @Test
+    @DisplayName("Should write a batch again without an update that failed inside the outbox transaction")
+    void testUpdateRolledBack() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of());
+        when(outbox.isRecording()).thenReturn(true);
+        when(mongoTemplate.findAndModify(argThat((Query query) -> "u1".equals(query.getQueryObject().get("_id"))),
+                any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenThrow(new DuplicateKeyException("E11000"));
+        doReturn(stored("u2", "old@example.com", 0)).when(mongoTemplate).findAndModify(
+                argThat((Query query) -> "u2".equals(query.getQueryObject().get("_id"))),
+                any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        List<PendingWrite> batch = List.of(
+                new PendingWrite("t1", WriteTicket.Operation.UPDATE, "u1", new User("X", "raced@example.com", 30)),
+                new PendingWrite("t2", WriteTicket.Operation.UPDATE, "u2", new User("Y", "y@example.com", 31)));
+
+        // Act
+        Map<String, WriteOutcome> outcomes = byTicket(writer.write(batch));
+
+        // Assert
+        assertEquals("Email already exists: raced@example.com", outcomes.get("t1").error());
+        assertTrue(outcomes.get("t2").succeeded());
+        verify(outbox, times(2)).write(any());
+        verify(eventPublisher, times(1)).publishEvent(any(UserChangeEvent.class));
+    }
+}
@@ -0,0 +1,224 @@
+package com.amalitech.writebehind;
+
+import com.amalitech.MutableClock;
+import com.amalitech.dto.WriteTicket;
+import com.amalitech.exception.WriteQueueFullException;
+import com.amalitech.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("WriteBehindQueue Tests")
+class WriteBehindQueueTest {
+
+    @Mock
+    private BulkUserWriter writer;
+
+    private WriteBehindQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(writer.write(anyList())).thenAnswer(inv -> {
+            List<PendingWrite> batch = inv.getArgument(0);
+            return batch.stream()
+                    .map(write -> WriteOutcome.success(write.ticket(), "id-" + write.ticket()))
+                    .toList();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null && queue.isRunning()) {
+            queue.stop();
+        }
+    }
+
+    private static User user(int i) {
+        return new User("User " + i, "user" + i + "@example.com", 30);
+    }
+
+    private void awaitCompleted(WriteTicket ticket) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.getTicket(ticket.ticket()).orElseThrow().status() != WriteTicket.Status.COMPLETED) {
+            assertTrue(System.nanoTime() < deadline, "Ticket not completed in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Should group queued writes into batches and complete their tickets")
+    void testBatchesAndCompletes() throws Exception {
+        // Arrange
+        queue = new WriteBehindQueue(writer, 100, 10, Duration.ofMillis(50), Duration.ofHours(1), 1000,
+                Clock.systemUTC());
+        queue.start();
+
+        // Act
+        WriteTicket first = null;
+        for (int i = 0; i < 25; i++) {
+            WriteTicket ticket = queue.submitCreate(user(i));
+            if (first == null) {
+                first = ticket;
+            }
+        }
+        queue.stop();
+
+        // Assert
+        assertEquals(WriteTicket.Status.PENDING, first.status());
+        WriteTicket done = queue.getTicket(first.ticket()).orElseThrow();
+        assertEquals(WriteTicket.Status.COMPLETED, done.status());
+        assertEquals("id-" + first.ticket(), done.userId());
+        assertNotNull(done.completedAt());
+        verify(writer, atLeast(3)).write(argThat(batch -> batch.size() <= 10));
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    @DisplayName("Should reject writes when the queue is full")
+    void testBackpressure() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch flushing = new CountDownLatch(1);
+        when(writer.write(anyList())).thenAnswer(inv -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        queue = new WriteBehindQueue(writer, 2, 1, Duration.ofMillis(10), Duration.ofHours(1), 1000,
+                Clock.systemUTC());
+        queue.start();
+        queue.submitCreate(user(0));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+        // Act
+        queue.submitCreate(user(1));
+        queue.submitCreate(user(2));
+
+        // Assert
+        assertThrows(WriteQueueFullException.class, () -> queue.submitCreate(user(3)));
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("Should mark every ticket in a batch failed when the flush throws")
+    void testFlushFailure() {
+        // Arrange
+        when(writer.write(anyList())).thenThrow(new IllegalStateException("connection reset"));
+        queue = new WriteBehindQueue(writer, 10, 10, Duration.ofMillis(10), Duration.ofHours(1), 1000,
+                Clock.systemUTC());
+        queue.start();
+        WriteTicket ticket = queue.submitUpdate("abc", user(1));
+
+        // Act
+        queue.stop();
+
+        // Assert
+        WriteTicket failed = queue.getTicket(ticket.ticket()).orElseThrow();
+        assertEquals(WriteTicket.Status.FAILED, failed.status());
+        assertTrue(failed.error().contains("connection reset"));
+    }
+
+    @Test
+    @DisplayName("Should expire finished tickets while the queue is never idle")
+    void testExpiresTicketsWhileBusy() throws Exception {
+        // Arrange
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        queue = new WriteBehindQueue(writer, 10, 1, Duration.ofSeconds(2), Duration.ofHours(1), 1000,
+                clock);
+        queue.start();
+        WriteTicket old = queue.submitCreate(user(0));
+        awaitCompleted(old);
+
+        // Act
+        clock.advance(Duration.ofHours(2));
+        awaitCompleted(queue.submitCreate(user(1)));
+        awaitCompleted(queue.submitCreate(user(2)));
+
+        // Assert
+        assertTrue(queue.getTicket(old.ticket()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest finished tickets beyond the maximum")
+    void testCapsFinishedTickets() {
+        // Arrange
+        queue = new WriteBehindQueue(writer, 10, 10, Duration.ofMillis(10), Duration.ofHours(1), 2,
+                Clock.systemUTC());
+        queue.start();
+        WriteTicket first = queue.submitCreate(user(0));
+        WriteTicket second = queue.submitCreate(user(1));
+        WriteTicket third = queue.submitCreate(user(2));
+
+        // Act
+        queue.stop();
+
+        // Assert
+        assertTrue(queue.getTicket(first.ticket()).isEmpty());
+        assertTrue(queue.getTicket(second.ticket()).isPresent());
+        assertTrue(queue.getTicket(third.ticket()).isPresent());
+    }
+
+    @Test
+    @DisplayName("Should leave queued writes to a writer that is still flushing when stopped")
+    void testStopWhileWriterBusy() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch flushing = new CountDownLatch(1);
+        when(writer.write(anyList())).thenAnswer(inv -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            List<PendingWrite> batch = inv.getArgument(0);
+            return batch.stream()
+                    .map(write -> WriteOutcome.success(write.ticket(), "id-" + write.ticket()))
+                    .toList();
+        });
+        queue = new WriteBehindQueue(writer, 10, 1, Duration.ofMillis(10), Duration.ofHours(1), 1000,
+                Clock.systemUTC());
+        queue.start();
+        queue.submitCreate(user(0));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        WriteTicket queued = queue.submitCreate(user(1));
+
+        // Act: an interrupted stop gives up waiting for the writer at once
+        Thread stopper = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            queue.stop();
+        });
+        stopper.start();
+        stopper.join(TimeUnit.SECONDS.toMillis(5));
+
+        // Assert
+        verify(writer, times(1)).write(anyList());
+        assertEquals(1, queue.depth());
+        release.countDown();
+        awaitCompleted(queued);
+        verify(writer, times(2)).write(anyList());
+    }
+
+    @Test
+    @DisplayName("Should refuse writes once stopped")
+    void testRejectsWhenStopped() {
+        // Arrange
+        queue = new WriteBehindQueue(writer, 10, 10, Duration.ofMillis(10), Duration.ofHours(1), 1000,
+                Clock.systemUTC());
+
+        // Act & Assert
+        assertThrows(WriteQueueFullException.class, () -> queue.submitCreate(user(1)));
+        verifyNoInteractions(writer);
+    }
+}